@@ -0,0 +1,43 @@
+package de.gaffga.jumpnrun;
+
+import java.io.File;
+import java.io.IOException;
+
+import de.gaffga.jumpnrun.resources.AssetPack;
+import de.gaffga.jumpnrun.resources.AssetPackWriter;
+
+/**
+ * Packt das Datenverzeichnis in eine Datei für den ResourceManager (siehe
+ * AssetPack) - gedacht als Schritt beim Erzeugen einer Auslieferung.
+ *
+ * Aufruf: <code>java de.gaffga.jumpnrun.AssetPackBuilder &lt;datenverzeichnis&gt; [ausgabe]</code>
+ *
+ * Ohne Angabe wird <code>assets.pack</code> im Datenverzeichnis geschrieben.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class AssetPackBuilder {
+
+	/**
+	 * Die Main-Methode.
+	 *
+	 * @param args das Datenverzeichnis und optional die Ausgabedatei
+	 */
+	public static void main(String[] args) {
+		if ( args.length < 1 || args.length > 2 ) {
+			System.err.println("Aufruf: AssetPackBuilder <datenverzeichnis> [ausgabe]");
+			System.exit(2);
+		}
+		File directory = new File(args[0]);
+		File output = args.length > 1 ? new File(args[1]) : new File(directory, AssetPack.FILE_NAME);
+
+		try {
+			AssetPackWriter writer = AssetPackWriter.write(directory, output);
+			System.out.println(writer.getCount() + " Dateien, " + writer.getOriginalBytes() + " Bytes -> "
+					+ output + " (" + output.length() + " Bytes)");
+		} catch (IOException e) {
+			System.err.println("Fehler beim Packen: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+}
@@ -5,6 +5,8 @@ import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Messen der FPS (frames per second) um eine einheitliche Spielgeschwindigkeit
@@ -15,6 +17,10 @@ import java.awt.image.BufferedImage;
  * etwas "träge" sind und durch den Einsatz der Pause-Funktion sich ein "hakeln"
  * im Spiel bemerkbar machen würde.
  * 
+ * Für Aufzeichnungen und Benchmarks kann ein fester Zeitschritt gesetzt werden 
+ * (setFixedSpeedFactor) - die Messung läuft dann weiter, das Spiel rechnet
+ * aber unabhängig davon immer mit dem gleichen Faktor.
+ * 
  * Diese Klasse ist als Singleton implementiert.
  * 
  * @author Stefan Gaffga <stefan@gaffga.de>
@@ -42,6 +48,12 @@ public class FpsMeter {
 	/** Die Höhe der Überschriftszeile */
 	private int captionHeight;
 	
+	/** Zusätzliche Zählerwerte die mit dem Graphen angezeigt werden (Name -> Wert) */
+	private LinkedHashMap<String, int[]> counters = null;
+	
+	/** Der feste Zeitschritt in Sekunden oder 0 falls gemessen wird */
+	private float fixedSpeedFactor = 0;
+	
 	/** Die einzige FpsMeter-Instanz */
 	private static FpsMeter instance = null;
 	
@@ -56,6 +68,7 @@ public class FpsMeter {
 		lasty = -1;
 		fps = 20; // irgendein halbwegs realistischer Wert (wichtig dass er >0 ist)
 		fpsGraph = new BufferedImage(200, 60, BufferedImage.TYPE_INT_ARGB);
+		counters = new LinkedHashMap<String, int[]>();
 
 		// Den Graphen löschen
 		Graphics2D g = (Graphics2D) fpsGraph.getGraphics();
@@ -177,6 +190,56 @@ public class FpsMeter {
 		return fpsGraph;
 	}
 	
+	/**
+	 * Setzt einen Zählerwert der zusammen mit dem Graphen angezeigt wird.
+	 * 
+	 * Die Zähler werden pro Frame von den einzelnen Spielkomponenten gesetzt
+	 * (z.B. wie viele Sprites gezeichnet wurden).
+	 * 
+	 * @param name der Name des Zählers
+	 * @param value der aktuelle Wert
+	 */
+	public void setCounter(String name, int value) {
+		int[] counter = counters.get(name);
+		if ( counter==null ) {
+			counter = new int[1];
+			counters.put(name, counter);
+		}
+		counter[0] = value;
+	}
+	
+	/**
+	 * Liefert den aktuellen Wert eines Zählers.
+	 * 
+	 * @param name der Name des Zählers
+	 * @return der Wert oder 0 falls der Zähler nie gesetzt wurde
+	 */
+	public int getCounter(String name) {
+		int[] counter = counters.get(name);
+		if ( counter==null ) return 0;
+		
+		return counter[0];
+	}
+	
+	/**
+	 * Zeichnet alle Zähler untereinander. Die letzte Zeile endet an der 
+	 * angegebenen Y-Koordinate.
+	 * 
+	 * @param g der Graphics-Kontext
+	 * @param x die X-Koordinate
+	 * @param y die Y-Koordinate der Grundlinie der letzten Zeile
+	 */
+	public void drawCounters(Graphics2D g, int x, int y) {
+		int lineHeight = 12;
+		int line = counters.size() - 1;
+		
+		g.setColor(Color.yellow);
+		for ( Map.Entry<String, int[]> entry : counters.entrySet() ) {
+			g.drawString(entry.getKey() + ": " + entry.getValue()[0], x, y - line*lineHeight);
+			line--;
+		}
+	}
+	
 	/**
 	 * Liefert den aktuellen Messwert
 	 */
@@ -189,6 +252,9 @@ public class FpsMeter {
 	 * eine konstante Geschwindigkeit zu bringen.
 	 */
 	public float getSpeedFactor() {
+		if ( fixedSpeedFactor > 0 ) {
+			return fixedSpeedFactor;
+		}
 		return 1.0f / (float)fps;
 	}
 	
@@ -200,6 +266,15 @@ public class FpsMeter {
 	 * @return die Sekunden seit dem letzten Frame
 	 */
 	public float getLastFrameTime() {
-		return 1.0f / (float)fps;
+		return getSpeedFactor();
+	}
+	
+	/**
+	 * Setzt einen festen Zeitschritt für getSpeedFactor().
+	 * 
+	 * @param seconds der Zeitschritt in Sekunden oder 0 um wieder zu messen
+	 */
+	public void setFixedSpeedFactor(float seconds) {
+		this.fixedSpeedFactor = seconds;
 	}
 }
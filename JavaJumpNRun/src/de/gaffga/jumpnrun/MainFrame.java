@@ -9,10 +9,16 @@ import java.util.logging.Logger;
 
 import javax.swing.JFrame;
 
+import de.gaffga.jumpnrun.controller.DemoPlayback;
 import de.gaffga.jumpnrun.controller.IGameController;
 import de.gaffga.jumpnrun.controller.KeyboardInput;
+import de.gaffga.jumpnrun.controller.KeyboardInputAdapter;
 import de.gaffga.jumpnrun.game.Game;
 import de.gaffga.jumpnrun.game.GameException;
+import de.gaffga.jumpnrun.replay.ChecksumRecorder;
+import de.gaffga.jumpnrun.replay.ChecksumVerifier;
+import de.gaffga.jumpnrun.replay.KeyframeRecorder;
+import de.gaffga.jumpnrun.replay.ReplayViewer;
 import de.gaffga.jumpnrun.resources.ResourceManagerException;
 
 /**
@@ -45,7 +51,7 @@ public class MainFrame extends JFrame implements WindowListener {
 		
 		input = new KeyboardInput();
 		addKeyListener(input);
-//		((KeyboardInput)input).setRecording(true);
+//		((KeyboardInput)input).startRecording("test.demo", "level01.map");
 		
 /*
 		try {
@@ -61,6 +67,24 @@ public class MainFrame extends JFrame implements WindowListener {
 		
 		try {
 			game = new Game(input, getContentPane());
+			
+			// Aufzeichnungen laufen in festen Ticks und werden über Prüfsummen abgesichert,
+			// Keyframes erlauben beim Abspielen das Springen und Vorspulen
+			if ( input.isRecording() ) {
+				game.setDeterministic(true);
+				game.addTickListener(new ChecksumRecorder((KeyboardInput) input, ChecksumRecorder.DEFAULT_INTERVAL));
+				game.addTickListener(new KeyframeRecorder((KeyboardInput) input, KeyframeRecorder.DEFAULT_INTERVAL));
+			} else if ( input instanceof KeyboardInputAdapter ) {
+				DemoPlayback playback = ((KeyboardInputAdapter) input).getDemoPlayback();
+				if ( playback.isTickIndexed() ) {
+					game.setDeterministic(true);
+					game.addTickListener(new ChecksumVerifier(playback));
+
+					ReplayViewer viewer = new ReplayViewer(game, playback);
+					game.addTickListener(viewer);
+					addKeyListener(viewer);
+				}
+			}
 		} catch (GameException e) {
 			Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Fehler beim Erzeugen der Game-Klasse", e);
 			// Fenster wieder schließen
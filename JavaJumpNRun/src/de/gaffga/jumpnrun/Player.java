@@ -2,6 +2,7 @@ package de.gaffga.jumpnrun;
 
 import java.awt.Point;
 import java.awt.event.KeyEvent;
+import java.nio.ByteBuffer;
 
 import de.gaffga.jumpnrun.controller.IGameController;
 import de.gaffga.jumpnrun.map.ICollidable;
@@ -315,6 +316,52 @@ public class Player implements ICollidable {
 		playerCurrentVelX = f;
 	}
 
+	/**
+	 * Liefert die aktuelle Geschwindigkeit in X-Richtung.
+	 */
+	public float getCurrentVelX() {
+		return playerCurrentVelX;
+	}
+
+	/**
+	 * Liefert die aktuelle Geschwindigkeit in Y-Richtung.
+	 */
+	public float getCurrentVelY() {
+		return playerCurrentVelY;
+	}
+
+	/**
+	 * Schreibt Position, Geschwindigkeit und Sprungzustand in einen Puffer
+	 * (für Spielstände). Das Sprite sichert seinen Zustand selbst.
+	 * 
+	 * @param buffer der Puffer
+	 */
+	public void writeState(ByteBuffer buffer) {
+		buffer.putFloat(pos.x);
+		buffer.putFloat(pos.y);
+		buffer.putFloat(playerCurrentVelX);
+		buffer.putFloat(playerCurrentVelY);
+		buffer.putInt(lastDirection);
+		buffer.put((byte) (jumping ? 1 : 0));
+		buffer.putLong(jumpStartTime);
+		buffer.putInt(jumpStartY);
+	}
+	
+	/**
+	 * Stellt den Zustand aus einem Puffer wieder her.
+	 * 
+	 * @param buffer der Puffer
+	 */
+	public void readState(ByteBuffer buffer) {
+		pos = new FloatPosition(buffer.getFloat(), buffer.getFloat());
+		playerCurrentVelX = buffer.getFloat();
+		playerCurrentVelY = buffer.getFloat();
+		lastDirection = buffer.getInt();
+		jumping = buffer.get() != 0;
+		jumpStartTime = buffer.getLong();
+		jumpStartY = buffer.getInt();
+	}
+
 	/**
 	 * Setzt alle Sonderzustände des Spielers zurück.
 	 * 
@@ -0,0 +1,137 @@
+package de.gaffga.jumpnrun;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Der zentrale Zufallsgenerator des Spiels.
+ *
+ * Alle Zufallszahlen in Spiel und Effekten kommen aus Strömen dieses
+ * Services. Jedes Teilsystem hat seinen eigenen Strom, damit z.B. zusätzliche
+ * Partikel nicht die Zufallszahlen des Spielablaufs verschieben. Alle Ströme
+ * werden aus einem gemeinsamen Startwert abgeleitet; dieser wird bei einer
+ * Aufzeichnung mit gespeichert, so dass die Wiedergabe die gleichen
+ * Zufallszahlen bekommt.
+ *
+ * Diese Klasse ist als Singleton implementiert.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class RandomService {
+
+	/** Strom für den Spielablauf (Feinde, Spielregeln) */
+	public static final int STREAM_GAMEPLAY = 0;
+	/** Strom für Effekte */
+	public static final int STREAM_EFFECTS = 1;
+	/** Strom für das Partikelsystem */
+	public static final int STREAM_PARTICLES = 2;
+	/** Strom für Menüs und Hintergründe */
+	public static final int STREAM_MENU = 3;
+
+	/** Anzahl der Ströme */
+	public static final int STREAM_COUNT = 4;
+
+	/** Die einzige Instanz */
+	private static RandomService instance = null;
+
+	/** Der Startwert aller Ströme */
+	private long seed;
+
+	/** Die Ströme */
+	private RandomStream[] streams = null;
+
+	/**
+	 * Erzeugt den Service mit einem zufälligen Startwert.
+	 */
+	private RandomService() {
+		streams = new RandomStream[STREAM_COUNT];
+		for ( int i=0 ; i<STREAM_COUNT ; i++ ) {
+			streams[i] = new RandomStream(0);
+		}
+		setSeed(System.nanoTime());
+	}
+
+	/**
+	 * Liefert die einzige Instanz.
+	 *
+	 * @return die einzige Instanz
+	 */
+	public static synchronized RandomService getInstance() {
+		if ( instance == null ) {
+			instance = new RandomService();
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Setzt einen neuen Startwert und setzt alle Ströme darauf zurück.
+	 *
+	 * @param seed der Startwert
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+		reset();
+	}
+
+	/**
+	 * Wählt einen neuen zufälligen Startwert und setzt alle Ströme darauf
+	 * zurück (für ein neues freies Spiel oder eine neue Aufzeichnung).
+	 */
+	public void newSeed() {
+		// Den alten Startwert einmischen, damit auch zwei Aufrufe im selben
+		// Takt der Uhr verschiedene Folgen liefern
+		setSeed(RandomStream.mix(seed ^ System.nanoTime()));
+	}
+
+	/**
+	 * Liefert den aktuellen Startwert (für Aufzeichnungen).
+	 *
+	 * @return der Startwert
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Setzt alle Ströme auf den Anfang zurück (z.B. beim Start eines Spiels).
+	 * Die Strom-Objekte bleiben dabei dieselben, wer sich einen Strom gemerkt
+	 * hat bekommt danach also die neue Folge.
+	 */
+	public void reset() {
+		for ( int i=0 ; i<STREAM_COUNT ; i++ ) {
+			streams[i].setSeed(RandomStream.mix(seed + i * 0x9E3779B97F4A7C15L));
+		}
+	}
+
+	/**
+	 * Schreibt den Zustand aller Ströme in einen Puffer (für Spielstände).
+	 *
+	 * @param buffer der Puffer
+	 */
+	public void writeState(ByteBuffer buffer) {
+		for ( int i=0 ; i<STREAM_COUNT ; i++ ) {
+			buffer.putLong(streams[i].getState());
+		}
+	}
+
+	/**
+	 * Stellt den Zustand aller Ströme aus einem Puffer wieder her.
+	 *
+	 * @param buffer der Puffer
+	 */
+	public void readState(ByteBuffer buffer) {
+		for ( int i=0 ; i<STREAM_COUNT ; i++ ) {
+			streams[i].setState(buffer.getLong());
+		}
+	}
+
+	/**
+	 * Liefert den Strom eines Teilsystems.
+	 *
+	 * @param stream STREAM_GAMEPLAY, STREAM_EFFECTS, STREAM_PARTICLES oder STREAM_MENU
+	 * @return der Strom
+	 */
+	public RandomStream getStream(int stream) {
+		return streams[stream];
+	}
+}
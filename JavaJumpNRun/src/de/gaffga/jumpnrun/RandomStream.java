@@ -0,0 +1,137 @@
+package de.gaffga.jumpnrun;
+
+/**
+ * Ein schneller, reproduzierbarer Zufallszahlenstrom (xorshift64*).
+ *
+ * Im Gegensatz zu Math.random() hat ein Strom keinen gemeinsamen,
+ * synchronisierten Zustand - jedes Teilsystem bekommt seinen eigenen Strom
+ * vom RandomService. Ein Strom ist deshalb auch nicht threadsicher; wer
+ * parallel rechnet holt sich mit split() für jeden Thread einen eigenen.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class RandomStream {
+
+	/** Der Multiplikator von xorshift64* */
+	private static final long MULTIPLIER = 0x2545F4914F6CDD1DL;
+
+	/** Die Schrittweite von SplitMix64 (zum Ableiten von Startwerten) */
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	/** Der Zustand (nie 0) */
+	private long state;
+
+	/**
+	 * Erzeugt einen Strom aus einem Startwert.
+	 *
+	 * @param seed der Startwert
+	 */
+	public RandomStream(long seed) {
+		setSeed(seed);
+	}
+
+	/**
+	 * Setzt den Strom auf einen Startwert zurück.
+	 *
+	 * @param seed der Startwert
+	 */
+	public void setSeed(long seed) {
+		state = mix(seed);
+		if ( state == 0 ) {
+			state = GOLDEN_GAMMA;
+		}
+	}
+
+	/**
+	 * Liefert den inneren Zustand (um ihn z.B. in einem Spielstand zu sichern).
+	 *
+	 * @return der Zustand
+	 */
+	public long getState() {
+		return state;
+	}
+
+	/**
+	 * Setzt den inneren Zustand wie ihn getState() geliefert hat.
+	 *
+	 * @param state der Zustand
+	 */
+	public void setState(long state) {
+		this.state = state != 0 ? state : GOLDEN_GAMMA;
+	}
+
+	/**
+	 * Erzeugt einen neuen, unabhängigen Strom. Der Zustand dieses Stroms
+	 * rückt dabei einen Schritt weiter, das Ergebnis ist also ebenfalls
+	 * reproduzierbar.
+	 *
+	 * @return der neue Strom
+	 */
+	public RandomStream split() {
+		return new RandomStream(nextLong() + GOLDEN_GAMMA);
+	}
+
+	/**
+	 * Liefert die nächsten 64 Zufallsbits.
+	 *
+	 * @return die Zufallszahl
+	 */
+	public long nextLong() {
+		long x = state;
+		x ^= x >>> 12;
+		x ^= x << 25;
+		x ^= x >>> 27;
+		state = x;
+		return x * MULTIPLIER;
+	}
+
+	/**
+	 * Liefert eine Zufallszahl zwischen 0 (inklusive) und bound (exklusive).
+	 *
+	 * @param bound die obere Grenze (größer 0)
+	 * @return die Zufallszahl
+	 */
+	public int nextInt(int bound) {
+		// Die oberen 31 Bits sind die besten - Multiplikation statt Modulo
+		return (int) (((nextLong() >>> 33) * bound) >>> 31);
+	}
+
+	/**
+	 * Liefert eine Zufallszahl zwischen 0.0 (inklusive) und 1.0 (exklusive).
+	 *
+	 * @return die Zufallszahl
+	 */
+	public float nextFloat() {
+		return (nextLong() >>> 40) * 0x1.0p-24f;
+	}
+
+	/**
+	 * Liefert eine Zufallszahl zwischen 0.0 (inklusive) und 1.0 (exklusive).
+	 *
+	 * @return die Zufallszahl
+	 */
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * Liefert zufällig true oder false.
+	 *
+	 * @return der Zufallswert
+	 */
+	public boolean nextBoolean() {
+		return nextLong() < 0;
+	}
+
+	/**
+	 * Mischt die Bits eines Werts (Ausgabefunktion von SplitMix64).
+	 *
+	 * @param z der Wert
+	 * @return der gemischte Wert
+	 */
+	static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,317 @@
+package de.gaffga.jumpnrun;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.gaffga.jumpnrun.replay.ReplayRunner;
+
+/**
+ * Prüft ein Verzeichnis voller Aufzeichnungen ohne Fenster und parallel.
+ *
+ * Aufruf: <code>java de.gaffga.jumpnrun.ReplayVerifier &lt;verzeichnis&gt; [-threads n] [-update] [-v]</code>
+ *
+ * Jede Datei <code>name.demo</code> wird mit ReplayRunner abgespielt und das
+ * Ergebnis mit <code>name.expected</code> (Properties mit den Schlüsseln aus
+ * ReplayRunner) verglichen; fehlende Schlüssel werden nicht geprüft. Eine
+ * Abweichung der Prüfsummen ist immer ein Fehler. Mit <code>-update</code>
+ * werden die Erwartungen aus dem aktuellen Ergebnis geschrieben.
+ *
+ * Timer, RandomService, FpsMeter und die Fabriken sind Singletons - zwei
+ * Spiele im selben ClassLoader würden sich gegenseitig die Zeit und die
+ * Zufallszahlen verstellen. Darum lädt jeder Arbeits-Thread die Spielklassen
+ * einmal in einem eigenen ClassLoader und spielt darin nacheinander seine
+ * Aufzeichnungen ab.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class ReplayVerifier {
+
+	/** Endung der Aufzeichnungen */
+	public static final String DEMO_SUFFIX = ".demo";
+
+	/** Endung der Dateien mit dem erwarteten Ergebnis */
+	public static final String EXPECTED_SUFFIX = ".expected";
+
+	/** Die Schlüssel die mit der Erwartung verglichen werden */
+	private static final String[] EXPECTED_KEYS = {
+		ReplayRunner.LEVELS_FINISHED, ReplayRunner.SCORE, ReplayRunner.LIVES, ReplayRunner.FINAL_TICK
+	};
+
+	/** Der Logger des Spiels (festgehalten damit die Einstellung des Levels bleibt) */
+	private static final Logger GAME_LOGGER = Logger.getLogger("de.gaffga.jumpnrun");
+
+	/** Die Methode ReplayRunner.run im ClassLoader des aktuellen Arbeits-Threads */
+	private static final ThreadLocal<Method> RUN_METHOD = new ThreadLocal<Method>();
+
+	/** Flag ob die Erwartungen geschrieben statt geprüft werden */
+	private boolean update = false;
+
+	/**
+	 * Das Ergebnis einer Aufzeichnung.
+	 */
+	private static class Result {
+		/** Die Aufzeichnung */
+		private File file = null;
+		/** Die Abweichungen von der Erwartung (leer falls alles stimmt) */
+		private List<String> errors = new ArrayList<String>();
+		/** Anzahl der berechneten Ticks */
+		private long ticks;
+		/** Die benötigte Zeit in Nanosekunden */
+		private long nanos;
+	}
+
+	/**
+	 * Konstruktor.
+	 *
+	 * @param update true falls die Erwartungen geschrieben werden sollen
+	 */
+	public ReplayVerifier(boolean update) {
+		this.update = update;
+	}
+
+	/**
+	 * Prüft alle Aufzeichnungen eines Verzeichnisses und gibt eine Zeile pro
+	 * Aufzeichnung sowie eine Zusammenfassung aus.
+	 *
+	 * @param directory das Verzeichnis
+	 * @param threads die Anzahl der Arbeits-Threads
+	 * @return die Anzahl der fehlgeschlagenen Aufzeichnungen
+	 * @throws InterruptedException
+	 */
+	public int verify(File directory, int threads) throws InterruptedException {
+		File[] files = directory.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.endsWith(DEMO_SUFFIX);
+			}
+		});
+		if ( files == null ) {
+			System.err.println("'" + directory + "' ist kein Verzeichnis");
+			return 1;
+		}
+		Arrays.sort(files);
+
+		threads = Math.max(1, Math.min(threads, files.length));
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		long start = System.nanoTime();
+
+		List<Future<Result>> futures = new ArrayList<Future<Result>>();
+		for ( final File file : files ) {
+			futures.add(executor.submit(new Callable<Result>() {
+				public Result call() {
+					return verify(file);
+				}
+			}));
+		}
+
+		int failed = 0;
+		long ticks = 0;
+		try {
+			for ( int i=0 ; i<files.length ; i++ ) {
+				Result result;
+				try {
+					result = futures.get(i).get();
+				} catch (ExecutionException e) {
+					// Ein Fehler außerhalb des Abspielens (z.B. kein Speicher mehr) betrifft
+					// nur diese Aufzeichnung - die übrigen werden weiter geprüft
+					result = new Result();
+					result.file = files[i];
+					result.errors.add("Prüfen fehlgeschlagen: " + e.getCause());
+				}
+
+				ticks += result.ticks;
+				if ( result.errors.isEmpty() ) {
+					System.out.println("OK      " + result.file.getName() + " (" + result.ticks + " Ticks, " + result.nanos / 1000000 + " ms)");
+				} else {
+					failed++;
+					System.out.println("FEHLER  " + result.file.getName() + ": " + result.errors);
+				}
+			}
+		} finally {
+			// Auch bei einer Unterbrechung keine Arbeits-Threads zurücklassen, die die JVM am Leben halten
+			executor.shutdownNow();
+		}
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		double ticksPerSecond = ticks / seconds;
+		System.out.println();
+		System.out.println(files.length + " Aufzeichnungen, " + (files.length - failed) + " OK, " + failed + " fehlgeschlagen");
+		System.out.println(String.format("%d Ticks in %.2f s mit %d Threads (%d Kerne): %.0f Ticks/s, %.0f Ticks/s pro Kern",
+				ticks, seconds, threads, Runtime.getRuntime().availableProcessors(),
+				ticksPerSecond, ticksPerSecond / Math.min(threads, Runtime.getRuntime().availableProcessors())));
+
+		return failed;
+	}
+
+	/**
+	 * Spielt eine Aufzeichnung im ClassLoader des aktuellen Threads ab und
+	 * vergleicht das Ergebnis.
+	 *
+	 * @param file die Aufzeichnung
+	 * @return das Ergebnis
+	 */
+	private Result verify(File file) {
+		Result result = new Result();
+		result.file = file;
+
+		Properties actual;
+		long start = System.nanoTime();
+		try {
+			actual = (Properties) getRunMethod().invoke(null, file);
+		} catch (InvocationTargetException e) {
+			result.errors.add("Abspielen fehlgeschlagen: " + e.getCause());
+			return result;
+		} catch (Exception e) {
+			result.errors.add("ReplayRunner nicht verfügbar: " + e);
+			return result;
+		}
+		result.nanos = System.nanoTime() - start;
+		result.ticks = Long.parseLong(actual.getProperty(ReplayRunner.FINAL_TICK));
+
+		long divergence = Long.parseLong(actual.getProperty(ReplayRunner.DIVERGENCE));
+		if ( divergence >= 0 ) {
+			result.errors.add("weicht ab Tick " + divergence + " von den Prüfsummen ab");
+		}
+
+		File expectedFile = getExpectedFile(file);
+		try {
+			if ( update ) {
+				writeExpected(expectedFile, actual);
+			} else if ( expectedFile.exists() ) {
+				Properties expected = readProperties(expectedFile);
+				for ( String key : EXPECTED_KEYS ) {
+					String value = expected.getProperty(key);
+					if ( value != null && !value.trim().equals(actual.getProperty(key)) ) {
+						result.errors.add(key + " erwartet " + value.trim() + ", ist " + actual.getProperty(key));
+					}
+				}
+			}
+		} catch (IOException e) {
+			result.errors.add("Fehler mit '" + expectedFile.getName() + "': " + e.getMessage());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Liefert ReplayRunner.run aus dem eigenen ClassLoader des aktuellen
+	 * Threads (wird beim ersten Aufruf angelegt).
+	 *
+	 * @return die Methode
+	 * @throws ClassNotFoundException
+	 * @throws NoSuchMethodException
+	 * @throws MalformedURLException
+	 */
+	private static Method getRunMethod() throws ClassNotFoundException, NoSuchMethodException, MalformedURLException {
+		Method method = RUN_METHOD.get();
+		if ( method == null ) {
+			String[] entries = System.getProperty("java.class.path").split(File.pathSeparator);
+			URL[] urls = new URL[entries.length];
+			for ( int i=0 ; i<entries.length ; i++ ) {
+				urls[i] = new File(entries[i]).toURI().toURL();
+			}
+
+			// Der Parent kennt nur die Klassen des JDK - alle Spielklassen werden neu geladen
+			ClassLoader loader = new URLClassLoader(urls, ClassLoader.getSystemClassLoader().getParent());
+			method = loader.loadClass(ReplayRunner.class.getName()).getMethod("run", File.class);
+			RUN_METHOD.set(method);
+		}
+		return method;
+	}
+
+	/**
+	 * Liefert die Datei mit dem erwarteten Ergebnis zu einer Aufzeichnung.
+	 */
+	private static File getExpectedFile(File demo) {
+		String name = demo.getName();
+		return new File(demo.getParentFile(), name.substring(0, name.length() - DEMO_SUFFIX.length()) + EXPECTED_SUFFIX);
+	}
+
+	/**
+	 * Liest eine Properties-Datei.
+	 */
+	private static Properties readProperties(File file) throws IOException {
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+		return properties;
+	}
+
+	/**
+	 * Schreibt die erwarteten Werte eines Ergebnisses.
+	 */
+	private static void writeExpected(File file, Properties actual) throws IOException {
+		Properties expected = new Properties();
+		for ( String key : EXPECTED_KEYS ) {
+			expected.setProperty(key, actual.getProperty(key));
+		}
+
+		OutputStream out = new FileOutputStream(file);
+		try {
+			expected.store(out, "Erwartetes Ergebnis der Aufzeichnung");
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Die Main-Methode.
+	 *
+	 * @param args das Verzeichnis und die Optionen
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		File directory = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean update = false;
+		boolean verbose = false;
+
+		for ( int i=0 ; i<args.length ; i++ ) {
+			if ( args[i].equals("-threads") && i+1 < args.length ) {
+				threads = Integer.parseInt(args[++i]);
+			} else if ( args[i].equals("-update") ) {
+				update = true;
+			} else if ( args[i].equals("-v") ) {
+				verbose = true;
+			} else {
+				directory = new File(args[i]);
+			}
+		}
+		if ( directory == null ) {
+			System.err.println("Aufruf: ReplayVerifier <verzeichnis> [-threads n] [-update] [-v]");
+			System.exit(2);
+		}
+
+		// Ohne Fenster, und die Warnungen beim Laden der Sprites nicht pro Thread wiederholen
+		System.setProperty("java.awt.headless", "true");
+		if ( !verbose ) {
+			GAME_LOGGER.setLevel(Level.SEVERE);
+		}
+
+		int failed = new ReplayVerifier(update).verify(directory, threads);
+		System.exit(failed == 0 ? 0 : 1);
+	}
+}
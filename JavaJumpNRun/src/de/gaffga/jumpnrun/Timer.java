@@ -6,10 +6,18 @@ package de.gaffga.jumpnrun;
  * Die Timer-Klasse ist ein Singleton damit von jeder Stelle des Spiels auf diesen
  * zentralen Zeitgeber zugegriffen werden kann. 
  * 
+ * Im simulierten Modus (für Aufzeichnungen und deren Wiedergabe) läuft die Zeit
+ * nicht mit der Uhr sondern wird von der Hauptspielschleife pro Tick um genau
+ * 1/TICK_RATE Sekunden weitergestellt. Damit hängt der Spielablauf nur noch von
+ * den Eingaben ab und nicht davon wie schnell der Rechner ist.
+ * 
  * @author Stefan Gaffga <stefan@gaffga.de>
  */
 public class Timer {
 
+	/** Die Anzahl der Ticks pro Sekunde im simulierten Modus */
+	public static final int TICK_RATE = 60;
+
 	/** Die einzige Timer-Referenz */
 	private static Timer instance = null;
 	
@@ -22,6 +30,12 @@ public class Timer {
 	/** Zeitverschiebung gegenüber dem echten currentTimeMillis durch die Pausen */
 	private long delta = 0;
 	
+	/** Flag ob die Zeit simuliert wird */
+	private boolean simulated = false;
+	
+	/** Die Anzahl der simulierten Ticks */
+	private long simulatedTicks = 0;
+	
 	/**
 	 * Erzeugt einen neuen Timer.
 	 */
@@ -62,6 +76,66 @@ public class Timer {
 		return pause;
 	}
 	
+	/**
+	 * Schaltet den simulierten Modus ein oder aus. Die simulierte Zeit beginnt
+	 * dabei wieder bei 0.
+	 * 
+	 * @param simulated true falls die Zeit pro Tick weitergestellt werden soll
+	 */
+	public void setSimulated(boolean simulated) {
+		this.simulated = simulated;
+		this.simulatedTicks = 0;
+	}
+	
+	/**
+	 * Liefert ob die Zeit simuliert wird.
+	 * 
+	 * @return true im simulierten Modus
+	 */
+	public boolean isSimulated() {
+		return simulated;
+	}
+	
+	/**
+	 * Stellt die simulierte Zeit um einen Tick weiter (außer während einer Pause).
+	 */
+	public void advanceTick() {
+		if ( simulated && !pause ) {
+			simulatedTicks++;
+		}
+	}
+	
+	/**
+	 * Liefert die Anzahl der simulierten Ticks.
+	 * 
+	 * @return die Anzahl der Ticks
+	 */
+	public long getSimulatedTicks() {
+		return simulatedTicks;
+	}
+	
+	/**
+	 * Setzt die Anzahl der simulierten Ticks (beim Wiederherstellen eines 
+	 * Spielstands).
+	 * 
+	 * @param ticks die Anzahl der Ticks
+	 */
+	public void setSimulatedTicks(long ticks) {
+		this.simulatedTicks = ticks;
+	}
+	
+	/**
+	 * Stellt die Uhr außerhalb des simulierten Modus auf einen früheren (oder 
+	 * späteren) Zeitwert, z.B. beim Zurückspulen. Danach läuft sie von dort
+	 * aus weiter. Nur außerhalb einer Pause sinnvoll.
+	 * 
+	 * @param millis der neue Zeitwert in Millisekunden (wie currentTimeMillis)
+	 */
+	public void setCurrentTimeMillis(long millis) {
+		lastMillisBeforePause = 0;
+		delta = System.currentTimeMillis() - millis;
+	}
+	
 	/**
 	 * Liefert den aktuellen Timewert in Millisekunden. 
 	 * 
@@ -71,6 +145,10 @@ public class Timer {
 	 * @return der Timewert in Millisekunden
 	 */
 	public long currentTimeMillis() {
+		if ( simulated ) {
+			return simulatedTicks * 1000L / TICK_RATE;
+		}
+		
 		long now = System.currentTimeMillis();
 		long rc = now;
 		
@@ -0,0 +1,119 @@
+package de.gaffga.jumpnrun.benchmark;
+
+import java.awt.Point;
+import java.util.Random;
+
+import de.gaffga.jumpnrun.enemies.EnemyManager;
+import de.gaffga.jumpnrun.enemies.NormalEnemyFactory;
+import de.gaffga.jumpnrun.game.HeadlessComponent;
+import de.gaffga.jumpnrun.map.Map;
+import de.gaffga.jumpnrun.map.MapData;
+import de.gaffga.jumpnrun.sprites.Sprite;
+import de.gaffga.jumpnrun.sprites.SpriteAnimation;
+import de.gaffga.jumpnrun.sprites.SpriteDefinition;
+import de.gaffga.jumpnrun.sprites.SpriteDefinitionFactory;
+import de.gaffga.jumpnrun.sprites.SpriteException;
+import de.gaffga.jumpnrun.sprites.SpriteManager;
+import de.gaffga.jumpnrun.tiles.TileFactory;
+
+/**
+ * Ein zur Laufzeit erzeugtes Level für die Benchmarks: Eine Map mit Rand und
+ * Säulen im Abstand von PILLAR_SPACING Tiles, zwischen denen beliebig viele
+ * patrouillierende Feinde zufällig (aber bei gleichem Startwert immer gleich)
+ * verteilt werden. Die Sprites der Feinde liegen im SpriteManager, die Feinde
+ * im EnemyManager - wie in einem normalen Level.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class BenchmarkLevel {
+
+	/** Die Größe des Bildschirms (wie im Hauptfenster) */
+	public static final int SCREEN_WIDTH = 640;
+
+	/** Die Größe des Bildschirms (wie im Hauptfenster) */
+	public static final int SCREEN_HEIGHT = 480;
+
+	/** Abstand der Säulen in Tiles */
+	public static final int PILLAR_SPACING = 24;
+
+	/** Code einer Wand */
+	private static final char WALL = 'W';
+
+	/** Code des leeren Hintergrunds */
+	private static final char EMPTY = '.';
+
+	/** Die Map */
+	private Map map = null;
+
+	/** Die Sprites */
+	private SpriteManager spriteManager = null;
+
+	/** Die Feinde */
+	private EnemyManager enemyManager = null;
+
+	/**
+	 * Erzeugt ein Level.
+	 *
+	 * @param width die Breite in Tiles
+	 * @param height die Höhe in Tiles
+	 * @param enemies die Anzahl der Feinde
+	 * @param seed der Startwert für die Verteilung der Feinde
+	 * @throws SpriteException falls das Sprite der Feinde nicht geladen werden kann
+	 */
+	public BenchmarkLevel(int width, int height, int enemies, long seed) throws SpriteException {
+		char[][] data = new char[width][height];
+		for ( int x=0 ; x<width ; x++ ) {
+			for ( int y=0 ; y<height ; y++ ) {
+				boolean border = x == 0 || y == 0 || x == width - 1 || y == height - 1;
+				data[x][y] = border || x % PILLAR_SPACING == 0 ? WALL : EMPTY;
+			}
+		}
+
+		map = new Map(new MapData(width, height, data), new HeadlessComponent(SCREEN_WIDTH, SCREEN_HEIGHT));
+		spriteManager = new SpriteManager(map);
+		enemyManager = new EnemyManager();
+
+		SpriteDefinition definition = SpriteDefinitionFactory.getInstance().getDefinition("enemy1.sprite");
+		NormalEnemyFactory factory = new NormalEnemyFactory();
+		Random random = new Random(seed);
+		int tilesize = TileFactory.getInstance().getTileSize();
+		for ( int n=0 ; n<enemies ; n++ ) {
+			// Nicht direkt neben einer Säule, damit kein Feind in einer Wand beginnt
+			int tileX;
+			do {
+				tileX = 1 + random.nextInt(width - 3);
+			} while ( tileX % PILLAR_SPACING == 0 || (tileX + 1) % PILLAR_SPACING == 0 );
+			int tileY = 1 + random.nextInt(Math.max(1, height - 3));
+
+			Sprite sprite = new Sprite(definition);
+			sprite.setVisible(true);
+			sprite.setCurrentAnimation(random.nextBoolean() ? SpriteAnimation.WALK_LEFT : SpriteAnimation.WALK_RIGHT);
+			spriteManager.add(sprite, SpriteManager.LAYER_ENEMIES);
+
+			Point pos = new Point(tileX * tilesize + random.nextInt(tilesize), tileY * tilesize);
+			enemyManager.addEnemy(factory.createEnemy(1, pos, sprite));
+		}
+	}
+
+	/**
+	 * Setzt den sichtbaren Ausschnitt.
+	 *
+	 * @param x die X-Koordinate in Map-Pixeln
+	 * @param y die Y-Koordinate in Map-Pixeln
+	 */
+	public void setView(int x, int y) {
+		map.setMapViewPosition(new Point(x, y));
+	}
+
+	public Map getMap() {
+		return map;
+	}
+
+	public SpriteManager getSpriteManager() {
+		return spriteManager;
+	}
+
+	public EnemyManager getEnemyManager() {
+		return enemyManager;
+	}
+}
@@ -0,0 +1,190 @@
+package de.gaffga.jumpnrun.benchmark;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+
+import de.gaffga.jumpnrun.FloatPosition;
+import de.gaffga.jumpnrun.FpsMeter;
+import de.gaffga.jumpnrun.enemies.Enemy;
+import de.gaffga.jumpnrun.enemies.EnemyManager;
+import de.gaffga.jumpnrun.map.CollisionGrid;
+import de.gaffga.jumpnrun.map.Map;
+import de.gaffga.jumpnrun.sprites.SpriteException;
+
+/**
+ * Prüft das Kollisionsgitter des EnemyManagers gegen die einfache Suche über
+ * alle Feinde und vergleicht die Zeiten.
+ *
+ * Aufruf: <code>java de.gaffga.jumpnrun.benchmark.CollisionCheck [schritte] [feinde]</code>
+ *
+ * Der sichtbare Bereich fährt wie in ParallelEnemyCheck über das Level. Nach
+ * jedem Schritt werden QUERIES zufällige Boxen im Aktivitätsbereich abgefragt:
+ * CollisionGrid.collectCollisions muss genau die wachen Feinde liefern deren
+ * Hitbox die Box schneidet, und findCollision genau dann einen Feind wenn es
+ * einen solchen gibt. Endet mit dem Rückgabewert 1 falls sich die Ergebnisse
+ * unterscheiden.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class CollisionCheck {
+
+	/** Voreingestellte Anzahl der Schritte */
+	public static final int DEFAULT_STEPS = 300;
+
+	/** Voreingestellte Anzahl der Feinde */
+	public static final int DEFAULT_ENEMIES = 20000;
+
+	/** Anzahl der abgefragten Boxen pro Schritt */
+	public static final int QUERIES = 50;
+
+	/** Größte Kantenlänge einer abgefragten Box in Pixeln */
+	public static final int MAX_QUERY_SIZE = 96;
+
+	/** Startwert für die Verteilung der Feinde und die Boxen */
+	private static final long SEED = 1;
+
+	/** Die Anzahl der Schritte */
+	private int steps;
+
+	/** Die Anzahl der Feinde */
+	private int enemies;
+
+	/** Die Treffer des Gitters (wird wiederverwendet) */
+	private List<Enemy> found = new ArrayList<Enemy>();
+
+	/** Die Treffer der einfachen Suche */
+	private IdentityHashMap<Enemy, Boolean> expected = new IdentityHashMap<Enemy, Boolean>();
+
+	/** Die Zeit für alle Abfragen im Gitter in Nanosekunden */
+	private long gridNanos;
+
+	/** Die Zeit für alle einfachen Suchen in Nanosekunden */
+	private long bruteNanos;
+
+	/** Die Anzahl der Treffer über alle Abfragen */
+	private long hits;
+
+	/**
+	 * Konstruktor.
+	 *
+	 * @param steps die Anzahl der Schritte
+	 * @param enemies die Anzahl der Feinde
+	 */
+	public CollisionCheck(int steps, int enemies) {
+		this.steps = steps;
+		this.enemies = enemies;
+	}
+
+	/**
+	 * Bewegt die Feinde und vergleicht nach jedem Schritt die Abfragen.
+	 *
+	 * @return die Anzahl der abweichenden Abfragen
+	 * @throws SpriteException
+	 */
+	public int run() throws SpriteException {
+		BenchmarkLevel level = new BenchmarkLevel(ParallelEnemyCheck.LEVEL_WIDTH, EnemyBenchmark.LEVEL_HEIGHT, enemies,
+				SEED);
+		EnemyManager enemyManager = level.getEnemyManager();
+		enemyManager.setActivityMargin(ParallelEnemyCheck.ACTIVITY_MARGIN);
+		Map map = level.getMap();
+		int range = map.getPixelWidth() - map.getScreenPixelWidth();
+		Random random = new Random(SEED);
+
+		int errors = 0;
+		for ( int t=0 ; t<steps ; t++ ) {
+			int x = (t * ParallelEnemyCheck.PAN_SPEED) % (2 * range);
+			int viewX = x <= range ? x : 2 * range - x;
+			level.setView(viewX, 0);
+			enemyManager.step(map);
+
+			CollisionGrid<Enemy> grid = enemyManager.getCollisionGrid();
+			for ( int q=0 ; q<QUERIES ; q++ ) {
+				int width = 1 + random.nextInt(MAX_QUERY_SIZE);
+				int height = 1 + random.nextInt(MAX_QUERY_SIZE);
+				int left = Math.max(0, viewX - ParallelEnemyCheck.ACTIVITY_MARGIN);
+				int right = Math.min(map.getPixelWidth(), viewX + map.getScreenPixelWidth()
+						+ ParallelEnemyCheck.ACTIVITY_MARGIN);
+				int qx = left + random.nextInt(right - left - width);
+				int qy = random.nextInt(map.getPixelHeight() - height);
+
+				if ( !compare(enemyManager, grid, qx, qy, width, height) ) {
+					if ( errors++ == 0 ) {
+						System.out.println("FEHLER  Schritt " + (t + 1) + ": Box " + qx + "," + qy + " " + width + "x"
+								+ height + " liefert im Gitter " + found.size() + ", bei allen Feinden "
+								+ expected.size() + " Treffer");
+					}
+				}
+			}
+		}
+		return errors;
+	}
+
+	/**
+	 * Vergleicht eine Abfrage im Gitter mit der einfachen Suche.
+	 *
+	 * @return true falls beide die gleichen Feinde liefern
+	 */
+	private boolean compare(EnemyManager enemyManager, CollisionGrid<Enemy> grid, int x, int y, int width, int height) {
+		long start = System.nanoTime();
+		found.clear();
+		grid.collectCollisions(x, y, width, height, null, found);
+		Enemy first = grid.findCollision(x, y, width, height, null);
+		long middle = System.nanoTime();
+
+		expected.clear();
+		for ( Enemy enemy : enemyManager ) {
+			if ( enemy.isDormant() ) {
+				continue;
+			}
+			FloatPosition pos = enemy.getPosition();
+			Rectangle hitbox = enemy.getSprite().getHitbox();
+			if ( CollisionGrid.intersects(x, y, width, height, (int) pos.x + hitbox.x, (int) pos.y + hitbox.y,
+					hitbox.width, hitbox.height) ) {
+				expected.put(enemy, Boolean.TRUE);
+			}
+		}
+		long end = System.nanoTime();
+
+		gridNanos += middle - start;
+		bruteNanos += end - middle;
+		hits += expected.size();
+
+		if ( found.size() != expected.size() || (first == null) != expected.isEmpty() ) {
+			return false;
+		}
+		for ( Enemy enemy : found ) {
+			if ( !expected.containsKey(enemy) ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Die Main-Methode.
+	 *
+	 * @param args die Anzahl der Schritte und der Feinde (optional)
+	 */
+	public static void main(String[] args) throws SpriteException {
+		System.setProperty("java.awt.headless", "true");
+		FpsMeter.getInstance().setFixedSpeedFactor(EnemyBenchmark.STEP_SECONDS);
+
+		int steps = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_STEPS;
+		int enemies = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ENEMIES;
+
+		CollisionCheck check = new CollisionCheck(steps, enemies);
+		int errors = check.run();
+		int queries = steps * QUERIES;
+		System.out.println(String.format("%d Feinde, %d Abfragen, %d Treffer: Gitter %.2f us/Abfrage, alle Feinde %.2f us/Abfrage",
+				enemies, queries, check.hits, check.gridNanos / 1e3 / queries, check.bruteNanos / 1e3 / queries));
+		if ( errors == 0 ) {
+			System.out.println("OK      alle Abfragen im Gitter gleich der Suche über alle Feinde");
+		} else {
+			System.out.println("FEHLER  " + errors + " Abfragen weichen ab");
+		}
+		System.exit(errors == 0 ? 0 : 1);
+	}
+}
@@ -0,0 +1,132 @@
+package de.gaffga.jumpnrun.benchmark;
+
+import de.gaffga.jumpnrun.FpsMeter;
+import de.gaffga.jumpnrun.enemies.EnemyManager;
+import de.gaffga.jumpnrun.map.Map;
+import de.gaffga.jumpnrun.sprites.SpriteException;
+
+/**
+ * Misst wie viele Feinde der EnemyManager pro Millisekunde verwaltet.
+ *
+ * Aufruf: <code>java de.gaffga.jumpnrun.benchmark.EnemyBenchmark [schritte] [feinde...]</code>
+ *
+ * Die Feinde werden über ein breites Level verteilt, der sichtbare Bereich
+ * fährt mit PAN_SPEED Pixeln pro Schritt hin und her. Dadurch wachen in jedem
+ * Schritt Feinde auf und schlafen ein - gemessen wird also auch die Pflege
+ * der sortierten Liste der schlafenden Feinde und nicht nur die Bewegung.
+ * Gerechnet wird mit einem festen Zeitschritt von STEP_SECONDS (siehe
+ * FpsMeter.setFixedSpeedFactor), damit die Feinde wie im Spiel laufen.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class EnemyBenchmark {
+
+	/** Voreingestellte Anzahl der gemessenen Schritte */
+	public static final int DEFAULT_STEPS = 2000;
+
+	/** Voreingestellte Anzahlen der Feinde */
+	public static final int[] DEFAULT_ENEMIES = { 10000, 100000 };
+
+	/** Breite des Levels in Tiles */
+	public static final int LEVEL_WIDTH = 2000;
+
+	/** Höhe des Levels in Tiles */
+	public static final int LEVEL_HEIGHT = BenchmarkLevel.SCREEN_HEIGHT / 32;
+
+	/** Geschwindigkeit des sichtbaren Bereichs in Pixeln pro Schritt */
+	public static final int PAN_SPEED = 16;
+
+	/** Der Zeitschritt in Sekunden (wie bei 60 Bildern pro Sekunde) */
+	public static final float STEP_SECONDS = 1.0f / 60;
+
+	/** Die Anzahl der gemessenen Schritte */
+	private int steps;
+
+	/** Die aktuelle Position des sichtbaren Bereichs */
+	private int viewX;
+
+	/** Die aktuelle Richtung des sichtbaren Bereichs (1 oder -1) */
+	private int viewDirection = 1;
+
+	/** Die Summe der aktiven Feinde über die gemessenen Schritte */
+	private long activeSum;
+
+	/**
+	 * Konstruktor.
+	 *
+	 * @param steps die Anzahl der gemessenen Schritte
+	 */
+	public EnemyBenchmark(int steps) {
+		this.steps = steps;
+	}
+
+	/**
+	 * Misst einen Durchlauf.
+	 *
+	 * @param enemies die Anzahl der Feinde
+	 * @throws SpriteException
+	 */
+	public void run(int enemies) throws SpriteException {
+		BenchmarkLevel level = new BenchmarkLevel(LEVEL_WIDTH, LEVEL_HEIGHT, enemies, 1);
+		viewX = 0;
+		viewDirection = 1;
+
+		// Aufwärmen, damit der JIT die Schritte schon übersetzt hat
+		for ( int i=0 ; i<steps / 2 ; i++ ) {
+			step(level);
+		}
+
+		activeSum = 0;
+		long start = System.nanoTime();
+		for ( int i=0 ; i<steps ; i++ ) {
+			step(level);
+		}
+		double millis = (System.nanoTime() - start) / 1e6 / steps;
+
+		System.out.println(String.format("%7d Feinde: %7.3f ms/Schritt, %9.0f Feinde/ms (im Mittel %d aktiv)",
+				enemies, millis, enemies / millis, activeSum / steps));
+	}
+
+	/**
+	 * Ein Schritt: Den sichtbaren Bereich verschieben und alle Feinde bewegen.
+	 */
+	private void step(BenchmarkLevel level) {
+		Map map = level.getMap();
+		EnemyManager enemyManager = level.getEnemyManager();
+
+		int maxX = map.getPixelWidth() - map.getScreenPixelWidth();
+		viewX += viewDirection * PAN_SPEED;
+		if ( viewX < 0 || viewX > maxX ) {
+			viewDirection = -viewDirection;
+			viewX = Math.max(0, Math.min(maxX, viewX));
+		}
+		level.setView(viewX, 0);
+
+		enemyManager.step(map);
+		activeSum += FpsMeter.getInstance().getCounter("Enemies active");
+	}
+
+	/**
+	 * Die Main-Methode.
+	 *
+	 * @param args die Anzahl der Schritte und die Anzahlen der Feinde (optional)
+	 */
+	public static void main(String[] args) throws SpriteException {
+		System.setProperty("java.awt.headless", "true");
+		FpsMeter.getInstance().setFixedSpeedFactor(STEP_SECONDS);
+
+		int steps = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_STEPS;
+		int[] enemies = DEFAULT_ENEMIES;
+		if ( args.length > 1 ) {
+			enemies = new int[args.length - 1];
+			for ( int i=1 ; i<args.length ; i++ ) {
+				enemies[i - 1] = Integer.parseInt(args[i]);
+			}
+		}
+
+		EnemyBenchmark benchmark = new EnemyBenchmark(steps);
+		for ( int n : enemies ) {
+			benchmark.run(n);
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package de.gaffga.jumpnrun.benchmark;
+
+import java.util.Random;
+
+import de.gaffga.jumpnrun.game.HeadlessComponent;
+import de.gaffga.jumpnrun.map.Map;
+import de.gaffga.jumpnrun.map.MapData;
+import de.gaffga.jumpnrun.map.NavigationGraph;
+import de.gaffga.jumpnrun.tiles.TileFactory;
+
+/**
+ * Prüft dass der NavigationGraph nach Änderungen an der Map spaltenweise
+ * genau so aktualisiert wird wie ein neu aufgebauter Graph, und vergleicht
+ * die Zeiten.
+ *
+ * Aufruf: <code>java de.gaffga.jumpnrun.benchmark.NavigationCheck [runden]</code>
+ *
+ * Die Map ist zufällig mit Wänden gefüllt. In jeder Runde werden einige
+ * Tiles zwischen Wand und frei umgeschaltet und die Spielfigur in eine
+ * zufällige Zelle gesetzt. Dann muss der fortlaufend aktualisierte Graph
+ * für jede Zelle die gleichen Knoten, Entfernungen und nächsten Schritte
+ * liefern wie ein für diese Runde neu aufgebauter. Endet mit dem
+ * Rückgabewert 1 falls sich die Graphen unterscheiden.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class NavigationCheck {
+
+	/** Voreingestellte Anzahl der Runden */
+	public static final int DEFAULT_ROUNDS = 500;
+
+	/** Breite der Map in Tiles */
+	public static final int WIDTH = 400;
+
+	/** Höhe der Map in Tiles */
+	public static final int HEIGHT = BenchmarkLevel.SCREEN_HEIGHT / 32;
+
+	/** Anteil der Wände in Prozent */
+	public static final int WALL_PERCENT = 30;
+
+	/** Höchstens so viele Tiles werden pro Runde umgeschaltet */
+	public static final int MAX_CHANGES = 3;
+
+	/** Code einer Wand */
+	private static final char WALL = 'W';
+
+	/** Code des leeren Hintergrunds */
+	private static final char EMPTY = '.';
+
+	/** Startwert für die Map und die Änderungen */
+	private static final long SEED = 1;
+
+	/** Die Anzahl der Runden */
+	private int rounds;
+
+	/** Die Zeit für alle Aktualisierungen in Nanosekunden */
+	private long incrementalNanos;
+
+	/** Die Zeit für alle Neuaufbauten in Nanosekunden */
+	private long rebuildNanos;
+
+	/**
+	 * Konstruktor.
+	 *
+	 * @param rounds die Anzahl der Runden
+	 */
+	public NavigationCheck(int rounds) {
+		this.rounds = rounds;
+	}
+
+	/**
+	 * Ändert die Map in jeder Runde und vergleicht die Graphen.
+	 *
+	 * @return die Anzahl der Runden in denen sich die Graphen unterscheiden
+	 */
+	public int run() {
+		Random random = new Random(SEED);
+		char[][] data = new char[WIDTH][HEIGHT];
+		for ( int x=0 ; x<WIDTH ; x++ ) {
+			for ( int y=0 ; y<HEIGHT ; y++ ) {
+				boolean border = x == 0 || y == 0 || x == WIDTH - 1 || y == HEIGHT - 1;
+				data[x][y] = border || random.nextInt(100) < WALL_PERCENT ? WALL : EMPTY;
+			}
+		}
+		MapData mapData = new MapData(WIDTH, HEIGHT, data);
+		Map map = new Map(mapData, new HeadlessComponent(BenchmarkLevel.SCREEN_WIDTH, BenchmarkLevel.SCREEN_HEIGHT));
+		int tilesize = TileFactory.getInstance().getTileSize();
+
+		NavigationGraph incremental = new NavigationGraph(map);
+		int errors = 0;
+		for ( int round=0 ; round<rounds ; round++ ) {
+			int changes = 1 + random.nextInt(MAX_CHANGES);
+			for ( int i=0 ; i<changes ; i++ ) {
+				int x = 1 + random.nextInt(WIDTH - 2);
+				int y = 1 + random.nextInt(HEIGHT - 2);
+				mapData.setTile(x, y, mapData.getTile(x, y) == WALL ? EMPTY : WALL);
+			}
+
+			// Die Spielfigur steht in einer zufälligen Zelle (oder fällt auf den Knoten darunter)
+			int px = random.nextInt(WIDTH) * tilesize + tilesize / 2;
+			int py = random.nextInt(HEIGHT) * tilesize + tilesize / 2;
+
+			long start = System.nanoTime();
+			incremental.update(px, py);
+			long middle = System.nanoTime();
+			NavigationGraph rebuilt = new NavigationGraph(map);
+			rebuilt.update(px, py);
+			long end = System.nanoTime();
+			mapData.removeMapChangedListener(rebuilt);
+
+			incrementalNanos += middle - start;
+			rebuildNanos += end - middle;
+
+			String difference = compare(incremental, rebuilt);
+			if ( difference != null && errors++ == 0 ) {
+				System.out.println("FEHLER  Runde " + (round + 1) + ": " + difference);
+			}
+		}
+		return errors;
+	}
+
+	/**
+	 * Vergleicht zwei Graphen über alle Zellen.
+	 *
+	 * @return die Beschreibung der ersten Abweichung oder null falls sie gleich sind
+	 */
+	private String compare(NavigationGraph incremental, NavigationGraph rebuilt) {
+		if ( incremental.getNodeCount() != rebuilt.getNodeCount() ) {
+			return incremental.getNodeCount() + " statt " + rebuilt.getNodeCount() + " Knoten";
+		}
+		if ( incremental.getLinkCount() != rebuilt.getLinkCount() ) {
+			return incremental.getLinkCount() + " statt " + rebuilt.getLinkCount() + " Verbindungen";
+		}
+
+		int tilesize = TileFactory.getInstance().getTileSize();
+		for ( int x=0 ; x<WIDTH ; x++ ) {
+			for ( int y=0 ; y<HEIGHT ; y++ ) {
+				int node = rebuilt.findNode(x * tilesize, y * tilesize);
+				if ( incremental.findNode(x * tilesize, y * tilesize) != node ) {
+					return "Zelle " + x + "," + y + " liegt auf einem anderen Knoten";
+				}
+				if ( node < 0 || rebuilt.getNodeY(node) != y ) {
+					continue;
+				}
+				// Die Art der nächsten Verbindung gibt es nur wenn es einen nächsten Knoten gibt
+				if ( incremental.getDistance(node) != rebuilt.getDistance(node)
+						|| incremental.getNextNode(node) != rebuilt.getNextNode(node)
+						|| (rebuilt.getNextNode(node) >= 0 && incremental.getNextLink(node) != rebuilt.getNextLink(node)) ) {
+					return "Knoten " + x + "," + y + " hat einen anderen Weg zur Spielfigur";
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Die Main-Methode.
+	 *
+	 * @param args die Anzahl der Runden (optional)
+	 */
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROUNDS;
+
+		NavigationCheck check = new NavigationCheck(rounds);
+		int errors = check.run();
+		System.out.println(String.format("%dx%d Tiles, %d Runden: aktualisiert %.3f ms/Runde, neu aufgebaut %.3f ms/Runde",
+				WIDTH, HEIGHT, rounds, check.incrementalNanos / 1e6 / rounds, check.rebuildNanos / 1e6 / rounds));
+		if ( errors == 0 ) {
+			System.out.println("OK      aktualisierter Graph in allen Runden gleich dem neu aufgebauten");
+		} else {
+			System.out.println("FEHLER  " + errors + " Runden weichen ab");
+		}
+		System.exit(errors == 0 ? 0 : 1);
+	}
+}
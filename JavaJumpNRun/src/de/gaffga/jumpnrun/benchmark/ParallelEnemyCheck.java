@@ -0,0 +1,215 @@
+package de.gaffga.jumpnrun.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+
+import de.gaffga.jumpnrun.FloatPosition;
+import de.gaffga.jumpnrun.FpsMeter;
+import de.gaffga.jumpnrun.enemies.Enemy;
+import de.gaffga.jumpnrun.enemies.EnemyManager;
+import de.gaffga.jumpnrun.map.Map;
+import de.gaffga.jumpnrun.sprites.SpriteException;
+
+/**
+ * Prüft dass die parallele Bewegung der Feinde bitgenau das gleiche Ergebnis
+ * liefert wie die sequentielle, und misst wie sie mit der Anzahl der Threads
+ * skaliert.
+ *
+ * Aufruf: <code>java de.gaffga.jumpnrun.benchmark.ParallelEnemyCheck [schritte] [feinde]</code>
+ *
+ * Jeder Lauf erzeugt das Level neu aus dem gleichen Startwert und rechnet mit
+ * festen Zeitschritten; das Nachholen der Patrouille beim Aufwachen ist aus,
+ * da es von der Uhr abhängt. Verglichen wird nach jedem Schritt eine
+ * Prüfsumme über Position, Geschwindigkeit, Richtung und Schlafzustand aller
+ * Feinde. Der Aktivitätsbereich ist so groß, dass immer deutlich mehr als
+ * EnemyManager.PARALLEL_THRESHOLD Feinde aktiv sind. Endet mit dem
+ * Rückgabewert 1 falls sich die Zustände unterscheiden.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class ParallelEnemyCheck {
+
+	/** Voreingestellte Anzahl der Schritte */
+	public static final int DEFAULT_STEPS = 600;
+
+	/** Voreingestellte Anzahl der Feinde */
+	public static final int DEFAULT_ENEMIES = 20000;
+
+	/** Breite des Levels in Tiles */
+	public static final int LEVEL_WIDTH = 400;
+
+	/** Rand um den sichtbaren Bereich in dem Feinde aktiv sind (in Pixeln) */
+	public static final int ACTIVITY_MARGIN = 4000;
+
+	/** Geschwindigkeit des sichtbaren Bereichs in Pixeln pro Schritt */
+	public static final int PAN_SPEED = 8;
+
+	/** Startwert für die Verteilung der Feinde */
+	private static final long SEED = 1;
+
+	/** Die Anzahl der Schritte pro Lauf */
+	private int steps;
+
+	/** Die Anzahl der Feinde */
+	private int enemies;
+
+	/** Puffer für die Werte eines Feindes in der Prüfsumme */
+	private ByteBuffer values = ByteBuffer.allocate(17);
+
+	/**
+	 * Konstruktor.
+	 *
+	 * @param steps die Anzahl der Schritte pro Lauf
+	 * @param enemies die Anzahl der Feinde
+	 */
+	public ParallelEnemyCheck(int steps, int enemies) {
+		this.steps = steps;
+		this.enemies = enemies;
+	}
+
+	/**
+	 * Rechnet alle Schritte in einem neu erzeugten Level.
+	 *
+	 * @param pool der Pool für die parallele Bewegung oder null für die sequentielle
+	 * @return je Schritt die Prüfsumme des Zustands
+	 * @throws SpriteException
+	 */
+	public long[] record(ForkJoinPool pool) throws SpriteException {
+		BenchmarkLevel level = createLevel(pool);
+		long[] checksums = new long[steps];
+		for ( int t=0 ; t<steps ; t++ ) {
+			step(level, t);
+			checksums[t] = checksum(level.getEnemyManager());
+		}
+		return checksums;
+	}
+
+	/**
+	 * Misst die Zeit für alle Schritte in einem neu erzeugten Level.
+	 *
+	 * @param pool der Pool für die parallele Bewegung oder null für die sequentielle
+	 * @return die Zeit pro Schritt in Millisekunden
+	 * @throws SpriteException
+	 */
+	public double measure(ForkJoinPool pool) throws SpriteException {
+		BenchmarkLevel level = createLevel(pool);
+
+		// Aufwärmen, damit der JIT die Schritte schon übersetzt hat
+		for ( int t=0 ; t<steps ; t++ ) {
+			step(level, t);
+		}
+
+		long start = System.nanoTime();
+		for ( int t=0 ; t<steps ; t++ ) {
+			step(level, t);
+		}
+		return (System.nanoTime() - start) / 1e6 / steps;
+	}
+
+	/**
+	 * Liefert die Anzahl der aktiven Feinde nach dem letzten Schritt.
+	 */
+	public int getActiveCount() {
+		return FpsMeter.getInstance().getCounter("Enemies active");
+	}
+
+	/**
+	 * Erzeugt das Level für einen Lauf.
+	 */
+	private BenchmarkLevel createLevel(ForkJoinPool pool) throws SpriteException {
+		BenchmarkLevel level = new BenchmarkLevel(LEVEL_WIDTH, EnemyBenchmark.LEVEL_HEIGHT, enemies, SEED);
+		EnemyManager enemyManager = level.getEnemyManager();
+		enemyManager.setActivityMargin(ACTIVITY_MARGIN);
+		enemyManager.setCatchUp(false);
+		enemyManager.setParallelPool(pool);
+		return level;
+	}
+
+	/**
+	 * Ein Schritt: Den sichtbaren Bereich verschieben und alle Feinde bewegen.
+	 *
+	 * @param t der Schritt im Lauf (bestimmt die Position des sichtbaren Bereichs)
+	 */
+	private void step(BenchmarkLevel level, int t) {
+		Map map = level.getMap();
+		int range = map.getPixelWidth() - map.getScreenPixelWidth();
+		int x = (t * PAN_SPEED) % (2 * range);
+		level.setView(x <= range ? x : 2 * range - x, 0);
+
+		level.getEnemyManager().step(map);
+	}
+
+	/**
+	 * Berechnet die Prüfsumme über alle Feinde.
+	 */
+	private long checksum(EnemyManager enemyManager) {
+		CRC32 crc = new CRC32();
+		for ( Enemy enemy : enemyManager ) {
+			FloatPosition pos = enemy.getPosition();
+			values.clear();
+			values.putFloat(pos.x);
+			values.putFloat(pos.y);
+			values.putFloat(enemy.getSpeed());
+			values.putInt(enemy.getDirection());
+			values.put((byte) (enemy.isDormant() ? 1 : 0));
+			crc.update(values.array(), 0, values.position());
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Die Main-Methode.
+	 *
+	 * @param args die Anzahl der Schritte und der Feinde (optional)
+	 */
+	public static void main(String[] args) throws SpriteException {
+		System.setProperty("java.awt.headless", "true");
+		FpsMeter.getInstance().setFixedSpeedFactor(EnemyBenchmark.STEP_SECONDS);
+
+		int steps = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_STEPS;
+		int enemies = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ENEMIES;
+		int cores = Runtime.getRuntime().availableProcessors();
+
+		ParallelEnemyCheck check = new ParallelEnemyCheck(steps, enemies);
+		long[] expected = check.record(null);
+		System.out.println(enemies + " Feinde, " + check.getActiveCount() + " aktiv, " + steps + " Schritte, "
+				+ cores + " Kerne");
+
+		// Gleichheit: jede Threadanzahl bis zu den Kernen (mindestens 2, damit wirklich verteilt wird)
+		boolean equal = true;
+		for ( int threads=1 ; threads<=Math.max(2, cores) ; threads++ ) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			long[] actual = check.record(pool);
+			pool.shutdown();
+
+			int diverged = -1;
+			for ( int t=0 ; t<steps && diverged < 0 ; t++ ) {
+				if ( expected[t] != actual[t] ) {
+					diverged = t;
+				}
+			}
+			if ( diverged < 0 ) {
+				System.out.println(String.format("OK      %2d Threads: Zustand nach allen %d Schritten gleich", threads,
+						steps));
+			} else {
+				System.out.println(String.format("FEHLER  %2d Threads: Zustand weicht ab Schritt %d ab", threads,
+						diverged + 1));
+				equal = false;
+			}
+		}
+
+		// Skalierung: 1, 2, 4, ... Threads und die Anzahl der Kerne
+		double sequential = check.measure(null);
+		System.out.println(String.format("sequentiell:  %7.3f ms/Schritt", sequential));
+		for ( int threads=1 ; threads<=cores ; threads = threads * 2 > cores && threads < cores ? cores : threads * 2 ) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			double parallel = check.measure(pool);
+			pool.shutdown();
+			System.out.println(String.format("%2d Threads:   %7.3f ms/Schritt (Faktor %.2f)", threads, parallel,
+					sequential / parallel));
+		}
+
+		System.exit(equal ? 0 : 1);
+	}
+}
@@ -0,0 +1,204 @@
+package de.gaffga.jumpnrun.benchmark;
+
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.gaffga.jumpnrun.Timer;
+import de.gaffga.jumpnrun.controller.KeyboardInput;
+import de.gaffga.jumpnrun.game.Game;
+import de.gaffga.jumpnrun.game.GameException;
+import de.gaffga.jumpnrun.game.HeadlessComponent;
+import de.gaffga.jumpnrun.game.states.NormalGamePlayState;
+import de.gaffga.jumpnrun.replay.GameSnapshot;
+import de.gaffga.jumpnrun.replay.ReplayException;
+import de.gaffga.jumpnrun.replay.RewindBuffer;
+import de.gaffga.jumpnrun.replay.StateChecksum;
+import de.gaffga.jumpnrun.resources.ResourceManagerException;
+
+/**
+ * Prüft dass das Zurückspulen genau die früheren Spielstände wiederherstellt.
+ *
+ * Aufruf: <code>java de.gaffga.jumpnrun.benchmark.RewindCheck [ticks] [zurück]</code>
+ * (mit dem Datenverzeichnis im Klassenpfad)
+ *
+ * Gespielt wird level01 ohne Fenster im deterministischen Modus: Der Spieler
+ * läuft abwechselnd nach rechts und links und springt regelmäßig. Nach jedem
+ * Tick wird der Spielstand in einen RewindBuffer gesichert und die
+ * StateChecksum gemerkt.
+ * Dann wird Tick für Tick zurückgespult - jeder Stand muss die Prüfsumme von
+ * damals haben - und mit den gleichen Eingaben wieder vorwärts gespielt, wobei
+ * sich die Prüfsummen des ersten Durchlaufs wiederholen müssen.
+ * NormalGamePlayState spult im deterministischen Modus selbst nicht zurück,
+ * geprüft wird darum mit einem eigenen RewindBuffer. Endet mit dem
+ * Rückgabewert 1 falls sich ein Spielstand unterscheidet.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class RewindCheck {
+
+	/** Voreingestellte Anzahl der gespielten Ticks (der Spieler stirbt dabei einmal, aber nicht alle Leben) */
+	public static final int DEFAULT_TICKS = 15 * Timer.TICK_RATE;
+
+	/** Voreingestellte Anzahl der zurückgespulten Ticks */
+	public static final int DEFAULT_BACK = 10 * Timer.TICK_RATE;
+
+	/** Nach so vielen Ticks dreht der Spieler um */
+	public static final int TURN_INTERVAL = 4 * Timer.TICK_RATE;
+
+	/** Abstand der Sprünge in Ticks */
+	public static final int JUMP_INTERVAL = 90;
+
+	/** So lange wird die Sprungtaste gehalten (in Ticks) */
+	public static final int JUMP_LENGTH = 10;
+
+	/** Breite des Bildschirms */
+	private static final int WIDTH = 640;
+
+	/** Höhe des Bildschirms */
+	private static final int HEIGHT = 480;
+
+	/** Die benutzten Tasten */
+	private static final int[] KEYS = { KeyEvent.VK_RIGHT, KeyEvent.VK_LEFT, KeyEvent.VK_SPACE };
+
+	/** Die Eingabe */
+	private KeyboardInput input = new KeyboardInput();
+
+	/** Der Bildschirm ohne Fenster (Quelle der Tastaturevents) */
+	private HeadlessComponent component = new HeadlessComponent(WIDTH, HEIGHT);
+
+	/** Das Spiel */
+	private Game game = null;
+
+	/** Die Sicherungen */
+	private RewindBuffer rewindBuffer = new RewindBuffer(RewindBuffer.DEFAULT_SECONDS, RewindBuffer.DEFAULT_MEMORY);
+
+	/** Flags welche der Tasten gerade gedrückt sind */
+	private boolean[] pressed = new boolean[KEYS.length];
+
+	/**
+	 * Konstruktor. Startet das Spiel direkt in level01.
+	 *
+	 * @throws GameException
+	 * @throws IOException
+	 * @throws ResourceManagerException
+	 */
+	public RewindCheck() throws GameException, IOException, ResourceManagerException {
+		game = new Game(input, component);
+		game.setDeterministic(true);
+		try {
+			game.switchGameState(new NormalGamePlayState(game, component));
+		} catch (Exception e) {
+			throw new GameException("Konnte den NormalGamePlayState-Zustand nicht setzen", e);
+		}
+	}
+
+	/**
+	 * Berechnet einen Tick mit den Eingaben für diesen Zeitpunkt.
+	 *
+	 * @param t der Zeitpunkt im Ablauf (bestimmt Richtung und Sprünge)
+	 * @throws GameException
+	 */
+	private void step(int t) throws GameException {
+		boolean right = t / TURN_INTERVAL % 2 == 0;
+		key(0, right);
+		key(1, !right);
+		key(2, t % JUMP_INTERVAL < JUMP_LENGTH);
+		game.stepTick();
+	}
+
+	/**
+	 * Schickt einen Tastaturevent an die Eingabe falls sich der Zustand der
+	 * Taste ändert.
+	 *
+	 * @param index der Index der Taste in KEYS
+	 * @param down true falls die Taste gedrückt sein soll
+	 */
+	private void key(int index, boolean down) {
+		if ( pressed[index] == down ) {
+			return;
+		}
+		pressed[index] = down;
+
+		KeyEvent event = new KeyEvent(component, down ? KeyEvent.KEY_PRESSED : KeyEvent.KEY_RELEASED, 0, 0,
+				KEYS[index], KeyEvent.CHAR_UNDEFINED);
+		if ( down ) {
+			input.keyPressed(event);
+		} else {
+			input.keyReleased(event);
+		}
+	}
+
+	/**
+	 * Spielt, spult zurück und spielt wieder vorwärts.
+	 *
+	 * @param ticks die Anzahl der gespielten Ticks
+	 * @param back die Anzahl der zurückgespulten Ticks
+	 * @return die Anzahl der abweichenden Spielstände
+	 * @throws GameException
+	 * @throws ReplayException
+	 */
+	public int run(int ticks, int back) throws GameException, ReplayException {
+		// Zeitpunkt und Prüfsumme jedes gesicherten Spielstands (vor dem Level gibt es keine)
+		List<Integer> times = new ArrayList<Integer>();
+		List<Long> checksums = new ArrayList<Long>();
+		for ( int t=0 ; t<ticks ; t++ ) {
+			step(t);
+			if ( GameSnapshot.canCapture(game) ) {
+				rewindBuffer.capture(game);
+				times.add(t);
+				checksums.add(StateChecksum.compute(game));
+			}
+		}
+		back = Math.min(back, times.size() - 1);
+		System.out.println(times.size() + " Spielstände gesichert (" + rewindBuffer.getUsedBytes() + " Bytes), "
+				+ back + " Ticks zurück");
+
+		int errors = 0;
+		for ( int i=1 ; i<=back ; i++ ) {
+			rewindBuffer.rewind(game);
+			int index = times.size() - 1 - i;
+			if ( StateChecksum.compute(game) != checksums.get(index) ) {
+				if ( errors++ == 0 ) {
+					System.out.println("FEHLER  zurückgespult auf Tick " + times.get(index) + ": Spielstand weicht ab");
+				}
+			}
+		}
+
+		int index = times.size() - 1 - back;
+		for ( int t=times.get(index)+1 ; t<ticks ; t++ ) {
+			step(t);
+			while ( index < times.size() - 1 && times.get(index) < t ) {
+				index++;
+			}
+			if ( times.get(index) == t && StateChecksum.compute(game) != checksums.get(index) ) {
+				if ( errors++ == 0 ) {
+					System.out.println("FEHLER  wieder vorwärts bei Tick " + t + ": Spielstand weicht ab");
+				}
+			}
+		}
+		return errors;
+	}
+
+	/**
+	 * Die Main-Methode.
+	 *
+	 * @param args die Anzahl der gespielten und der zurückgespulten Ticks (optional)
+	 */
+	public static void main(String[] args) throws GameException, IOException, ResourceManagerException,
+			ReplayException {
+		System.setProperty("java.awt.headless", "true");
+
+		int ticks = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TICKS;
+		int back = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BACK;
+
+		int errors = new RewindCheck().run(ticks, back);
+		if ( errors == 0 ) {
+			System.out.println("OK      alle Spielstände beim Zurückspulen und wieder vorwärts gleich");
+		} else {
+			System.out.println("FEHLER  " + errors + " Spielstände weichen ab");
+		}
+		System.exit(errors == 0 ? 0 : 1);
+	}
+}
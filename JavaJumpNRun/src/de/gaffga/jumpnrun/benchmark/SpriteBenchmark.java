@@ -0,0 +1,192 @@
+package de.gaffga.jumpnrun.benchmark;
+
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+
+import de.gaffga.jumpnrun.map.Map;
+import de.gaffga.jumpnrun.sprites.Sprite;
+import de.gaffga.jumpnrun.sprites.SpriteAnimation;
+import de.gaffga.jumpnrun.sprites.SpriteException;
+import de.gaffga.jumpnrun.sprites.SpriteManager;
+
+/**
+ * Misst die Zeit pro Frame für das Zeichnen vieler Sprites.
+ *
+ * Aufruf: <code>java de.gaffga.jumpnrun.benchmark.SpriteBenchmark [feinde] [frames]</code>
+ *
+ * Zwei Szenarien:
+ * <ul>
+ * <li>Alle Feinde im Bild, nach je ENEMIES_PER_PLAYER Feinden eine Spielfigur
+ * mit einem anderen Quellbild: Einzeln gezeichnet (wie vor der Zeichenliste)
+ * gegen SpriteManager.draw. Beide zeichnen in Listenreihenfolge, die
+ * Zeichenliste fasst nur die Läufe aufeinanderfolgender Feinde mit gleichem
+ * Quellbild zusammen und rechnet über eine gemeinsame Translation.</li>
+ * <li>Die Feinde über ein breites Level verteilt: SpriteManager.draw und
+ * step ohne und mit Culling der Sprites außerhalb des Bildes.</li>
+ * </ul>
+ * Gezeichnet wird in ein BufferedImage (also ohne Hardwarebeschleunigung);
+ * auf dem Bildschirm ist der Wechsel zwischen Quellbildern meist teurer.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class SpriteBenchmark {
+
+	/** Voreingestellte Anzahl der Feinde */
+	public static final int DEFAULT_ENEMIES = 1000;
+
+	/** Voreingestellte Anzahl der gemessenen Frames */
+	public static final int DEFAULT_FRAMES = 500;
+
+	/** Auf so viele Feinde kommt eine Spielfigur mit anderem Quellbild */
+	private static final int ENEMIES_PER_PLAYER = 10;
+
+	/** Breite des Bildschirms in Tiles */
+	private static final int SCREEN_TILES_X = BenchmarkLevel.SCREEN_WIDTH / 32;
+
+	/** Höhe des Bildschirms in Tiles */
+	private static final int SCREEN_TILES_Y = BenchmarkLevel.SCREEN_HEIGHT / 32;
+
+	/** Breite des Levels für das Culling in Tiles */
+	private static final int WIDE_LEVEL_TILES = 400;
+
+	/** Ein Rand der größer ist als jedes Level (schaltet das Culling ab) */
+	private static final int NO_CULLING_MARGIN = 1 << 24;
+
+	/** Das Bild in das gezeichnet wird */
+	private BufferedImage screen = new BufferedImage(BenchmarkLevel.SCREEN_WIDTH, BenchmarkLevel.SCREEN_HEIGHT,
+			BufferedImage.TYPE_INT_RGB);
+
+	/** Die Anzahl der gemessenen Frames */
+	private int frames;
+
+	/**
+	 * Konstruktor.
+	 *
+	 * @param frames die Anzahl der gemessenen Frames
+	 */
+	public SpriteBenchmark(int frames) {
+		this.frames = frames;
+	}
+
+	/**
+	 * Vergleicht das einzelne Zeichnen mit dem Zeichnen in Läufen gleichen
+	 * Quellbilds (beides in Listenreihenfolge).
+	 *
+	 * @param enemies die Anzahl der Feinde
+	 * @throws SpriteException
+	 */
+	public void runBatching(int enemies) throws SpriteException {
+		BenchmarkLevel level = new BenchmarkLevel(SCREEN_TILES_X, SCREEN_TILES_Y, enemies, 1);
+
+		// Feinde und Spielfiguren gemischt in einem Layer, damit die Quellbilder wechseln
+		SpriteManager spriteManager = new SpriteManager(level.getMap());
+		int n = 0;
+		for ( Sprite enemy : level.getSpriteManager() ) {
+			spriteManager.add(enemy, SpriteManager.LAYER_ENEMIES);
+			if ( ++n % ENEMIES_PER_PLAYER == 0 ) {
+				Sprite player = new Sprite("mainchar.sprite");
+				player.setVisible(true);
+				player.setCurrentAnimation(SpriteAnimation.IDLE_RIGHT);
+				player.setPosition(new Point(enemy.getPosition()));
+				spriteManager.add(player, SpriteManager.LAYER_ENEMIES);
+			}
+		}
+
+		System.out.println(enemies + " Feinde und " + enemies / ENEMIES_PER_PLAYER + " Spielfiguren im Bild:");
+		double single = measure(level.getMap(), spriteManager, false);
+		double runs = measure(level.getMap(), spriteManager, true);
+		System.out.println(String.format("  einzeln:                       %6.3f ms/Frame", single));
+		System.out.println(String.format("  in Läufen gleichen Quellbilds: %6.3f ms/Frame (%+.0f %%)", runs,
+				(runs - single) / single * 100));
+	}
+
+	/**
+	 * Vergleicht das Zeichnen und Animieren aller Sprites mit dem Culling der
+	 * Sprites außerhalb des Bildes.
+	 *
+	 * @param enemies die Anzahl der Feinde
+	 * @throws SpriteException
+	 */
+	public void runCulling(int enemies) throws SpriteException {
+		BenchmarkLevel level = new BenchmarkLevel(WIDE_LEVEL_TILES, SCREEN_TILES_Y, enemies, 1);
+		SpriteManager spriteManager = level.getSpriteManager();
+		level.setView(level.getMap().getPixelWidth() / 2, 0);
+
+		System.out.println(enemies + " Feinde auf " + WIDE_LEVEL_TILES + " Tiles Breite verteilt:");
+
+		spriteManager.setDrawMargin(NO_CULLING_MARGIN);
+		spriteManager.setActivityMargin(NO_CULLING_MARGIN);
+		double all = measure(level.getMap(), spriteManager, true);
+		int drawnAll = spriteManager.getDrawnCount();
+
+		spriteManager.setDrawMargin(SpriteManager.DEFAULT_DRAW_MARGIN);
+		spriteManager.setActivityMargin(SpriteManager.DEFAULT_ACTIVITY_MARGIN);
+		double culled = measure(level.getMap(), spriteManager, true);
+		int drawnCulled = spriteManager.getDrawnCount();
+
+		System.out.println(String.format("  ohne Culling:  %6.3f ms/Frame (%d gezeichnet)", all, drawnAll));
+		System.out.println(String.format("  mit Culling:   %6.3f ms/Frame (%d gezeichnet, %+.0f %%)", culled,
+				drawnCulled, (culled - all) / all * 100));
+	}
+
+	/**
+	 * Misst die mittlere Zeit für einen Animationsschritt und das Zeichnen.
+	 *
+	 * @param useDrawList true für SpriteManager.draw, false für das einzelne Zeichnen
+	 * @return die Zeit pro Frame in Millisekunden
+	 */
+	private double measure(Map map, SpriteManager spriteManager, boolean useDrawList) throws SpriteException {
+		// Aufwärmen, damit der JIT beide Varianten schon übersetzt hat
+		for ( int i=0 ; i<frames / 2 ; i++ ) {
+			frame(map, spriteManager, useDrawList);
+		}
+
+		long start = System.nanoTime();
+		for ( int i=0 ; i<frames ; i++ ) {
+			frame(map, spriteManager, useDrawList);
+		}
+		return (System.nanoTime() - start) / 1e6 / frames;
+	}
+
+	/**
+	 * Ein Frame: Animationsschritt und Zeichnen.
+	 */
+	private void frame(Map map, SpriteManager spriteManager, boolean useDrawList) throws SpriteException {
+		spriteManager.step();
+		if ( useDrawList ) {
+			spriteManager.draw(screen);
+		} else {
+			drawSingle(map, spriteManager);
+		}
+	}
+
+	/**
+	 * Zeichnet alle Sprites einzeln in Listenreihenfolge, jeweils mit eigener
+	 * Umrechnung in Bildschirmkoordinaten (so wie vor der Zeichenliste).
+	 */
+	private void drawSingle(Map map, SpriteManager spriteManager) throws SpriteException {
+		Graphics g = screen.getGraphics();
+		for ( Sprite sprite : spriteManager ) {
+			if ( !sprite.isVisible() ) continue;
+			Point pos = sprite.getPosition();
+			sprite.draw(map.getScreenPixelX(pos.x), map.getScreenPixelY(pos.y) - sprite.getHeight(), g);
+		}
+		g.dispose();
+	}
+
+	/**
+	 * Die Main-Methode.
+	 *
+	 * @param args die Anzahl der Feinde und der Frames (optional)
+	 */
+	public static void main(String[] args) throws SpriteException {
+		System.setProperty("java.awt.headless", "true");
+		int enemies = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ENEMIES;
+		int frames = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_FRAMES;
+
+		SpriteBenchmark benchmark = new SpriteBenchmark(frames);
+		benchmark.runBatching(enemies);
+		benchmark.runCulling(enemies);
+	}
+}
@@ -0,0 +1,91 @@
+package de.gaffga.jumpnrun.controller;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * Wandelt eine Demo im alten Textformat ("P|code|zeit" pro Zeile) in das
+ * binäre Format um.
+ *
+ * Aufruf: <code>java de.gaffga.jumpnrun.controller.DemoConverter alt.demo neu.demo [level]</code>
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class DemoConverter {
+
+	/** Das Level falls keines angegeben wurde */
+	public static final String DEFAULT_LEVEL = "level01.map";
+
+	/**
+	 * Wandelt eine Demo-Datei um.
+	 *
+	 * @param in der Stream mit der Demo im Textformat
+	 * @param out die Zieldatei
+	 * @param level der Name des Levels für den Kopf
+	 * @return die Anzahl der Events
+	 * @throws IOException
+	 */
+	public static int convert(InputStream in, File out, String level) throws IOException {
+		BufferedReader br = new BufferedReader(new InputStreamReader(in));
+		ArrayList<DemoKeyboardEvent> events = new ArrayList<DemoKeyboardEvent>();
+		long seed = 0;
+
+		String line = null;
+		while ( (line = br.readLine()) != null ) {
+			String[] parts = line.split("\\|");
+			if ( parts[0].equals("S") ) {
+				seed = Long.parseLong(parts[1]);
+			} else if ( parts[0].equals("P") || parts[0].equals("R") ) {
+				events.add(new DemoKeyboardEvent(Long.parseLong(parts[2]), parts[0], Integer.parseInt(parts[1])));
+			}
+		}
+
+		// Das Binärformat braucht aufsteigende Zeiten (die Sortierung ist stabil)
+		Collections.sort(events, new Comparator<DemoKeyboardEvent>() {
+			public int compare(DemoKeyboardEvent a, DemoKeyboardEvent b) {
+				return a.getTime() < b.getTime() ? -1 : (a.getTime() > b.getTime() ? 1 : 0);
+			}
+		});
+
+		DemoWriter writer = new DemoWriter(out, new DemoHeader(level, seed, DemoHeader.MILLIS_TICK_RATE));
+		for ( DemoKeyboardEvent event : events ) {
+			writer.record(event.getTime(), event.getCode(), event.getEvent().equals("P"));
+		}
+		writer.close();
+
+		return events.size();
+	}
+
+	/**
+	 * Die Main-Methode.
+	 *
+	 * @param args Quelldatei, Zieldatei und optional das Level
+	 */
+	public static void main(String[] args) {
+		if ( args.length < 2 ) {
+			System.err.println("Aufruf: DemoConverter <alt.demo> <neu.demo> [level]");
+			System.exit(1);
+		}
+
+		String level = args.length > 2 ? args[2] : DEFAULT_LEVEL;
+		try {
+			FileInputStream in = new FileInputStream(args[0]);
+			try {
+				int count = convert(in, new File(args[1]), level);
+				System.out.println(count + " Events nach '" + args[1] + "' geschrieben");
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			System.err.println("Fehler beim Umwandeln: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+}
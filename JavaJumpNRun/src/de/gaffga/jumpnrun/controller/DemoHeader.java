@@ -0,0 +1,233 @@
+package de.gaffga.jumpnrun.controller;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Der Kopf einer binären Demo-Datei sowie die Hilfsmethoden des Formats.
+ *
+ * Aufbau einer Datei:
+ * <pre>
+ *   int     MAGIC ("JNRD")
+ *   varint  Version
+ *   varint  Länge des Levelnamens, danach der Name (UTF-8)
+ *   long    Startwert des RandomService
+ *   varint  Ticks pro Sekunde
+ *   Records: varint (Tick-Differenz zum Vorgänger &lt;&lt; 2 | Typ)
+ *     TYPE_PRESS/TYPE_RELEASE: varint (ZigZag der Differenz des Tastencodes zum Vorgänger)
+ *     TYPE_CHECKSUM:           long   (Prüfsumme des Spielzustands nach dem Tick)
+ *     TYPE_KEYFRAME:           varint Länge, danach der Spielstand (GameSnapshot)
+ * </pre>
+ *
+ * Die Differenzen halten die meisten Events bei zwei bis drei Bytes. In
+ * Version 1 gab es nur Tastenevents: varint (Tick-Differenz &lt;&lt; 1 | gedrückt).
+ *
+ * Aufzeichnungen mit TICK_RATE = Timer.TICK_RATE zählen Simulations-Ticks
+ * (deterministischer Modus), MILLIS_TICK_RATE steht für Millisekunden.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class DemoHeader {
+
+	/** Die Kennung am Dateianfang: "JNRD" */
+	public static final int MAGIC = 0x4A4E5244;
+
+	/** Die aktuelle Version des Formats */
+	public static final int VERSION = 2;
+
+	/** Record-Typ: Taste losgelassen */
+	public static final int TYPE_RELEASE = 0;
+
+	/** Record-Typ: Taste gedrückt */
+	public static final int TYPE_PRESS = 1;
+
+	/** Record-Typ: Prüfsumme des Spielzustands */
+	public static final int TYPE_CHECKSUM = 2;
+
+	/** Record-Typ: vollständiger Spielstand zum schnellen Springen */
+	public static final int TYPE_KEYFRAME = 3;
+
+	/** Anzahl der Bits für den Record-Typ */
+	public static final int TYPE_BITS = 2;
+
+	/** Tickrate für Aufzeichnungen in Millisekunden */
+	public static final int MILLIS_TICK_RATE = 1000;
+
+	/** Die maximale Länge eines varint in Bytes */
+	public static final int MAX_VARINT_BYTES = 10;
+
+	/**
+	 * Die maximale Länge des Levelnamens in UTF-8-Bytes. Der Kopf wird in den
+	 * ersten Block des DemoWriters geschrieben und muss dort Platz haben.
+	 */
+	public static final int MAX_LEVEL_BYTES = 255;
+
+	/** Zeichensatz des Levelnamens */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** Die Version der Datei */
+	private int version = VERSION;
+
+	/** Der Name des Levels */
+	private String level = null;
+
+	/** Der Startwert des RandomService */
+	private long seed;
+
+	/** Ticks pro Sekunde */
+	private int tickRate;
+
+	/**
+	 * Konstruktor.
+	 *
+	 * @param level der Name des Levels
+	 * @param seed der Startwert des RandomService
+	 * @param tickRate Ticks pro Sekunde
+	 * @throws IllegalArgumentException falls der Levelname länger als MAX_LEVEL_BYTES ist
+	 */
+	public DemoHeader(String level, long seed, int tickRate) {
+		int length = level.getBytes(UTF8).length;
+		if ( length > MAX_LEVEL_BYTES ) {
+			throw new IllegalArgumentException("Der Levelname ist zu lang für die Demo-Datei: " + length + " Bytes");
+		}
+		this.level = level;
+		this.seed = seed;
+		this.tickRate = tickRate;
+	}
+
+	/**
+	 * Schreibt den Kopf in einen Puffer.
+	 *
+	 * @param buffer der Puffer
+	 */
+	public void write(ByteBuffer buffer) {
+		byte[] name = level.getBytes(UTF8);
+		buffer.putInt(MAGIC);
+		putVarLong(buffer, version);
+		putVarLong(buffer, name.length);
+		buffer.put(name);
+		buffer.putLong(seed);
+		putVarLong(buffer, tickRate);
+	}
+
+	/**
+	 * Liest den Kopf ab der Version (die Kennung wurde bereits gelesen).
+	 *
+	 * @param in der Stream
+	 * @return der Kopf
+	 * @throws IOException falls der Stream zu kurz, die Version unbekannt oder der Levelname zu lang ist
+	 */
+	public static DemoHeader read(InputStream in) throws IOException {
+		int version = (int) readVarLong(in);
+		if ( version > VERSION ) {
+			throw new IOException("Unbekannte Version der Demo-Datei: " + version);
+		}
+
+		long length = readVarLong(in);
+		if ( length > MAX_LEVEL_BYTES ) {
+			throw new IOException("Ungültige Länge des Levelnamens in der Demo-Datei: " + length);
+		}
+		byte[] name = new byte[(int) length];
+		for ( int i=0 ; i<name.length ; i++ ) {
+			name[i] = (byte) readByte(in);
+		}
+
+		long seed = readLong(in);
+
+		DemoHeader header = new DemoHeader(new String(name, UTF8), seed, (int) readVarLong(in));
+		header.version = version;
+		return header;
+	}
+
+	/**
+	 * Schreibt eine nicht-negative Zahl als varint (7 Bits pro Byte).
+	 *
+	 * @param buffer der Puffer
+	 * @param value der Wert
+	 */
+	public static void putVarLong(ByteBuffer buffer, long value) {
+		while ( (value & ~0x7FL) != 0 ) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	/**
+	 * Liest einen varint.
+	 *
+	 * @param in der Stream
+	 * @return der Wert
+	 * @throws IOException falls der Stream mitten im Wert endet
+	 */
+	public static long readVarLong(InputStream in) throws IOException {
+		long value = 0;
+		for ( int shift=0 ; shift<64 ; shift+=7 ) {
+			int b = readByte(in);
+			value |= (long) (b & 0x7F) << shift;
+			if ( (b & 0x80) == 0 ) {
+				return value;
+			}
+		}
+		throw new IOException("Ungültiger varint in der Demo-Datei");
+	}
+
+	/**
+	 * Liest einen long (big endian wie ByteBuffer.putLong).
+	 *
+	 * @param in der Stream
+	 * @return der Wert
+	 * @throws IOException falls der Stream mitten im Wert endet
+	 */
+	public static long readLong(InputStream in) throws IOException {
+		long value = 0;
+		for ( int i=0 ; i<8 ; i++ ) {
+			value = (value << 8) | readByte(in);
+		}
+		return value;
+	}
+
+	/**
+	 * ZigZag-Kodierung: Kleine negative Zahlen werden zu kleinen positiven.
+	 */
+	public static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	/**
+	 * Umkehrung der ZigZag-Kodierung.
+	 */
+	public static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Liest ein Byte und wirft eine EOFException am Ende des Streams.
+	 */
+	private static int readByte(InputStream in) throws IOException {
+		int b = in.read();
+		if ( b < 0 ) {
+			throw new EOFException("Unerwartetes Ende der Demo-Datei");
+		}
+		return b;
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	public String getLevel() {
+		return level;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public int getTickRate() {
+		return tickRate;
+	}
+}
@@ -1,36 +1,96 @@
 package de.gaffga.jumpnrun.controller;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import de.gaffga.jumpnrun.RandomService;
+import de.gaffga.jumpnrun.Timer;
 
 /**
- * Abspielen einer Demo-Aufzeichnung.
+ * Abspielen einer Demo-Aufzeichnung. Gelesen wird sowohl das binäre Format 
+ * (siehe DemoHeader) als auch das alte Textformat.
+ * 
+ * Die Events liegen zeitlich sortiert in Arrays. Ein Cursor zeigt auf den 
+ * nächsten noch nicht abgespielten Event und wird einmal pro Tick (step()) 
+ * vorgerückt; die Abfragen lesen nur die Tastenzustände. Die Kosten pro Frame
+ * hängen damit nur von der Anzahl der Events in diesem Frame ab und nicht von
+ * der Länge der Aufzeichnung - auch beim schnellen Vorspulen (setSpeed).
  * 
- * TODO Das Timing stimmt noch nicht 100%ig mit der Aufzeichnung überein!
+ * Aufzeichnungen in Simulations-Ticks (Tickrate = Timer.TICK_RATE) werden
+ * Tick für Tick abgespielt: step() rückt genau einen Tick vor, unabhängig von
+ * der Uhr. Das Spiel muss dafür deterministisch laufen (Game.setDeterministic).
+ * Die mit aufgezeichneten Prüfsummen des Spielzustands können dann mit 
+ * findChecksum() abgefragt und verglichen werden. Über die Keyframes
+ * (vollständige Spielstände alle paar Sekunden) kann zu einem beliebigen Tick
+ * gesprungen werden (findKeyframe, seek). Ältere Aufzeichnungen in
+ * Millisekunden laufen weiter nach der Uhr und weichen daher leicht ab.
  *  
  * @author Stefan Gaffga <stefan@gaffga.de>
  */
 public class DemoPlayback {
 
-	/** Map mit den Zuständen von Tasten */
-	private HashMap<Integer, Boolean> pressedKeys = null;
+	/** Die Tastenzustände des aktuellen Ticks */
+	private KeyStates keyStates = null;
+	
+	/** Die Zeitpunkte der Events in Ticks bzw. Millisekunden (aufsteigend sortiert) */
+	private long[] times = null;
+	
+	/** Die Tastencodes der Events */
+	private int[] codes = null;
+	
+	/** Gedrückt (true) oder losgelassen (false) */
+	private boolean[] pressed = null;
+	
+	/** Anzahl der Events */
+	private int eventCount;
+	
+	/** Index des nächsten abzuspielenden Events */
+	private int cursor;
+	
+	/** Die Ticks der Prüfsummen (aufsteigend sortiert) */
+	private long[] checksumTicks = null;
+	
+	/** Die Prüfsummen */
+	private long[] checksums = null;
 	
-	/** Map mit den Zuständen von einmalig gedrückten Tasten */
-	private HashMap<Integer, Boolean> hitKeys = null;
+	/** Anzahl der Prüfsummen */
+	private int checksumCount;
 	
-	/** Die Liste mit den Events */
-	private LinkedList<DemoKeyboardEvent> events = null;
+	/** Die Ticks der Keyframes (aufsteigend sortiert) */
+	private long[] keyframeTicks = null;
 	
-	/** Zeitpunkt bei dem das Playback startete */
-	private long startTime;
+	/** Die Spielstände der Keyframes */
+	private byte[][] keyframes = null;
+	
+	/** Anzahl der Keyframes */
+	private int keyframeCount;
+	
+	/** Flag ob die Zeitpunkte Simulations-Ticks sind (sonst Millisekunden) */
+	private boolean tickIndexed = false;
+	
+	/** Der aktuelle Tick beim Abspielen einer Aufzeichnung in Ticks */
+	private long tick;
+	
+	/** Die abgespielte Zeit in Millisekunden seit dem Start */
+	private double playTime;
 	
 	/** Der Zeitpunkt zu dem das letzte mal step() aufgerufen wurde */
 	private long lastCall = 0;
 	
+	/** Die Abspielgeschwindigkeit (1 = normal, 2 = doppelt so schnell, ...) */
+	private float speed = 1.0f;
+	
+	/** Der Startwert des RandomService bei der Aufzeichnung (0 falls nicht gespeichert) */
+	private long seed = 0;
+	
+	/** Das Level der Aufzeichnung (null falls nicht gespeichert) */
+	private String level = null;
+	
 	/**
 	 * Konstruktor.
 	 * 
@@ -38,89 +98,368 @@ public class DemoPlayback {
 	 * @throws IOException 
 	 */
 	public DemoPlayback(InputStream stream) throws IOException {
-		pressedKeys = new HashMap<Integer, Boolean>();
-		hitKeys = new HashMap<Integer, Boolean>();
-		InputStreamReader isr = new InputStreamReader(stream);
-		BufferedReader br = new BufferedReader(isr);
+		keyStates = new KeyStates();
+		times = new long[256];
+		codes = new int[256];
+		pressed = new boolean[256];
+		checksumTicks = new long[64];
+		checksums = new long[64];
+		keyframeTicks = new long[16];
+		keyframes = new byte[16][];
+		
+		BufferedInputStream in = new BufferedInputStream(stream);
+		if ( DemoReader.isBinaryDemo(in) ) {
+			readBinary(in);
+		} else {
+			readText(in);
+		}
+	}
+	
+	/**
+	 * Liest eine Demo im binären Format. Aufzeichnungen in Simulations-Ticks 
+	 * behalten ihre Ticks, alle anderen werden in Millisekunden umgerechnet.
+	 * 
+	 * @param in der Stream
+	 * @throws IOException
+	 */
+	private void readBinary(InputStream in) throws IOException {
+		DemoReader reader = new DemoReader(in);
+		DemoHeader header = reader.getHeader();
+		seed = header.getSeed();
+		level = header.getLevel();
+		tickIndexed = header.getTickRate() == Timer.TICK_RATE;
 		
-		events = new LinkedList<DemoKeyboardEvent>();
+		while ( reader.next() ) {
+			long time = tickIndexed ? reader.getTick() : reader.getTick() * 1000L / header.getTickRate();
+			if ( reader.isKeyEvent() ) {
+				addEvent(time, reader.getCode(), reader.isPressed());
+			} else if ( reader.getType() == DemoHeader.TYPE_CHECKSUM ) {
+				addChecksum(reader.getTick(), reader.getChecksum());
+			} else if ( reader.getType() == DemoHeader.TYPE_KEYFRAME ) {
+				addKeyframe(reader.getTick(), reader.getKeyframe());
+			}
+		}
+	}
+	
+	/**
+	 * Liest eine Demo im alten Textformat ("P|code|zeit" pro Zeile).
+	 * 
+	 * @param in der Stream
+	 * @throws IOException
+	 */
+	private void readText(InputStream in) throws IOException {
+		InputStreamReader isr = new InputStreamReader(in);
+		BufferedReader br = new BufferedReader(isr);
 		
+		boolean sorted = true;
 		String line=null;
 		while ( (line = br.readLine())!=null ) {
 			String[] parts = line.split("\\|");
 			String event = parts[0];
+			if ( event.equals("S") ) {
+				// Startwert der Zufallszahlen
+				seed = Long.parseLong(parts[1]);
+				continue;
+			}
 			int code = Integer.parseInt(parts[1]);
-			int time = Integer.parseInt(parts[2]);
+			long time = Long.parseLong(parts[2]);
 			
-			events.add(new DemoKeyboardEvent(time, event, code));
+			if ( event.equals("P") || event.equals("R") ) {
+				if ( eventCount > 0 && time < times[eventCount-1] ) {
+					sorted = false;
+				}
+				addEvent(time, code, event.equals("P"));
+			}
+		}
+		
+		if ( !sorted ) {
+			sortEvents();
 		}
 	}
 	
 	/**
-	 * Startet das Playback.
+	 * Hängt einen Event an die Arrays an.
+	 */
+	private void addEvent(long time, int code, boolean isPressed) {
+		if ( eventCount == times.length ) {
+			times = Arrays.copyOf(times, eventCount * 2);
+			codes = Arrays.copyOf(codes, eventCount * 2);
+			pressed = Arrays.copyOf(pressed, eventCount * 2);
+		}
+		times[eventCount] = time;
+		codes[eventCount] = code;
+		pressed[eventCount] = isPressed;
+		eventCount++;
+	}
+	
+	/**
+	 * Hängt eine Prüfsumme an die Arrays an.
+	 */
+	private void addChecksum(long checksumTick, long checksum) {
+		if ( checksumCount == checksumTicks.length ) {
+			checksumTicks = Arrays.copyOf(checksumTicks, checksumCount * 2);
+			checksums = Arrays.copyOf(checksums, checksumCount * 2);
+		}
+		checksumTicks[checksumCount] = checksumTick;
+		checksums[checksumCount] = checksum;
+		checksumCount++;
+	}
+	
+	/**
+	 * Hängt einen Keyframe an die Arrays an.
+	 */
+	private void addKeyframe(long keyframeTick, byte[] snapshot) {
+		if ( keyframeCount == keyframeTicks.length ) {
+			keyframeTicks = Arrays.copyOf(keyframeTicks, keyframeCount * 2);
+			keyframes = Arrays.copyOf(keyframes, keyframeCount * 2);
+		}
+		keyframeTicks[keyframeCount] = keyframeTick;
+		keyframes[keyframeCount] = snapshot;
+		keyframeCount++;
+	}
+	
+	/**
+	 * Sortiert die Events stabil nach der Zeit (Events mit gleicher Zeit 
+	 * behalten ihre Reihenfolge).
+	 */
+	private void sortEvents() {
+		Integer[] order = new Integer[eventCount];
+		for ( int i=0 ; i<eventCount ; i++ ) {
+			order[i] = i;
+		}
+		final long[] t = times;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return t[a] < t[b] ? -1 : (t[a] > t[b] ? 1 : 0);
+			}
+		});
+		
+		long[] sortedTimes = new long[eventCount];
+		int[] sortedCodes = new int[eventCount];
+		boolean[] sortedPressed = new boolean[eventCount];
+		for ( int i=0 ; i<eventCount ; i++ ) {
+			sortedTimes[i] = times[order[i]];
+			sortedCodes[i] = codes[order[i]];
+			sortedPressed[i] = pressed[order[i]];
+		}
+		times = sortedTimes;
+		codes = sortedCodes;
+		pressed = sortedPressed;
+	}
+	
+	/**
+	 * Startet das Playback. Der RandomService bekommt dabei den Startwert 
+	 * der Aufzeichnung.
 	 */
 	public void start() {
-		startTime = System.currentTimeMillis();
+		RandomService.getInstance().setSeed(seed);
+		keyStates.clear();
+		cursor = 0;
+		tick = 0;
+		playTime = 0;
+		lastCall = System.currentTimeMillis();
 	}
 	
 	/**
-	 * Liefert eine Liste mit Events die innerhalb eines Zeitabschnitts
-	 * auftraten.
+	 * Liefert den Startwert der Zufallszahlen bei der Aufzeichnung.
 	 * 
-	 * @param t1 Anfangszeitpunkt
-	 * @param t2 Endzeitpunkt
+	 * @return der Startwert
 	 */
-	private LinkedList<DemoKeyboardEvent> getEventsInTime(long t1, long t2) {
-		LinkedList<DemoKeyboardEvent> liste = new LinkedList<DemoKeyboardEvent>();
-		
-		for ( DemoKeyboardEvent event : events ) {
-			if ( event.getTime() >= t1 && event.getTime() < t2 ) {
-				liste.add(event);
-			}
+	public long getSeed() {
+		return seed;
+	}
+	
+	/**
+	 * Liefert das Level der Aufzeichnung.
+	 * 
+	 * @return der Name des Levels oder null (altes Textformat)
+	 */
+	public String getLevel() {
+		return level;
+	}
+	
+	/**
+	 * Liefert ob die Aufzeichnung in Simulations-Ticks vorliegt.
+	 * 
+	 * @return true bei Ticks, false bei Millisekunden
+	 */
+	public boolean isTickIndexed() {
+		return tickIndexed;
+	}
+	
+	/**
+	 * Liefert den zuletzt abgespielten Tick (nur bei Aufzeichnungen in Ticks).
+	 * 
+	 * @return der Tick (beginnt bei 1)
+	 */
+	public long getTick() {
+		return tick;
+	}
+	
+	/**
+	 * Sucht die aufgezeichnete Prüfsumme zu einem Tick.
+	 * 
+	 * @param checksumTick der Tick
+	 * @return der Index für getChecksum() oder -1 falls es keine gibt
+	 */
+	public int findChecksum(long checksumTick) {
+		int index = Arrays.binarySearch(checksumTicks, 0, checksumCount, checksumTick);
+		return index >= 0 ? index : -1;
+	}
+	
+	/**
+	 * Liefert eine aufgezeichnete Prüfsumme.
+	 * 
+	 * @param index der Index (siehe findChecksum)
+	 * @return die Prüfsumme
+	 */
+	public long getChecksum(int index) {
+		return checksums[index];
+	}
+	
+	/**
+	 * Liefert die Anzahl der aufgezeichneten Prüfsummen.
+	 */
+	public int getChecksumCount() {
+		return checksumCount;
+	}
+	
+	/**
+	 * Sucht den letzten Keyframe an oder vor einem Tick.
+	 * 
+	 * @param keyframeTick der Tick
+	 * @return der Index für getKeyframe() oder -1 falls es davor keinen gibt
+	 */
+	public int findKeyframe(long keyframeTick) {
+		int index = Arrays.binarySearch(keyframeTicks, 0, keyframeCount, keyframeTick);
+		return index >= 0 ? index : -index - 2;
+	}
+	
+	/**
+	 * Liefert den Tick eines Keyframes.
+	 * 
+	 * @param index der Index (siehe findKeyframe)
+	 * @return der Tick
+	 */
+	public long getKeyframeTick(int index) {
+		return keyframeTicks[index];
+	}
+	
+	/**
+	 * Liefert den Spielstand eines Keyframes (siehe GameSnapshot).
+	 * 
+	 * @param index der Index (siehe findKeyframe)
+	 * @return der Spielstand
+	 */
+	public byte[] getKeyframe(int index) {
+		return keyframes[index];
+	}
+	
+	/**
+	 * Liefert die Anzahl der Keyframes.
+	 */
+	public int getKeyframeCount() {
+		return keyframeCount;
+	}
+	
+	/**
+	 * Liefert den letzten Tick der Aufzeichnung (letzter Event, letzte Prüfsumme
+	 * oder letzter Keyframe).
+	 * 
+	 * @return der Tick bzw. die Millisekunden
+	 */
+	public long getLastTick() {
+		long last = eventCount > 0 ? times[eventCount-1] : 0;
+		if ( checksumCount > 0 ) {
+			last = Math.max(last, checksumTicks[checksumCount-1]);
 		}
-		return liste;
+		if ( keyframeCount > 0 ) {
+			last = Math.max(last, keyframeTicks[keyframeCount-1]);
+		}
+		return last;
+	}
+	
+	/**
+	 * Springt zu einem Tick (nur bei Aufzeichnungen in Ticks): Alle Events bis
+	 * einschließlich dieses Ticks gelten als abgespielt, die Tastenzustände
+	 * werden entsprechend neu aufgebaut.
+	 * 
+	 * @param seekTick der Tick
+	 */
+	public void seek(long seekTick) {
+		keyStates.clear();
+		cursor = 0;
+		tick = seekTick;
+		advanceTo(seekTick + 1);
+		keyStates.clearHits();
+	}
+	
+	/**
+	 * Setzt die Abspielgeschwindigkeit (z.B. zum schnellen Vorspulen). Gilt
+	 * nur für Aufzeichnungen in Millisekunden - Aufzeichnungen in Ticks 
+	 * laufen so schnell wie die Hauptspielschleife.
+	 * 
+	 * @param speed 1 = normal, 2 = doppelt so schnell, ...
+	 */
+	public void setSpeed(float speed) {
+		this.speed = speed;
 	}
 	
 	/**
-	 * Führt einen Schritt beim Abspielen der Demo aus. 
+	 * Führt einen Schritt beim Abspielen der Demo aus. Wird einmal pro Tick
+	 * aufgerufen.
 	 */
 	public void step() {
-		long zeit = System.currentTimeMillis() - startTime;
+		if ( tickIndexed ) {
+			tick++;
+			advanceTo(tick + 1);
+			return;
+		}
 		
-		// Die Events die seit dem letzten Aufruf aufgetreten sind auswerten
-		LinkedList<DemoKeyboardEvent> events = getEventsInTime(lastCall, zeit);
+		long now = System.currentTimeMillis();
+		playTime += (now - lastCall) * (double) speed;
+		lastCall = now;
 		
-		for ( DemoKeyboardEvent event : events ) {
-			if ( event.getEvent().equals("P") ) {
-				// Taste gedrückt
-				pressedKeys.put(event.getCode(), true);
-				hitKeys.put(event.getCode(), true);
-			} else if ( event.getEvent().equals("R") ) {
-				// Taste losgelassen
-				pressedKeys.put(event.getCode(), false);
+		advanceTo((long) playTime);
+	}
+	
+	/**
+	 * Spielt alle Events bis zu einem Zeitpunkt ab. Anschläge aus dem 
+	 * vorherigen Tick verfallen dabei.
+	 * 
+	 * @param time der Zeitpunkt in Ticks bzw. Millisekunden seit dem Start (exklusiv)
+	 */
+	public void advanceTo(long time) {
+		keyStates.clearHits();
+		
+		while ( cursor < eventCount && times[cursor] < time ) {
+			if ( pressed[cursor] ) {
+				keyStates.press(codes[cursor]);
+			} else {
+				keyStates.release(codes[cursor]);
 			}
+			cursor++;
 		}
-		
-		lastCall = zeit;
 	}
 	
 	/**
-	 * Fragt ab ob eine bestimmte Taste in der Zwischenzeit gedrückt wurde und
+	 * Liefert ob alle Events abgespielt wurden.
+	 * 
+	 * @return true falls die Demo zu Ende ist
+	 */
+	public boolean isFinished() {
+		return cursor == eventCount;
+	}
+	
+	/**
+	 * Fragt ab ob eine bestimmte Taste in diesem Tick gedrückt wurde und
 	 * setzt anschließend das Flag zurück.
 	 * 
 	 * @param code der zu testende Keycode
 	 * @return true falls die Taste gedrückt ist, sonst false
 	 */
 	public boolean wasKeyHit(int code) {
-		step();
-		if ( hitKeys.get(code)==null ) return false;
-		
-		if ( hitKeys.get(code) ) {
-			hitKeys.put(code, false);
-			return true;
-		}
-		
-		return false;
+		return keyStates.consumeHit(code);
 	}
 	
 	/**
@@ -130,9 +469,6 @@ public class DemoPlayback {
 	 * @return true falls die Taste gedrückt ist, sonst false
 	 */
 	public boolean isKeyDown(int code) {
-		step();
-		if ( pressedKeys.get(code)==null ) return false;
-		
-		return pressedKeys.get(code);
+		return keyStates.isDown(code);
 	}
 }
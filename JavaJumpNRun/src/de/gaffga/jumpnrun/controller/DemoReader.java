@@ -0,0 +1,152 @@
+package de.gaffga.jumpnrun.controller;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Liest eine binäre Demo-Datei Record für Record (siehe DemoHeader).
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class DemoReader {
+
+	/** Der Stream */
+	private InputStream in = null;
+
+	/** Der Kopf der Datei */
+	private DemoHeader header = null;
+
+	/** Der Tick des aktuellen Events */
+	private long tick;
+
+	/** Der Tastencode des aktuellen Events */
+	private int code;
+
+	/** Der Typ des aktuellen Records (DemoHeader.TYPE_*) */
+	private int type;
+
+	/** Die Prüfsumme des aktuellen Records */
+	private long checksum;
+
+	/** Der Spielstand des aktuellen Records */
+	private byte[] keyframe = null;
+
+	/**
+	 * Konstruktor. Liest Kennung und Kopf.
+	 *
+	 * @param stream der Stream mit der Demo-Datei
+	 * @throws IOException falls es keine binäre Demo-Datei ist
+	 */
+	public DemoReader(InputStream stream) throws IOException {
+		this.in = stream instanceof BufferedInputStream ? stream : new BufferedInputStream(stream);
+
+		int magic = 0;
+		for ( int i=0 ; i<4 ; i++ ) {
+			magic = (magic << 8) | in.read();
+		}
+		if ( magic != DemoHeader.MAGIC ) {
+			throw new IOException("Keine binäre Demo-Datei");
+		}
+
+		header = DemoHeader.read(in);
+	}
+
+	/**
+	 * Prüft ob ein Stream mit einer binären Demo-Datei beginnt. Der Stream
+	 * muss mark/reset unterstützen und steht danach wieder am Anfang.
+	 *
+	 * @param stream der Stream
+	 * @return true falls die Kennung passt
+	 * @throws IOException
+	 */
+	public static boolean isBinaryDemo(InputStream stream) throws IOException {
+		stream.mark(4);
+		int magic = 0;
+		for ( int i=0 ; i<4 ; i++ ) {
+			magic = (magic << 8) | (stream.read() & 0xFF);
+		}
+		stream.reset();
+		return magic == DemoHeader.MAGIC;
+	}
+
+	/**
+	 * Liest den nächsten Record.
+	 *
+	 * @return false falls die Datei zu Ende ist
+	 * @throws IOException falls die Datei mitten in einem Record endet
+	 */
+	public boolean next() throws IOException {
+		in.mark(1);
+		if ( in.read() < 0 ) {
+			return false;
+		}
+		in.reset();
+
+		long value = DemoHeader.readVarLong(in);
+		if ( header.getVersion() < 2 ) {
+			tick += value >>> 1;
+			type = (int) (value & 1);
+		} else {
+			tick += value >>> DemoHeader.TYPE_BITS;
+			type = (int) (value & ((1 << DemoHeader.TYPE_BITS) - 1));
+		}
+
+		switch ( type ) {
+			case DemoHeader.TYPE_PRESS:
+			case DemoHeader.TYPE_RELEASE:
+				code += (int) DemoHeader.unZigZag(DemoHeader.readVarLong(in));
+				break;
+			case DemoHeader.TYPE_CHECKSUM:
+				checksum = DemoHeader.readLong(in);
+				break;
+			case DemoHeader.TYPE_KEYFRAME:
+				keyframe = new byte[(int) DemoHeader.readVarLong(in)];
+				int read = 0;
+				while ( read < keyframe.length ) {
+					int n = in.read(keyframe, read, keyframe.length - read);
+					if ( n < 0 ) {
+						throw new EOFException("Unerwartetes Ende der Demo-Datei");
+					}
+					read += n;
+				}
+				break;
+			default:
+				throw new IOException("Unbekannter Record-Typ in der Demo-Datei: " + type);
+		}
+		return true;
+	}
+
+	public DemoHeader getHeader() {
+		return header;
+	}
+
+	public long getTick() {
+		return tick;
+	}
+
+	public int getCode() {
+		return code;
+	}
+
+	public int getType() {
+		return type;
+	}
+
+	public boolean isKeyEvent() {
+		return type == DemoHeader.TYPE_PRESS || type == DemoHeader.TYPE_RELEASE;
+	}
+
+	public boolean isPressed() {
+		return type == DemoHeader.TYPE_PRESS;
+	}
+
+	public long getChecksum() {
+		return checksum;
+	}
+
+	public byte[] getKeyframe() {
+		return keyframe;
+	}
+}
@@ -0,0 +1,283 @@
+package de.gaffga.jumpnrun.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Schreibt eine binäre Demo-Datei (siehe DemoHeader) während das Spiel läuft.
+ *
+ * Die Events werden im Spiel-Thread in einen kleinen Puffer kodiert. Ist er
+ * voll - oder spätestens nach FLUSH_INTERVAL_MILLIS - geht er an einen
+ * Hintergrund-Thread der ihn über einen FileChannel an die Datei anhängt. Die
+ * Zeit wird bei jedem Event und einmal pro Tick geprüft (flushIfDue aus
+ * KeyboardInput.tick), auch wenn gerade keine Taste gedrückt wird. Der
+ * Speicherbedarf bleibt so unabhängig von der Länge der Aufzeichnung und bei
+ * einem Absturz geht höchstens die letzte Sekunde verloren.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class DemoWriter {
+
+	/** Die Größe eines Puffers in Bytes */
+	public static final int CHUNK_SIZE = 4096;
+
+	/** Nach dieser Zeit wird ein angefangener Puffer spätestens geschrieben */
+	public static final long FLUSH_INTERVAL_MILLIS = 1000;
+
+	/** Anzahl der Puffer die auf das Schreiben warten können */
+	private static final int QUEUE_SIZE = 16;
+
+	/** Markiert das Ende der Aufzeichnung für den Hintergrund-Thread */
+	private static final Chunk END = new Chunk(ByteBuffer.allocate(0), false);
+
+	/** Die Datei */
+	private FileChannel channel = null;
+
+	/** Der eigene Puffer in den gerade kodiert wird */
+	private Chunk chunk = null;
+
+	/** Der Puffer von chunk */
+	private ByteBuffer current = null;
+
+	/** Volle Puffer für den Hintergrund-Thread */
+	private BlockingQueue<Chunk> full = new ArrayBlockingQueue<Chunk>(QUEUE_SIZE);
+
+	/** Geschriebene eigene Puffer zur Wiederverwendung */
+	private BlockingQueue<Chunk> free = new ArrayBlockingQueue<Chunk>(QUEUE_SIZE + 1);
+
+	/** Der Hintergrund-Thread */
+	private Thread writerThread = null;
+
+	/** Ein Fehler des Hintergrund-Threads */
+	private volatile IOException error = null;
+
+	/** Der Tick des letzten Events */
+	private long lastTick;
+
+	/** Der Tastencode des letzten Events */
+	private int lastCode;
+
+	/** Zeitpunkt zu dem zuletzt ein Puffer abgegeben wurde */
+	private long lastFlush;
+
+	/**
+	 * Legt die Datei an, schreibt den Kopf und startet den Hintergrund-Thread.
+	 *
+	 * @param file die Datei
+	 * @param header der Kopf
+	 * @throws IOException falls die Datei nicht angelegt werden kann
+	 */
+	public DemoWriter(File file, DemoHeader header) throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		chunk = new Chunk(ByteBuffer.allocate(CHUNK_SIZE), true);
+		current = chunk.buffer;
+		header.write(current);
+		lastFlush = System.currentTimeMillis();
+
+		writerThread = new Thread(new Runnable() {
+			public void run() {
+				writeLoop();
+			}
+		}, "DemoWriter");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Zeichnet einen Event auf. Die Ticks müssen aufsteigend sein.
+	 *
+	 * @param tick der Tick
+	 * @param code der Tastencode
+	 * @param pressed true falls die Taste gedrückt wurde
+	 * @throws IOException falls der Hintergrund-Thread nicht schreiben konnte
+	 */
+	public void record(long tick, int code, boolean pressed) throws IOException {
+		prepare(2 * DemoHeader.MAX_VARINT_BYTES);
+
+		putRecordHeader(tick, pressed ? DemoHeader.TYPE_PRESS : DemoHeader.TYPE_RELEASE);
+		DemoHeader.putVarLong(current, DemoHeader.zigZag(code - lastCode));
+		lastCode = code;
+
+		flushIfDue();
+	}
+
+	/**
+	 * Zeichnet die Prüfsumme des Spielzustands nach einem Tick auf.
+	 *
+	 * @param tick der Tick
+	 * @param checksum die Prüfsumme
+	 * @throws IOException falls der Hintergrund-Thread nicht schreiben konnte
+	 */
+	public void recordChecksum(long tick, long checksum) throws IOException {
+		prepare(DemoHeader.MAX_VARINT_BYTES + 8);
+
+		putRecordHeader(tick, DemoHeader.TYPE_CHECKSUM);
+		current.putLong(checksum);
+
+		flushIfDue();
+	}
+
+	/**
+	 * Zeichnet einen vollständigen Spielstand nach einem Tick auf. Die Daten
+	 * werden ohne Kopie an den Hintergrund-Thread gegeben und dürfen danach
+	 * nicht mehr verändert werden.
+	 *
+	 * @param tick der Tick
+	 * @param snapshot der Spielstand
+	 * @throws IOException falls der Hintergrund-Thread nicht schreiben konnte
+	 */
+	public void recordKeyframe(long tick, byte[] snapshot) throws IOException {
+		prepare(2 * DemoHeader.MAX_VARINT_BYTES);
+
+		putRecordHeader(tick, DemoHeader.TYPE_KEYFRAME);
+		DemoHeader.putVarLong(current, snapshot.length);
+		handOff();
+		put(new Chunk(ByteBuffer.wrap(snapshot), false));
+	}
+
+	/**
+	 * Meldet Fehler des Hintergrund-Threads und sorgt für genug Platz im Puffer.
+	 */
+	private void prepare(int bytes) throws IOException {
+		if ( error != null ) {
+			throw error;
+		}
+		if ( current.remaining() < bytes ) {
+			handOff();
+		}
+	}
+
+	/**
+	 * Schreibt Tick-Differenz und Typ eines Records.
+	 */
+	private void putRecordHeader(long tick, int type) {
+		DemoHeader.putVarLong(current, ((tick - lastTick) << DemoHeader.TYPE_BITS) | type);
+		lastTick = tick;
+	}
+
+	/**
+	 * Gibt den angefangenen Puffer ab falls er länger als FLUSH_INTERVAL_MILLIS
+	 * nicht geschrieben wurde. Muss im Spiel-Thread aufgerufen werden.
+	 */
+	public void flushIfDue() {
+		if ( System.currentTimeMillis() - lastFlush > FLUSH_INTERVAL_MILLIS ) {
+			handOff();
+		}
+	}
+
+	/**
+	 * Schreibt alle Events, beendet den Hintergrund-Thread und schließt die Datei.
+	 *
+	 * @throws IOException falls beim Schreiben ein Fehler auftrat
+	 */
+	public void close() throws IOException {
+		handOff();
+		put(END);
+		try {
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.force(false);
+		channel.close();
+
+		if ( error != null ) {
+			throw error;
+		}
+	}
+
+	/**
+	 * Gibt den aktuellen Puffer an den Hintergrund-Thread und holt einen freien.
+	 */
+	private void handOff() {
+		lastFlush = System.currentTimeMillis();
+		if ( current.position() == 0 ) {
+			return;
+		}
+
+		current.flip();
+		put(chunk);
+
+		chunk = free.poll();
+		if ( chunk == null ) {
+			chunk = new Chunk(ByteBuffer.allocate(CHUNK_SIZE), true);
+		}
+		current = chunk.buffer;
+	}
+
+	/**
+	 * Stellt einen Puffer in die Warteschlange (wartet falls der Hintergrund-Thread
+	 * nicht hinterherkommt).
+	 */
+	private void put(Chunk entry) {
+		boolean interrupted = false;
+		while ( true ) {
+			try {
+				full.put(entry);
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if ( interrupted ) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Die Schleife des Hintergrund-Threads.
+	 */
+	private void writeLoop() {
+		while ( true ) {
+			Chunk next;
+			try {
+				next = full.take();
+			} catch (InterruptedException e) {
+				continue;
+			}
+			if ( next == END ) {
+				return;
+			}
+
+			ByteBuffer buffer = next.buffer;
+			try {
+				while ( buffer.hasRemaining() && error == null ) {
+					channel.write(buffer);
+				}
+			} catch (IOException e) {
+				error = e;
+			}
+
+			// Nur die eigenen Puffer wiederverwenden (nicht die Arrays der Keyframes)
+			if ( next.pooled ) {
+				buffer.clear();
+				free.offer(next);
+			}
+		}
+	}
+
+	/**
+	 * Ein Puffer in der Warteschlange. Ob er wiederverwendet werden darf wird
+	 * beim Anlegen festgelegt - nicht an seiner Größe erkannt, denn ein
+	 * Keyframe kann zufällig genau CHUNK_SIZE Bytes groß sein.
+	 */
+	private static final class Chunk {
+
+		/** Der Puffer */
+		final ByteBuffer buffer;
+
+		/** true falls der Puffer vom DemoWriter selbst angelegt wurde */
+		final boolean pooled;
+
+		Chunk(ByteBuffer buffer, boolean pooled) {
+			this.buffer = buffer;
+			this.pooled = pooled;
+		}
+	}
+}
@@ -14,6 +14,13 @@ public interface IGameController extends KeyListener {
 
 	public boolean isRecording();
 	
+	/**
+	 * Übernimmt die seit dem letzten Aufruf angefallenen Eingaben. Wird von der
+	 * Hauptspielschleife einmal pro Tick aufgerufen - isKeyPressed und wasKeyHit
+	 * beziehen sich dann auf diesen Tick.
+	 */
+	public void tick();
+	
 	public void saveRecordedEvents(String fileName) throws IOException;
 	
 	public boolean isKeyPressed(int key);
@@ -0,0 +1,18 @@
+package de.gaffga.jumpnrun.controller;
+
+/**
+ * Empfänger für Tastaturevents beim Leeren einer KeyEventQueue.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public interface IKeyEventHandler {
+
+	/**
+	 * Verarbeitet einen Tastaturevent.
+	 *
+	 * @param code der Code der Taste
+	 * @param pressed true falls die Taste gedrückt, false falls sie losgelassen wurde
+	 * @param nanos der Zeitpunkt des Events (System.nanoTime())
+	 */
+	public void handleKeyEvent(int code, boolean pressed, long nanos);
+}
@@ -0,0 +1,109 @@
+package de.gaffga.jumpnrun.controller;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Eine lock-freie Warteschlange für Tastaturevents zwischen genau einem
+ * Erzeuger (dem AWT-Event-Thread) und genau einem Verbraucher (der
+ * Hauptspielschleife).
+ *
+ * Die Events liegen in einem Ringpuffer aus primitiven Arrays. Der Erzeuger
+ * schreibt nur den Puffer und 'tail', der Verbraucher liest den Puffer und
+ * schreibt nur 'head' - so ist weder ein Lock noch ein compareAndSet nötig.
+ * Ist der Puffer voll wird der Event verworfen (und gezählt).
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class KeyEventQueue {
+
+	/** Die Standardgröße des Ringpuffers (Zweierpotenz) */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/** Die Codes der Tasten */
+	private final int[] codes;
+
+	/** Gedrückt (true) oder losgelassen (false) */
+	private final boolean[] pressed;
+
+	/** Die Zeitpunkte (System.nanoTime()) */
+	private final long[] times;
+
+	/** Maske für den Index im Ringpuffer */
+	private final int mask;
+
+	/** Nächster zu lesender Eintrag (schreibt nur der Verbraucher) */
+	private final AtomicInteger head = new AtomicInteger();
+
+	/** Nächster zu schreibender Eintrag (schreibt nur der Erzeuger) */
+	private final AtomicInteger tail = new AtomicInteger();
+
+	/** Anzahl verworfener Events (schreibt nur der Erzeuger) */
+	private volatile int dropped;
+
+	/**
+	 * Konstruktor.
+	 *
+	 * @param capacity die Größe des Ringpuffers (wird auf eine Zweierpotenz aufgerundet)
+	 */
+	public KeyEventQueue(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		codes = new int[size];
+		pressed = new boolean[size];
+		times = new long[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * Fügt einen Event hinzu. Darf nur vom Erzeuger-Thread aufgerufen werden.
+	 *
+	 * @param code der Code der Taste
+	 * @param isPressed true falls die Taste gedrückt wurde
+	 * @param nanos der Zeitpunkt des Events
+	 * @return false falls der Puffer voll war und der Event verworfen wurde
+	 */
+	public boolean offer(int code, boolean isPressed, long nanos) {
+		int t = tail.get();
+		if ( t - head.get() > mask ) {
+			dropped++;
+			return false;
+		}
+
+		int index = t & mask;
+		codes[index] = code;
+		pressed[index] = isPressed;
+		times[index] = nanos;
+
+		// Erst nach dem Schreiben der Daten freigeben
+		tail.lazySet(t + 1);
+		return true;
+	}
+
+	/**
+	 * Übergibt alle wartenden Events in ihrer Reihenfolge an einen Empfänger.
+	 * Darf nur vom Verbraucher-Thread aufgerufen werden.
+	 *
+	 * @param handler der Empfänger
+	 * @return die Anzahl der Events
+	 */
+	public int drain(IKeyEventHandler handler) {
+		int h = head.get();
+		int t = tail.get();
+
+		for ( int i=h ; i!=t ; i++ ) {
+			int index = i & mask;
+			handler.handleKeyEvent(codes[index], pressed[index], times[index]);
+		}
+
+		head.lazySet(t);
+		return t - h;
+	}
+
+	/**
+	 * Liefert die Anzahl der verworfenen Events.
+	 *
+	 * @return die Anzahl der verworfenen Events
+	 */
+	public int getDroppedCount() {
+		return dropped;
+	}
+}
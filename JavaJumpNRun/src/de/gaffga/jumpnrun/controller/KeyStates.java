@@ -0,0 +1,90 @@
+package de.gaffga.jumpnrun.controller;
+
+/**
+ * Die Tastenzustände eines Ticks als Bitsets: welche Tasten gerade gedrückt
+ * sind und welche in diesem Tick angeschlagen wurden.
+ *
+ * Abfragen kommen ohne Boxing und ohne Objekte aus. Tastencodes außerhalb von
+ * 0..MAX_CODE werden ignoriert.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class KeyStates {
+
+	/** Der größte unterstützte Tastencode */
+	public static final int MAX_CODE = 0xFFFF;
+
+	/** Die gedrückten Tasten */
+	private final long[] down = new long[(MAX_CODE >> 6) + 1];
+
+	/** Die in diesem Tick angeschlagenen Tasten */
+	private final long[] hit = new long[(MAX_CODE >> 6) + 1];
+
+	/**
+	 * Eine Taste wurde gedrückt.
+	 *
+	 * @param code der Code der Taste
+	 */
+	public void press(int code) {
+		if ( code < 0 || code > MAX_CODE ) return;
+		down[code >> 6] |= 1L << code;
+		hit[code >> 6] |= 1L << code;
+	}
+
+	/**
+	 * Eine Taste wurde losgelassen.
+	 *
+	 * @param code der Code der Taste
+	 */
+	public void release(int code) {
+		if ( code < 0 || code > MAX_CODE ) return;
+		down[code >> 6] &= ~(1L << code);
+	}
+
+	/**
+	 * Ermittelt ob eine Taste gerade gedrückt ist.
+	 *
+	 * @param code der Code der Taste
+	 * @return true falls die Taste gedrückt ist
+	 */
+	public boolean isDown(int code) {
+		if ( code < 0 || code > MAX_CODE ) return false;
+		return (down[code >> 6] & (1L << code)) != 0;
+	}
+
+	/**
+	 * Fragt ab ob eine Taste in diesem Tick angeschlagen wurde und setzt das
+	 * Flag zurück (damit nur eine Stelle im Spiel darauf reagiert).
+	 *
+	 * @param code der Code der Taste
+	 * @return true falls die Taste angeschlagen wurde
+	 */
+	public boolean consumeHit(int code) {
+		if ( code < 0 || code > MAX_CODE ) return false;
+		long bit = 1L << code;
+		if ( (hit[code >> 6] & bit) == 0 ) {
+			return false;
+		}
+		hit[code >> 6] &= ~bit;
+		return true;
+	}
+
+	/**
+	 * Löscht die Anschläge (zu Beginn eines neuen Ticks).
+	 */
+	public void clearHits() {
+		for ( int i=0 ; i<hit.length ; i++ ) {
+			hit[i] = 0;
+		}
+	}
+
+	/**
+	 * Löscht alle Zustände.
+	 */
+	public void clear() {
+		clearHits();
+		for ( int i=0 ; i<down.length ; i++ ) {
+			down[i] = 0;
+		}
+	}
+}
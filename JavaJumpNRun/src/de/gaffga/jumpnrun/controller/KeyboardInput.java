@@ -1,13 +1,15 @@
 package de.gaffga.jumpnrun.controller;
 
 import java.awt.event.KeyEvent;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import de.gaffga.jumpnrun.RandomService;
+import de.gaffga.jumpnrun.Timer;
 
 /**
  * Handler der Tastatureinhaben entgegennimmt und speichert.
@@ -15,36 +17,86 @@ import java.util.LinkedList;
  * Das Game-Objekt fragt uns dann später wie der Tastenzustand ist wenn
  * es diesen braucht.
  * 
- * Diese Klasse speichert alle Tastaturevents in DemoKeyboardEvent-Objekten wenn
- * recording=true ist.
+ * Die Events kommen im AWT-Event-Thread an und werden dort nur mit Zeitstempel
+ * in eine lock-freie KeyEventQueue gestellt. Die Hauptspielschleife holt sie
+ * einmal pro Tick mit tick() ab und trägt sie in die Bitsets für "gedrückt" und
+ * "in diesem Tick angeschlagen" ein. Alle Abfragen lesen nur diese Bitsets -
+ * ohne Wettlauf zwischen den Threads und ohne Boxing.
+ * 
+ * Während einer Aufzeichnung (startRecording) werden alle Tastaturevents
+ * laufend über einen DemoWriter im binären Demo-Format in eine Datei
+ * geschrieben. Der Kopf enthält dabei den Startwert des RandomService. Jeder
+ * Event trägt die Nummer des Ticks in dem er übernommen wurde - das Spiel muss
+ * dafür im deterministischen Modus laufen (Game.setDeterministic). Zusätzlich
+ * können Prüfsummen des Spielzustands aufgezeichnet werden (recordChecksum).
  * 
  * @author Stefan Gaffga <stefan@gaffga.de>
  */
 public class KeyboardInput implements IGameController {
 
-	/** Map mit den Zuständen von Tasten */
-	private HashMap<Integer, Boolean> pressedKeys = null;
+	/** Die Events vom AWT-Event-Thread */
+	private KeyEventQueue queue = null;
+	
+	/** Die Tastenzustände des aktuellen Ticks */
+	private KeyStates keyStates = null;
 	
-	/** Map mit den Zuständen von einmalig gedrückten Tasten */
-	private HashMap<Integer, Boolean> hitKeys = null;
+	/** Trägt die Events aus der Queue in die Tastenzustände ein */
+	private IKeyEventHandler handler = null;
 
 	/** Flag ob wir gerade die Tastaturevents aufzeichnen (Demo-Recording) */
 	private boolean recording = false;
 
-	/** Start-Zeitpunkt der Aufzeichnung */
-	private long startMillis;
+	/** Die Nummer des aktuellen Ticks seit Beginn der Aufzeichnung */
+	private long tickCount;
+	
+	/** Die Datei der laufenden Aufzeichnung */
+	private File recordingFile = null;
 	
-	/** Liste mit den gespeicherten DemoKeyboardEvents */
-	private LinkedList<DemoKeyboardEvent> recordedEvents = null;
+	/** Schreibt die Aufzeichnung (null falls nicht aufgezeichnet wird) */
+	private DemoWriter demoWriter = null;
 	
 	/**
 	 * Konstruktor.
 	 *
 	 */
 	public KeyboardInput() {
-		pressedKeys = new HashMap<Integer, Boolean>();
-		hitKeys = new HashMap<Integer, Boolean>();
-		recordedEvents = new LinkedList<DemoKeyboardEvent>();
+		queue = new KeyEventQueue(KeyEventQueue.DEFAULT_CAPACITY);
+		keyStates = new KeyStates();
+		
+		handler = new IKeyEventHandler() {
+			public void handleKeyEvent(int code, boolean pressed, long nanos) {
+				if ( recording ) {
+					try {
+						demoWriter.record(tickCount, code, pressed);
+					} catch (IOException e) {
+						Logger.getLogger(KeyboardInput.class.getName()).log(Level.SEVERE, "Fehler beim Schreiben der Demo-Datei - Aufzeichnung beendet", e);
+						recording = false;
+					}
+				}
+				
+				if ( pressed ) {
+					keyStates.press(code);
+				} else {
+					keyStates.release(code);
+				}
+			}
+		};
+	}
+	
+	/**
+	 * Übernimmt die seit dem letzten Tick eingegangenen Events. Anschläge aus
+	 * dem vorherigen Tick verfallen dabei. Während einer Aufzeichnung wird ein
+	 * angefangener Puffer spätestens nach DemoWriter.FLUSH_INTERVAL_MILLIS
+	 * geschrieben - auch wenn keine Events mehr kommen.
+	 */
+	public void tick() {
+		tickCount++;
+		keyStates.clearHits();
+		queue.drain(handler);
+		
+		if ( recording ) {
+			demoWriter.flushIfDue();
+		}
 	}
 	
 	/**
@@ -53,47 +105,86 @@ public class KeyboardInput implements IGameController {
 	 * @param key die Taste die abgefragt werden soll
 	 */
 	public boolean isKeyPressed(int key) {
-		Boolean pressed = pressedKeys.get(key);
-		if (pressed==null) return false;
-		else return pressed;
+		return keyStates.isDown(key);
 	}
 	
 	/**
-	 * Methode um abzufragen ob eine Taste gedrückt wurde (sie kann inzwischen wieder
-	 * losgelassen worden sein).
+	 * Methode um abzufragen ob eine Taste in diesem Tick gedrückt wurde (sie kann 
+	 * inzwischen wieder losgelassen worden sein).
 	 * 
 	 * @param key die zu testende Taste
 	 */
 	public boolean wasKeyHit(int key) {
-		Boolean hit = hitKeys.get(key);
-		if ( hit==null ) return false;
-		else {
-			// Nach dieser Abfrage wieder zurücksetzen
-			hitKeys.put(key,false);
-			return hit;
+		// Nach dieser Abfrage wieder zurücksetzen
+		return keyStates.consumeHit(key);
+	}
+	
+	/**
+	 * Startet eine Aufzeichnung. Die Events werden ab jetzt laufend in die
+	 * Datei geschrieben; der erste folgende Tick hat die Nummer 1. Jede
+	 * Aufzeichnung bekommt einen neuen Startwert des RandomService.
+	 * 
+	 * @param fileName die Datei für die Aufzeichnung
+	 * @param level der Name des Levels für den Kopf der Datei
+	 * @throws IOException falls die Datei nicht angelegt werden kann
+	 */
+	public void startRecording(String fileName, String level) throws IOException {
+		stopRecording();
+		
+		RandomService.getInstance().newSeed();
+		recordingFile = new File(fileName);
+		demoWriter = new DemoWriter(recordingFile, 
+				new DemoHeader(level, RandomService.getInstance().getSeed(), Timer.TICK_RATE));
+		tickCount = 0;
+		recording = true;
+	}
+	
+	/**
+	 * Zeichnet die Prüfsumme des Spielzustands nach dem aktuellen Tick auf.
+	 * 
+	 * @param checksum die Prüfsumme
+	 */
+	public void recordChecksum(long checksum) {
+		if ( !recording ) {
+			return;
+		}
+		try {
+			demoWriter.recordChecksum(tickCount, checksum);
+		} catch (IOException e) {
+			Logger.getLogger(KeyboardInput.class.getName()).log(Level.SEVERE, "Fehler beim Schreiben der Demo-Datei - Aufzeichnung beendet", e);
+			recording = false;
 		}
 	}
 	
 	/**
-	 * Setzt den Recording-Status.
+	 * Zeichnet einen vollständigen Spielstand nach dem aktuellen Tick auf.
 	 * 
-	 * @param recording true damit das Recording stattfindet - sonst false.
+	 * @param snapshot der Spielstand (darf danach nicht mehr verändert werden)
 	 */
-	public void setRecording(boolean recording) {
-		this.recording = recording;
-		if ( recording ) {
-			startMillis = System.currentTimeMillis();
+	public void recordKeyframe(byte[] snapshot) {
+		if ( !recording ) {
+			return;
+		}
+		try {
+			demoWriter.recordKeyframe(tickCount, snapshot);
+		} catch (IOException e) {
+			Logger.getLogger(KeyboardInput.class.getName()).log(Level.SEVERE, "Fehler beim Schreiben der Demo-Datei - Aufzeichnung beendet", e);
+			recording = false;
 		}
 	}
 	
 	/**
-	 * Liefert den Zeitcode der für die zeitliche Markierung der Tastatus-Events beim
-	 * Demo-Recording benötigt wird.
+	 * Beendet eine laufende Aufzeichnung und schließt die Datei.
 	 * 
-	 * @return Millisekunden seit Beginn der Aufzeichnung
+	 * @throws IOException falls beim Schreiben ein Fehler auftrat
 	 */
-	protected long getTimeCode() {
-		return System.currentTimeMillis() - startMillis;
+	public void stopRecording() throws IOException {
+		recording = false;
+		if ( demoWriter != null ) {
+			DemoWriter writer = demoWriter;
+			demoWriter = null;
+			writer.close();
+		}
 	}
 	
 	/**
@@ -102,12 +193,7 @@ public class KeyboardInput implements IGameController {
 	 * @param e der KeyEvent
 	 */
 	public void keyPressed(KeyEvent e) {
-		if ( recording ) {
-			recordedEvents.add(new DemoKeyboardEvent(getTimeCode(), "P", e.getKeyCode()));
-		}
-		
-		pressedKeys.put(e.getKeyCode(), true);
-		hitKeys.put(e.getKeyCode(), true);
+		queue.offer(e.getKeyCode(), true, System.nanoTime());
 	}
 
 	/**
@@ -116,11 +202,7 @@ public class KeyboardInput implements IGameController {
 	 * @param e der KeyEvent
 	 */
 	public void keyReleased(KeyEvent e) {
-		if ( recording ) {
-			recordedEvents.add(new DemoKeyboardEvent(getTimeCode(), "R", e.getKeyCode()));
-		}
-		
-		pressedKeys.put(e.getKeyCode(), false);
+		queue.offer(e.getKeyCode(), false, System.nanoTime());
 	}
 
 	/**
@@ -132,15 +214,6 @@ public class KeyboardInput implements IGameController {
 		/* interessiert uns nicht */
 	}
 	
-	/**
-	 * Liefert die aufgezeichneten Tastaturevents.
-	 * 
-	 * @return die Liste mit den Tastaturevents
-	 */
-	public LinkedList<DemoKeyboardEvent> getRecordedEvents() {
-		return recordedEvents;
-	}
-
 	/**
 	 * Liefert den Aufzeichnungsstatus.
 	 * 
@@ -151,23 +224,19 @@ public class KeyboardInput implements IGameController {
 	}
 
 	/**
-	 * Speichert die aufgezeichneten Events in die angegebene Datei.
+	 * Beendet die Aufzeichnung. Die Events stehen bereits in der Datei der
+	 * Aufzeichnung - ist eine andere Datei angegeben wird sie dorthin kopiert.
 	 * 
 	 * @param fileName der Dateiname
 	 * @throws IOException 
 	 */
 	public void saveRecordedEvents(String fileName) throws IOException {
-		LinkedList<DemoKeyboardEvent> events = getRecordedEvents();
+		File file = recordingFile;
+		stopRecording();
 		
-		File file = new File(fileName);
-		FileWriter fw = new FileWriter(file);
-		BufferedWriter bw = new BufferedWriter(fw);
-		
-		for ( DemoKeyboardEvent ev : events ) {
-			bw.write(ev.toString());
-			bw.write("\n");
+		File target = new File(fileName);
+		if ( file != null && !file.getAbsoluteFile().equals(target.getAbsoluteFile()) ) {
+			Files.copy(file.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
 		}
-		
-		bw.close();
 	}
 }
@@ -23,10 +23,23 @@ public class KeyboardInputAdapter implements IGameController {
 		this.demoPlayback = demo;
 	}
 	
+	/**
+	 * Liefert das DemoPlayback-Objekt.
+	 * 
+	 * @return das DemoPlayback-Objekt
+	 */
+	public DemoPlayback getDemoPlayback() {
+		return demoPlayback;
+	}
+	
 	public boolean isKeyPressed(int key) {
 		return demoPlayback.isKeyDown(key);
 	}
 
+	public void tick() {
+		demoPlayback.step();
+	}
+
 	public boolean isRecording() {
 		// Nicht implementiert
 		return false;
@@ -1,24 +1,73 @@
 package de.gaffga.jumpnrun.effects;
 
 import java.awt.Image;
-import java.util.LinkedList;
-import java.util.List;
+import java.awt.Point;
+
+import de.gaffga.jumpnrun.effects.imagemovestrategies.FallImageMove;
+import de.gaffga.jumpnrun.effects.imagemovestrategies.IImageMoveStrategy;
+import de.gaffga.jumpnrun.effects.imagemovestrategies.StaticImageMove;
+import de.gaffga.jumpnrun.effects.particles.ParticleSystem;
+import de.gaffga.jumpnrun.map.Map;
+import de.gaffga.jumpnrun.sprites.ILayerPainter;
 
 /**
  * Verwaltet alle ablaufenden Effekte.
  * 
+ * Gezeichnet werden die Effekte vom SpriteManager im Effekt-Layer.
+ * 
+ * Die Effekte liegen in einem Array. Fertige Effekte werden in einem einzigen
+ * Durchlauf entfernt (die übrigen rücken in ihrer Reihenfolge auf) und mit 
+ * reset() zurückgesetzt. Effekte und Bewegungsstrategien die über die 
+ * obtain...-Methoden geholt wurden kehren dabei in ihre Pools zurück - viele
+ * gleichzeitige Effekte (z.B. beim Einsammeln vieler Münzen) erzeugen so 
+ * keinen Müll.
+ * 
+ * Ein ParticleSystem kann angehängt werden - es wird dann zusammen mit den
+ * Effekten bewegt und nach ihnen gezeichnet.
+ * 
  * @author Stefan Gaffga <stefan@gaffga.de>
  */
-public class EffectManager {
+public class EffectManager implements ILayerPainter {
 
-	/** Die Liste aller aktiven Effekte */
-	private List<IEffect> effects = null;
+	/** Die aktiven Effekte */
+	private IEffect[] effects = null;
+	
+	/** Anzahl der aktiven Effekte */
+	private int effectCount;
+	
+	/** Pool für Bildeffekte */
+	private ObjectPool<ImageMoveEffect> imageMovePool = null;
+	
+	/** Pool für Fall-Bewegungen */
+	private ObjectPool<FallImageMove> fallPool = null;
+	
+	/** Pool für stehende Bilder */
+	private ObjectPool<StaticImageMove> staticPool = null;
+	
+	/** Das Partikelsystem (darf null sein) */
+	private ParticleSystem particleSystem = null;
 	
 	/**
 	 * Konstruktor.
 	 */
 	public EffectManager() {
-		effects = new LinkedList<IEffect>();
+		effects = new IEffect[32];
+		
+		imageMovePool = new ObjectPool<ImageMoveEffect>() {
+			protected ImageMoveEffect create() {
+				return new ImageMoveEffect(this);
+			}
+		};
+		fallPool = new ObjectPool<FallImageMove>() {
+			protected FallImageMove create() {
+				return new FallImageMove(this);
+			}
+		};
+		staticPool = new ObjectPool<StaticImageMove>() {
+			protected StaticImageMove create() {
+				return new StaticImageMove(this);
+			}
+		};
 	}
 	
 	/**
@@ -27,31 +76,101 @@ public class EffectManager {
 	 * @param effekt der neue Effekt
 	 */
 	public void addEffect(IEffect effekt) {
-		effects.add(effekt);
+		if ( effectCount == effects.length ) {
+			IEffect[] grown = new IEffect[effects.length * 2];
+			System.arraycopy(effects, 0, grown, 0, effectCount);
+			effects = grown;
+		}
+		effects[effectCount++] = effekt;
 		effekt.start();
 	}
 	
+	/**
+	 * Liefert einen Bildeffekt aus dem Pool. Er geht zurück in den Pool sobald
+	 * er fertig ist.
+	 * 
+	 * @param img das Bild das bewegt werden soll
+	 * @param map die Map auf der der Effekt abgespielt wird
+	 * @param moveStrategy die Bewegungsstrategie des Bildes
+	 * @return der Effekt
+	 */
+	public ImageMoveEffect obtainImageMoveEffect(Image img, Map map, IImageMoveStrategy moveStrategy) {
+		ImageMoveEffect effect = imageMovePool.obtain();
+		effect.init(img, map, moveStrategy);
+		return effect;
+	}
+	
+	/**
+	 * Liefert eine Fall-Bewegung aus dem Pool.
+	 * 
+	 * @param start die Start-Koordinaten der Bewegung in MapPixeln
+	 * @param destinationY Y-Koordinate ab der das Bild als "herausgefallen" gilt
+	 * @return die Bewegungsstrategie
+	 */
+	public FallImageMove obtainFallImageMove(Point start, float destinationY) {
+		FallImageMove move = fallPool.obtain();
+		move.init(start.x, start.y, destinationY);
+		return move;
+	}
+	
+	/**
+	 * Liefert ein stehendes Bild aus dem Pool.
+	 * 
+	 * @param time die Anzahl an Millisekunden die das Bild gezeigt werden soll
+	 * @param pos die Position an der das Bild stehen soll
+	 * @return die Bewegungsstrategie
+	 */
+	public StaticImageMove obtainStaticImageMove(int time, Point pos) {
+		StaticImageMove move = staticPool.obtain();
+		move.init(time, pos.x, pos.y);
+		return move;
+	}
+	
+	/**
+	 * Hängt ein Partikelsystem an.
+	 * 
+	 * @param particleSystem das Partikelsystem oder null
+	 */
+	public void setParticleSystem(ParticleSystem particleSystem) {
+		this.particleSystem = particleSystem;
+	}
+	
+	/**
+	 * Liefert das angehängte Partikelsystem.
+	 * 
+	 * @return das Partikelsystem oder null
+	 */
+	public ParticleSystem getParticleSystem() {
+		return particleSystem;
+	}
+	
 	/**
 	 * Führt einen Schritt für alle Effekte aus.
 	 * 
 	 */
 	public void step() {
-		for ( IEffect effect : effects ) {
-			effect.step();
+		for ( int i=0 ; i<effectCount ; i++ ) {
+			effects[i].step();
 		}
 		
-		// Herausfinden welche Effekte fertig sind und entfernen
-		boolean removed = true;
-		while ( removed ) {
-			removed=false;
-			for ( IEffect effect : effects ) {
-				if (effect.isFinished() ) {
-					effects.remove(effect);
-					removed=true;
-					break;
-				}
+		// Fertige Effekte in einem Durchlauf entfernen
+		int n = 0;
+		for ( int i=0 ; i<effectCount ; i++ ) {
+			IEffect effect = effects[i];
+			if ( effect.isFinished() ) {
+				effect.reset();
+			} else {
+				effects[n++] = effect;
 			}
 		}
+		for ( int i=n ; i<effectCount ; i++ ) {
+			effects[i] = null;
+		}
+		effectCount = n;
+		
+		if ( particleSystem != null ) {
+			particleSystem.step();
+		}
 	}
 	
 	/**
@@ -59,15 +178,48 @@ public class EffectManager {
 	 * 
 	 */
 	public void draw(Image image) {
-		for ( IEffect effect : effects ) {
-			effect.draw(image);
+		for ( int i=0 ; i<effectCount ; i++ ) {
+			effects[i].draw(image);
+		}
+		
+		if ( particleSystem != null ) {
+			particleSystem.draw(image);
 		}
 	}
 
+	/**
+	 * Liefert die Anzahl der aktiven Effekte.
+	 * 
+	 * @return die Anzahl der Effekte
+	 */
+	public int getEffectCount() {
+		return effectCount;
+	}
+
 	/**
 	 * Löscht alle Einträge.
 	 */
 	public void flush() {
-		effects.clear();
+		clear();
+		
+		if ( particleSystem != null ) {
+			particleSystem.flush();
+		}
+	}
+	
+	/**
+	 * Beendet alle laufenden Effekte und Partikel (z.B. nach dem Wiederherstellen
+	 * eines Spielstands). Die Emitter des Partikelsystems bleiben erhalten.
+	 */
+	public void clear() {
+		for ( int i=0 ; i<effectCount ; i++ ) {
+			effects[i].reset();
+			effects[i] = null;
+		}
+		effectCount = 0;
+		
+		if ( particleSystem != null ) {
+			particleSystem.clearParticles();
+		}
 	}
 }
@@ -26,6 +26,13 @@ public interface IEffect {
 	 */
 	public boolean isFinished();
 	
+	/**
+	 * Setzt den Effekt zurück wenn er fertig ist oder verworfen wird. Alle
+	 * Referenzen werden freigegeben und ein Effekt aus einem Pool geht an 
+	 * diesen zurück - danach darf er nicht mehr benutzt werden.
+	 */
+	public void reset();
+	
 	/**
 	 * Zeichnet den Effekt auf eine Bitmap.
 	 */
@@ -10,6 +10,9 @@ import de.gaffga.jumpnrun.map.Map;
 /**
  * Klasse die den Effekt eines bewegten Bildes implementiert.
  * 
+ * Die Objekte können über den EffectManager aus einem Pool geholt werden, 
+ * reset() gibt sie dann samt Bewegungsstrategie wieder zurück.
+ * 
  * @author Stefan Gaffga <stefan@gaffga.de>
  */
 public class ImageMoveEffect implements IEffect {
@@ -26,6 +29,9 @@ public class ImageMoveEffect implements IEffect {
 	/** Die Map auf der der Effekt abgespielt werden soll */
 	private Map map = null;
 	
+	/** Der Pool aus dem der Effekt stammt (null = kein Pool) */
+	private ObjectPool<ImageMoveEffect> pool = null;
+	
 	/**
 	 * Konstruktor.
 	 * 
@@ -33,6 +39,25 @@ public class ImageMoveEffect implements IEffect {
 	 * @param moveStrategy die Bewegungsstrategie des Bildes
 	 */
 	public ImageMoveEffect(Image img, Map map, IImageMoveStrategy moveStrategy) {
+		init(img, map, moveStrategy);
+	}
+	
+	/**
+	 * Konstruktor für den Pool.
+	 * 
+	 * @param pool der Pool an den der Effekt bei reset() zurückgeht
+	 */
+	ImageMoveEffect(ObjectPool<ImageMoveEffect> pool) {
+		this.pool = pool;
+	}
+	
+	/**
+	 * Richtet den Effekt (neu) ein.
+	 * 
+	 * @param img das Bild das bewegt werden soll
+	 * @param moveStrategy die Bewegungsstrategie des Bildes
+	 */
+	void init(Image img, Map map, IImageMoveStrategy moveStrategy) {
 		this.image = img;
 		this.moveStrategy = moveStrategy;
 		this.map = map;
@@ -66,9 +91,27 @@ public class ImageMoveEffect implements IEffect {
 	 */
 	public void draw(Image image) {
 		Graphics g = image.getGraphics();
-		Point screenP = map.getPosScreenPixelFromPosMapPixel(currentPosition);
+		int x = map.getScreenPixelX(currentPosition.x);
+		int y = map.getScreenPixelY(currentPosition.y);
 		// Da beim Zeichnen der Bilder die linke obere und nicht die linke _untere_ Kante zählt (welche wir ja
 		// hier haben) - muss noch die Höhe des Bildes von der Y-Koordinate abgezogen werden.
-		g.drawImage(this.image, screenP.x, screenP.y - this.image.getHeight(null), null);
+		g.drawImage(this.image, x, y - this.image.getHeight(null), null);
+	}
+
+	/** 
+	 * {@inheritDoc}
+	 */
+	public void reset() {
+		if ( moveStrategy != null ) {
+			moveStrategy.reset();
+		}
+		image = null;
+		moveStrategy = null;
+		currentPosition = null;
+		map = null;
+		
+		if ( pool != null ) {
+			pool.free(this);
+		}
 	}
 }
@@ -0,0 +1,80 @@
+package de.gaffga.jumpnrun.effects;
+
+/**
+ * Ein einfacher Pool für wiederverwendbare Objekte (Effekte und Bewegungsstrategien).
+ *
+ * Freigegebene Objekte werden in einem Array gesammelt und beim nächsten
+ * obtain() wieder herausgegeben. Erst wenn der Pool leer ist wird mit create()
+ * ein neues Objekt erzeugt. Der Pool ist nicht threadsicher - er wird nur vom
+ * Spiel-Thread benutzt.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public abstract class ObjectPool<T> {
+
+	/** Die freien Objekte */
+	private Object[] free = new Object[16];
+
+	/** Anzahl der freien Objekte */
+	private int freeCount;
+
+	/** Anzahl der insgesamt erzeugten Objekte */
+	private int created;
+
+	/**
+	 * Erzeugt ein neues Objekt falls der Pool leer ist.
+	 *
+	 * @return das neue Objekt
+	 */
+	protected abstract T create();
+
+	/**
+	 * Liefert ein freies Objekt aus dem Pool oder ein neues.
+	 *
+	 * @return das Objekt
+	 */
+	@SuppressWarnings("unchecked")
+	public T obtain() {
+		if ( freeCount == 0 ) {
+			created++;
+			return create();
+		}
+
+		T object = (T) free[--freeCount];
+		free[freeCount] = null;
+		return object;
+	}
+
+	/**
+	 * Gibt ein Objekt an den Pool zurück. Der Aufrufer darf es danach nicht
+	 * mehr benutzen.
+	 *
+	 * @param object das Objekt
+	 */
+	public void free(T object) {
+		if ( freeCount == free.length ) {
+			Object[] grown = new Object[free.length * 2];
+			System.arraycopy(free, 0, grown, 0, freeCount);
+			free = grown;
+		}
+		free[freeCount++] = object;
+	}
+
+	/**
+	 * Liefert die Anzahl der freien Objekte.
+	 *
+	 * @return die Anzahl der freien Objekte
+	 */
+	public int getFreeCount() {
+		return freeCount;
+	}
+
+	/**
+	 * Liefert die Anzahl der insgesamt erzeugten Objekte.
+	 *
+	 * @return die Anzahl der erzeugten Objekte
+	 */
+	public int getCreatedCount() {
+		return created;
+	}
+}
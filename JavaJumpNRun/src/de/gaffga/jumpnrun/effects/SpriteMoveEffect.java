@@ -64,4 +64,11 @@ public class SpriteMoveEffect implements IEffect {
 		// nichts zu tun
 	}
 
+	/** 
+	 * {@inheritDoc}
+	 */
+	public void reset() {
+		moveStrategy.reset();
+	}
+
 }
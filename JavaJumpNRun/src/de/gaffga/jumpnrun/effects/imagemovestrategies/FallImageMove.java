@@ -4,6 +4,8 @@ import java.awt.Point;
 
 import de.gaffga.jumpnrun.FloatPosition;
 import de.gaffga.jumpnrun.FpsMeter;
+import de.gaffga.jumpnrun.RandomService;
+import de.gaffga.jumpnrun.effects.ObjectPool;
 
 /**
  * Strategie für den ImageMover der ein fallendes Image erzeugt.
@@ -19,6 +21,9 @@ public class FallImageMove implements IImageMoveStrategy {
 	/** Die Startposition */
 	private FloatPosition startPosition = null;
 	
+	/** Die aktuelle Position als Point (wird für getCurrentPosition wiederverwendet) */
+	private Point point = null;
+	
 	/** Die aktuelle Bewegungsrichtung X */
 	private float velX;
 	
@@ -31,19 +36,47 @@ public class FallImageMove implements IImageMoveStrategy {
 	/** Y-Koordinate ab der das Bild als "herausgefallen" gilt */
 	private float destinationY;
 	
+	/** Der Pool aus dem die Strategie stammt (null = kein Pool) */
+	private ObjectPool<FallImageMove> pool = null;
+	
 	/**
 	 * Konstruktor.
 	 *
 	 * @param start Die Start-Koordinaten der Bewegung in MapPixeln.
 	 */
 	public FallImageMove(Point start, float destinationY) {
-		startPosition = new FloatPosition(start.x,start.y);
-		currentPosition = startPosition;
+		this((ObjectPool<FallImageMove>) null);
+		init(start.x, start.y, destinationY);
+	}
+	
+	/**
+	 * Konstruktor für den Pool.
+	 * 
+	 * @param pool der Pool an den die Strategie bei reset() zurückgeht
+	 */
+	public FallImageMove(ObjectPool<FallImageMove> pool) {
+		startPosition = new FloatPosition(0, 0);
+		currentPosition = new FloatPosition(0, 0);
+		point = new Point();
+		this.pool = pool;
+	}
+	
+	/**
+	 * Richtet die Strategie (neu) ein.
+	 * 
+	 * @param x X-Koordinate des Starts in MapPixeln
+	 * @param y Y-Koordinate des Starts in MapPixeln
+	 * @param destinationY Y-Koordinate ab der das Bild als "herausgefallen" gilt
+	 */
+	public void init(int x, int y, float destinationY) {
+		startPosition.x = x;
+		startPosition.y = y;
 		this.destinationY = destinationY;
 	}
 	
 	public Point getCurrentPosition() {
-		return new Point((int)currentPosition.x, (int)currentPosition.y);
+		point.setLocation((int)currentPosition.x, (int)currentPosition.y);
+		return point;
 	}
 
 	public boolean isFinished() {
@@ -51,8 +84,9 @@ public class FallImageMove implements IImageMoveStrategy {
 	}
 
 	public void start() {
-		currentPosition = startPosition;
-		velX = (float) (200.0f * Math.random() - 100.0f);
+		currentPosition.x = startPosition.x;
+		currentPosition.y = startPosition.y;
+		velX = 200.0f * RandomService.getInstance().getStream(RandomService.STREAM_EFFECTS).nextFloat() - 100.0f;
 		velY = 400.0f;
 		finished = false;
 	}
@@ -67,4 +101,10 @@ public class FallImageMove implements IImageMoveStrategy {
 			finished=true;
 		}
 	}
+
+	public void reset() {
+		if ( pool != null ) {
+			pool.free(this);
+		}
+	}
 }
@@ -32,4 +32,11 @@ public interface IImageMoveStrategy {
 	 * Führt einen Schritt der Bewegung aus.
 	 */
 	public void step();
+	
+	/**
+	 * Setzt die Strategie zurück wenn die Bewegung nicht mehr gebraucht wird. 
+	 * Eine Strategie aus einem Pool geht an diesen zurück - danach darf sie 
+	 * nicht mehr benutzt werden.
+	 */
+	public void reset();
 }
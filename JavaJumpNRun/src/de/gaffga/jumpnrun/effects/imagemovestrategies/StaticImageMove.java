@@ -3,6 +3,7 @@ package de.gaffga.jumpnrun.effects.imagemovestrategies;
 import java.awt.Point;
 
 import de.gaffga.jumpnrun.FpsMeter;
+import de.gaffga.jumpnrun.effects.ObjectPool;
 
 
 /**
@@ -20,6 +21,9 @@ public class StaticImageMove implements IImageMoveStrategy {
 	
 	/** Die Endzeit */
 	private long endTime;
+	
+	/** Der Pool aus dem die Strategie stammt (null = kein Pool) */
+	private ObjectPool<StaticImageMove> pool = null;
 
 	/**
 	 * Konstruktor.
@@ -28,8 +32,30 @@ public class StaticImageMove implements IImageMoveStrategy {
 	 * @param pos die Position an der das Bild stehen soll
 	 */
 	public StaticImageMove(int time, Point pos) {
+		this.currentPosition = new Point();
+		init(time, pos.x, pos.y);
+	}
+	
+	/**
+	 * Konstruktor für den Pool.
+	 * 
+	 * @param pool der Pool an den die Strategie bei reset() zurückgeht
+	 */
+	public StaticImageMove(ObjectPool<StaticImageMove> pool) {
+		this.currentPosition = new Point();
+		this.pool = pool;
+	}
+	
+	/**
+	 * Richtet die Strategie (neu) ein.
+	 * 
+	 * @param time die Anzahl an Millisekunden die das Bild gezeigt werden soll
+	 * @param x X-Position an der das Bild stehen soll
+	 * @param y Y-Position an der das Bild stehen soll
+	 */
+	public void init(int time, int x, int y) {
 		this.endTime = time;
-		this.currentPosition = pos;
+		this.currentPosition.setLocation(x, y);
 	}
 	
 	public Point getCurrentPosition() {
@@ -47,4 +73,10 @@ public class StaticImageMove implements IImageMoveStrategy {
 	public void step() {
 		time += (1000.0 * FpsMeter.getInstance().getSpeedFactor());
 	}
+
+	public void reset() {
+		if ( pool != null ) {
+			pool.free(this);
+		}
+	}
 }
@@ -0,0 +1,174 @@
+package de.gaffga.jumpnrun.effects.particles;
+
+/**
+ * Ein Emitter legt fest wie Partikel aussehen und wie sie sich bewegen, und
+ * erzeugt sie falls er beim ParticleSystem angemeldet ist laufend mit einer
+ * festen Rate an seiner Position.
+ *
+ * Diese Klasse steht an einer festen Position, die Unterklassen hängen sich an
+ * ein Tile oder ein Sprite. Ein Emitter kann auch ohne Anmeldung als Vorlage
+ * für einzelne Ausbrüche (ParticleSystem.burst) benutzt werden.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class ParticleEmitter {
+
+	/** Das Bild der Partikel (Index im ParticleSystem) */
+	private int image;
+
+	/** Partikel pro Sekunde (0 = nur Ausbrüche) */
+	private float rate;
+
+	/** Die Richtung in Bogenmaß (0 = rechts, PI/2 = oben) */
+	private float angle = (float) (Math.PI / 2);
+
+	/** Die Streuung um die Richtung in Bogenmaß (in beide Richtungen) */
+	private float spread = (float) Math.PI;
+
+	/** Die kleinste Geschwindigkeit in Pixeln pro Sekunde */
+	private float minSpeed = 50.0f;
+
+	/** Die größte Geschwindigkeit in Pixeln pro Sekunde */
+	private float maxSpeed = 150.0f;
+
+	/** Die Lebensdauer der Partikel in Sekunden */
+	private float life = 0.5f;
+
+	/** Die Schwerkraft für die Partikel in Pixeln pro Sekunde² */
+	private float gravity = 0.0f;
+
+	/** Die X-Position in Map-Pixeln */
+	private int x;
+
+	/** Die Y-Position in Map-Pixeln */
+	private int y;
+
+	/** Noch nicht erzeugte Bruchteile von Partikeln */
+	private float pending;
+
+	/**
+	 * Konstruktor.
+	 *
+	 * @param image das Bild der Partikel (Index aus ParticleSystem.addImage)
+	 * @param rate Partikel pro Sekunde (0 = nur Ausbrüche)
+	 */
+	public ParticleEmitter(int image, float rate) {
+		this.image = image;
+		this.rate = rate;
+	}
+
+	/**
+	 * Legt fest in welche Richtung die Partikel fliegen.
+	 *
+	 * @param angle die Richtung in Bogenmaß (0 = rechts, PI/2 = oben)
+	 * @param spread die Streuung um die Richtung in Bogenmaß
+	 * @param minSpeed die kleinste Geschwindigkeit in Pixeln pro Sekunde
+	 * @param maxSpeed die größte Geschwindigkeit in Pixeln pro Sekunde
+	 */
+	public void setVelocity(float angle, float spread, float minSpeed, float maxSpeed) {
+		this.angle = angle;
+		this.spread = spread;
+		this.minSpeed = minSpeed;
+		this.maxSpeed = maxSpeed;
+	}
+
+	/**
+	 * Setzt die Lebensdauer der Partikel.
+	 *
+	 * @param life die Lebensdauer in Sekunden
+	 */
+	public void setLife(float life) {
+		this.life = life;
+	}
+
+	/**
+	 * Setzt die Schwerkraft für die Partikel.
+	 *
+	 * @param gravity die Schwerkraft in Pixeln pro Sekunde²
+	 */
+	public void setGravity(float gravity) {
+		this.gravity = gravity;
+	}
+
+	/**
+	 * Setzt die Position eines frei stehenden Emitters.
+	 *
+	 * @param x X-Position in Map-Pixeln
+	 * @param y Y-Position in Map-Pixeln
+	 */
+	public void setPosition(int x, int y) {
+		this.x = x;
+		this.y = y;
+	}
+
+	/**
+	 * Liefert die aktuelle X-Position.
+	 *
+	 * @return X-Position in Map-Pixeln
+	 */
+	public int getX() {
+		return x;
+	}
+
+	/**
+	 * Liefert die aktuelle Y-Position.
+	 *
+	 * @return Y-Position in Map-Pixeln
+	 */
+	public int getY() {
+		return y;
+	}
+
+	/**
+	 * Liefert ob der Emitter noch gebraucht wird. Sonst meldet ihn das
+	 * ParticleSystem ab.
+	 *
+	 * @return true falls der Emitter weiter Partikel erzeugen soll
+	 */
+	public boolean isAlive() {
+		return true;
+	}
+
+	/**
+	 * Erzeugt die in diesem Frame fälligen Partikel.
+	 *
+	 * @param system das ParticleSystem
+	 * @param speedFactor die Dauer des Frames in Sekunden
+	 */
+	void step(ParticleSystem system, float speedFactor) {
+		pending += rate * speedFactor;
+		int count = (int) pending;
+		if ( count > 0 ) {
+			pending -= count;
+			system.burst(this, getX(), getY(), count);
+		}
+	}
+
+	public int getImage() {
+		return image;
+	}
+
+	public float getAngle() {
+		return angle;
+	}
+
+	public float getSpread() {
+		return spread;
+	}
+
+	public float getMinSpeed() {
+		return minSpeed;
+	}
+
+	public float getMaxSpeed() {
+		return maxSpeed;
+	}
+
+	public float getLife() {
+		return life;
+	}
+
+	public float getGravity() {
+		return gravity;
+	}
+}
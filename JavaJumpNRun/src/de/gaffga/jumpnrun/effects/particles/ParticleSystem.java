@@ -0,0 +1,324 @@
+package de.gaffga.jumpnrun.effects.particles;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+
+import de.gaffga.jumpnrun.FpsMeter;
+import de.gaffga.jumpnrun.RandomService;
+import de.gaffga.jumpnrun.RandomStream;
+import de.gaffga.jumpnrun.map.Map;
+
+/**
+ * Ein Partikelsystem für viele kleine, kurzlebige Bilder (Funken, Trümmer,
+ * Glitzern).
+ *
+ * Die Partikel sind keine Objekte sondern liegen in primitiven Arrays
+ * (Position, Geschwindigkeit, Lebensdauer, Bild). Sie werden in einer
+ * einzigen Schleife bewegt und in einem Durchgang mit einer gemeinsamen
+ * Translation von Map- in Bildschirmkoordinaten gezeichnet.
+ *
+ * Die Anzahl gleichzeitiger Partikel ist hart begrenzt, ebenso die Anzahl der
+ * pro Schritt neu erzeugten (spawnBudget), damit viele gleichzeitige
+ * Ausbrüche nicht einen einzelnen Frame überlasten. Ist eine der Grenzen
+ * erreicht werden neue Partikel einfach verworfen.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class ParticleSystem {
+
+	/** Die Standard-Obergrenze für gleichzeitige Partikel */
+	public static final int DEFAULT_MAX_PARTICLES = 2048;
+
+	/** Die Standard-Obergrenze für neue Partikel pro Schritt */
+	public static final int DEFAULT_SPAWN_BUDGET = 256;
+
+	/** Die Map (für die Umrechnung in Bildschirmkoordinaten) */
+	private Map map = null;
+
+	/** Die Obergrenze für gleichzeitige Partikel */
+	private int maxParticles;
+
+	/** Anzahl der lebenden Partikel */
+	private int count;
+
+	/** Die Obergrenze für neue Partikel pro Schritt */
+	private int spawnBudget = DEFAULT_SPAWN_BUDGET;
+
+	/** Anzahl der seit dem letzten Schritt erzeugten Partikel */
+	private int spawned;
+
+	/** X-Positionen in Map-Pixeln */
+	private float[] posX = null;
+
+	/** Y-Positionen in Map-Pixeln */
+	private float[] posY = null;
+
+	/** X-Geschwindigkeiten in Pixeln pro Sekunde */
+	private float[] velX = null;
+
+	/** Y-Geschwindigkeiten in Pixeln pro Sekunde */
+	private float[] velY = null;
+
+	/** Schwerkraft je Partikel in Pixeln pro Sekunde² */
+	private float[] gravity = null;
+
+	/** Verbleibende Lebensdauer in Sekunden */
+	private float[] life = null;
+
+	/** Das Bild je Partikel (Index in images) */
+	private int[] image = null;
+
+	/** Die Bilder der Partikel */
+	private Image[] images = new Image[0];
+
+	/** Breite der Bilder */
+	private int[] imageWidth = new int[0];
+
+	/** Höhe der Bilder */
+	private int[] imageHeight = new int[0];
+
+	/** Die angemeldeten Emitter */
+	private ArrayList<ParticleEmitter> emitters = new ArrayList<ParticleEmitter>();
+
+	/** Anzahl der wegen der Grenzen verworfenen Partikel (für die Statistik) */
+	private int dropped;
+
+	/** Zufallszahlen für Richtung und Geschwindigkeit */
+	private RandomStream random = RandomService.getInstance().getStream(RandomService.STREAM_PARTICLES);
+
+	/**
+	 * Konstruktor.
+	 *
+	 * @param map die Map auf der die Partikel fliegen
+	 * @param maxParticles die Obergrenze für gleichzeitige Partikel
+	 */
+	public ParticleSystem(Map map, int maxParticles) {
+		this.map = map;
+		this.maxParticles = maxParticles;
+		posX = new float[maxParticles];
+		posY = new float[maxParticles];
+		velX = new float[maxParticles];
+		velY = new float[maxParticles];
+		gravity = new float[maxParticles];
+		life = new float[maxParticles];
+		image = new int[maxParticles];
+	}
+
+	/**
+	 * Setzt die Obergrenze für neue Partikel pro Schritt.
+	 *
+	 * @param spawnBudget die Anzahl der Partikel die zwischen zwei Schritten höchstens erzeugt werden
+	 */
+	public void setSpawnBudget(int spawnBudget) {
+		this.spawnBudget = spawnBudget;
+	}
+
+	/**
+	 * Meldet ein Bild für Partikel an.
+	 *
+	 * @param img das Bild
+	 * @return der Index des Bildes (für die Emitter)
+	 */
+	public int addImage(Image img) {
+		int index = images.length;
+		Image[] grownImages = new Image[index + 1];
+		int[] grownWidth = new int[index + 1];
+		int[] grownHeight = new int[index + 1];
+		System.arraycopy(images, 0, grownImages, 0, index);
+		System.arraycopy(imageWidth, 0, grownWidth, 0, index);
+		System.arraycopy(imageHeight, 0, grownHeight, 0, index);
+		grownImages[index] = img;
+		grownWidth[index] = img.getWidth(null);
+		grownHeight[index] = img.getHeight(null);
+		images = grownImages;
+		imageWidth = grownWidth;
+		imageHeight = grownHeight;
+		return index;
+	}
+
+	/**
+	 * Erzeugt ein einfarbiges, quadratisches Bild für Partikel.
+	 *
+	 * @param color die Farbe
+	 * @param size die Kantenlänge in Pixeln
+	 * @return das Bild
+	 */
+	public static Image createDotImage(Color color, int size) {
+		BufferedImage img = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+		Graphics g = img.getGraphics();
+		g.setColor(color);
+		g.fillRect(0, 0, size, size);
+		g.dispose();
+		return img;
+	}
+
+	/**
+	 * Meldet einen Emitter an der laufend Partikel erzeugt.
+	 *
+	 * @param emitter der Emitter
+	 */
+	public void addEmitter(ParticleEmitter emitter) {
+		emitters.add(emitter);
+	}
+
+	/**
+	 * Meldet einen Emitter ab.
+	 *
+	 * @param emitter der Emitter
+	 */
+	public void removeEmitter(ParticleEmitter emitter) {
+		emitters.remove(emitter);
+	}
+
+	/**
+	 * Erzeugt mehrere Partikel auf einmal an einer Position.
+	 *
+	 * @param emitter der Emitter der Aussehen und Bewegung festlegt
+	 * @param x X-Position in Map-Pixeln
+	 * @param y Y-Position in Map-Pixeln
+	 * @param num die Anzahl der Partikel
+	 */
+	public void burst(ParticleEmitter emitter, int x, int y, int num) {
+		int img = emitter.getImage();
+		float angle = emitter.getAngle();
+		float spread = emitter.getSpread();
+		float minSpeed = emitter.getMinSpeed();
+		float speedRange = emitter.getMaxSpeed() - minSpeed;
+
+		for ( int n=0 ; n<num ; n++ ) {
+			if ( count == maxParticles || spawned == spawnBudget ) {
+				dropped += num - n;
+				return;
+			}
+			spawned++;
+
+			float a = angle + spread * (2.0f * random.nextFloat() - 1.0f);
+			float speed = minSpeed + speedRange * random.nextFloat();
+
+			// Bildmitte auf die Position setzen
+			posX[count] = x - imageWidth[img] / 2;
+			posY[count] = y - imageHeight[img] / 2;
+			velX[count] = (float) Math.cos(a) * speed;
+			velY[count] = (float) Math.sin(a) * speed;
+			gravity[count] = emitter.getGravity();
+			life[count] = emitter.getLife();
+			image[count] = img;
+			count++;
+		}
+	}
+
+	/**
+	 * Führt einen Schritt aus: Die Emitter erzeugen neue Partikel, alle
+	 * Partikel werden bewegt und abgelaufene entfernt. Danach beginnt das
+	 * Budget für neue Partikel von vorn.
+	 */
+	public void step() {
+		float speedFactor = FpsMeter.getInstance().getSpeedFactor();
+
+		for ( int e=emitters.size()-1 ; e>=0 ; e-- ) {
+			ParticleEmitter emitter = emitters.get(e);
+			if ( emitter.isAlive() ) {
+				emitter.step(this, speedFactor);
+			} else {
+				emitters.remove(e);
+			}
+		}
+
+		int i = 0;
+		while ( i < count ) {
+			life[i] -= speedFactor;
+			if ( life[i] <= 0 ) {
+				// Den letzten Partikel an diese Stelle holen - die Reihenfolge ist egal
+				count--;
+				posX[i] = posX[count];
+				posY[i] = posY[count];
+				velX[i] = velX[count];
+				velY[i] = velY[count];
+				gravity[i] = gravity[count];
+				life[i] = life[count];
+				image[i] = image[count];
+				continue;
+			}
+
+			velY[i] -= gravity[i] * speedFactor;
+			posX[i] += velX[i] * speedFactor;
+			posY[i] += velY[i] * speedFactor;
+			i++;
+		}
+
+		FpsMeter.getInstance().setCounter("Particles", count);
+		spawned = 0;
+	}
+
+	/**
+	 * Zeichnet alle sichtbaren Partikel.
+	 *
+	 * @param img das Bild auf das gezeichnet werden soll
+	 */
+	public void draw(Image img) {
+		if ( count == 0 ) {
+			return;
+		}
+
+		Graphics g = img.getGraphics();
+		Point view = map.getMapViewPosition();
+		int screenWidth = map.getScreenPixelWidth();
+		int screenHeight = map.getScreenPixelHeight();
+
+		// Map-Pixel -> Bildschirm: x' = x - view.x, y' = screenHeight - y + view.y
+		int x0 = view.x;
+		int x1 = view.x + screenWidth;
+		int y0 = view.y;
+		int y1 = view.y + screenHeight;
+		g.translate(-view.x, screenHeight + view.y);
+
+		for ( int i=0 ; i<count ; i++ ) {
+			int x = (int) posX[i];
+			int y = (int) posY[i];
+			int n = image[i];
+			if ( x + imageWidth[n] < x0 || x > x1 || y + imageHeight[n] < y0 || y > y1 ) {
+				continue;
+			}
+			g.drawImage(images[n], x, -y - imageHeight[n], null);
+		}
+
+		g.dispose();
+	}
+
+	/**
+	 * Entfernt alle Partikel, die Emitter bleiben angemeldet.
+	 */
+	public void clearParticles() {
+		count = 0;
+	}
+
+	/**
+	 * Entfernt alle Partikel und Emitter.
+	 */
+	public void flush() {
+		count = 0;
+		emitters.clear();
+	}
+
+	/**
+	 * Liefert die Anzahl der lebenden Partikel.
+	 *
+	 * @return die Anzahl der Partikel
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Liefert die Anzahl der wegen der Grenzen verworfenen Partikel.
+	 *
+	 * @return die Anzahl der verworfenen Partikel
+	 */
+	public int getDroppedCount() {
+		return dropped;
+	}
+}
@@ -0,0 +1,46 @@
+package de.gaffga.jumpnrun.effects.particles;
+
+import java.awt.Point;
+
+import de.gaffga.jumpnrun.sprites.Sprite;
+
+/**
+ * Ein Emitter der einem Sprite folgt. Die Partikel entstehen in der Mitte des
+ * Sprites, solange es sichtbar ist.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class SpriteParticleEmitter extends ParticleEmitter {
+
+	/** Das Sprite */
+	private Sprite sprite = null;
+
+	/**
+	 * Konstruktor.
+	 *
+	 * @param image das Bild der Partikel (Index aus ParticleSystem.addImage)
+	 * @param rate Partikel pro Sekunde
+	 * @param sprite das Sprite dem der Emitter folgt
+	 */
+	public SpriteParticleEmitter(int image, float rate, Sprite sprite) {
+		super(image, rate);
+		this.sprite = sprite;
+	}
+
+	public int getX() {
+		Point pos = sprite.getPosition();
+		return pos.x + sprite.getWidth() / 2;
+	}
+
+	public int getY() {
+		Point pos = sprite.getPosition();
+		return pos.y + sprite.getHeight() / 2;
+	}
+
+	/**
+	 * Ein unsichtbares Sprite erzeugt keine Partikel mehr.
+	 */
+	public boolean isAlive() {
+		return sprite.isVisible();
+	}
+}
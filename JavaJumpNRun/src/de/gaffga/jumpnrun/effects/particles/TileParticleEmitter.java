@@ -0,0 +1,53 @@
+package de.gaffga.jumpnrun.effects.particles;
+
+import de.gaffga.jumpnrun.map.Map;
+import de.gaffga.jumpnrun.tiles.TileFactory;
+
+/**
+ * Ein Emitter der an einem Tile der Map hängt. Die Partikel entstehen in der
+ * Mitte des Tiles. Sobald das Tile ausgetauscht wird (z.B. weil es
+ * eingesammelt wurde) ist der Emitter tot.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class TileParticleEmitter extends ParticleEmitter {
+
+	/** Die Map */
+	private Map map = null;
+
+	/** X-Position des Tiles in Tiles */
+	private int tileX;
+
+	/** Y-Position des Tiles in Tiles */
+	private int tileY;
+
+	/** Der Code des Tiles beim Anhängen */
+	private char code;
+
+	/**
+	 * Konstruktor.
+	 *
+	 * @param image das Bild der Partikel (Index aus ParticleSystem.addImage)
+	 * @param rate Partikel pro Sekunde
+	 * @param map die Map
+	 * @param tileX X-Position des Tiles in Tiles
+	 * @param tileY Y-Position des Tiles in Tiles
+	 */
+	public TileParticleEmitter(int image, float rate, Map map, int tileX, int tileY) {
+		super(image, rate);
+		this.map = map;
+		this.tileX = tileX;
+		this.tileY = tileY;
+		this.code = map.getTileAt(tileX, tileY).getCode();
+
+		int tilesize = TileFactory.getInstance().getTileSize();
+		setPosition(tileX * tilesize + tilesize / 2, tileY * tilesize + tilesize / 2);
+	}
+
+	/**
+	 * Der Emitter lebt solange das Tile nicht ausgetauscht wurde.
+	 */
+	public boolean isAlive() {
+		return map.getTileAt(tileX, tileY).getCode() == code;
+	}
+}
@@ -3,7 +3,8 @@ package de.gaffga.jumpnrun.enemies;
 import java.awt.Point;
 
 import de.gaffga.jumpnrun.FloatPosition;
-import de.gaffga.jumpnrun.FpsMeter;
+import de.gaffga.jumpnrun.enemies.behaviours.EnemyBehaviourFactory;
+import de.gaffga.jumpnrun.enemies.behaviours.IEnemyBehaviour;
 import de.gaffga.jumpnrun.map.ICollidable;
 import de.gaffga.jumpnrun.map.Map;
 import de.gaffga.jumpnrun.sprites.Sprite;
@@ -12,10 +13,15 @@ import de.gaffga.jumpnrun.tiles.Tile;
 
 /**
  * Klasse die einen Feind verwaltet.
- * 
+ *
  * Es kann mehrere Typen von Feinden geben - diese Klasse bildet daher die
  * Gemeinsamkeiten aller Feinde ab.
- * 
+ *
+ * Sobald ein Feind beim EnemyManager angemeldet ist liegt sein Zustand
+ * (Position, Richtung, Geschwindigkeit) in den Arrays des Managers und dieses
+ * Objekt ist nur noch ein Verweis darauf (Handle). Vorher - also z.B. während
+ * eine Factory den Feind einrichtet - hält es den Zustand selbst.
+ *
  * @author Stefan Gaffga <stefan@gaffga.de>
  */
 public class Enemy implements ICollidable {
@@ -24,23 +30,32 @@ public class Enemy implements ICollidable {
 	public static final int LEFT = 1;
 	/** Bewegung nach rechts */
 	public static final int RIGHT = 2;
-	
-	/** Die aktuelle Position */
+
+	/** Die aktuelle Position (nach der Anmeldung nur noch eine Kopie für getPosition) */
 	private FloatPosition position = null;
-	
-	/** Die aktuelle Bewegungsrichtung */
+
+	/** Die Bewegungsrichtung bis zur Anmeldung */
 	private int direction;
-	
+
 	/** Das Sprite das den Feind darstellt */
 	private Sprite sprite = null;
-	
-	/** Die Geschwindigkeit des Feinds */
+
+	/** Die Geschwindigkeit des Feinds bis zur Anmeldung */
 	private float speed = 1.0f;
-	
+
+	/** Das Verhalten des Feindes */
+	private IEnemyBehaviour behaviour = EnemyBehaviourFactory.getInstance().getDefaultBehaviour();
+
+	/** Der Manager der den Zustand hält (null solange der Feind nicht angemeldet ist) */
+	private EnemyManager manager = null;
+
+	/** Der Index des Feindes in den Arrays des Managers */
+	private int index = -1;
+
 	/**
 	 * Geschützter Konstruktor - nur die Factories sollen Enemies
 	 * erstellen können.
-	 * 
+	 *
 	 * @param pos die Position des Feindes.
 	 * @param sprite das Sprite des Feindes
 	 */
@@ -51,69 +66,117 @@ public class Enemy implements ICollidable {
 		this.direction = LEFT;
 		this.sprite.setCurrentAnimation(SpriteAnimation.WALK_LEFT);
 	}
-	
+
+	/**
+	 * Verbindet den Feind mit den Arrays des Managers.
+	 *
+	 * @param manager der Manager
+	 * @param index der Index in den Arrays des Managers
+	 */
+	void attach(EnemyManager manager, int index) {
+		this.manager = manager;
+		this.index = index;
+	}
+
 	/**
 	 * Liefert die aktuelle Position.
-	 * 
+	 *
 	 * @return die Position
 	 */
 	public FloatPosition getPosition() {
+		if ( manager != null ) {
+			position.x = manager.getX(index);
+			position.y = manager.getY(index);
+		}
 		return position;
 	}
-	
+
 	/**
 	 * Liefert das Sprite-Objekt.
-	 * 
+	 *
 	 * @return das Sprite-Objekt
 	 */
 	public Sprite getSprite() {
 		return sprite;
 	}
-	
+
 	/**
 	 * Setzt die Geschwindigkeit des Gegeners (1=normal, höher=schneller).
-	 * 
+	 *
 	 * @param speed die Geschwindigkeit
 	 */
 	public void setSpeed(float speed) {
-		this.speed = speed;
+		if ( manager != null ) {
+			manager.setSpeed(index, speed);
+		} else {
+			this.speed = speed;
+		}
 	}
-	
+
 	/**
-	 * Führt einen Schritt des Feindes aus.
-	 * 
+	 * Liefert die Geschwindigkeit des Gegners.
+	 *
+	 * @return die Geschwindigkeit
+	 */
+	public float getSpeed() {
+		return manager != null ? manager.getSpeed(index) : speed;
+	}
+
+	/**
+	 * Liefert die aktuelle Bewegungsrichtung.
+	 *
+	 * @return LEFT oder RIGHT
+	 */
+	public int getDirection() {
+		return manager != null ? manager.getDirection(index) : direction;
+	}
+
+	/**
+	 * Setzt das Verhalten des Feindes. Das geht nur bevor der Feind beim
+	 * EnemyManager angemeldet wird.
+	 *
+	 * @param behaviour das Verhalten
+	 */
+	public void setBehaviour(IEnemyBehaviour behaviour) {
+		this.behaviour = behaviour;
+	}
+
+	/**
+	 * Liefert das Verhalten des Feindes.
+	 *
+	 * @return das Verhalten
+	 */
+	public IEnemyBehaviour getBehaviour() {
+		return behaviour;
+	}
+
+	/**
+	 * Liefert ob der Feind gerade schläft (außerhalb des Aktivitätsbereichs).
+	 *
+	 * @return true falls der Feind schläft
+	 */
+	public boolean isDormant() {
+		return manager != null && manager.isDormant(index);
+	}
+
+	/**
+	 * Führt einen Schritt des Feindes aus. Normalerweise bewegt der EnemyManager
+	 * alle Feinde auf einmal, diese Methode bewegt nur diesen einen.
+	 *
+	 * Ohne Anmeldung beim EnemyManager passiert nichts.
+	 *
 	 * @param map die Map auf der der Feind sich bewegt
 	 */
 	public void step(Map map) {
-		FloatPosition pos1 = new FloatPosition(position);
-		FloatPosition pos2 = new FloatPosition(position);
-		
-		if ( direction==LEFT ) {
-			pos2.x -= FpsMeter.getInstance().getSpeedFactor() * speed * 100.0;
-		} else {
-			pos2.x += FpsMeter.getInstance().getSpeedFactor() * speed * 100.0;
-		}
-		
-		int rc = map.checkMove(this, pos1, pos2, sprite.getHitbox());
-		
-		if ( (rc & Map.COLLISION_WEST) != 0 || (rc & Map.COLLISION_EAST) != 0 ) {
-			if ( direction == LEFT ) {
-				direction = RIGHT;
-				sprite.setCurrentAnimation(SpriteAnimation.WALK_RIGHT);
-			} else {
-				direction = LEFT;
-				sprite.setCurrentAnimation(SpriteAnimation.WALK_LEFT);
-			}
+		if ( manager != null ) {
+			manager.step(index, map);
 		}
-
-		position = pos2;
-		sprite.setPosition(new Point((int)pos2.x, (int)pos2.y));
 	}
-	
+
 	/**
 	 * Prüft ob das angegebene Tile eine Kollision auslösen soll.
 	 */
 	public boolean isBlockedBy(Tile tile) {
-		return tile.isEnemyBlocking(); 
+		return tile.isEnemyBlocking();
 	}
 }
@@ -1,60 +1,1276 @@
 package de.gaffga.jumpnrun.enemies;
 
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+import de.gaffga.jumpnrun.FpsMeter;
+import de.gaffga.jumpnrun.Timer;
+import de.gaffga.jumpnrun.enemies.behaviours.IEnemyBehaviour;
+import de.gaffga.jumpnrun.map.CollisionGrid;
 import de.gaffga.jumpnrun.map.Map;
+import de.gaffga.jumpnrun.map.NavigationGraph;
+import de.gaffga.jumpnrun.sprites.Sprite;
+import de.gaffga.jumpnrun.sprites.SpriteAnimation;
+import de.gaffga.jumpnrun.tiles.Tile;
+import de.gaffga.jumpnrun.tiles.TileFactory;
 
 /**
  * Verwalter für alle Enemies.
- * 
+ *
  * Es werden alle Feinde hier zentral gespeichert und über eine Methode können
  * alle Feinde mit einem mal weiterbewegt werden.
- * 
+ *
+ * Der Zustand der Feinde liegt nicht in den Enemy-Objekten sondern in parallelen
+ * Arrays (Position, Geschwindigkeit, Richtung, Hitbox). Ein Schritt ist damit
+ * eine enge Schleife über diese Arrays und das Flag-Array der Map, ohne über
+ * verstreute Objekte zu springen und ohne neue Objekte zu erzeugen. Die
+ * Enemy-Objekte bleiben als Handle für den Zugriff von außen erhalten.
+ *
+ * Nur Feinde innerhalb eines Aktivitätsbereichs um den sichtbaren Mapausschnitt
+ * werden bewegt. Alle anderen schlafen: Sie liegen nach X-Position sortiert in
+ * einer eigenen Liste, so dass pro Schritt nur die Feinde angefasst werden die
+ * in den Aktivitätsbereich hinein geraten. Der Aufwand pro Schritt hängt damit
+ * von der Anzahl der Feinde in der Nähe ab und nicht von der Größe des Levels.
+ *
+ * Wie sich ein Feind bewegt bestimmt sein Verhalten (IEnemyBehaviour). Teure
+ * Entscheidungen der Verhalten werden reihum getroffen und nur solange das 
+ * KI-Zeitbudget des Frames reicht - wachen viele Feinde auf einmal auf
+ * verteilen sich ihre Entscheidungen also auf mehrere Frames.
+ *
+ * Optional können die aktiven Feinde parallel auf einem ForkJoinPool bewegt
+ * werden (siehe setParallelPool). Dazu werden sie nach Map-Regionen aufgeteilt.
+ * Jeder Feind liest nur die gemeinsamen Tile-Flags und schreibt nur seine 
+ * eigenen Array-Einträge; alles was Sprites betrifft (Position, Animation beim
+ * Umdrehen) wird erst nach dem Join in der festen Reihenfolge der aktiven 
+ * Feinde nachgezogen. Das Ergebnis ist damit bitgenau das gleiche wie bei der
+ * sequentiellen Bewegung.
+ *
+ * Nach jedem Schritt werden die aktiven Feinde in ein CollisionGrid eingetragen,
+ * so dass Kollisionsabfragen nur noch die Feinde in der Nähe testen müssen.
+ *
  * @author Stefan Gaffga <stefan@gaffga.de>
  */
 public class EnemyManager implements Iterable<Enemy> {
 
-	/** Liste aller Enemies */
-	private List<Enemy> enemies = null;
-	
+	/** Kantenlänge einer Gitterzelle für die Kollisionsabfrage in Tiles */
+	public static final int GRID_CELL_TILES = 4;
+
+	/** Defaultwert für den Rand um den sichtbaren Bereich in dem Feinde noch aktiv sind */
+	public static final int DEFAULT_ACTIVITY_MARGIN = 320;
+
+	/** Breite einer Region für die parallele Bewegung in Tiles */
+	public static final int REGION_TILES = 16;
+
+	/** Ab so vielen aktiven Feinden wird (falls eingeschaltet) parallel bewegt */
+	public static final int PARALLEL_THRESHOLD = 512;
+
+	/** Regionen mit weniger Feinden werden in einer Teilaufgabe zusammengefasst */
+	private static final int MIN_TASK_ENEMIES = 128;
+
+	/** Defaultwert für das KI-Zeitbudget pro Frame in Nanosekunden */
+	public static final long DEFAULT_AI_BUDGET_NANOS = 500000;
+
+	/** Defaultwert für die maximale Anzahl Entscheidungen pro Frame */
+	public static final int DEFAULT_AI_MAX_DECISIONS = 32;
+
+	/** Anfangsgröße der Arrays */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/** Anzahl der Feinde */
+	private int count;
+
+	/** Je Feind das Handle */
+	private Enemy[] handles = null;
+
+	/** Je Feind das Sprite */
+	private Sprite[] sprites = null;
+
+	/** Je Feind die X-Position */
+	private float[] posX = null;
+
+	/** Je Feind die Y-Position */
+	private float[] posY = null;
+
+	/** Je Feind die Geschwindigkeit */
+	private float[] speed = null;
+
+	/** Je Feind die Richtung (Enemy.LEFT oder Enemy.RIGHT) */
+	private int[] direction = null;
+
+	/** Je Feind die Hitbox: X-Versatz */
+	private int[] hitX = null;
+
+	/** Je Feind die Hitbox: Y-Versatz */
+	private int[] hitY = null;
+
+	/** Je Feind die Hitbox: Breite */
+	private int[] hitWidth = null;
+
+	/** Je Feind die Hitbox: Höhe */
+	private int[] hitHeight = null;
+
+	/** Je Feind die Breite des Sprites */
+	private int[] spriteWidth = null;
+
+	/** Je Feind die Höhe des Sprites */
+	private int[] spriteHeight = null;
+
+	/** Je Feind ob sich seit dem letzten Abgleich mit dem Sprite die Richtung geändert hat */
+	private boolean[] turned = null;
+
+	/** Je Feind das Verhalten */
+	private IEnemyBehaviour[] behaviour = null;
+
+	/** Je Feind ein Zustandswert zur freien Verwendung durch das Verhalten */
+	private int[] aiState = null;
+
+	/** Je Feind die vertikale Geschwindigkeit (Pixel pro Sekunde) */
+	private float[] velocityY = null;
+
+	/** Je Feind die Y-Position beim Hinzufügen */
+	private float[] baseY = null;
+
+	/** Je Feind ein Phasenwert zur freien Verwendung durch das Verhalten */
+	private float[] phase = null;
+
+	/** Je Feind ob er gerade schläft */
+	private boolean[] dormant = null;
+
+	/** Je Feind der Zeitpunkt (Timer-Millisekunden) zu dem er eingeschlafen ist */
+	private long[] sleepTime = null;
+
+	/** Die Indizes der aktiven (wachen) Feinde */
+	private int[] active = null;
+
+	/** Anzahl der aktiven Feinde */
+	private int activeCount;
+
+	/** Die Indizes der schlafenden Feinde - aufsteigend nach X-Position sortiert */
+	private int[] sleeping = null;
+
+	/** Anzahl der schlafenden Feinde */
+	private int sleepingCount;
+
+	/** Die größte Breite eines schlafenden Feindes (für die Suche in der sortierten Liste) */
+	private int maxSleepingWidth;
+
+	/** Die Indizes der eingeschlafenen Feinde, die noch nicht in sleeping einsortiert sind */
+	private int[] pendingSleep = null;
+
+	/** Anzahl der noch nicht einsortierten schlafenden Feinde */
+	private int pendingCount;
+
+	/** Sortierschlüssel (X-Position und Reihenfolge) der noch nicht einsortierten Feinde */
+	private long[] pendingKeys = null;
+
+	/** Rand in Pixeln um den sichtbaren Bereich in dem Feinde noch aktiv sind */
+	private int activityMargin = DEFAULT_ACTIVITY_MARGIN;
+
+	/** Falls true wird beim Aufwachen die verschlafene Patrouille nachgerechnet */
+	private boolean catchUp = true;
+
+	/** Das Sprite das die Feinde verfolgen (die Spielfigur) - darf null sein */
+	private Sprite target = null;
+
+	/** Der Navigationsgraph mit dem Flussfeld zum Ziel - darf null sein */
+	private NavigationGraph navigation = null;
+
+	/** Das KI-Zeitbudget pro Frame in Nanosekunden */
+	private long aiBudgetNanos = DEFAULT_AI_BUDGET_NANOS;
+
+	/** Die maximale Anzahl Entscheidungen pro Frame */
+	private int aiMaxDecisions = DEFAULT_AI_MAX_DECISIONS;
+
+	/** Position in der Liste der aktiven Feinde an der die Entscheidungen weitergehen */
+	private int thinkCursor;
+
+	/** Die Anzahl der Entscheidungen im letzten Frame */
+	private int decisionCount;
+
+	/** Geschwindigkeitsfaktor des aktuellen Schritts */
+	private float frameSpeedFactor;
+
+	/** Die Tile-Flags der Map des aktuellen Schritts */
+	private int[] tileFlags = null;
+
+	/** Die Breite der Map des aktuellen Schritts in Tiles */
+	private int mapWidth;
+
+	/** Die Höhe der Map des aktuellen Schritts in Tiles */
+	private int mapHeight;
+
+	/** Die Kantenlänge eines Tiles in Pixeln */
+	private int tilesize;
+
+	/** Der Pool für die parallele Bewegung (null = sequentiell) */
+	private ForkJoinPool parallelPool = null;
+
+	/** Die aktiven Feinde nach Regionen sortiert (für die parallele Bewegung) */
+	private int[] regionOrder = null;
+
+	/** Je Region der Beginn in regionOrder (eine Region mehr als es gibt als Ende) */
+	private int[] regionStart = null;
+
+	/** Das Gitter zur schnellen Kollisionsabfrage (wird beim ersten Schritt angelegt) */
+	private CollisionGrid<Enemy> collisionGrid = null;
+
+	/** Die Kandidaten einer Kollisionsabfrage aus dem Gitter (wird wiederverwendet) */
+	private List<Enemy> collisionCandidates = new ArrayList<Enemy>();
+
 	/**
 	 * Konstruktor.
 	 */
 	public EnemyManager() {
-		enemies = new LinkedList<Enemy>();
+		handles = new Enemy[INITIAL_CAPACITY];
+		sprites = new Sprite[INITIAL_CAPACITY];
+		posX = new float[INITIAL_CAPACITY];
+		posY = new float[INITIAL_CAPACITY];
+		speed = new float[INITIAL_CAPACITY];
+		direction = new int[INITIAL_CAPACITY];
+		hitX = new int[INITIAL_CAPACITY];
+		hitY = new int[INITIAL_CAPACITY];
+		hitWidth = new int[INITIAL_CAPACITY];
+		hitHeight = new int[INITIAL_CAPACITY];
+		spriteWidth = new int[INITIAL_CAPACITY];
+		spriteHeight = new int[INITIAL_CAPACITY];
+		dormant = new boolean[INITIAL_CAPACITY];
+		turned = new boolean[INITIAL_CAPACITY];
+		behaviour = new IEnemyBehaviour[INITIAL_CAPACITY];
+		aiState = new int[INITIAL_CAPACITY];
+		velocityY = new float[INITIAL_CAPACITY];
+		baseY = new float[INITIAL_CAPACITY];
+		phase = new float[INITIAL_CAPACITY];
+		sleepTime = new long[INITIAL_CAPACITY];
+		active = new int[INITIAL_CAPACITY];
+		sleeping = new int[INITIAL_CAPACITY];
+		pendingSleep = new int[INITIAL_CAPACITY];
+		pendingKeys = new long[INITIAL_CAPACITY];
 	}
-	
-	/** 
+
+	/**
 	 * Ein neues Enemy hinzufügen.
-	 * 
+	 *
+	 * Der Zustand des Feindes wird in die Arrays übernommen, danach ist das
+	 * Enemy-Objekt nur noch ein Handle darauf.
+	 *
 	 * @param enemy das neue Enemy
 	 */
 	public void addEnemy(Enemy enemy) {
-		enemies.add(enemy);
+		if ( count == handles.length ) {
+			grow(count * 2);
+		}
+
+		int i = count++;
+		Sprite sprite = enemy.getSprite();
+		Rectangle hitbox = sprite.getHitbox();
+
+		handles[i] = enemy;
+		sprites[i] = sprite;
+		posX[i] = enemy.getPosition().x;
+		posY[i] = enemy.getPosition().y;
+		speed[i] = enemy.getSpeed();
+		direction[i] = enemy.getDirection();
+		hitX[i] = hitbox.x;
+		hitY[i] = hitbox.y;
+		hitWidth[i] = hitbox.width;
+		hitHeight[i] = hitbox.height;
+		spriteWidth[i] = sprite.getWidth();
+		spriteHeight[i] = sprite.getHeight();
+		behaviour[i] = enemy.getBehaviour();
+		aiState[i] = 0;
+		velocityY[i] = 0;
+		baseY[i] = posY[i];
+		phase[i] = 0;
+		turned[i] = false;
+
+		enemy.attach(this, i);
+
+		// Neue Feinde schlafen bis sie in den Aktivitätsbereich kommen
+		sleep(i, Timer.getInstance().currentTimeMillis());
 	}
-	
+
 	/**
-	 * Führt einen Schritt aller Feinde aus.
+	 * Vergrößert alle Arrays.
+	 *
+	 * @param size die neue Größe
+	 */
+	private void grow(int size) {
+		handles = Arrays.copyOf(handles, size);
+		sprites = Arrays.copyOf(sprites, size);
+		posX = Arrays.copyOf(posX, size);
+		posY = Arrays.copyOf(posY, size);
+		speed = Arrays.copyOf(speed, size);
+		direction = Arrays.copyOf(direction, size);
+		hitX = Arrays.copyOf(hitX, size);
+		hitY = Arrays.copyOf(hitY, size);
+		hitWidth = Arrays.copyOf(hitWidth, size);
+		hitHeight = Arrays.copyOf(hitHeight, size);
+		spriteWidth = Arrays.copyOf(spriteWidth, size);
+		spriteHeight = Arrays.copyOf(spriteHeight, size);
+		dormant = Arrays.copyOf(dormant, size);
+		turned = Arrays.copyOf(turned, size);
+		behaviour = Arrays.copyOf(behaviour, size);
+		aiState = Arrays.copyOf(aiState, size);
+		velocityY = Arrays.copyOf(velocityY, size);
+		baseY = Arrays.copyOf(baseY, size);
+		phase = Arrays.copyOf(phase, size);
+		sleepTime = Arrays.copyOf(sleepTime, size);
+		active = Arrays.copyOf(active, size);
+		sleeping = Arrays.copyOf(sleeping, size);
+		pendingSleep = Arrays.copyOf(pendingSleep, size);
+		pendingKeys = Arrays.copyOf(pendingKeys, size);
+	}
+
+	/**
+	 * Führt einen Schritt aller Feinde im Aktivitätsbereich aus.
+	 *
+	 * Feinde die den Bereich verlassen schlafen ein, schlafende Feinde die in den
+	 * Bereich kommen werden geweckt (und holen ggf. ihre Patrouille nach). Die
+	 * Liste der schlafenden Feinde wird dabei pro Schritt nur einmal
+	 * zusammengeschoben und einmal mit den neu eingeschlafenen zusammengeführt.
 	 */
 	public void step(Map map) {
-		for ( Enemy enemy : enemies ) {
-			enemy.step(map);
+		mergeSleepers();
+
+		long now = Timer.getInstance().currentTimeMillis();
+		Point view = map.getMapViewPosition();
+		int x0 = view.x - activityMargin;
+		int y0 = view.y - activityMargin;
+		int x1 = view.x + map.getScreenPixelWidth() + activityMargin;
+		int y1 = view.y + map.getScreenPixelHeight() + activityMargin;
+
+		// Schlafende Feinde im Bereich wecken - wegen der Sortierung reicht ein Ausschnitt der Liste
+		int s = findFirstSleeping(x0 - maxSleepingWidth);
+		int w = s;
+		while ( s < sleepingCount ) {
+			int i = sleeping[s];
+			if ( (int)posX[i] > x1 ) break;
+
+			if ( isInside(i, x0, y0, x1, y1) ) {
+				wakeUp(i, map, now);
+			} else {
+				sleeping[w++] = i;
+			}
+			s++;
+		}
+		if ( w < s ) {
+			System.arraycopy(sleeping, s, sleeping, w, sleepingCount - s);
+			sleepingCount -= s - w;
+		}
+
+		// Aktive Feinde die den Bereich verlassen haben schlafen legen
+		int n = 0;
+		for ( int k=0 ; k<activeCount ; k++ ) {
+			int i = active[k];
+			if ( isInside(i, x0, y0, x1, y1) ) {
+				active[n++] = i;
+			} else {
+				sleep(i, now);
+			}
+		}
+		activeCount = n;
+		mergeSleepers();
+
+		// Entscheidungen im Rahmen des Budgets, dann die Bewegung
+		prepareFrame(map);
+		updateNavigation();
+		think();
+
+		if ( parallelPool != null && activeCount >= PARALLEL_THRESHOLD ) {
+			moveParallel();
+		} else {
+			for ( int k=0 ; k<activeCount ; k++ ) {
+				int i = active[k];
+				behaviour[i].move(this, i, frameSpeedFactor);
+				updateSprite(i);
+			}
+		}
+
+		FpsMeter.getInstance().setCounter("Enemies active", activeCount);
+		FpsMeter.getInstance().setCounter("AI decisions", decisionCount);
+		if ( navigation != null ) {
+			FpsMeter.getInstance().setCounter("Flow updates", navigation.getFlowUpdates());
+		}
+
+		updateCollisionGrid(map);
+	}
+
+	/**
+	 * Führt einen Schritt für einen einzelnen Feind aus (unabhängig davon ob er
+	 * schläft).
+	 *
+	 * @param i der Index des Feindes
+	 * @param map die Map auf der sich der Feind bewegt
+	 */
+	void step(int i, Map map) {
+		prepareFrame(map);
+		behaviour[i].think(this, i);
+		behaviour[i].move(this, i, frameSpeedFactor);
+		updateSprite(i);
+	}
+
+	/**
+	 * Merkt sich die Daten die alle Feinde in diesem Schritt brauchen.
+	 *
+	 * @param map die Map auf der sich die Feinde bewegen
+	 */
+	private void prepareFrame(Map map) {
+		frameSpeedFactor = FpsMeter.getInstance().getSpeedFactor();
+		tileFlags = map.getTileFlags();
+		mapWidth = map.getWidth();
+		mapHeight = map.getHeight();
+		tilesize = TileFactory.getInstance().getTileSize();
+	}
+
+	/**
+	 * Bringt das Flussfeld auf die aktuelle Position des Ziels. Das passiert
+	 * einmal pro Frame für alle Feinde gemeinsam.
+	 */
+	private void updateNavigation() {
+		if ( navigation == null || target == null ) {
+			return;
+		}
+
+		Point pos = target.getPosition();
+		Rectangle hitbox = target.getHitbox();
+		navigation.update(pos.x + hitbox.x + hitbox.width / 2, pos.y + hitbox.y + tilesize / 2);
+	}
+
+	/**
+	 * Lässt die Verhalten der aktiven Feinde reihum Entscheidungen treffen bis
+	 * das Zeitbudget oder die maximale Anzahl an Entscheidungen erreicht ist.
+	 * Im nächsten Frame geht es beim nächsten Feind weiter.
+	 *
+	 * Läuft der Timer simuliert (Aufzeichnung/Wiedergabe) zählt nur die Anzahl
+	 * der Entscheidungen - ein Zeitbudget wäre vom Rechner abhängig.
+	 */
+	private void think() {
+		decisionCount = 0;
+		if ( activeCount == 0 ) {
+			return;
+		}
+
+		boolean deterministic = Timer.getInstance().isSimulated();
+		long deadline = System.nanoTime() + aiBudgetNanos;
+		for ( int n=0 ; n<activeCount && decisionCount<aiMaxDecisions ; n++ ) {
+			if ( thinkCursor >= activeCount ) {
+				thinkCursor = 0;
+			}
+
+			int i = active[thinkCursor++];
+			if ( behaviour[i].think(this, i) ) {
+				decisionCount++;
+				if ( !deterministic && System.nanoTime() >= deadline ) {
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Bewegt alle aktiven Feinde parallel.
+	 *
+	 * Die Feinde werden nach der Region (Streifen von REGION_TILES Tiles Breite)
+	 * ihrer Position sortiert, die Regionen werden als Teilaufgaben auf dem Pool
+	 * bewegt. Danach werden die Sprites in der Reihenfolge der aktiven Feinde
+	 * nachgezogen - genau so wie bei der sequentiellen Bewegung.
+	 */
+	private void moveParallel() {
+		int regionPixels = REGION_TILES * tilesize;
+		int regions = (mapWidth * tilesize + regionPixels - 1) / regionPixels;
+
+		if ( regionStart == null || regionStart.length < regions + 1 ) {
+			regionStart = new int[regions + 1];
+		}
+		if ( regionOrder == null || regionOrder.length < activeCount ) {
+			regionOrder = new int[active.length];
+		}
+
+		// Nach Regionen sortieren (Counting Sort - innerhalb einer Region bleibt die Reihenfolge erhalten)
+		Arrays.fill(regionStart, 0, regions + 1, 0);
+		for ( int k=0 ; k<activeCount ; k++ ) {
+			regionStart[getRegion(active[k], regionPixels, regions) + 1]++;
+		}
+		for ( int r=0 ; r<regions ; r++ ) {
+			regionStart[r + 1] += regionStart[r];
+		}
+		for ( int k=0 ; k<activeCount ; k++ ) {
+			int i = active[k];
+			regionOrder[regionStart[getRegion(i, regionPixels, regions)]++] = i;
+		}
+		// regionStart zeigt jetzt auf das Ende jeder Region - wieder auf den Beginn zurückschieben
+		for ( int r=regions ; r>0 ; r-- ) {
+			regionStart[r] = regionStart[r - 1];
+		}
+		regionStart[0] = 0;
+
+		parallelPool.invoke(new MoveTask(0, regions));
+
+		for ( int k=0 ; k<activeCount ; k++ ) {
+			updateSprite(active[k]);
+		}
+	}
+
+	/**
+	 * Liefert die Region in der ein Feind gerade steht.
+	 */
+	private int getRegion(int i, int regionPixels, int regions) {
+		int region = (int)posX[i] / regionPixels;
+		if ( region < 0 ) return 0;
+		if ( region >= regions ) return regions - 1;
+		return region;
+	}
+
+	/**
+	 * Teilaufgabe für die parallele Bewegung: Bewegt alle Feinde eines Bereichs
+	 * von Regionen. Große Bereiche werden halbiert bis sie klein genug sind.
+	 */
+	private class MoveTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		/** Die erste Region */
+		private int from;
+
+		/** Die Region nach der letzten */
+		private int to;
+
+		MoveTask(int from, int to) {
+			this.from = from;
+			this.to = to;
 		}
+
+		@Override
+		protected void compute() {
+			if ( to - from > 1 && regionStart[to] - regionStart[from] > MIN_TASK_ENEMIES ) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new MoveTask(from, mid), new MoveTask(mid, to));
+				return;
+			}
+
+			for ( int k=regionStart[from] ; k<regionStart[to] ; k++ ) {
+				int i = regionOrder[k];
+				behaviour[i].move(EnemyManager.this, i, frameSpeedFactor);
+			}
+		}
+	}
+
+	/**
+	 * Bewegt einen Feind um die angegebene Strecke, soweit die für Feinde
+	 * blockierenden Tiles es zulassen.
+	 *
+	 * Die Kollisionsprüfung entspricht Map.checkMove (Begrenzung auf die Map,
+	 * Vergleich der belegten Tiles, horizontale und vertikale Prüfung), arbeitet
+	 * aber direkt auf dem Flag-Array der Map und den Arrays dieses Managers.
+	 * Es werden nur die Einträge dieses Feindes geschrieben; das Sprite wird
+	 * erst nach der Bewegung aller Feinde angepasst.
+	 *
+	 * Darf nur aus IEnemyBehaviour.move() heraus aufgerufen werden.
+	 *
+	 * @param i der Index des Feindes
+	 * @param dx die horizontale Strecke in Pixeln
+	 * @param dy die vertikale Strecke in Pixeln
+	 * @return Flags welche Kollision aufgetreten ist (Map.COLLISION_...)
+	 */
+	public int moveBy(int i, double dx, double dy) {
+		int[] flags = tileFlags;
+		int hx = hitX[i];
+		int hy = hitY[i];
+		int width = hitWidth[i];
+		int height = hitHeight[i];
+
+		// Start- und Zielposition der Hitbox
+		float curX = posX[i] + hx;
+		float curY = posY[i] + hy;
+		float newX = posX[i];
+		float newY = posY[i];
+		newX += dx;
+		newY += dy;
+		newX += hx;
+		newY += hy;
+
+		if ( newX < 0 ) {
+			newX = 0;
+		}
+		if ( newX > mapWidth*tilesize - width - 1 ) {
+			newX = mapWidth*tilesize - width - 1;
+		}
+		if ( newY < 0 ) {
+			newY = 0;
+		}
+		if ( newY > mapHeight*tilesize - height - 1 ) {
+			newY = mapHeight*tilesize - height - 1;
+		}
+
+		int curX0 = (int)curX / tilesize;
+		int curY0 = (int)curY / tilesize;
+		int curX1 = (int)(curX + width-1) / tilesize;
+		int curY1 = (int)(curY + height-1) / tilesize;
+
+		int newX0 = (int)newX / tilesize;
+		int newY0 = (int)newY / tilesize;
+		int newX1 = (int)(newX + width-1) / tilesize;
+		int newY1 = (int)(newY + height-1) / tilesize;
+
+		int collision = 0;
+
+		if ( curX0!=newX0 || curY0!=newY0 || curX1!=newX1 || curY1!=newY1 ) {
+			for ( int row=curY0 ; row<=curY1 ; row++ ) {
+				if ( (flags[row*mapWidth + newX1] & Tile.ENEMYBLOCKING) != 0 ) {
+					newX = newX1 * tilesize - width;
+					collision |= Map.COLLISION_EAST;
+					break;
+				}
+				if ( (flags[row*mapWidth + newX0] & Tile.ENEMYBLOCKING) != 0 ) {
+					newX = newX0 * tilesize + tilesize;
+					collision |= Map.COLLISION_WEST;
+					break;
+				}
+			}
+
+			for ( int col=curX0 ; col<=curX1 ; col++ ) {
+				if ( (flags[newY1*mapWidth + col] & Tile.ENEMYBLOCKING) != 0 ) {
+					newY = newY1 * tilesize - height;
+					collision |= Map.COLLISION_NORTH;
+					break;
+				}
+				if ( (flags[newY0*mapWidth + col] & Tile.ENEMYBLOCKING) != 0 ) {
+					newY = newY0 * tilesize + tilesize;
+					collision |= Map.COLLISION_SOUTH;
+					break;
+				}
+			}
+		}
+
+		posX[i] = newX - hx;
+		posY[i] = newY - hy;
+
+		return collision;
+	}
+
+	/**
+	 * Überträgt Position und ggf. die neue Laufrichtung nach einem Schritt auf
+	 * das Sprite eines Feindes.
+	 *
+	 * @param i der Index des Feindes
+	 */
+	private void updateSprite(int i) {
+		if ( turned[i] ) {
+			if ( direction[i] == Enemy.LEFT ) {
+				sprites[i].setCurrentAnimation(SpriteAnimation.WALK_LEFT);
+			} else {
+				sprites[i].setCurrentAnimation(SpriteAnimation.WALK_RIGHT);
+			}
+			turned[i] = false;
+		}
+
+		sprites[i].getPosition().setLocation((int)posX[i], (int)posY[i]);
+	}
+
+	/**
+	 * Setzt die Bewegungsrichtung eines Feindes. Die passende Animation wird
+	 * nach der Bewegung aller Feinde gesetzt.
+	 *
+	 * @param i der Index des Feindes
+	 * @param dir die neue Richtung (Enemy.LEFT oder Enemy.RIGHT)
+	 */
+	public void setDirection(int i, int dir) {
+		if ( direction[i] != dir ) {
+			direction[i] = dir;
+			turned[i] = !turned[i];
+		}
+	}
+
+	/**
+	 * Prüft ob das Sprite eines Feindes den angegebenen Bereich berührt.
+	 */
+	private boolean isInside(int i, int x0, int y0, int x1, int y1) {
+		int x = (int)posX[i];
+		int y = (int)posY[i];
+
+		return x + spriteWidth[i] >= x0 && x <= x1 &&
+				y + spriteHeight[i] >= y0 && y <= y1;
+	}
+
+	/**
+	 * Schickt einen Feind schlafen. Einsortiert wird er erst mit mergeSleepers.
+	 *
+	 * @param i der Index des Feindes
+	 * @param now die aktuelle Zeit (Timer-Millisekunden)
+	 */
+	private void sleep(int i, long now) {
+		dormant[i] = true;
+		sleepTime[i] = now;
+
+		pendingSleep[pendingCount++] = i;
+		maxSleepingWidth = Math.max(maxSleepingWidth, spriteWidth[i]);
+	}
+
+	/**
+	 * Sortiert alle seit dem letzten Aufruf eingeschlafenen Feinde in einem
+	 * Durchgang in die Liste der schlafenden Feinde ein.
+	 *
+	 * Die neuen Feinde werden nach X-Position sortiert und von hinten mit der
+	 * Liste zusammengeführt. Bei gleicher X-Position kommen sie hinter die schon
+	 * schlafenden Feinde und untereinander in der Reihenfolge des Einschlafens -
+	 * die Liste ist also genau die gleiche wie beim einzelnen Einsortieren.
+	 */
+	private void mergeSleepers() {
+		if ( pendingCount == 0 ) {
+			return;
+		}
+
+		for ( int k=0 ; k<pendingCount ; k++ ) {
+			pendingKeys[k] = ((long)(int)posX[pendingSleep[k]] << 32) | k;
+		}
+		Arrays.sort(pendingKeys, 0, pendingCount);
+
+		int a = sleepingCount - 1;
+		int w = sleepingCount + pendingCount - 1;
+		for ( int b=pendingCount - 1 ; b>=0 ; b-- ) {
+			int i = pendingSleep[(int)pendingKeys[b]];
+			int x = (int)posX[i];
+			while ( a >= 0 && (int)posX[sleeping[a]] > x ) {
+				sleeping[w--] = sleeping[a--];
+			}
+			sleeping[w--] = i;
+		}
+
+		sleepingCount += pendingCount;
+		pendingCount = 0;
+	}
+
+	/**
+	 * Weckt einen Feind wieder auf und nimmt ihn in die Liste der aktiven Feinde auf.
+	 *
+	 * @param i der Index des Feindes
+	 * @param map die Map auf der sich der Feind bewegt
+	 * @param now die aktuelle Zeit (Timer-Millisekunden)
+	 */
+	private void wakeUp(int i, Map map, long now) {
+		dormant[i] = false;
+		if ( catchUp && behaviour[i].canCatchUp() && now > sleepTime[i] ) {
+			catchUp(i, map, (now - sleepTime[i]) / 1000.0f * speed[i] * 100.0f);
+		}
+		active[activeCount++] = i;
+	}
+
+	/**
+	 * Bewegt einen Feind analytisch um eine Strecke auf seiner Patrouille weiter.
+	 *
+	 * Der Feind läuft mit konstanter Geschwindigkeit zwischen den beiden
+	 * blockierenden Tiles links und rechts von ihm hin und her, die Position
+	 * nach der Schlafzeit lässt sich also direkt ausrechnen ohne die Schritte
+	 * einzeln durchzugehen.
+	 *
+	 * @param i der Index des Feindes
+	 * @param map die Map auf der sich der Feind bewegt
+	 * @param distance die zurückzulegende Strecke in Pixeln
+	 */
+	private void catchUp(int i, Map map, float distance) {
+		int[] flags = map.getTileFlags();
+		int mapWidth = map.getWidth();
+		int tilesize = TileFactory.getInstance().getTileSize();
+
+		int hx = (int)posX[i] + hitX[i];
+		int hy = (int)posY[i] + hitY[i];
+		int row0 = hy / tilesize;
+		int row1 = (hy + hitHeight[i] - 1) / tilesize;
+
+		// Die nächsten blockierenden Spalten links und rechts suchen
+		int left = hx / tilesize - 1;
+		while ( left >= 0 && !isColumnBlocked(flags, mapWidth, left, row0, row1) ) {
+			left--;
+		}
+		int right = (hx + hitWidth[i] - 1) / tilesize + 1;
+		while ( right < mapWidth && !isColumnBlocked(flags, mapWidth, right, row0, row1) ) {
+			right++;
+		}
+
+		// Am Kartenrand bleibt der Feind (wie in checkMove) einfach stehen
+		boolean wallLeft = left >= 0;
+		boolean wallRight = right < mapWidth;
+		float min = (wallLeft ? (left + 1) * tilesize : 0) - hitX[i];
+		float max = (wallRight ? right * tilesize : mapWidth * tilesize - 1) - hitWidth[i] - hitX[i];
+		if ( max < min ) {
+			return;
+		}
+
+		float x = Math.max(min, Math.min(max, posX[i]));
+		int dir = direction[i];
+
+		// Volle Runden hin und zurück ändern nichts
+		if ( wallLeft && wallRight && max > min ) {
+			distance %= 2 * (max - min);
+		}
+
+		while ( distance > 0 ) {
+			float free = dir == Enemy.LEFT ? x - min : max - x;
+			if ( distance <= free ) {
+				x += dir == Enemy.LEFT ? -distance : distance;
+				break;
+			}
+
+			distance -= free;
+			x = dir == Enemy.LEFT ? min : max;
+			if ( !(dir == Enemy.LEFT ? wallLeft : wallRight) || max == min ) {
+				// Kartenrand (oder kein Platz) - hier geht es nicht weiter
+				break;
+			}
+			dir = dir == Enemy.LEFT ? Enemy.RIGHT : Enemy.LEFT;
+		}
+
+		posX[i] = x;
+		setDirection(i, dir);
+		updateSprite(i);
+	}
+
+	/**
+	 * Prüft ob eine Tile-Spalte im angegebenen Zeilenbereich für Feinde blockiert ist.
+	 */
+	private static boolean isColumnBlocked(int[] flags, int mapWidth, int column, int row0, int row1) {
+		for ( int row=row0 ; row<=row1 ; row++ ) {
+			if ( (flags[row*mapWidth + column] & Tile.ENEMYBLOCKING) != 0 ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Sucht (binär) die Position des ersten schlafenden Feindes mit einer X-Position >= x.
+	 *
+	 * @param x die gesuchte X-Position
+	 * @return die Position in der Liste (sleepingCount falls es keinen gibt)
+	 */
+	private int findFirstSleeping(int x) {
+		int low = 0;
+		int high = sleepingCount;
+		while ( low < high ) {
+			int mid = (low + high) >>> 1;
+			if ( (int)posX[sleeping[mid]] < x ) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Setzt den Rand um den sichtbaren Bereich in dem Feinde noch bewegt werden.
+	 *
+	 * @param activityMargin der Rand in Pixeln
+	 */
+	public void setActivityMargin(int activityMargin) {
+		this.activityMargin = activityMargin;
+	}
+
+	/**
+	 * Schaltet die parallele Bewegung ein oder aus.
+	 *
+	 * Parallel bewegt wird erst ab PARALLEL_THRESHOLD aktiven Feinden, darunter
+	 * lohnt sich die Verteilung nicht.
+	 *
+	 * @param pool der zu verwendende Pool oder null für die sequentielle Bewegung
+	 */
+	public void setParallelPool(ForkJoinPool pool) {
+		this.parallelPool = pool;
+	}
+
+	/**
+	 * Legt fest ob beim Aufwachen die verschlafene Patrouille nachgerechnet wird.
+	 * Ohne läuft ein Feind da weiter wo er eingeschlafen ist.
+	 *
+	 * @param catchUp true falls nachgerechnet werden soll
+	 */
+	public void setCatchUp(boolean catchUp) {
+		this.catchUp = catchUp;
+	}
+
+	/**
+	 * Liefert die Anzahl der aktiven Feinde.
+	 *
+	 * @return die Anzahl der Feinde im Aktivitätsbereich
+	 */
+	public int getActiveCount() {
+		return activeCount;
+	}
+
+	/**
+	 * Liefert die Anzahl aller Feinde.
+	 *
+	 * @return die Anzahl der Feinde
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Setzt das Sprite das die Feinde verfolgen (die Spielfigur).
+	 *
+	 * @param target das Sprite oder null
+	 */
+	public void setTarget(Sprite target) {
+		this.target = target;
+	}
+
+	/**
+	 * Setzt den Navigationsgraphen der Map. Mit ihm können verfolgende Feinde
+	 * dem gemeinsamen Flussfeld zum Ziel folgen.
+	 *
+	 * @param navigation der Graph oder null
+	 */
+	public void setNavigation(NavigationGraph navigation) {
+		this.navigation = navigation;
+	}
+
+	/**
+	 * Liefert den Navigationsgraphen.
+	 *
+	 * @return der Graph oder null
+	 */
+	public NavigationGraph getNavigation() {
+		return navigation;
+	}
+
+	/**
+	 * Liefert den Knoten des Navigationsgraphen auf dem ein Feind steht.
+	 *
+	 * @param i der Index des Feindes
+	 * @return der Knoten oder -1 (auch falls es keinen Graphen gibt)
+	 */
+	public int getNavigationNode(int i) {
+		if ( navigation == null ) {
+			return -1;
+		}
+		return navigation.findNode((int)posX[i] + hitX[i] + hitWidth[i] / 2, (int)posY[i] + hitY[i] + tilesize / 2);
+	}
+
+	/**
+	 * Setzt das KI-Zeitbudget pro Frame.
+	 *
+	 * @param nanos das Budget in Nanosekunden
+	 * @param maxDecisions die maximale Anzahl Entscheidungen pro Frame
+	 */
+	public void setAiBudget(long nanos, int maxDecisions) {
+		this.aiBudgetNanos = nanos;
+		this.aiMaxDecisions = maxDecisions;
+	}
+
+	/**
+	 * Liefert die Anzahl der Entscheidungen im letzten Schritt.
+	 *
+	 * @return die Anzahl der Entscheidungen
+	 */
+	public int getDecisionCount() {
+		return decisionCount;
+	}
+
+	/**
+	 * Prüft ob ein Feind die Spielfigur sehen kann: Auf der Linie zwischen den
+	 * Mittelpunkten der beiden Hitboxen darf kein für den Spieler blockierendes
+	 * Tile liegen.
+	 *
+	 * @param i der Index des Feindes
+	 * @return true falls die Sicht frei ist
+	 */
+	public boolean hasLineOfSight(int i) {
+		if ( target == null ) {
+			return false;
+		}
+
+		Point pos = target.getPosition();
+		Rectangle hitbox = target.getHitbox();
+		int x0 = ((int)posX[i] + hitX[i] + hitWidth[i] / 2) / tilesize;
+		int y0 = ((int)posY[i] + hitY[i] + hitHeight[i] / 2) / tilesize;
+		int x1 = (pos.x + hitbox.x + hitbox.width / 2) / tilesize;
+		int y1 = (pos.y + hitbox.y + hitbox.height / 2) / tilesize;
+
+		// Bresenham über die Tiles
+		int dx = Math.abs(x1 - x0);
+		int dy = -Math.abs(y1 - y0);
+		int sx = x0 < x1 ? 1 : -1;
+		int sy = y0 < y1 ? 1 : -1;
+		int err = dx + dy;
+
+		while ( true ) {
+			if ( x0 < 0 || y0 < 0 || x0 >= mapWidth || y0 >= mapHeight ) {
+				return false;
+			}
+			if ( (tileFlags[y0*mapWidth + x0] & Tile.PLAYERBLOCKING) != 0 ) {
+				return false;
+			}
+			if ( x0 == x1 && y0 == y1 ) {
+				return true;
+			}
+
+			int e2 = 2 * err;
+			if ( e2 >= dy ) {
+				err += dy;
+				x0 += sx;
+			}
+			if ( e2 <= dx ) {
+				err += dx;
+				y0 += sy;
+			}
+		}
+	}
+
+	/**
+	 * Liefert ob es ein zu verfolgendes Sprite gibt.
+	 *
+	 * @return true falls setTarget() mit einem Sprite aufgerufen wurde
+	 */
+	public boolean hasTarget() {
+		return target != null;
+	}
+
+	public float getTargetX() {
+		return target.getPosition().x;
+	}
+
+	public float getTargetY() {
+		return target.getPosition().y;
+	}
+
+	public float getX(int i) {
+		return posX[i];
+	}
+
+	public float getY(int i) {
+		return posY[i];
+	}
+
+	public float getSpeed(int i) {
+		return speed[i];
+	}
+
+	void setSpeed(int i, float value) {
+		speed[i] = value;
+	}
+
+	public int getDirection(int i) {
+		return direction[i];
+	}
+
+	public boolean isDormant(int i) {
+		return dormant[i];
+	}
+
+	public int getAiState(int i) {
+		return aiState[i];
+	}
+
+	public void setAiState(int i, int state) {
+		aiState[i] = state;
+	}
+
+	public float getVelocityY(int i) {
+		return velocityY[i];
+	}
+
+	public void setVelocityY(int i, float velocity) {
+		velocityY[i] = velocity;
+	}
+
+	public float getBaseY(int i) {
+		return baseY[i];
+	}
+
+	public float getPhase(int i) {
+		return phase[i];
+	}
+
+	public void setPhase(int i, float value) {
+		phase[i] = value;
+	}
+
+	/**
+	 * Schreibt den veränderlichen Zustand aller Feinde (samt Sprites) und die
+	 * Listen der aktiven und schlafenden Feinde in einen Puffer (für Spielstände).
+	 * Die Anzahl der Feinde wird nicht geschrieben - sie steht mit der Map fest.
+	 *
+	 * @param buffer der Puffer
+	 */
+	public void writeState(ByteBuffer buffer) {
+		mergeSleepers();
+
+		for ( int i=0 ; i<count ; i++ ) {
+			buffer.putFloat(posX[i]);
+			buffer.putFloat(posY[i]);
+			buffer.putFloat(speed[i]);
+			buffer.putInt(direction[i]);
+			buffer.putInt(aiState[i]);
+			buffer.putFloat(velocityY[i]);
+			buffer.putFloat(baseY[i]);
+			buffer.putFloat(phase[i]);
+			buffer.put((byte) ((turned[i] ? 1 : 0) | (dormant[i] ? 2 : 0)));
+			buffer.putLong(sleepTime[i]);
+			sprites[i].writeState(buffer);
+		}
+
+		buffer.putInt(activeCount);
+		for ( int k=0 ; k<activeCount ; k++ ) {
+			buffer.putInt(active[k]);
+		}
+		buffer.putInt(sleepingCount);
+		for ( int s=0 ; s<sleepingCount ; s++ ) {
+			buffer.putInt(sleeping[s]);
+		}
+		buffer.putInt(maxSleepingWidth);
+		buffer.putInt(thinkCursor);
+	}
+
+	/**
+	 * Stellt den Zustand aus einem Puffer wieder her. Die Feinde müssen die
+	 * gleichen sein wie beim Schreiben (gleiche Map, gleiche Reihenfolge).
+	 *
+	 * @param buffer der Puffer
+	 * @param map die Map (für das Kollisionsgitter)
+	 */
+	public void readState(ByteBuffer buffer, Map map) {
+		for ( int i=0 ; i<count ; i++ ) {
+			posX[i] = buffer.getFloat();
+			posY[i] = buffer.getFloat();
+			speed[i] = buffer.getFloat();
+			direction[i] = buffer.getInt();
+			aiState[i] = buffer.getInt();
+			velocityY[i] = buffer.getFloat();
+			baseY[i] = buffer.getFloat();
+			phase[i] = buffer.getFloat();
+			int flags = buffer.get();
+			turned[i] = (flags & 1) != 0;
+			dormant[i] = (flags & 2) != 0;
+			sleepTime[i] = buffer.getLong();
+			sprites[i].readState(buffer);
+		}
+
+		activeCount = buffer.getInt();
+		for ( int k=0 ; k<activeCount ; k++ ) {
+			active[k] = buffer.getInt();
+		}
+		sleepingCount = buffer.getInt();
+		for ( int s=0 ; s<sleepingCount ; s++ ) {
+			sleeping[s] = buffer.getInt();
+		}
+		pendingCount = 0;
+		maxSleepingWidth = buffer.getInt();
+		thinkCursor = buffer.getInt();
+
+		updateCollisionGrid(map);
+	}
+
+	/**
+	 * Trägt alle aktiven Feinde an ihrer aktuellen Position neu in das Kollisionsgitter
+	 * ein. Schlafende Feinde sind weit außerhalb des sichtbaren Bereichs und können
+	 * die Spielfigur nicht berühren.
+	 *
+	 * @param map die Map auf der sich die Feinde bewegen
+	 */
+	public void updateCollisionGrid(Map map) {
+		if ( collisionGrid == null ) {
+			int cellSize = GRID_CELL_TILES * TileFactory.getInstance().getTileSize();
+			collisionGrid = new CollisionGrid<Enemy>(map.getPixelWidth(), map.getPixelHeight(), cellSize);
+		}
+
+		collisionGrid.clear();
+		for ( int k=0 ; k<activeCount ; k++ ) {
+			int i = active[k];
+			collisionGrid.add(handles[i], (int)posX[i] + hitX[i], (int)posY[i] + hitY[i], hitWidth[i], hitHeight[i]);
+		}
+	}
+
+	/**
+	 * Sucht einen Feind der das angegebene Sprite berührt.
+	 *
+	 * Das Gitter liefert die Feinde deren Hitbox die Hitbox des Sprites
+	 * schneidet; gemeldet wird davon nur ein Feind dessen Frame sich mit dem
+	 * Frame des Sprites pixelgenau überlappt (siehe Sprite.checkCollision).
+	 *
+	 * @param sprite das zu prüfende Sprite
+	 * @return der erste gefundene Feind oder null falls keiner berührt wird
+	 */
+	public Enemy findCollision(Sprite sprite) {
+		if ( collisionGrid == null ) {
+			return null;
+		}
+
+		Point pos = sprite.getPosition();
+		Rectangle hitbox = sprite.getHitbox();
+		collisionGrid.collectCollisions(pos.x + hitbox.x, pos.y + hitbox.y, hitbox.width, hitbox.height, null,
+				collisionCandidates);
+
+		Enemy found = null;
+		for ( int k=0 ; k<collisionCandidates.size() ; k++ ) {
+			Enemy enemy = collisionCandidates.get(k);
+			if ( enemy.getSprite().checkCollision(sprite) ) {
+				found = enemy;
+				break;
+			}
+		}
+		collisionCandidates.clear();
+		return found;
+	}
+
+	/**
+	 * Liefert das Kollisionsgitter mit allen Feinden (null vor dem ersten Schritt).
+	 *
+	 * @return das Kollisionsgitter
+	 */
+	public CollisionGrid<Enemy> getCollisionGrid() {
+		return collisionGrid;
 	}
 
 	/**
 	 * Iterator für die Enemies.
 	 */
 	public Iterator<Enemy> iterator() {
-		return enemies.iterator();
+		return new Iterator<Enemy>() {
+			private int index = 0;
+
+			public boolean hasNext() {
+				return index < count;
+			}
+
+			public Enemy next() {
+				if ( index >= count ) {
+					throw new NoSuchElementException();
+				}
+				return handles[index++];
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
 	}
 
 	/**
 	 * Löscht alle Einträge.
 	 */
 	public void flush() {
-		enemies.clear();
+		Arrays.fill(handles, 0, count, null);
+		Arrays.fill(sprites, 0, count, null);
+		Arrays.fill(behaviour, 0, count, null);
+		target = null;
+		navigation = null;
+		thinkCursor = 0;
+		count = 0;
+		activeCount = 0;
+		sleepingCount = 0;
+		pendingCount = 0;
+		maxSleepingWidth = 0;
+		if ( collisionGrid != null ) {
+			collisionGrid.clear();
+		}
 	}
 }
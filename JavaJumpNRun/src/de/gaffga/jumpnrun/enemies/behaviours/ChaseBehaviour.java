@@ -0,0 +1,141 @@
+package de.gaffga.jumpnrun.enemies.behaviours;
+
+import de.gaffga.jumpnrun.enemies.Enemy;
+import de.gaffga.jumpnrun.enemies.EnemyManager;
+import de.gaffga.jumpnrun.map.Map;
+import de.gaffga.jumpnrun.map.NavigationGraph;
+
+/**
+ * Der Feind patrouilliert wie gewohnt, läuft aber auf die Spielfigur zu (und 
+ * etwas schneller) sobald er sie sehen kann.
+ * 
+ * Gibt es einen Navigationsgraphen folgt der Feind dem gemeinsamen Flussfeld
+ * zur Spielfigur sobald sie über höchstens CHASE_LINKS Verbindungen erreichbar
+ * ist - er springt dann auch auf höhere Ebenen und lässt sich über Kanten
+ * fallen. Ohne Graphen läuft er nur direkt auf die Spielfigur zu solange er
+ * sie sehen kann. Der Feind unterliegt der Schwerkraft.
+ * 
+ * Der Weg wird in think() bestimmt, also nur wenn der Feind im Rahmen des 
+ * KI-Budgets an der Reihe ist.
+ * 
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class ChaseBehaviour implements IEnemyBehaviour {
+
+	/** Der Name in der tiles.properties */
+	public static final String NAME = "chase";
+	
+	/** Zustand: Der Feind verfolgt die Spielfigur */
+	public static final int STATE_CHASING = 1;
+	
+	/** Zustand: Der Feind steht auf dem Boden (Bit, zusätzlich zu STATE_CHASING) */
+	public static final int STATE_ON_GROUND = 2;
+	
+	/** Bis zu dieser Entfernung (in Pixeln) wird die Spielfigur bemerkt */
+	public static final int SIGHT_RANGE = 256;
+	
+	/** Bis zu dieser Wegelänge (Verbindungen im Navigationsgraphen) wird verfolgt */
+	public static final int CHASE_LINKS = 24;
+	
+	/** Geschwindigkeitsfaktor während der Verfolgung */
+	public static final float CHASE_SPEED = 1.5f;
+	
+	public String getName() {
+		return NAME;
+	}
+
+	public boolean think(EnemyManager manager, int i) {
+		int ground = manager.getAiState(i) & STATE_ON_GROUND;
+		if ( !manager.hasTarget() ) {
+			manager.setAiState(i, ground);
+			return false;
+		}
+		
+		if ( followFlow(manager, i, ground) ) {
+			return true;
+		}
+		
+		float dx = manager.getTargetX() - manager.getX(i);
+		float dy = manager.getTargetY() - manager.getY(i);
+		if ( dx*dx + dy*dy > SIGHT_RANGE*SIGHT_RANGE || !manager.hasLineOfSight(i) ) {
+			manager.setAiState(i, ground);
+		} else {
+			manager.setAiState(i, STATE_CHASING | ground);
+			turn(manager, i, dx < 0 ? Enemy.LEFT : Enemy.RIGHT);
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Folgt dem Flussfeld des Navigationsgraphen zur Spielfigur.
+	 * 
+	 * @param manager der EnemyManager
+	 * @param i der Index des Feindes
+	 * @param ground STATE_ON_GROUND falls der Feind auf dem Boden steht, sonst 0
+	 * @return true falls das Flussfeld eine Entscheidung geliefert hat
+	 */
+	private boolean followFlow(EnemyManager manager, int i, int ground) {
+		NavigationGraph navigation = manager.getNavigation();
+		int node = manager.getNavigationNode(i);
+		if ( node < 0 || navigation.getDistance(node) > CHASE_LINKS ) {
+			return false;
+		}
+		
+		int next = navigation.getNextNode(node);
+		if ( next < 0 ) {
+			// Gleiche Zelle wie die Spielfigur - direkt auf sie zu
+			manager.setAiState(i, STATE_CHASING | ground);
+			turn(manager, i, manager.getTargetX() < manager.getX(i) ? Enemy.LEFT : Enemy.RIGHT);
+			return true;
+		}
+		
+		// Bei einer senkrechten Verbindung (gleiche Spalte) bleibt die Richtung wie sie ist
+		int nextX = navigation.getNodeX(next);
+		int nodeX = navigation.getNodeX(node);
+		if ( nextX != nodeX ) {
+			turn(manager, i, nextX < nodeX ? Enemy.LEFT : Enemy.RIGHT);
+		}
+		if ( ground != 0 && navigation.getNextLink(node) == NavigationGraph.LINK_JUMP ) {
+			manager.setVelocityY(i, JumperBehaviour.JUMP_SPEED);
+			ground = 0;
+		}
+		manager.setAiState(i, STATE_CHASING | ground);
+		
+		return true;
+	}
+	
+	/**
+	 * Dreht den Feind falls nötig in die angegebene Richtung.
+	 */
+	private static void turn(EnemyManager manager, int i, int dir) {
+		if ( manager.getDirection(i) != dir ) {
+			manager.setDirection(i, dir);
+		}
+	}
+
+	public void move(EnemyManager manager, int i, float speedFactor) {
+		int state = manager.getAiState(i);
+		float speed = manager.getSpeed(i);
+		if ( (state & STATE_CHASING) != 0 ) {
+			speed *= CHASE_SPEED;
+		}
+		
+		float vy = manager.getVelocityY(i) - JumperBehaviour.GRAVITY * speedFactor;
+		int rc = PatrolBehaviour.walk(manager, i, speedFactor * speed * 100.0, vy * speedFactor);
+		
+		state &= ~STATE_ON_GROUND;
+		if ( (rc & Map.COLLISION_SOUTH) != 0 ) {
+			vy = 0;
+			state |= STATE_ON_GROUND;
+		} else if ( (rc & Map.COLLISION_NORTH) != 0 ) {
+			vy = 0;
+		}
+		manager.setVelocityY(i, vy);
+		manager.setAiState(i, state);
+	}
+
+	public boolean canCatchUp() {
+		return false;
+	}
+}
@@ -0,0 +1,81 @@
+package de.gaffga.jumpnrun.enemies.behaviours;
+
+import java.util.HashMap;
+
+/**
+ * Liefert die Verhaltensweisen für Feinde über ihren Namen aus der tiles.properties.
+ * 
+ * Da die Verhalten keinen eigenen Zustand haben gibt es von jedem nur eine 
+ * Instanz (Flyweight). Die Fabrik selbst ist ein Singleton.
+ * 
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class EnemyBehaviourFactory {
+
+	/** Die Referenz auf die Singletoninstanz */
+	private static EnemyBehaviourFactory instance = null;
+	
+	/** Alle bekannten Verhalten - Key ist der Name */
+	private HashMap<String, IEnemyBehaviour> behaviours = null;
+	
+	/** Das Verhalten für Feinde ohne (oder mit unbekannter) Angabe */
+	private IEnemyBehaviour defaultBehaviour = null;
+	
+	/**
+	 * Konstruktor.
+	 */
+	private EnemyBehaviourFactory() {
+		behaviours = new HashMap<String, IEnemyBehaviour>();
+		defaultBehaviour = new PatrolBehaviour();
+		register(defaultBehaviour);
+		register(new ChaseBehaviour());
+		register(new JumperBehaviour());
+		register(new FlyerBehaviour());
+	}
+	
+	/**
+	 * Liefert die einzige Instanz.
+	 * 
+	 * @return die einzige Instanz
+	 */
+	public static synchronized EnemyBehaviourFactory getInstance() {
+		if ( instance == null ) {
+			instance = new EnemyBehaviourFactory();
+		}
+		
+		return instance;
+	}
+	
+	/**
+	 * Meldet ein Verhalten unter seinem Namen an.
+	 * 
+	 * @param behaviour das Verhalten
+	 */
+	public synchronized void register(IEnemyBehaviour behaviour) {
+		behaviours.put(behaviour.getName(), behaviour);
+	}
+	
+	/**
+	 * Liefert das Verhalten mit dem angegebenen Namen.
+	 * 
+	 * @param name der Name (null oder unbekannt: Patrouille)
+	 * @return das Verhalten
+	 */
+	public synchronized IEnemyBehaviour getBehaviour(String name) {
+		if ( name == null ) {
+			return defaultBehaviour;
+		}
+		
+		IEnemyBehaviour behaviour = behaviours.get(name.trim().toLowerCase());
+		return behaviour != null ? behaviour : defaultBehaviour;
+	}
+	
+	/**
+	 * Liefert das Standardverhalten (Patrouille).
+	 * 
+	 * @return das Standardverhalten
+	 */
+	public IEnemyBehaviour getDefaultBehaviour() {
+		return defaultBehaviour;
+	}
+}
@@ -0,0 +1,47 @@
+package de.gaffga.jumpnrun.enemies.behaviours;
+
+import de.gaffga.jumpnrun.enemies.EnemyManager;
+
+/**
+ * Der Feind fliegt in einer Wellenbewegung um seine Starthöhe hin und her. 
+ * Horizontal verhält er sich wie eine Patrouille.
+ * 
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class FlyerBehaviour implements IEnemyBehaviour {
+
+	/** Der Name in der tiles.properties */
+	public static final String NAME = "flyer";
+	
+	/** Die Amplitude der Wellenbewegung in Pixeln */
+	public static final float AMPLITUDE = 24.0f;
+	
+	/** Die Frequenz der Wellenbewegung (Wellen pro Sekunde) */
+	public static final float FREQUENCY = 0.5f;
+	
+	public String getName() {
+		return NAME;
+	}
+
+	/**
+	 * Ein Flieger braucht keine Entscheidungen.
+	 */
+	public boolean think(EnemyManager manager, int i) {
+		return false;
+	}
+
+	public void move(EnemyManager manager, int i, float speedFactor) {
+		float phase = manager.getPhase(i) + speedFactor * FREQUENCY * (float)(2 * Math.PI);
+		if ( phase > 2 * Math.PI ) {
+			phase -= 2 * Math.PI;
+		}
+		manager.setPhase(i, phase);
+		
+		float targetY = manager.getBaseY(i) + AMPLITUDE * (float)Math.sin(phase);
+		PatrolBehaviour.walk(manager, i, speedFactor * manager.getSpeed(i) * 100.0, targetY - manager.getY(i));
+	}
+
+	public boolean canCatchUp() {
+		return false;
+	}
+}
@@ -0,0 +1,54 @@
+package de.gaffga.jumpnrun.enemies.behaviours;
+
+import de.gaffga.jumpnrun.enemies.EnemyManager;
+
+/**
+ * Interface für das Verhalten eines Feindes (Strategy-Muster).
+ * 
+ * Ein Verhalten hat selbst keinen Zustand - alles was ein Feind sich merken muss
+ * liegt in den Arrays des EnemyManagers. Eine Instanz kann daher von beliebig
+ * vielen Feinden gleichzeitig benutzt werden.
+ * 
+ * Die Arbeit ist zweigeteilt: move() wird in jedem Frame für jeden aktiven Feind
+ * aufgerufen und muss billig sein. Es darf nur die Einträge des eigenen Feindes
+ * schreiben (die Feinde werden evtl. parallel bewegt). Teure Entscheidungen 
+ * (z.B. Sichtprüfungen) gehören nach think() - das ruft der EnemyManager 
+ * reihum und nur solange das KI-Zeitbudget des Frames reicht.
+ * 
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public interface IEnemyBehaviour {
+
+	/**
+	 * Liefert den Namen des Verhaltens wie er in der tiles.properties steht.
+	 * 
+	 * @return der Name
+	 */
+	public String getName();
+	
+	/**
+	 * Trifft (falls nötig) eine Entscheidung für einen Feind.
+	 * 
+	 * @param manager der EnemyManager mit dem Zustand des Feindes
+	 * @param i der Index des Feindes
+	 * @return true falls eine (teure) Entscheidung getroffen wurde, false falls es nichts zu tun gab
+	 */
+	public boolean think(EnemyManager manager, int i);
+	
+	/**
+	 * Bewegt einen Feind für ein Frame.
+	 * 
+	 * @param manager der EnemyManager mit dem Zustand des Feindes
+	 * @param i der Index des Feindes
+	 * @param speedFactor der Geschwindigkeitsfaktor des Frames (siehe FpsMeter)
+	 */
+	public void move(EnemyManager manager, int i, float speedFactor);
+	
+	/**
+	 * Gibt an ob sich die Bewegung während der Schlafphase eines Feindes 
+	 * nachrechnen lässt (Hin- und Herlaufen zwischen zwei Hindernissen).
+	 * 
+	 * @return true falls der EnemyManager die Bewegung nachrechnen darf
+	 */
+	public boolean canCatchUp();
+}
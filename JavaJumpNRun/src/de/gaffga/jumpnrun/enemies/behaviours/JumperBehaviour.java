@@ -0,0 +1,59 @@
+package de.gaffga.jumpnrun.enemies.behaviours;
+
+import de.gaffga.jumpnrun.enemies.EnemyManager;
+import de.gaffga.jumpnrun.map.Map;
+
+/**
+ * Der Feind patrouilliert und springt dabei immer wieder in die Höhe. Er 
+ * unterliegt der Schwerkraft und landet auf Tiles die für Feinde blockierend sind.
+ * 
+ * Die Entscheidung zu springen fällt in think().
+ * 
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class JumperBehaviour implements IEnemyBehaviour {
+
+	/** Der Name in der tiles.properties */
+	public static final String NAME = "jumper";
+	
+	/** Zustand: Der Feind steht auf dem Boden */
+	public static final int STATE_ON_GROUND = 1;
+	
+	/** Die Absprunggeschwindigkeit in Pixeln pro Sekunde */
+	public static final float JUMP_SPEED = 420.0f;
+	
+	/** Die Schwerkraft in Pixeln pro Sekunde² */
+	public static final float GRAVITY = 1200.0f;
+	
+	public String getName() {
+		return NAME;
+	}
+
+	public boolean think(EnemyManager manager, int i) {
+		if ( manager.getAiState(i) != STATE_ON_GROUND ) {
+			return false;
+		}
+		
+		manager.setAiState(i, 0);
+		manager.setVelocityY(i, JUMP_SPEED);
+		return true;
+	}
+
+	public void move(EnemyManager manager, int i, float speedFactor) {
+		float vy = manager.getVelocityY(i) - GRAVITY * speedFactor;
+		
+		int rc = PatrolBehaviour.walk(manager, i, speedFactor * manager.getSpeed(i) * 100.0, vy * speedFactor);
+		
+		if ( (rc & Map.COLLISION_SOUTH) != 0 ) {
+			vy = 0;
+			manager.setAiState(i, STATE_ON_GROUND);
+		} else if ( (rc & Map.COLLISION_NORTH) != 0 ) {
+			vy = 0;
+		}
+		manager.setVelocityY(i, vy);
+	}
+
+	public boolean canCatchUp() {
+		return false;
+	}
+}
@@ -0,0 +1,57 @@
+package de.gaffga.jumpnrun.enemies.behaviours;
+
+import de.gaffga.jumpnrun.enemies.Enemy;
+import de.gaffga.jumpnrun.enemies.EnemyManager;
+import de.gaffga.jumpnrun.map.Map;
+
+/**
+ * Das Standardverhalten: Der Feind läuft nach links oder rechts und dreht
+ * um sobald er an ein für Feinde blockierendes Tile stößt.
+ * 
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class PatrolBehaviour implements IEnemyBehaviour {
+
+	/** Der Name in der tiles.properties */
+	public static final String NAME = "patrol";
+	
+	public String getName() {
+		return NAME;
+	}
+
+	/**
+	 * Eine Patrouille braucht keine Entscheidungen.
+	 */
+	public boolean think(EnemyManager manager, int i) {
+		return false;
+	}
+
+	public void move(EnemyManager manager, int i, float speedFactor) {
+		walk(manager, i, speedFactor * manager.getSpeed(i) * 100.0, 0);
+	}
+
+	public boolean canCatchUp() {
+		return true;
+	}
+	
+	/**
+	 * Bewegt einen Feind in seiner Laufrichtung (und ggf. vertikal) und dreht ihn
+	 * um falls er seitlich anstößt.
+	 * 
+	 * @param manager der EnemyManager
+	 * @param i der Index des Feindes
+	 * @param distance die horizontale Strecke in Pixeln
+	 * @param dy die vertikale Bewegung in Pixeln
+	 * @return die Kollisionsflags (Map.COLLISION_...)
+	 */
+	static int walk(EnemyManager manager, int i, double distance, double dy) {
+		double dx = manager.getDirection(i) == Enemy.LEFT ? -distance : distance;
+		int rc = manager.moveBy(i, dx, dy);
+		
+		if ( (rc & (Map.COLLISION_WEST | Map.COLLISION_EAST)) != 0 ) {
+			manager.setDirection(i, manager.getDirection(i) == Enemy.LEFT ? Enemy.RIGHT : Enemy.LEFT);
+		}
+		
+		return rc;
+	}
+}
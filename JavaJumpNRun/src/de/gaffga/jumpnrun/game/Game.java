@@ -5,9 +5,14 @@ import java.awt.Component;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Image;
+import java.awt.image.BufferedImage;
 import java.awt.event.KeyEvent;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import de.gaffga.jumpnrun.DecoratedText;
 import de.gaffga.jumpnrun.FpsMeter;
@@ -16,6 +21,9 @@ import de.gaffga.jumpnrun.controller.IGameController;
 import de.gaffga.jumpnrun.game.states.MainMenuState;
 import de.gaffga.jumpnrun.menu.MenuException;
 import de.gaffga.jumpnrun.menu.MenuSystem;
+import de.gaffga.jumpnrun.resources.AssetCache;
+import de.gaffga.jumpnrun.resources.AssetPreloader;
+import de.gaffga.jumpnrun.resources.PreloadManifest;
 import de.gaffga.jumpnrun.resources.ResourceManager;
 import de.gaffga.jumpnrun.resources.ResourceManagerException;
 
@@ -24,10 +32,18 @@ import de.gaffga.jumpnrun.resources.ResourceManagerException;
  * Hauptspielschleife die entsprechenden Methoden des aktuellen GameState
  * auf.
  * 
+ * Im deterministischen Modus (setDeterministic) rechnet jeder Tick mit genau
+ * 1/Timer.TICK_RATE Sekunden und der Timer läuft simuliert - ein Spiel hängt
+ * dann nur noch von den Eingaben pro Tick ab. Aufzeichnungen lassen sich so
+ * exakt wiederholen, auch ohne Zeichnen und ohne Warten (runHeadless).
+ * 
  * @author Stefan Gaffga <stefan@gaffga.de>
  */
 public class Game {
 
+	/** Pause zwischen zwei Bildern des Ladebildschirms in Millisekunden */
+	private static final long LOADING_FRAME_MILLIS = 16;
+
 	/** Das Objekt das uns mit Tastaturzuständen versorgt */
 	private IGameController input = null;
 	
@@ -58,6 +74,24 @@ public class Game {
 	/** Das Menu das während einer Pause angezeigt wird */
 	private MenuSystem pauseMenu = null;
 	
+	/** Die Nummer des letzten berechneten Ticks */
+	private long tick = 0;
+	
+	/** Flag ob mit festen Zeitschritten gerechnet wird */
+	private boolean deterministic = false;
+	
+	/** Anzahl der Ticks pro gezeichnetem Frame (> 1 zum schnellen Vorspulen) */
+	private int ticksPerFrame = 1;
+	
+	/** Die Listener die nach jedem Tick benachrichtigt werden */
+	private ArrayList<ITickListener> tickListeners = new ArrayList<ITickListener>();
+	
+	/** Die Dauer des Vorladens in Millisekunden */
+	private long preloadMillis;
+	
+	/** Flag ob das erste Bild schon angezeigt wurde (für die Messung der Startzeit) */
+	private boolean firstFrameShown = false;
+	
 	/**
 	 * Der Konstruktor für ein neues Spiel.
 
@@ -78,6 +112,14 @@ public class Game {
 		
 		// Das Bild für das DoubleBuffering erzeugen
 		backgroundImage = component.createVolatileImage(component.getWidth(), component.getHeight());
+		if ( backgroundImage == null ) {
+			// Ohne Bildschirm (HeadlessComponent) gibt es kein VolatileImage
+			backgroundImage = new BufferedImage(component.getWidth(), component.getHeight(), BufferedImage.TYPE_INT_RGB);
+		}
+		
+		// Alle Bilder vorladen bevor der erste Tick läuft - so bleiben auch
+		// Aufzeichnungen unabhängig davon wie lange das Laden dauert
+		preload();
 		
 		configMap = new HashMap<String, Object>();
 		
@@ -100,6 +142,43 @@ public class Game {
 		pauseMenu.setDrawBackground(false);
 	}
 	
+	/**
+	 * Lädt die Bilder aus dem PreloadManifest parallel und zeigt dabei den 
+	 * Ladebildschirm an.
+	 * 
+	 * @throws GameException falls die Liste der Bilder nicht gelesen werden kann
+	 */
+	private void preload() throws GameException {
+		AssetPreloader preloader;
+		try {
+			preloader = new AssetPreloader(PreloadManifest.read());
+		} catch (ResourceManagerException e) {
+			throw new GameException("Fehler beim Lesen der Liste der vorzuladenden Bilder", e);
+		}
+		preloader.start();
+		
+		LoadingScreen loadingScreen = new LoadingScreen();
+		try {
+			while ( !preloader.await(LOADING_FRAME_MILLIS) ) {
+				loadingScreen.paint(backgroundImage, preloader);
+				Graphics g = component.getGraphics();
+				if ( g != null ) {
+					try {
+						g.drawImage(backgroundImage, 0, 0, null);
+					} finally {
+						g.dispose();
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			throw new GameException("Das Vorladen der Bilder wurde unterbrochen", e);
+		}
+		
+		preloadMillis = preloader.getMillis();
+		Logger.getLogger(Game.class.getName()).log(Level.INFO, preloader.getTotal() + " Bilder in " 
+				+ preloadMillis + " ms mit " + preloader.getThreads() + " Threads geladen");
+	}
+	
 	/**
 	 * Beendet die Hauptspielschleife.
 	 */
@@ -127,53 +206,18 @@ public class Game {
 		while (!ende) {
 			frameStart = System.nanoTime();
 			
-			if ( input.wasKeyHit(KeyEvent.VK_ESCAPE)) {
-				setPause(!isPaused());
-			}
-			
-			if ( !pause ) {
-				// Den aktuellen Spielzustand bearbeiten
-				try {
-					currentGameState.step();
-				} catch (GameStateException e1) {
-					throw new GameException("Fehler beim Ausführen eines GameState-Steps", e1);
-				}
-			} else {
-				try {
-					pauseMenu.step();
-				} catch (MenuException e) {
-					throw new GameException("Fehler beim Ausführen des PauseMenues", e);
-				}
-			}
-
-			// Zeichnen des aktuellen Spielzustands
-			currentGameState.paint(backgroundImage);
-			
-			Graphics2D bg = (Graphics2D) backgroundImage.getGraphics();
-			
-			// Falls konfiguriert den FPS-Graphen zeichnen
-			if ( (Boolean)configMap.get("showFps") ) {
-				Image graph = FpsMeter.getInstance().getGraph();
-				float transparency = (float)((Integer)configMap.get("fpsTransparency")) / 100.0f;
-				bg.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, transparency));
-				
-				bg.drawImage(graph, backgroundImage.getWidth(null)-20-graph.getWidth(null), 
-						backgroundImage.getHeight(null)-20-graph.getHeight(null), null);
+			// Beim schnellen Vorspulen werden die Zwischenschritte nicht gezeichnet
+			for ( int i=0 ; i<ticksPerFrame && !ende ; i++ ) {
+				stepTick();
 			}
+			paintFrame();
 			
-			// Falls Pause ist dies anzeigen
-			if ( pause ) {
-				int x = backgroundImage.getWidth(null)/2;
-				int y = backgroundImage.getHeight(null)/2;
-
-				pauseText.paint(backgroundImage, x, y);
-				pauseMenu.paint(bg);
+			if ( !firstFrameShown ) {
+				firstFrameShown = true;
+				Logger.getLogger(Game.class.getName()).log(Level.INFO, "Erstes Bild (Hauptmenü) nach " 
+						+ ManagementFactory.getRuntimeMXBean().getUptime() + " ms (davon Vorladen: " + preloadMillis + " ms)");
 			}
 			
-			// Den gesamten Spielbildschirm anzeigen
-			Graphics g = component.getGraphics();
-			g.drawImage(backgroundImage, 0, 0, null);
-			
 			float targetFPS = 60;
 			float targetFrameTime = 1000.0f / targetFPS;
 			float frameTime = (float) ((System.nanoTime() - frameStart) / 1e6);
@@ -191,6 +235,186 @@ public class Game {
 			// Den Timer informieren, dass ein Frame fertig ist
 			FpsMeter.getInstance().notifyNewFrame();
 		}
+		
+		for ( AssetCache<?> cache : ResourceManager.getInstance().getCaches() ) {
+			Logger.getLogger(Game.class.getName()).log(Level.INFO, cache.toString());
+		}
+	}
+	
+	/**
+	 * Lässt das Spiel ohne Zeichnen und ohne Warten so schnell wie möglich 
+	 * laufen, z.B. um eine Aufzeichnung zu überprüfen. Sinnvoll nur im 
+	 * deterministischen Modus.
+	 * 
+	 * @param maxTicks nach so vielen Ticks wird abgebrochen (negativ = ohne Grenze)
+	 * @return die Anzahl der berechneten Ticks
+	 * @throws GameException
+	 */
+	public long runHeadless(long maxTicks) throws GameException {
+		long startTick = tick;
+		
+		ende = false;
+		while ( !ende && (maxTicks < 0 || tick - startTick < maxTicks) ) {
+			stepTick();
+		}
+		
+		return tick - startTick;
+	}
+	
+	/**
+	 * Berechnet einen Tick: Eingaben übernehmen, den Spielzustand (oder das 
+	 * Pausenmenü) weiterschalten und die TickListener benachrichtigen.
+	 * 
+	 * @throws GameException
+	 */
+	public void stepTick() throws GameException {
+		// Die Eingaben für diesen Tick übernehmen
+		input.tick();
+		
+		if ( input.wasKeyHit(KeyEvent.VK_ESCAPE)) {
+			setPause(!isPaused());
+		}
+		
+		if ( !pause ) {
+			// Den aktuellen Spielzustand bearbeiten
+			try {
+				currentGameState.step();
+			} catch (GameStateException e1) {
+				throw new GameException("Fehler beim Ausführen eines GameState-Steps", e1);
+			}
+		} else {
+			try {
+				pauseMenu.step();
+			} catch (MenuException e) {
+				throw new GameException("Fehler beim Ausführen des PauseMenues", e);
+			}
+		}
+		
+		Timer.getInstance().advanceTick();
+		tick++;
+		
+		for ( int i=0 ; i<tickListeners.size() ; i++ ) {
+			tickListeners.get(i).tickFinished(this, tick);
+		}
+	}
+	
+	/**
+	 * Zeichnet den aktuellen Spielzustand und zeigt ihn an.
+	 */
+	public void paintFrame() {
+		// Zeichnen des aktuellen Spielzustands
+		currentGameState.paint(backgroundImage);
+		
+		Graphics2D bg = (Graphics2D) backgroundImage.getGraphics();
+		
+		// Falls konfiguriert den FPS-Graphen zeichnen
+		if ( (Boolean)configMap.get("showFps") ) {
+			Image graph = FpsMeter.getInstance().getGraph();
+			float transparency = (float)((Integer)configMap.get("fpsTransparency")) / 100.0f;
+			bg.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, transparency));
+			
+			int graphX = backgroundImage.getWidth(null)-20-graph.getWidth(null);
+			int graphY = backgroundImage.getHeight(null)-20-graph.getHeight(null);
+			bg.drawImage(graph, graphX, graphY, null);
+			
+			// Die Zähler (z.B. gezeichnete Sprites) über dem Graphen ausgeben
+			FpsMeter.getInstance().drawCounters(bg, graphX, graphY-4);
+		}
+		
+		// Falls Pause ist dies anzeigen
+		if ( pause ) {
+			int x = backgroundImage.getWidth(null)/2;
+			int y = backgroundImage.getHeight(null)/2;
+
+			pauseText.paint(backgroundImage, x, y);
+			pauseMenu.paint(bg);
+		}
+		
+		// Den gesamten Spielbildschirm anzeigen
+		Graphics g = component.getGraphics();
+		g.drawImage(backgroundImage, 0, 0, null);
+	}
+	
+	/**
+	 * Schaltet den deterministischen Modus ein oder aus: feste Zeitschritte
+	 * für FpsMeter.getSpeedFactor() und ein simulierter Timer.
+	 * 
+	 * @param deterministic true für feste Zeitschritte
+	 */
+	public void setDeterministic(boolean deterministic) {
+		this.deterministic = deterministic;
+		Timer.getInstance().setSimulated(deterministic);
+		FpsMeter.getInstance().setFixedSpeedFactor(deterministic ? 1.0f / Timer.TICK_RATE : 0);
+	}
+	
+	/**
+	 * Liefert ob mit festen Zeitschritten gerechnet wird.
+	 */
+	public boolean isDeterministic() {
+		return deterministic;
+	}
+	
+	/**
+	 * Liefert die Nummer des letzten berechneten Ticks.
+	 * 
+	 * @return die Anzahl der bisher berechneten Ticks
+	 */
+	public long getTick() {
+		return tick;
+	}
+	
+	/**
+	 * Setzt die Nummer des letzten berechneten Ticks (beim Wiederherstellen 
+	 * eines Spielstands).
+	 * 
+	 * @param tick die Nummer des Ticks
+	 */
+	public void setTick(long tick) {
+		this.tick = tick;
+	}
+	
+	/**
+	 * Setzt wie viele Ticks pro gezeichnetem Frame berechnet werden. Mit Werten
+	 * größer 1 läuft das Spiel schneller ohne mehr zeichnen zu müssen.
+	 * 
+	 * @param ticksPerFrame die Anzahl der Ticks (mindestens 1)
+	 */
+	public void setTicksPerFrame(int ticksPerFrame) {
+		this.ticksPerFrame = Math.max(1, ticksPerFrame);
+	}
+	
+	/**
+	 * Liefert die Anzahl der Ticks pro gezeichnetem Frame.
+	 */
+	public int getTicksPerFrame() {
+		return ticksPerFrame;
+	}
+	
+	/**
+	 * Meldet einen Listener an der nach jedem Tick benachrichtigt wird.
+	 * 
+	 * @param listener der Listener
+	 */
+	public void addTickListener(ITickListener listener) {
+		tickListeners.add(listener);
+	}
+	
+	/**
+	 * Meldet einen Listener wieder ab.
+	 * 
+	 * @param listener der Listener
+	 */
+	public void removeTickListener(ITickListener listener) {
+		tickListeners.remove(listener);
+	}
+	
+	/**
+	 * Liefert den aktuellen Spielzustand.
+	 * 
+	 * @return der aktuelle Spielzustand
+	 */
+	public IGameState getCurrentGameState() {
+		return currentGameState;
 	}
 	
 	/**
@@ -0,0 +1,42 @@
+package de.gaffga.jumpnrun.game;
+
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.GraphicsConfiguration;
+import java.awt.image.BufferedImage;
+
+/**
+ * Eine Komponente ohne Fenster für das Spiel ohne Bildschirm (z.B. für die
+ * Benchmarks oder um Aufzeichnungen mit Game.runHeadless zu überprüfen).
+ * Alles was auf sie gezeichnet wird landet in einem Bild im Speicher;
+ * funktioniert auch mit <code>java.awt.headless=true</code>.
+ * 
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class HeadlessComponent extends Component {
+
+	/** serialID */
+	private static final long serialVersionUID = 1L;
+	
+	/** Das Bild in das gezeichnet wird */
+	private transient BufferedImage screen = null;
+	
+	/**
+	 * Konstruktor.
+	 * 
+	 * @param width die Breite in Pixeln
+	 * @param height die Höhe in Pixeln
+	 */
+	public HeadlessComponent(int width, int height) {
+		screen = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		setSize(width, height);
+	}
+	
+	public Graphics getGraphics() {
+		return screen.createGraphics();
+	}
+	
+	public GraphicsConfiguration getGraphicsConfiguration() {
+		return screen.createGraphics().getDeviceConfiguration();
+	}
+}
@@ -0,0 +1,19 @@
+package de.gaffga.jumpnrun.game;
+
+/**
+ * Interface für Klassen die nach jedem Tick der Hauptspielschleife 
+ * benachrichtigt werden wollen (z.B. um Prüfsummen des Spielzustands
+ * aufzuzeichnen oder zu vergleichen).
+ * 
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public interface ITickListener {
+
+	/**
+	 * Ein Tick wurde vollständig berechnet (vor dem Zeichnen).
+	 * 
+	 * @param game das Spiel
+	 * @param tick die Nummer des Ticks (beginnt bei 1)
+	 */
+	public void tickFinished(Game game, long tick);
+}
@@ -0,0 +1,54 @@
+package de.gaffga.jumpnrun.game;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Image;
+
+import de.gaffga.jumpnrun.I18n;
+import de.gaffga.jumpnrun.resources.AssetPreloader;
+import de.gaffga.jumpnrun.resources.ResourceManager;
+
+/**
+ * Der Bildschirm der beim Programmstart angezeigt wird solange die Bilder
+ * vorgeladen werden: ein Fortschrittsbalken mit der Anzahl der Bilder.
+ * 
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class LoadingScreen {
+
+	/** Die Breite des Balkens in Pixeln */
+	private static final int BAR_WIDTH = 300;
+	
+	/** Die Höhe des Balkens in Pixeln */
+	private static final int BAR_HEIGHT = 16;
+	
+	/**
+	 * Zeichnet den Fortschritt.
+	 * 
+	 * @param image auf dieses Image wird gezeichnet
+	 * @param preloader das laufende Vorladen
+	 */
+	public void paint(Image image, AssetPreloader preloader) {
+		int w = image.getWidth(null);
+		int h = image.getHeight(null);
+		int x = (w - BAR_WIDTH) / 2;
+		int y = h / 2;
+		
+		Graphics2D g = (Graphics2D) image.getGraphics();
+		g.setColor(Color.black);
+		g.fillRect(0, 0, w, h);
+		
+		g.setColor(Color.yellow);
+		g.setFont(ResourceManager.getInstance().getMenuFont());
+		g.drawString(I18n.getString("loading"), x, y - 10);
+		
+		g.setColor(Color.darkGray);
+		g.fillRect(x, y, BAR_WIDTH, BAR_HEIGHT);
+		g.setColor(Color.yellow);
+		g.fillRect(x, y, (int) (BAR_WIDTH * preloader.getProgress()), BAR_HEIGHT);
+		
+		g.setFont(ResourceManager.getInstance().getSmallFont());
+		g.drawString(preloader.getLoaded() + " / " + preloader.getTotal(), x, y + BAR_HEIGHT + 16);
+		g.dispose();
+	}
+}
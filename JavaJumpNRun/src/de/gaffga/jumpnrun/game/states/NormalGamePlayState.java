@@ -1,32 +1,47 @@
 package de.gaffga.jumpnrun.game.states;
 
+import java.awt.Color;
 import java.awt.Component;
 import java.awt.Image;
 import java.awt.Point;
+import java.awt.event.KeyEvent;
 
 import de.gaffga.jumpnrun.FloatPosition;
 import de.gaffga.jumpnrun.Player;
+import de.gaffga.jumpnrun.RandomService;
 import de.gaffga.jumpnrun.controller.IGameController;
+import de.gaffga.jumpnrun.controller.KeyboardInputAdapter;
 import de.gaffga.jumpnrun.effects.EffectManager;
+import de.gaffga.jumpnrun.effects.particles.ParticleEmitter;
+import de.gaffga.jumpnrun.effects.particles.ParticleSystem;
+import de.gaffga.jumpnrun.effects.particles.TileParticleEmitter;
 import de.gaffga.jumpnrun.enemies.AbstractEnemyFactory;
 import de.gaffga.jumpnrun.enemies.EasyEnemyFactory;
 import de.gaffga.jumpnrun.enemies.Enemy;
 import de.gaffga.jumpnrun.enemies.EnemyManager;
 import de.gaffga.jumpnrun.enemies.HardEnemyFactory;
 import de.gaffga.jumpnrun.enemies.NormalEnemyFactory;
+import de.gaffga.jumpnrun.enemies.behaviours.ChaseBehaviour;
+import de.gaffga.jumpnrun.enemies.behaviours.EnemyBehaviourFactory;
 import de.gaffga.jumpnrun.game.Game;
 import de.gaffga.jumpnrun.game.GameException;
 import de.gaffga.jumpnrun.game.GameStateException;
 import de.gaffga.jumpnrun.game.IGameState;
 import de.gaffga.jumpnrun.game.states.subgamestates.ISubGameState;
 import de.gaffga.jumpnrun.game.states.subgamestates.ReadyState;
+import de.gaffga.jumpnrun.map.IMapDataChangeObserver;
 import de.gaffga.jumpnrun.map.Map;
 import de.gaffga.jumpnrun.map.MapException;
+import de.gaffga.jumpnrun.map.NavigationGraph;
+import de.gaffga.jumpnrun.replay.ReplayException;
+import de.gaffga.jumpnrun.replay.RewindBuffer;
 import de.gaffga.jumpnrun.resources.ResourceManagerException;
 import de.gaffga.jumpnrun.score.Score;
 import de.gaffga.jumpnrun.score.ScoreView;
 import de.gaffga.jumpnrun.sprites.Sprite;
 import de.gaffga.jumpnrun.sprites.SpriteAnimation;
+import de.gaffga.jumpnrun.sprites.SpriteDefinition;
+import de.gaffga.jumpnrun.sprites.SpriteDefinitionFactory;
 import de.gaffga.jumpnrun.sprites.SpriteException;
 import de.gaffga.jumpnrun.sprites.SpriteManager;
 import de.gaffga.jumpnrun.tiles.Tile;
@@ -36,6 +51,12 @@ import de.gaffga.jumpnrun.tiles.Tile;
  * anhand der Tastatureingaben bewegt, die Gegner anhand ihrer KI und
  * auf Events wird entsprechend reagiert (Level fertig, Spieler stirbt).
  *
+ * Solange REWIND_KEY gedrückt ist läuft das Spiel Tick für Tick rückwärts
+ * (bis zu RewindBuffer.DEFAULT_SECONDS Sekunden im aktuellen Level). Beim
+ * Aufzeichnen und Abspielen (feste Zeitschritte) ist das abgeschaltet: Eine
+ * Aufzeichnung enthält nur die Eingaben, ein zurückgespielter Abschnitt
+ * ließe sich daraus nicht nachrechnen.
+ *
  * Der NormalGamePlayState wird verlassen wenn das Spiel beendet wird
  * oder das Spiel zu Ende ist (Game Over).
  * 
@@ -43,6 +64,9 @@ import de.gaffga.jumpnrun.tiles.Tile;
  */
 public class NormalGamePlayState implements IGameState {
 
+	/** Die Taste zum Zurückspulen */
+	public static final int REWIND_KEY = KeyEvent.VK_BACK_SPACE;
+
 	/** Der aktive SubgameState */
 	private ISubGameState currentSubGameState = null;
 	
@@ -58,6 +82,9 @@ public class NormalGamePlayState implements IGameState {
 	/** Die aktuelle Map */
 	private Map map = null;
 	
+	/** Der Dateiname des aktuellen Levels */
+	private String levelName = null;
+	
 	/** Der Manager für alle Enemies */
 	private EnemyManager enemyManager = null;
 	
@@ -70,6 +97,15 @@ public class NormalGamePlayState implements IGameState {
 	/** Klasse die alle aktuell ablaufenden Effekte verwaltet */
 	private EffectManager effectManager = null;
 	
+	/** Vorlage für die Partikel beim Einsammeln */
+	private ParticleEmitter pickupEmitter = null;
+	
+	/** Vorlage für die Partikel beim Tod des Spielers */
+	private ParticleEmitter deathEmitter = null;
+	
+	/** Das Partikelbild für das Glitzern der Checkpoints */
+	private int glitterImage;
+	
 	/** Der Spieler */
 	private Player player = null;
 	
@@ -79,6 +115,9 @@ public class NormalGamePlayState implements IGameState {
 	/** Die Koordinaten des letzten Checkpoints */
 	private Point lastCheckpoint = null;
 
+	/** Die letzten Sekunden des Spiels zum Zurückspulen */
+	private RewindBuffer rewindBuffer = null;
+
 	/**
 	 * Konstruktor.
 	 * 
@@ -120,15 +159,28 @@ public class NormalGamePlayState implements IGameState {
 		} catch (MapException e1) {
 			throw new GameStateException("Die Map konnte nicht geladen werden",e1);
 		}
+		levelName = name;
+		
+		// In ein anderes Level kann nicht zurückgespult werden
+		if ( rewindBuffer != null ) {
+			rewindBuffer.clear();
+		}
 		
 		enemyManager = new EnemyManager();
+		// Verfolgt wird nur über kurze Wege - weiter muss das Flussfeld nicht reichen
+		NavigationGraph navigation = new NavigationGraph(map);
+		navigation.setFlowRange(ChaseBehaviour.CHASE_LINKS);
+		enemyManager.setNavigation(navigation);
 		effectManager = new EffectManager();
+		effectManager.setParticleSystem(new ParticleSystem(map, ParticleSystem.DEFAULT_MAX_PARTICLES));
 		spriteManager = new SpriteManager(map);
+		spriteManager.addPainter(effectManager, SpriteManager.LAYER_EFFECTS);
 		
 		try {
 			mainChar = new Sprite("mainchar.sprite");
-			spriteManager.add(mainChar);
+			spriteManager.add(mainChar, SpriteManager.LAYER_PLAYER);
 			mainChar.setVisible(true);
+			enemyManager.setTarget(mainChar);
 			mainChar.setCurrentAnimation(SpriteAnimation.IDLE_RIGHT);
 		} catch (SpriteException e) {
 			throw new GameStateException("Das Sprite des Hauptchars konnte nicht geladen werden",e);
@@ -150,6 +202,58 @@ public class NormalGamePlayState implements IGameState {
 			throw new GameStateException("Die Feinde konnten nicht in die Map gesetzt werden",e);
 		}
 		
+		createParticleEmitters();
+	}
+	
+	/**
+	 * Legt die Partikel-Vorlagen für Einsammeln und Tod an und hängt an jeden
+	 * Checkpoint einen Emitter der leicht glitzert bis er eingesammelt wird.
+	 * Taucht ein Checkpoint wieder auf (beim Wiederherstellen eines Spielstands)
+	 * bekommt er einen neuen Emitter.
+	 */
+	protected void createParticleEmitters() {
+		ParticleSystem particles = effectManager.getParticleSystem();
+		int sparkle = particles.addImage(ParticleSystem.createDotImage(Color.YELLOW, 3));
+		int blood = particles.addImage(ParticleSystem.createDotImage(Color.RED, 4));
+		glitterImage = particles.addImage(ParticleSystem.createDotImage(Color.WHITE, 2));
+		
+		pickupEmitter = new ParticleEmitter(sparkle, 0);
+		pickupEmitter.setVelocity((float) (Math.PI / 2), (float) Math.PI, 60.0f, 180.0f);
+		pickupEmitter.setLife(0.4f);
+		
+		deathEmitter = new ParticleEmitter(blood, 0);
+		deathEmitter.setVelocity((float) (Math.PI / 2), (float) (Math.PI / 3), 150.0f, 350.0f);
+		deathEmitter.setGravity(900.0f);
+		deathEmitter.setLife(1.2f);
+		
+		for ( int x=0 ; x<map.getWidth() ; x++ ) {
+			for ( int y=0 ; y<map.getHeight() ; y++ ) {
+				if ( map.getTileAt(x, y).isCheckpoint() ) {
+					addCheckpointEmitter(x, y);
+				}
+			}
+		}
+		
+		map.getMapData().addMapChangedListener(new IMapDataChangeObserver() {
+			public void mapDataChanged(int x, int y) {
+				if ( map.getTileAt(x, y).isCheckpoint() ) {
+					addCheckpointEmitter(x, y);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Hängt an einen Checkpoint einen Emitter der glitzert bis er eingesammelt wird.
+	 * 
+	 * @param x X-Position des Checkpoints in Tiles
+	 * @param y Y-Position des Checkpoints in Tiles
+	 */
+	private void addCheckpointEmitter(int x, int y) {
+		TileParticleEmitter emitter = new TileParticleEmitter(glitterImage, 6.0f, map, x, y);
+		emitter.setVelocity((float) (Math.PI / 2), 0.4f, 10.0f, 30.0f);
+		emitter.setLife(1.0f);
+		effectManager.getParticleSystem().addEmitter(emitter);
 	}
 	
 	/**
@@ -158,6 +262,15 @@ public class NormalGamePlayState implements IGameState {
 	 * @throws GameStateException 
 	 */
 	public void enterState() throws GameStateException {
+		IGameController controller = game.getGameController();
+		if ( controller.isRecording() || controller instanceof KeyboardInputAdapter ) {
+			// Aufzeichnung und Wiedergabe: jedes Spiel beginnt mit dem Startwert aus dem Kopf der Demo
+			RandomService.getInstance().reset();
+		} else {
+			// Freies Spiel: jedes Spiel bekommt neue Zufallszahlen
+			RandomService.getInstance().newSeed();
+		}
+		
 		score = new Score();
 		try {
 			scoreView = new ScoreView(component);
@@ -165,6 +278,7 @@ public class NormalGamePlayState implements IGameState {
 			throw new GameStateException("Fehler beim Erzeugen der ScoreView", e1);
 		}
 		score.addScoreListener(scoreView);
+		rewindBuffer = new RewindBuffer(RewindBuffer.DEFAULT_SECONDS, RewindBuffer.DEFAULT_MEMORY);
 
 		initLevel("level01.map");
 		switchState(new ReadyState(this));
@@ -199,7 +313,33 @@ public class NormalGamePlayState implements IGameState {
 	 * @throws GameStateException 
 	 */
 	public void step() throws GameStateException {
-		currentSubGameState.step();
+		try {
+			if ( !isRewindAllowed() ) {
+				// Was vor der Aufzeichnung gesichert wurde passt nicht mehr dazu
+				if ( rewindBuffer.canRewind() ) {
+					rewindBuffer.clear();
+				}
+				currentSubGameState.step();
+				return;
+			}
+			if ( game.getGameController().isKeyPressed(REWIND_KEY) && rewindBuffer.canRewind() ) {
+				rewindBuffer.rewind(game);
+				return;
+			}
+			
+			currentSubGameState.step();
+			rewindBuffer.capture(game);
+		} catch (ReplayException e) {
+			throw new GameStateException("Fehler beim Zurückspulen", e);
+		}
+	}
+
+	/**
+	 * Liefert ob zurückgespult werden darf: Nur im freien Spiel, nicht beim
+	 * Aufzeichnen oder Abspielen.
+	 */
+	private boolean isRewindAllowed() {
+		return !game.isDeterministic() && !game.getGameController().isRecording();
 	}
 
 	/**
@@ -249,34 +389,36 @@ public class NormalGamePlayState implements IGameState {
 		
 		AbstractEnemyFactory enemyFactory = getEnemyFactory();
 		
+		// Die Definition wird nur einmal gelesen und von allen Feinden geteilt
+		SpriteDefinition enemy1Definition;
+		try {
+			enemy1Definition = SpriteDefinitionFactory.getInstance().getDefinition("enemy1.sprite");
+		} catch (SpriteException e) {
+			throw new GameException("Fehler beim Erstellen eines Feindes!",e);
+		}
+		
 		for ( int x=0 ; x<map.getWidth() ; x++ ) {
 			for ( int y=0 ; y<map.getHeight() ; y++ ) {
 				Tile tile = map.getTileAt(x,y);
 				if ( tile.isEnemy() ) {
-					Sprite enemy1Sprite;
-					Enemy enemy1;
-					try {
-						// Ein neues Sprite für diesen Feind erzeugen 
-						// (jeder braucht ein eigenes wegen der Animation)
-						enemy1Sprite = new Sprite("enemy1.sprite");
-						// Sichtbar schalten
-						enemy1Sprite.setVisible(true);
-						// Eine Animation auswählen (es muss immer eine aktiv sein)
-						enemy1Sprite.setCurrentAnimation(SpriteAnimation.IDLE_RIGHT);
-						
-						// Das Sprite unter die Kontrolle des Sprite-Managers stellen
-						spriteManager.add(enemy1Sprite);
-						
-						// Das Enemy-Objekt erzeugen...
-						Point posx = map.getPosMapPixelFromPosMapTiles(new Point(x,y));
-						enemy1 = enemyFactory.createEnemy(score.getLevel(), posx, enemy1Sprite);
-						
-						// ...und dem EnemyManager übergeben
-						enemyManager.addEnemy(enemy1);
-						
-					} catch (SpriteException e) {
-						throw new GameException("Fehler beim Erstellen eines Feindes!",e);
-					}
+					// Ein neues Sprite für diesen Feind erzeugen 
+					// (jeder braucht ein eigenes wegen der Animation)
+					Sprite enemy1Sprite = new Sprite(enemy1Definition);
+					// Sichtbar schalten
+					enemy1Sprite.setVisible(true);
+					// Eine Animation auswählen (es muss immer eine aktiv sein)
+					enemy1Sprite.setCurrentAnimation(SpriteAnimation.IDLE_RIGHT);
+					
+					// Das Sprite unter die Kontrolle des Sprite-Managers stellen
+					spriteManager.add(enemy1Sprite, SpriteManager.LAYER_ENEMIES);
+					
+					// Das Enemy-Objekt erzeugen...
+					Point posx = map.getPosMapPixelFromPosMapTiles(new Point(x,y));
+					Enemy enemy1 = enemyFactory.createEnemy(score.getLevel(), posx, enemy1Sprite);
+					enemy1.setBehaviour(EnemyBehaviourFactory.getInstance().getBehaviour(tile.getBehaviour()));
+					
+					// ...und dem EnemyManager übergeben
+					enemyManager.addEnemy(enemy1);
 				}
 			}
 		}
@@ -294,6 +436,10 @@ public class NormalGamePlayState implements IGameState {
 		return map;
 	}
 
+	public String getLevelName() {
+		return levelName;
+	}
+
 	public Player getPlayer() {
 		return player;
 	}
@@ -306,6 +452,14 @@ public class NormalGamePlayState implements IGameState {
 		return game.getGameController();
 	}
 
+	public ParticleEmitter getPickupEmitter() {
+		return pickupEmitter;
+	}
+
+	public ParticleEmitter getDeathEmitter() {
+		return deathEmitter;
+	}
+
 	public Sprite getMainChar() {
 		return mainChar;
 	}
@@ -321,4 +475,12 @@ public class NormalGamePlayState implements IGameState {
 	public Game getGame() {
 		return game;
 	}
+	
+	public RewindBuffer getRewindBuffer() {
+		return rewindBuffer;
+	}
+	
+	public ISubGameState getCurrentSubGameState() {
+		return currentSubGameState;
+	}
 }
@@ -4,6 +4,7 @@ import java.awt.Image;
 import java.io.IOException;
 
 import de.gaffga.jumpnrun.DecoratedText;
+import de.gaffga.jumpnrun.Timer;
 import de.gaffga.jumpnrun.game.GameStateException;
 import de.gaffga.jumpnrun.game.states.MainMenuState;
 import de.gaffga.jumpnrun.game.states.NormalGamePlayState;
@@ -34,7 +35,7 @@ public class GameOverState implements ISubGameState {
 	}
 	
 	public void enterState() throws GameStateException {
-		startTime = System.currentTimeMillis();
+		startTime = Timer.getInstance().currentTimeMillis();
 	}
 
 	public void leaveState() {
@@ -43,7 +44,6 @@ public class GameOverState implements ISubGameState {
 	public void paint(Image image) {
 		gameState.getMap().draw(image);
 		gameState.getSpriteManager().draw(image);
-		gameState.getEffectManager().draw(image);
 		gameState.getScoreView().draw(image);
 		
 		int w = gameState.getMap().getScreenPixelWidth(); 
@@ -54,7 +54,7 @@ public class GameOverState implements ISubGameState {
 	public void step() throws GameStateException {
 		gameState.getEffectManager().step();
 		
-		if ( System.currentTimeMillis() - startTime > 4000 ) {
+		if ( Timer.getInstance().currentTimeMillis() - startTime > 4000 ) {
 			gameState.switchState(new NormalSubState(gameState));
 			try {
 				gameState.getGame().switchGameState(new MainMenuState(gameState.getGame(),gameState.getGame().getComponent()));
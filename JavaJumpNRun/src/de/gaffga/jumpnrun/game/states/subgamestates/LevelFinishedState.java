@@ -3,6 +3,7 @@ package de.gaffga.jumpnrun.game.states.subgamestates;
 import java.awt.Image;
 
 import de.gaffga.jumpnrun.DecoratedText;
+import de.gaffga.jumpnrun.Timer;
 import de.gaffga.jumpnrun.game.GameStateException;
 import de.gaffga.jumpnrun.game.states.NormalGamePlayState;
 import de.gaffga.jumpnrun.sprites.SpriteAnimation;
@@ -30,7 +31,7 @@ public class LevelFinishedState implements ISubGameState {
 
 	public void enterState() throws GameStateException {
 		gameState.getMainChar().setCurrentAnimation(SpriteAnimation.DANCE);
-		enterTime = System.currentTimeMillis();
+		enterTime = Timer.getInstance().currentTimeMillis();
 	}
 
 	public void leaveState() {
@@ -39,7 +40,6 @@ public class LevelFinishedState implements ISubGameState {
 	public void paint(Image image) {
 		gameState.getMap().draw(image);
 		gameState.getSpriteManager().draw(image);
-		gameState.getEffectManager().draw(image);
 		gameState.getScoreView().draw(image);
 		
 		int w = image.getWidth(null);
@@ -54,7 +54,7 @@ public class LevelFinishedState implements ISubGameState {
 		gameState.getMainChar().step();
 
 		// Nach 3 Sekunden stoppen wir die Animation
-		if ( System.currentTimeMillis() - enterTime >= 3000 ) {
+		if ( Timer.getInstance().currentTimeMillis() - enterTime >= 3000 ) {
 			gameState.getScore().increaseLevel();
 			int level = gameState.getScore().getLevel();
 			String levelName = gameState.getGame().getLevelList().get(level-1);
@@ -5,6 +5,7 @@ import java.awt.Point;
 
 import de.gaffga.jumpnrun.DecoratedText;
 import de.gaffga.jumpnrun.FloatPosition;
+import de.gaffga.jumpnrun.Timer;
 import de.gaffga.jumpnrun.game.GameStateException;
 import de.gaffga.jumpnrun.game.states.NormalGamePlayState;
 import de.gaffga.jumpnrun.sprites.SpriteAnimation;
@@ -63,7 +64,7 @@ public class MapReturnAfterDeathState implements ISubGameState {
 
 	public void enterState() throws GameStateException {
 		curPos = new FloatPosition(pos1);
-		startTime = System.currentTimeMillis();
+		startTime = Timer.getInstance().currentTimeMillis();
 		gameState.getMainChar().setCurrentAnimation(SpriteAnimation.IDLE_RIGHT);
 	}
 
@@ -73,7 +74,6 @@ public class MapReturnAfterDeathState implements ISubGameState {
 	public void paint(Image image) {
 		gameState.getMap().draw(image);
 		gameState.getSpriteManager().draw(image);
-		gameState.getEffectManager().draw(image);
 		gameState.getScoreView().draw(image);
 
 		int w = gameState.getMap().getScreenPixelWidth();
@@ -88,7 +88,7 @@ public class MapReturnAfterDeathState implements ISubGameState {
 		// Nur das Mainchar-Sprite animieren - den Rest so stehen lassen
 		gameState.getMainChar().step();
 		
-		float t = System.currentTimeMillis() - startTime;
+		float t = Timer.getInstance().currentTimeMillis() - startTime;
 		
 		if ( t <= distance ) {
 			// Die aktuelle Position linear interpolieren
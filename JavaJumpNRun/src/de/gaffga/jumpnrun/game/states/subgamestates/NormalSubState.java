@@ -6,11 +6,8 @@ import java.util.List;
 
 import de.gaffga.jumpnrun.Player;
 import de.gaffga.jumpnrun.controller.IGameController;
+import de.gaffga.jumpnrun.effects.EffectManager;
 import de.gaffga.jumpnrun.effects.IEffect;
-import de.gaffga.jumpnrun.effects.ImageMoveEffect;
-import de.gaffga.jumpnrun.effects.imagemovestrategies.FallImageMove;
-import de.gaffga.jumpnrun.effects.imagemovestrategies.StaticImageMove;
-import de.gaffga.jumpnrun.enemies.Enemy;
 import de.gaffga.jumpnrun.game.GameStateException;
 import de.gaffga.jumpnrun.game.states.NormalGamePlayState;
 import de.gaffga.jumpnrun.map.Map;
@@ -53,7 +50,6 @@ public class NormalSubState implements ISubGameState {
 	public void paint(Image image) {
 		gameState.getMap().draw(image);
 		gameState.getSpriteManager().draw(image);
-		gameState.getEffectManager().draw(image);
 		gameState.getScoreView().draw(image);
 	}
 
@@ -116,14 +112,19 @@ public class NormalSubState implements ISubGameState {
 				
 				// Einen Effekt starten der visuell das Einsammeln bestätigt
 				Point pointStart = map.getPosMapPixelFromPosMapTiles(pos.x,pos.y);
-				effect = new ImageMoveEffect(touchingTile.getTile().getImage(), map, new FallImageMove(pointStart, -coinImage.getHeight(null)) );
-				gameState.getEffectManager().addEffect(effect);
+				EffectManager effectManager = gameState.getEffectManager();
+				effect = effectManager.obtainImageMoveEffect(touchingTile.getTile().getImage(), map, 
+						effectManager.obtainFallImageMove(pointStart, -coinImage.getHeight(null)) );
+				effectManager.addEffect(effect);
+				effectManager.getParticleSystem().burst(gameState.getPickupEmitter(), 
+						pointStart.x + coinImage.getWidth(null) / 2, pointStart.y + coinImage.getHeight(null) / 2, 12);
 
 				if ( scoreValue == 100 ) {
 					// Die Punktzahl als Bild kurz anzeigen lassen
 					pointStart = map.getPosMapPixelFromPosMapTiles(pos.x,pos.y+1);
-					effect = new ImageMoveEffect(score100Image, map, new StaticImageMove(2000, pointStart) );
-					gameState.getEffectManager().addEffect(effect);
+					effect = effectManager.obtainImageMoveEffect(score100Image, map, 
+							effectManager.obtainStaticImageMove(2000, pointStart) );
+					effectManager.addEffect(effect);
 				}
 			}
 		}
@@ -145,11 +146,9 @@ public class NormalSubState implements ISubGameState {
 			}
 		}
 		
-		// Kollision mit den Feinden prüfen
-		for ( Enemy enemy : gameState.getEnemyManager() ) {
-			if ( enemy.getSprite().checkCollision(mainChar)) {
-				return true;
-			}
+		// Kollision mit den Feinden prüfen (nur die Feinde in der Nähe werden getestet)
+		if ( gameState.getEnemyManager().findCollision(mainChar) != null ) {
+			return true;
 		}
 		
 		return false;
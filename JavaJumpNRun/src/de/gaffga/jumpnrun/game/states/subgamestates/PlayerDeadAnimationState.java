@@ -2,6 +2,7 @@ package de.gaffga.jumpnrun.game.states.subgamestates;
 
 import java.awt.Image;
 
+import de.gaffga.jumpnrun.Timer;
 import de.gaffga.jumpnrun.game.GameStateException;
 import de.gaffga.jumpnrun.game.states.NormalGamePlayState;
 import de.gaffga.jumpnrun.sprites.SpriteAnimation;
@@ -31,7 +32,7 @@ public class PlayerDeadAnimationState implements ISubGameState {
 
 	public void enterState() throws GameStateException {
 		gameState.getMainChar().setCurrentAnimation(SpriteAnimation.DEAD);
-		enterTime = System.currentTimeMillis();
+		enterTime = Timer.getInstance().currentTimeMillis();
 	}
 
 	public void leaveState() {
@@ -40,7 +41,6 @@ public class PlayerDeadAnimationState implements ISubGameState {
 	public void paint(Image image) {
 		gameState.getMap().draw(image);
 		gameState.getSpriteManager().draw(image);
-		gameState.getEffectManager().draw(image);
 		gameState.getScoreView().draw(image);
 	}
 
@@ -52,7 +52,7 @@ public class PlayerDeadAnimationState implements ISubGameState {
 
 		// Nach einer gewissen Zeit stoppen wir die DEAD-Animation und lassen
 		// das mainChar-Sprite aus der Map fallen
-		if ( System.currentTimeMillis() - enterTime >= 1000 ) {
+		if ( Timer.getInstance().currentTimeMillis() - enterTime >= 1000 ) {
 			gameState.switchState(new PlayerDeadFallState(gameState));
 		}
 	}
@@ -39,6 +39,8 @@ public class PlayerDeadFallState implements ISubGameState {
 		moveEffect = new SpriteMoveEffect(mainChar,
 				new FallImageMove(mainChar.getPosition(), -mainChar.getHeight()));
 		gameState.getEffectManager().addEffect(moveEffect);
+		gameState.getEffectManager().getParticleSystem().burst(gameState.getDeathEmitter(),
+				mainChar.getPosition().x + mainChar.getWidth() / 2, mainChar.getPosition().y + mainChar.getHeight() / 2, 40);
 	}
 
 	public void leaveState() {
@@ -47,7 +49,6 @@ public class PlayerDeadFallState implements ISubGameState {
 	public void paint(Image image) {
 		gameState.getMap().draw(image);
 		gameState.getSpriteManager().draw(image);
-		gameState.getEffectManager().draw(image);
 		gameState.getScoreView().draw(image);
 	}
 
@@ -3,6 +3,7 @@ package de.gaffga.jumpnrun.game.states.subgamestates;
 import java.awt.Image;
 
 import de.gaffga.jumpnrun.DecoratedText;
+import de.gaffga.jumpnrun.Timer;
 import de.gaffga.jumpnrun.game.GameStateException;
 import de.gaffga.jumpnrun.game.states.NormalGamePlayState;
 
@@ -37,7 +38,7 @@ public class ReadyState implements ISubGameState {
 	}
 	
 	public void enterState() throws GameStateException {
-		startTime = System.currentTimeMillis();
+		startTime = Timer.getInstance().currentTimeMillis();
 	}
 
 	public void leaveState() {
@@ -46,7 +47,6 @@ public class ReadyState implements ISubGameState {
 	public void paint(Image image) {
 		gameState.getMap().draw(image);
 		gameState.getSpriteManager().draw(image);
-		gameState.getEffectManager().draw(image);
 		gameState.getScoreView().draw(image);
 		
 		int w = gameState.getMap().getScreenPixelWidth();
@@ -58,7 +58,7 @@ public class ReadyState implements ISubGameState {
 	public void step() throws GameStateException {
 		gameState.getEffectManager().step();
 		
-		if ( System.currentTimeMillis() - startTime > 2000 ) {
+		if ( Timer.getInstance().currentTimeMillis() - startTime > 2000 ) {
 			gameState.switchState(new NormalSubState(gameState));
 		}
 	}
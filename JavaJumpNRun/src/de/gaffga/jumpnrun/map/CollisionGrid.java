@@ -0,0 +1,297 @@
+package de.gaffga.jumpnrun.map;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Gleichmäßiges Gitter über der Map zur Vorauswahl von Kollisionspartnern
+ * (Broadphase).
+ *
+ * Jedes Objekt wird mit seiner Hitbox in alle Zellen eingetragen die es
+ * berührt. Eine Abfrage prüft dann nur noch die Objekte in den Zellen die
+ * die abgefragte Box berührt anstatt alle Objekte der Map. Die Zellen sind
+ * einige Tiles groß, so dass ein Objekt meist nur in einer oder zwei Zellen
+ * liegt.
+ *
+ * Das Gitter wird pro Spielschritt mit clear() geleert und neu befüllt. Dabei
+ * werden nur einmal angelegte Arrays wiederverwendet - weder das Befüllen noch
+ * die Abfragen erzeugen neue Objekte.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ *
+ * @param <T> der Typ der eingetragenen Objekte
+ */
+public class CollisionGrid<T> {
+
+	/** Die Kantenlänge einer Zelle in Pixeln */
+	private int cellSize;
+
+	/** Anzahl der Zellen in X-Richtung */
+	private int columns;
+
+	/** Anzahl der Zellen in Y-Richtung */
+	private int rows;
+
+	/** Je Zelle der Index des ersten Eintrags (-1 = leer) */
+	private int[] cellHeads = null;
+
+	/** Je Eintrag der Index des eingetragenen Objekts */
+	private int[] entryItem = null;
+
+	/** Je Eintrag der Index des nächsten Eintrags in der gleichen Zelle (-1 = Ende) */
+	private int[] entryNext = null;
+
+	/** Anzahl der belegten Einträge */
+	private int entryCount;
+
+	/** Die eingetragenen Objekte */
+	private Object[] items = null;
+
+	/** Die Hitboxen der Objekte in Map-Pixeln: X */
+	private int[] boxX = null;
+
+	/** Die Hitboxen der Objekte in Map-Pixeln: Y */
+	private int[] boxY = null;
+
+	/** Die Hitboxen der Objekte in Map-Pixeln: Breite */
+	private int[] boxWidth = null;
+
+	/** Die Hitboxen der Objekte in Map-Pixeln: Höhe */
+	private int[] boxHeight = null;
+
+	/** Je Objekt die Nummer der Abfrage in der es zuletzt geprüft wurde */
+	private int[] itemStamp = null;
+
+	/** Anzahl der eingetragenen Objekte */
+	private int itemCount;
+
+	/** Laufende Nummer der Abfrage (verhindert doppelte Tests bei mehreren Zellen) */
+	private int stamp;
+
+	/**
+	 * Konstruktor.
+	 *
+	 * @param pixelWidth die Breite der Map in Pixeln
+	 * @param pixelHeight die Höhe der Map in Pixeln
+	 * @param cellSize die Kantenlänge einer Zelle in Pixeln
+	 */
+	public CollisionGrid(int pixelWidth, int pixelHeight, int cellSize) {
+		this.cellSize = cellSize;
+		this.columns = Math.max(1, (pixelWidth + cellSize - 1) / cellSize);
+		this.rows = Math.max(1, (pixelHeight + cellSize - 1) / cellSize);
+
+		cellHeads = new int[columns * rows];
+		Arrays.fill(cellHeads, -1);
+
+		entryItem = new int[64];
+		entryNext = new int[64];
+
+		items = new Object[32];
+		boxX = new int[32];
+		boxY = new int[32];
+		boxWidth = new int[32];
+		boxHeight = new int[32];
+		itemStamp = new int[32];
+	}
+
+	/**
+	 * Entfernt alle Objekte aus dem Gitter.
+	 */
+	public void clear() {
+		Arrays.fill(cellHeads, -1);
+		Arrays.fill(items, 0, itemCount, null);
+		entryCount = 0;
+		itemCount = 0;
+	}
+
+	/**
+	 * Trägt ein Objekt mit seiner Hitbox in das Gitter ein.
+	 *
+	 * @param item das Objekt
+	 * @param x die X-Koordinate der Hitbox in Map-Pixeln
+	 * @param y die Y-Koordinate der Hitbox in Map-Pixeln
+	 * @param width die Breite der Hitbox
+	 * @param height die Höhe der Hitbox
+	 */
+	public void add(T item, int x, int y, int width, int height) {
+		if ( itemCount == items.length ) {
+			int size = items.length * 2;
+			items = Arrays.copyOf(items, size);
+			boxX = Arrays.copyOf(boxX, size);
+			boxY = Arrays.copyOf(boxY, size);
+			boxWidth = Arrays.copyOf(boxWidth, size);
+			boxHeight = Arrays.copyOf(boxHeight, size);
+			itemStamp = Arrays.copyOf(itemStamp, size);
+		}
+
+		int index = itemCount++;
+		items[index] = item;
+		boxX[index] = x;
+		boxY[index] = y;
+		boxWidth[index] = width;
+		boxHeight[index] = height;
+		itemStamp[index] = stamp;
+
+		int cx0 = getColumn(x);
+		int cy0 = getRow(y);
+		int cx1 = getColumn(x + width - 1);
+		int cy1 = getRow(y + height - 1);
+
+		for ( int cy=cy0 ; cy<=cy1 ; cy++ ) {
+			for ( int cx=cx0 ; cx<=cx1 ; cx++ ) {
+				if ( entryCount == entryItem.length ) {
+					entryItem = Arrays.copyOf(entryItem, entryCount * 2);
+					entryNext = Arrays.copyOf(entryNext, entryCount * 2);
+				}
+
+				int cell = cy * columns + cx;
+				entryItem[entryCount] = index;
+				entryNext[entryCount] = cellHeads[cell];
+				cellHeads[cell] = entryCount;
+				entryCount++;
+			}
+		}
+	}
+
+	/**
+	 * Sucht das erste Objekt dessen Hitbox die angegebene Box schneidet.
+	 *
+	 * @param x die X-Koordinate der Box in Map-Pixeln
+	 * @param y die Y-Koordinate der Box in Map-Pixeln
+	 * @param width die Breite der Box
+	 * @param height die Höhe der Box
+	 * @param ignore dieses Objekt wird nicht gemeldet (z.B. das abfragende Objekt selbst) - darf null sein
+	 * @return das gefundene Objekt oder null falls es keine Kollision gibt
+	 */
+	@SuppressWarnings("unchecked")
+	public T findCollision(int x, int y, int width, int height, T ignore) {
+		int index = firstCollision(x, y, width, height, ignore);
+		if ( index < 0 ) {
+			return null;
+		}
+
+		return (T)items[index];
+	}
+
+	/**
+	 * Sammelt alle Objekte deren Hitbox die angegebene Box schneidet. Die
+	 * Zellen werden dabei nur einmal durchlaufen.
+	 *
+	 * @param x die X-Koordinate der Box in Map-Pixeln
+	 * @param y die Y-Koordinate der Box in Map-Pixeln
+	 * @param width die Breite der Box
+	 * @param height die Höhe der Box
+	 * @param ignore dieses Objekt wird nicht gemeldet - darf null sein
+	 * @param result in diese (wiederverwendbare) Liste werden die Treffer angehängt
+	 * @return die Anzahl der Treffer
+	 */
+	@SuppressWarnings("unchecked")
+	public int collectCollisions(int x, int y, int width, int height, T ignore, List<T> result) {
+		int found = 0;
+		stamp++;
+
+		int cx0 = getColumn(x);
+		int cy0 = getRow(y);
+		int cx1 = getColumn(x + width - 1);
+		int cy1 = getRow(y + height - 1);
+
+		for ( int cy=cy0 ; cy<=cy1 ; cy++ ) {
+			for ( int cx=cx0 ; cx<=cx1 ; cx++ ) {
+				for ( int entry=cellHeads[cy * columns + cx] ; entry>=0 ; entry=entryNext[entry] ) {
+					int index = entryItem[entry];
+
+					// Objekte die in mehreren Zellen liegen nur einmal testen
+					if ( itemStamp[index] == stamp ) continue;
+					itemStamp[index] = stamp;
+
+					if ( items[index] == ignore ) continue;
+
+					if ( intersects(x, y, width, height, boxX[index], boxY[index], boxWidth[index], boxHeight[index]) ) {
+						result.add((T)items[index]);
+						found++;
+					}
+				}
+			}
+		}
+
+		return found;
+	}
+
+	/**
+	 * Durchsucht die betroffenen Zellen nach dem ersten Objekt das die Box
+	 * schneidet.
+	 *
+	 * @return der Index des Objekts oder -1 falls es keines gibt
+	 */
+	private int firstCollision(int x, int y, int width, int height, Object ignore) {
+		stamp++;
+
+		int cx0 = getColumn(x);
+		int cy0 = getRow(y);
+		int cx1 = getColumn(x + width - 1);
+		int cy1 = getRow(y + height - 1);
+
+		for ( int cy=cy0 ; cy<=cy1 ; cy++ ) {
+			for ( int cx=cx0 ; cx<=cx1 ; cx++ ) {
+				for ( int entry=cellHeads[cy * columns + cx] ; entry>=0 ; entry=entryNext[entry] ) {
+					int index = entryItem[entry];
+
+					// Objekte die in mehreren Zellen liegen nur einmal testen
+					if ( itemStamp[index] == stamp ) continue;
+					itemStamp[index] = stamp;
+
+					if ( items[index] == ignore ) continue;
+
+					if ( intersects(x, y, width, height, boxX[index], boxY[index], boxWidth[index], boxHeight[index]) ) {
+						return index;
+					}
+				}
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Liefert die Anzahl der eingetragenen Objekte.
+	 *
+	 * @return die Anzahl der Objekte
+	 */
+	public int size() {
+		return itemCount;
+	}
+
+	/**
+	 * Prüft ob sich zwei Boxen schneiden (gleiche Semantik wie Rectangle.intersects,
+	 * aber ohne Objekte zu erzeugen).
+	 *
+	 * @return true falls sich die Boxen überlappen, sonst false
+	 */
+	public static boolean intersects(int x1, int y1, int w1, int h1, int x2, int y2, int w2, int h2) {
+		if ( w1 <= 0 || h1 <= 0 || w2 <= 0 || h2 <= 0 ) {
+			return false;
+		}
+
+		return x1 < x2 + w2 && x2 < x1 + w1 && y1 < y2 + h2 && y2 < y1 + h1;
+	}
+
+	/**
+	 * Liefert die Zellenspalte zu einer X-Koordinate (auf das Gitter begrenzt).
+	 */
+	private int getColumn(int x) {
+		int cx = x / cellSize;
+		if ( cx < 0 ) return 0;
+		if ( cx >= columns ) return columns - 1;
+		return cx;
+	}
+
+	/**
+	 * Liefert die Zellenzeile zu einer Y-Koordinate (auf das Gitter begrenzt).
+	 */
+	private int getRow(int y) {
+		int cy = y / cellSize;
+		if ( cy < 0 ) return 0;
+		if ( cy >= rows ) return rows - 1;
+		return cy;
+	}
+}
@@ -6,6 +6,7 @@ import java.awt.GraphicsConfiguration;
 import java.awt.Image;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.nio.ByteBuffer;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -62,6 +63,9 @@ public class Map implements IMapDataChangeObserver {
 	
 	/** Die Höher der Map in Pixeln */
 	private int mapPixelHeight;
+	
+	/** Die Flags aller Tiles (Index: y * Breite + x) für schnelle Abfragen in engen Schleifen */
+	private int[] tileFlags = null;
 		
 	/**
 	 * Konstruktor für eine neue Map.
@@ -74,17 +78,24 @@ public class Map implements IMapDataChangeObserver {
 	 * @throws ResourceManagerException 
 	 */
 	public Map(String name, Component component) throws MapException {
-		
-		try {
-			mapData = new MapData(ResourceManager.getInstance().getMapData(name));
-			tileStatus = new TileStatus[mapData.getWidth()][mapData.getHeight()];
-			for ( int x=0 ; x<mapData.getWidth() ; x++ ) {
-				for ( int y=0 ; y<mapData.getHeight() ; y++ ) {
-					tileStatus[x][y] = new TileStatus();
-				}
+		this(loadMapData(name), component);
+	}
+	
+	/**
+	 * Konstruktor für eine Map aus bereits vorhandenen Daten (z.B. eine zur 
+	 * Laufzeit erzeugte Map). Die Daten werden beim Spielen verändert und 
+	 * gehören ab jetzt der Map.
+	 * 
+	 * @param data die Daten der Map
+	 * @param component die AWT-Komponente auf die die Map gezeichnet werden soll
+	 */
+	public Map(MapData data, Component component) {
+		mapData = data;
+		tileStatus = new TileStatus[mapData.getWidth()][mapData.getHeight()];
+		for ( int x=0 ; x<mapData.getWidth() ; x++ ) {
+			for ( int y=0 ; y<mapData.getHeight() ; y++ ) {
+				tileStatus[x][y] = new TileStatus();
 			}
-		} catch (ResourceManagerException e) {
-			throw new MapException("Die Map " + name + " konnte nicht geladen werden!",e);
 		}
 		
 		this.mapViewPosition = new Point();
@@ -98,11 +109,28 @@ public class Map implements IMapDataChangeObserver {
 		GraphicsConfiguration gc = component.getGraphicsConfiguration();
 		mapImage = gc.createCompatibleImage(mapData.getWidth()*tilesize, mapData.getHeight()*tilesize);
 		initMapImage();
+		initTileFlags();
 
 		// Wir müssen unsere Back-Surface bei Änderungen an der Map aktualisieren
 		mapData.addMapChangedListener(this);
 	}
 	
+	/**
+	 * Liest eine Kopie der Mapdaten über den ResourceManager (das Original im 
+	 * Cache darf nicht verändert werden).
+	 * 
+	 * @param name der Dateiname der Map
+	 * @return die Kopie der Daten
+	 * @throws MapException
+	 */
+	private static MapData loadMapData(String name) throws MapException {
+		try {
+			return new MapData(ResourceManager.getInstance().getMapData(name));
+		} catch (ResourceManagerException e) {
+			throw new MapException("Die Map " + name + " konnte nicht geladen werden!",e);
+		}
+	}
+	
 	/**
 	 * Erzeugt ein Bild der gesamten Map im mapImage.
 	 */
@@ -137,6 +165,32 @@ public class Map implements IMapDataChangeObserver {
 		}
 	}
 	
+	/**
+	 * Liest die Flags aller Tiles in das tileFlags-Array ein.
+	 */
+	private void initTileFlags() {
+		int width = getWidth();
+		tileFlags = new int[width * getHeight()];
+		for ( int y=0 ; y<getHeight() ; y++ ) {
+			for ( int x=0 ; x<width ; x++ ) {
+				tileFlags[y * width + x] = getTileAt(x, y).getFlags();
+			}
+		}
+	}
+	
+	/**
+	 * Liefert die Flags aller Tiles als Array (Index: y * getWidth() + x).
+	 * 
+	 * Das Array wird bei Änderungen an der Map aktualisiert und darf nicht 
+	 * verändert werden. Es ist für Schleifen über viele Objekte gedacht die 
+	 * sich den Umweg über Tile-Objekte sparen wollen.
+	 * 
+	 * @return die Flags aller Tiles
+	 */
+	public int[] getTileFlags() {
+		return tileFlags;
+	}
+	
 	/**
 	 * Liefert das Tile-Objekt für eine bestimmte Position.
 	 * 
@@ -159,6 +213,40 @@ public class Map implements IMapDataChangeObserver {
 		mapData.setTile(x, y, c);
 	}
 	
+	/**
+	 * Schreibt den sichtbaren Ausschnitt und alle Tiles in einen Puffer (für 
+	 * Spielstände - eingesammelte Münzen und Checkpoints stecken in den Tiles).
+	 * 
+	 * @param buffer der Puffer
+	 */
+	public void writeState(ByteBuffer buffer) {
+		buffer.putInt(mapViewPosition.x);
+		buffer.putInt(mapViewPosition.y);
+		for ( int y=0 ; y<getHeight() ; y++ ) {
+			for ( int x=0 ; x<getWidth() ; x++ ) {
+				buffer.putChar(mapData.getTile(x, y));
+			}
+		}
+	}
+	
+	/**
+	 * Stellt den Zustand aus einem Puffer wieder her. Nur geänderte Tiles werden
+	 * ausgetauscht (und an die Observer gemeldet).
+	 * 
+	 * @param buffer der Puffer
+	 */
+	public void readState(ByteBuffer buffer) {
+		mapViewPosition = new Point(buffer.getInt(), buffer.getInt());
+		for ( int y=0 ; y<getHeight() ; y++ ) {
+			for ( int x=0 ; x<getWidth() ; x++ ) {
+				char c = buffer.getChar();
+				if ( mapData.getTile(x, y) != c ) {
+					setTileAt(x, y, c);
+				}
+			}
+		}
+	}
+	
 	/**
 	 * Liefert die Höhe der Map
 	 * 
@@ -205,15 +293,20 @@ public class Map implements IMapDataChangeObserver {
 	 * @param hitbox die Hitbox
 	 */
 	public int checkMove(ICollidable objekt, FloatPosition pos1, FloatPosition pos2, Rectangle hitbox) {
-		FloatPosition posa = new FloatPosition(pos1);
+		// pos1 wird nur vorübergehend verschoben (statt eine Kopie anzulegen)
+		float x1 = pos1.x;
+		float y1 = pos1.y;
 		
-		posa.x += hitbox.x;
-		posa.y += hitbox.y;
+		pos1.x += hitbox.x;
+		pos1.y += hitbox.y;
 		
 		pos2.x += hitbox.x;
 		pos2.y += hitbox.y;
 		
-		int rc = checkMove(objekt, posa, pos2, hitbox.width, hitbox.height);
+		int rc = checkMove(objekt, pos1, pos2, hitbox.width, hitbox.height);
+		
+		pos1.x = x1;
+		pos1.y = y1;
 		
 		pos2.x -= hitbox.x;
 		pos2.y -= hitbox.y;
@@ -404,6 +497,8 @@ public class Map implements IMapDataChangeObserver {
 	 */
 	
 	public void mapDataChanged(int x, int y) {
+		tileFlags[y * getWidth() + x] = getTileAt(x, y).getFlags();
+		
 		Image backgroundTileImage = TileFactory.getInstance().getBackgroundTile().getImage();
 		Graphics g = mapImage.getGraphics();
 		Point point = new Point();
@@ -441,6 +536,32 @@ public class Map implements IMapDataChangeObserver {
 		return result;
 	}
 	
+	/**
+	 * Rechnet eine X-Koordinate in Map-Pixeln in Screen-Pixel um.
+	 * 
+	 * Im Gegensatz zu getPosScreenPixelFromPosMapPixel wird dabei kein
+	 * Point-Objekt erzeugt.
+	 * 
+	 * @param x die X-Koordinate in Map-Pixeln
+	 * @return die X-Koordinate in Screen-Pixeln
+	 */
+	public int getScreenPixelX(int x) {
+		return x - mapViewPosition.x;
+	}
+	
+	/**
+	 * Rechnet eine Y-Koordinate in Map-Pixeln in Screen-Pixel um.
+	 * 
+	 * Im Gegensatz zu getPosScreenPixelFromPosMapPixel wird dabei kein
+	 * Point-Objekt erzeugt.
+	 * 
+	 * @param y die Y-Koordinate in Map-Pixeln
+	 * @return die Y-Koordinate in Screen-Pixeln
+	 */
+	public int getScreenPixelY(int y) {
+		return screenPixelHeight - y + mapViewPosition.y;
+	}
+	
 	/**
 	 * Rechnet die Koordinaten eines Tiles in Map-Koordinaten in
 	 * Screen-Pixel-Koordinaten um.
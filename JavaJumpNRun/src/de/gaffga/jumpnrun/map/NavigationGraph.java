@@ -0,0 +1,490 @@
+package de.gaffga.jumpnrun.map;
+
+import java.util.Arrays;
+
+import de.gaffga.jumpnrun.tiles.Tile;
+import de.gaffga.jumpnrun.tiles.TileFactory;
+
+/**
+ * Navigationsgraph für Feinde auf dem Tile-Raster einer Map samt Flussfeld
+ * zur Spielfigur.
+ *
+ * Knoten sind alle Zellen auf denen ein Feind stehen kann (frei und direkt
+ * über einem für Feinde blockierenden Tile); die Nummer eines Knotens ist die
+ * Nummer seiner Zelle (y * Breite + x). Verbindungen gibt es zum Nachbarn auf
+ * gleicher Höhe (Laufen), zu tiefer liegenden Zellen neben einer Kante
+ * (Herunterfallen) und zu höheren Zellen in Sprungreichweite (Springen). Jede
+ * Zelle hat in linkTarget/linkType einen festen Bereich für höchstens
+ * MAX_LINKS Verbindungen.
+ *
+ * Die Verbindungen eines Knotens hängen nur von den Spalten bis
+ * JUMP_DISTANCE links und rechts von ihm ab. Ändert sich ein Tile so dass es
+ * Feinde anders blockiert (über IMapDataChangeObserver), werden deshalb nur
+ * die Knoten seiner Spalte und die Verbindungen der benachbarten Spalten neu
+ * bestimmt - in den einmal angelegten Arrays.
+ *
+ * Das Flussfeld enthält für jeden Knoten den nächsten Knoten auf dem kürzesten
+ * Weg zur Spielfigur. Es wird per Breitensuche rückwärts vom Knoten der
+ * Spielfigur aus berechnet - aber nur wenn die Spielfigur die Zelle wechselt
+ * oder sich der Graph geändert hat. Beliebig viele verfolgende Feinde teilen
+ * sich so eine einzige Wegberechnung. Die eingehenden Verbindungen eines
+ * Knotens kommen nur aus wenigen Zellen um ihn herum und werden während der
+ * Suche dort nachgesehen. Mit setFlowRange endet die Suche nach einer
+ * festen Wegelänge: Ein Zellwechsel kostet dann nur so viel wie Knoten in
+ * dieser Entfernung liegen, nicht die ganze Map.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class NavigationGraph implements IMapDataChangeObserver {
+
+	/** Verbindung: Laufen zum Nachbarn auf gleicher Höhe */
+	public static final int LINK_WALK = 0;
+	/** Verbindung: Sprung nach oben */
+	public static final int LINK_JUMP = 1;
+	/** Verbindung: Herunterfallen über eine Kante */
+	public static final int LINK_DROP = 2;
+
+	/** Maximale Sprunghöhe in Tiles */
+	public static final int JUMP_HEIGHT = 2;
+
+	/** Maximale Sprungweite in Tiles */
+	public static final int JUMP_DISTANCE = 2;
+
+	/** Maximale Anzahl Verbindungen eines Knotens: je Richtung Laufen oder Fallen und ein Sprung pro Höhe */
+	public static final int MAX_LINKS = 2 * (1 + JUMP_HEIGHT);
+
+	/** Entfernung für Knoten von denen aus die Spielfigur nicht erreichbar ist */
+	public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	/** Die Map */
+	private Map map = null;
+
+	/** Breite der Map in Tiles */
+	private int width;
+
+	/** Höhe der Map in Tiles */
+	private int height;
+
+	/** Je Zelle ob sie Feinde blockiert (Index: y * width + x) */
+	private boolean[] solid = null;
+
+	/** Je Zelle ob sie ein Knoten ist */
+	private boolean[] isNode = null;
+
+	/** Anzahl der Knoten */
+	private int nodeCount;
+
+	/** Je Zelle die Anzahl ihrer Verbindungen */
+	private int[] linkCount = null;
+
+	/** Je Verbindung der Zielknoten (Index: Zelle * MAX_LINKS + Nummer) */
+	private int[] linkTarget = null;
+
+	/** Je Verbindung die Art (LINK_...) */
+	private int[] linkType = null;
+
+	/** Anzahl aller Verbindungen */
+	private int linkTotal;
+
+	/** Die erste Spalte mit geänderten Tiles (Integer.MAX_VALUE = keine) */
+	private int changedFrom = Integer.MAX_VALUE;
+
+	/** Die letzte Spalte mit geänderten Tiles */
+	private int changedTo = -1;
+
+	/** Flussfeld: Je Knoten die Anzahl Verbindungen bis zur Spielfigur */
+	private int[] distance = null;
+
+	/** Flussfeld: Je Knoten der nächste Knoten auf dem Weg (-1 = keiner) */
+	private int[] nextNode = null;
+
+	/** Flussfeld: Je Knoten die Art der nächsten Verbindung */
+	private int[] nextLink = null;
+
+	/** Warteschlange für die Breitensuche - enthält danach alle erreichten Knoten */
+	private int[] queue = null;
+
+	/** Anzahl der bei der letzten Suche erreichten Knoten */
+	private int reached;
+
+	/** Größte Wegelänge bis zu der das Flussfeld berechnet wird */
+	private int flowRange = UNREACHABLE;
+
+	/** Der Knoten der Spielfigur (-1 = unbekannt) */
+	private int targetNode = -1;
+
+	/** true falls das Flussfeld neu berechnet werden muss */
+	private boolean flowDirty = true;
+
+	/** Anzahl der Neuberechnungen des Flussfelds (für die Statistik) */
+	private int flowUpdates;
+
+	/**
+	 * Konstruktor. Baut den Graphen auf und meldet sich für Änderungen an der
+	 * Map an.
+	 *
+	 * @param map die Map
+	 */
+	public NavigationGraph(Map map) {
+		this.map = map;
+		this.width = map.getWidth();
+		this.height = map.getHeight();
+
+		int cells = width * height;
+		solid = new boolean[cells];
+		isNode = new boolean[cells];
+		linkCount = new int[cells];
+		linkTarget = new int[cells * MAX_LINKS];
+		linkType = new int[cells * MAX_LINKS];
+		distance = new int[cells];
+		nextNode = new int[cells];
+		nextLink = new int[cells];
+		queue = new int[cells];
+		Arrays.fill(distance, UNREACHABLE);
+		Arrays.fill(nextNode, -1);
+
+		int[] flags = map.getTileFlags();
+		for ( int i=0 ; i<cells ; i++ ) {
+			solid[i] = (flags[i] & Tile.ENEMYBLOCKING) != 0;
+		}
+
+		updateColumns(0, width - 1);
+		map.getMapData().addMapChangedListener(this);
+	}
+
+	/**
+	 * Ein Tile hat sich geändert - falls es jetzt Feinde anders blockiert wird
+	 * seine Spalte beim nächsten update() neu bestimmt.
+	 */
+	public void mapDataChanged(int x, int y) {
+		boolean blocking = map.getTileAt(x, y).isEnemyBlocking();
+		if ( solid[y * width + x] != blocking ) {
+			solid[y * width + x] = blocking;
+			changedFrom = Math.min(changedFrom, x);
+			changedTo = Math.max(changedTo, x);
+		}
+	}
+
+	/**
+	 * Begrenzt die Berechnung des Flussfelds auf eine Wegelänge. Für weiter
+	 * entfernte Knoten liefert getDistance dann UNREACHABLE.
+	 *
+	 * @param links die größte Anzahl Verbindungen bis zur Spielfigur (UNREACHABLE = ohne Grenze)
+	 */
+	public void setFlowRange(int links) {
+		flowRange = links;
+		flowDirty = true;
+	}
+
+	/**
+	 * Aktualisiert Graph und Flussfeld für die aktuelle Position der Spielfigur.
+	 * Wird einmal pro Frame aufgerufen und rechnet nur wenn sich etwas geändert hat.
+	 *
+	 * @param x X-Position der Füße der Spielfigur in Map-Pixeln
+	 * @param y Y-Position der Füße der Spielfigur in Map-Pixeln
+	 */
+	public void update(int x, int y) {
+		if ( changedFrom <= changedTo ) {
+			updateColumns(changedFrom, changedTo);
+			changedFrom = Integer.MAX_VALUE;
+			changedTo = -1;
+			targetNode = -1;
+			flowDirty = true;
+		}
+
+		int found = findNode(x, y);
+		if ( found >= 0 && found != targetNode ) {
+			targetNode = found;
+			flowDirty = true;
+		}
+
+		if ( flowDirty && targetNode >= 0 ) {
+			computeFlow();
+		}
+	}
+
+	/**
+	 * Sucht den Knoten zu einer Position: Die Zelle der Position oder die
+	 * nächste Zelle darunter auf der man stehen kann (z.B. während eines Sprungs).
+	 *
+	 * @param x X-Position in Map-Pixeln
+	 * @param y Y-Position in Map-Pixeln
+	 * @return der Knoten oder -1 falls es keinen gibt
+	 */
+	public int findNode(int x, int y) {
+		int tilesize = TileFactory.getInstance().getTileSize();
+		int cx = x / tilesize;
+		int cy = y / tilesize;
+		if ( x < 0 || cx >= width ) {
+			return -1;
+		}
+		if ( cy >= height ) {
+			cy = height - 1;
+		}
+
+		while ( cy >= 0 ) {
+			int cell = cy * width + cx;
+			if ( isNode[cell] ) {
+				return cell;
+			}
+			if ( solid[cell] ) {
+				return -1;
+			}
+			cy--;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Bestimmt die Knoten einiger Spalten neu und die Verbindungen aller
+	 * Knoten die diese Spalten erreichen.
+	 *
+	 * @param from die erste geänderte Spalte
+	 * @param to die letzte geänderte Spalte
+	 */
+	private void updateColumns(int from, int to) {
+		// Knoten: frei und ein blockierendes Tile darunter
+		for ( int x=from ; x<=to ; x++ ) {
+			for ( int y=0 ; y<height ; y++ ) {
+				int cell = y * width + x;
+				boolean nowNode = y > 0 && !solid[cell] && solid[cell - width];
+				if ( isNode[cell] != nowNode ) {
+					isNode[cell] = nowNode;
+					nodeCount += nowNode ? 1 : -1;
+				}
+			}
+		}
+
+		// Verbindungen: Jede Verbindung reicht höchstens JUMP_DISTANCE Spalten weit
+		int linkFrom = Math.max(0, from - JUMP_DISTANCE);
+		int linkTo = Math.min(width - 1, to + JUMP_DISTANCE);
+		for ( int x=linkFrom ; x<=linkTo ; x++ ) {
+			for ( int y=0 ; y<height ; y++ ) {
+				int cell = y * width + x;
+				linkTotal -= linkCount[cell];
+				linkCount[cell] = isNode[cell] ? addLinks(cell) : 0;
+				linkTotal += linkCount[cell];
+			}
+		}
+	}
+
+	/**
+	 * Ermittelt die Verbindungen eines Knotens und trägt sie in seinen Bereich
+	 * von linkTarget/linkType ein.
+	 *
+	 * @param cell der Knoten
+	 * @return die Anzahl der Verbindungen
+	 */
+	private int addLinks(int cell) {
+		int x = cell % width;
+		int y = cell / width;
+		int offset = cell * MAX_LINKS;
+		int count = 0;
+
+		for ( int dir=-1 ; dir<=1 ; dir+=2 ) {
+			int nx = x + dir;
+			if ( nx < 0 || nx >= width ) continue;
+
+			int side = y * width + nx;
+			if ( isNode[side] ) {
+				// Laufen
+				count = addLink(offset, count, side, LINK_WALK);
+			} else if ( !solid[side] ) {
+				// Über die Kante herunterfallen bis zur ersten Zelle auf der man steht
+				int ny = y - 1;
+				while ( ny > 0 && !isNode[ny * width + nx] && !solid[ny * width + nx] ) {
+					ny--;
+				}
+				if ( ny > 0 && isNode[ny * width + nx] ) {
+					count = addLink(offset, count, ny * width + nx, LINK_DROP);
+				}
+			}
+
+			// Springen: senkrecht über dem Knoten muss Platz sein
+			for ( int dy=1 ; dy<=JUMP_HEIGHT && y+dy<height ; dy++ ) {
+				if ( solid[(y+dy) * width + x] ) break;
+
+				for ( int dx=1 ; dx<=JUMP_DISTANCE ; dx++ ) {
+					int tx = x + dir * dx;
+					if ( tx < 0 || tx >= width ) break;
+					// Die Flugbahn auf Zielhöhe muss frei sein
+					if ( solid[(y+dy) * width + tx] ) break;
+
+					int target = (y+dy) * width + tx;
+					if ( isNode[target] ) {
+						count = addLink(offset, count, target, LINK_JUMP);
+						break;
+					}
+				}
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Trägt eine Verbindung ein.
+	 */
+	private int addLink(int offset, int count, int target, int type) {
+		linkTarget[offset + count] = target;
+		linkType[offset + count] = type;
+		return count + 1;
+	}
+
+	/**
+	 * Berechnet das Flussfeld per Breitensuche rückwärts vom Knoten der Spielfigur.
+	 *
+	 * Die möglichen Startknoten einer Verbindung zu einem Knoten werden in
+	 * aufsteigender Nummer geprüft: die Sprünge aus den JUMP_HEIGHT Zeilen
+	 * darunter, das Laufen auf gleicher Höhe und das Herunterfallen aus der
+	 * Nachbarspalte, solange die Spalte des Knotens darüber frei ist.
+	 */
+	private void computeFlow() {
+		// Nur die bei der letzten Suche erreichten Knoten zurücksetzen
+		for ( int k=0 ; k<reached ; k++ ) {
+			distance[queue[k]] = UNREACHABLE;
+			nextNode[queue[k]] = -1;
+		}
+
+		int head = 0;
+		int tail = 0;
+		distance[targetNode] = 0;
+		queue[tail++] = targetNode;
+
+		while ( head < tail ) {
+			int target = queue[head++];
+			if ( distance[target] >= flowRange ) continue;
+
+			int tx = target % width;
+			int ty = target / width;
+
+			for ( int sy=Math.max(1, ty - JUMP_HEIGHT) ; sy<ty ; sy++ ) {
+				for ( int sx=tx - JUMP_DISTANCE ; sx<=tx + JUMP_DISTANCE ; sx++ ) {
+					if ( sx != tx ) {
+						tail = reach(target, sx, sy, tail);
+					}
+				}
+			}
+			tail = reach(target, tx - 1, ty, tail);
+			tail = reach(target, tx + 1, ty, tail);
+			for ( int sy=ty + 1 ; sy<height && !solid[sy * width + tx] && !isNode[sy * width + tx] ; sy++ ) {
+				tail = reach(target, tx - 1, sy, tail);
+				tail = reach(target, tx + 1, sy, tail);
+			}
+		}
+
+		reached = tail;
+		flowDirty = false;
+		flowUpdates++;
+	}
+
+	/**
+	 * Nimmt eine Zelle in die Breitensuche auf falls sie ein noch nicht
+	 * erreichter Knoten mit einer Verbindung zum Zielknoten ist.
+	 *
+	 * @param target der Zielknoten
+	 * @param x die Spalte der Zelle
+	 * @param y die Zeile der Zelle
+	 * @param tail das Ende der Warteschlange
+	 * @return das neue Ende der Warteschlange
+	 */
+	private int reach(int target, int x, int y, int tail) {
+		if ( x < 0 || x >= width ) {
+			return tail;
+		}
+		int source = y * width + x;
+		if ( !isNode[source] || distance[source] != UNREACHABLE ) {
+			return tail;
+		}
+
+		int offset = source * MAX_LINKS;
+		for ( int l=offset ; l<offset + linkCount[source] ; l++ ) {
+			if ( linkTarget[l] == target ) {
+				distance[source] = distance[target] + 1;
+				nextNode[source] = target;
+				nextLink[source] = linkType[l];
+				queue[tail++] = source;
+				break;
+			}
+		}
+		return tail;
+	}
+
+	/**
+	 * Liefert die Anzahl Verbindungen von einem Knoten bis zur Spielfigur.
+	 *
+	 * @param node der Knoten
+	 * @return die Entfernung oder UNREACHABLE
+	 */
+	public int getDistance(int node) {
+		return targetNode >= 0 ? distance[node] : UNREACHABLE;
+	}
+
+	/**
+	 * Liefert den nächsten Knoten auf dem Weg zur Spielfigur.
+	 *
+	 * @param node der Knoten
+	 * @return der nächste Knoten oder -1 falls es keinen Weg gibt (oder die Spielfigur hier ist)
+	 */
+	public int getNextNode(int node) {
+		return targetNode >= 0 ? nextNode[node] : -1;
+	}
+
+	/**
+	 * Liefert die Art der nächsten Verbindung auf dem Weg zur Spielfigur.
+	 *
+	 * @param node der Knoten
+	 * @return LINK_WALK, LINK_JUMP oder LINK_DROP
+	 */
+	public int getNextLink(int node) {
+		return nextLink[node];
+	}
+
+	/**
+	 * Liefert die Spalte eines Knotens.
+	 *
+	 * @param node der Knoten
+	 * @return die X-Koordinate in Tiles
+	 */
+	public int getNodeX(int node) {
+		return node % width;
+	}
+
+	/**
+	 * Liefert die Zeile eines Knotens.
+	 *
+	 * @param node der Knoten
+	 * @return die Y-Koordinate in Tiles
+	 */
+	public int getNodeY(int node) {
+		return node / width;
+	}
+
+	/**
+	 * Liefert die Anzahl der Knoten.
+	 *
+	 * @return die Anzahl der Knoten
+	 */
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * Liefert die Anzahl der Verbindungen.
+	 *
+	 * @return die Anzahl der Verbindungen
+	 */
+	public int getLinkCount() {
+		return linkTotal;
+	}
+
+	/**
+	 * Liefert wie oft das Flussfeld bisher berechnet wurde.
+	 *
+	 * @return die Anzahl der Berechnungen
+	 */
+	public int getFlowUpdates() {
+		return flowUpdates;
+	}
+}
@@ -7,7 +7,9 @@ import java.awt.Graphics2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
-import java.util.Random;
+
+import de.gaffga.jumpnrun.RandomService;
+import de.gaffga.jumpnrun.RandomStream;
 
 /**
  * Rendert einen bewegten Hintergrund.
@@ -40,15 +42,14 @@ public class AnimatedBackground {
 		rects = new ArrayList<Rectangle2D.Float>();
 		dirs = new ArrayList<Point2D.Float>();
 		
-		Random rand = new Random();
-		rand.setSeed(System.currentTimeMillis());
+		RandomStream rand = RandomService.getInstance().getStream(RandomService.STREAM_MENU);
 		
 		// 20 Rechtecke und ihre Bewegungsrichtung erstellen
 		for ( int i=0 ; i<20 ; i++ ) {
 			int w = 350;
 			int h = 100;
-			int x = Math.abs(rand.nextInt()) % (width+w) - w/2;
-			int y = Math.abs(rand.nextInt()) % (height+h) - h/2;
+			int x = rand.nextInt(width+w) - w/2;
+			int y = rand.nextInt(height+h) - h/2;
 			rects.add(new Rectangle2D.Float(x,y,w,h));
 			
 			float dx = rand.nextFloat() * 4.0f;
@@ -0,0 +1,40 @@
+package de.gaffga.jumpnrun.replay;
+
+import de.gaffga.jumpnrun.controller.KeyboardInput;
+import de.gaffga.jumpnrun.game.Game;
+import de.gaffga.jumpnrun.game.ITickListener;
+
+/**
+ * Zeichnet während einer Aufzeichnung alle paar Ticks die Prüfsumme des
+ * Spielzustands (StateChecksum) mit auf.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class ChecksumRecorder implements ITickListener {
+
+	/** Standardabstand der Prüfsummen in Ticks (eine pro Sekunde) */
+	public static final int DEFAULT_INTERVAL = 60;
+
+	/** Die Eingabe die aufzeichnet */
+	private KeyboardInput input = null;
+
+	/** Abstand der Prüfsummen in Ticks */
+	private int interval;
+
+	/**
+	 * Konstruktor.
+	 *
+	 * @param input die Eingabe die aufzeichnet
+	 * @param interval Abstand der Prüfsummen in Ticks
+	 */
+	public ChecksumRecorder(KeyboardInput input, int interval) {
+		this.input = input;
+		this.interval = interval;
+	}
+
+	public void tickFinished(Game game, long tick) {
+		if ( input.isRecording() && tick % interval == 0 ) {
+			input.recordChecksum(StateChecksum.compute(game));
+		}
+	}
+}
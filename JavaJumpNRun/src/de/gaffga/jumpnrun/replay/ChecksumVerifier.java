@@ -0,0 +1,73 @@
+package de.gaffga.jumpnrun.replay;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.gaffga.jumpnrun.controller.DemoPlayback;
+import de.gaffga.jumpnrun.game.Game;
+import de.gaffga.jumpnrun.game.ITickListener;
+
+/**
+ * Vergleicht beim Abspielen einer Aufzeichnung nach jedem Tick für den eine
+ * Prüfsumme aufgezeichnet wurde den Spielzustand mit der Aufzeichnung und
+ * merkt sich den ersten Tick an dem sie voneinander abweichen.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class ChecksumVerifier implements ITickListener {
+
+	/** Das abgespielte Demo */
+	private DemoPlayback playback = null;
+
+	/** Der erste abweichende Tick oder -1 */
+	private long firstDivergence = -1;
+
+	/** Anzahl der verglichenen Prüfsummen */
+	private int verifiedCount;
+
+	/**
+	 * Konstruktor.
+	 *
+	 * @param playback das abgespielte Demo (Aufzeichnung in Ticks)
+	 */
+	public ChecksumVerifier(DemoPlayback playback) {
+		this.playback = playback;
+	}
+
+	public void tickFinished(Game game, long tick) {
+		int index = playback.findChecksum(playback.getTick());
+		if ( index < 0 ) {
+			return;
+		}
+
+		verifiedCount++;
+		if ( firstDivergence < 0 && StateChecksum.compute(game) != playback.getChecksum(index) ) {
+			firstDivergence = playback.getTick();
+			Logger.getLogger(ChecksumVerifier.class.getName()).log(Level.WARNING,
+					"Die Wiedergabe weicht ab Tick " + firstDivergence + " von der Aufzeichnung ab");
+		}
+	}
+
+	/**
+	 * Liefert den ersten Tick an dem die Prüfsummen abweichen.
+	 *
+	 * @return der Tick oder -1 falls bisher alles übereinstimmt
+	 */
+	public long getFirstDivergence() {
+		return firstDivergence;
+	}
+
+	/**
+	 * Liefert ob die Wiedergabe von der Aufzeichnung abweicht.
+	 */
+	public boolean isDiverged() {
+		return firstDivergence >= 0;
+	}
+
+	/**
+	 * Liefert die Anzahl der bisher verglichenen Prüfsummen.
+	 */
+	public int getVerifiedCount() {
+		return verifiedCount;
+	}
+}
@@ -0,0 +1,226 @@
+package de.gaffga.jumpnrun.replay;
+
+import java.awt.Point;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import de.gaffga.jumpnrun.RandomService;
+import de.gaffga.jumpnrun.Timer;
+import de.gaffga.jumpnrun.game.Game;
+import de.gaffga.jumpnrun.game.GameStateException;
+import de.gaffga.jumpnrun.game.states.NormalGamePlayState;
+import de.gaffga.jumpnrun.game.states.subgamestates.NormalSubState;
+
+/**
+ * Ein vollständiger Spielstand als Byte-Folge: Uhr, Schwierigkeitsgrad,
+ * Punkte, letzter Checkpoint, die Tiles der Map, Spieler, alle Feinde und die
+ * Zufallszahlen. Daraus lässt sich ein laufendes Level so wiederherstellen,
+ * dass es im deterministischen Modus genau so weiterläuft wie beim Sichern.
+ *
+ * Spielstände werden nur im normalen Spielablauf genommen (canCapture) - die
+ * Zwischenzustände (Tod, Level geschafft, ...) dauern nur Sekunden. Laufende
+ * Effekte und Partikel sind reine Optik und werden beim Wiederherstellen
+ * beendet statt gesichert.
+ *
+ * Der Puffer wird wiederverwendet und wächst bei Bedarf - ein Objekt sollte
+ * also für viele Spielstände benutzt werden.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class GameSnapshot {
+
+	/** Die Version des Formats (ab Version 2 mit der Uhrzeit für das Spiel ohne simulierte Zeit) */
+	public static final int VERSION = 2;
+
+	/** Die Anfangsgröße des Puffers */
+	private static final int INITIAL_SIZE = 16 * 1024;
+
+	/** Der Puffer */
+	private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_SIZE);
+
+	/**
+	 * Liefert ob gerade ein Spielstand genommen werden kann.
+	 *
+	 * @param game das Spiel
+	 * @return true im normalen Spielablauf eines Levels
+	 */
+	public static boolean canCapture(Game game) {
+		if ( game.isPaused() || !(game.getCurrentGameState() instanceof NormalGamePlayState) ) {
+			return false;
+		}
+		NormalGamePlayState state = (NormalGamePlayState) game.getCurrentGameState();
+		return state.getCurrentSubGameState() instanceof NormalSubState;
+	}
+
+	/**
+	 * Sichert den Spielstand in den internen Puffer.
+	 *
+	 * @param game das Spiel
+	 * @return der Puffer (gültig bis zum nächsten Aufruf), zum Lesen bereit
+	 * @throws ReplayException falls gerade kein Spielstand genommen werden kann
+	 */
+	public ByteBuffer captureBuffer(Game game) throws ReplayException {
+		if ( !canCapture(game) ) {
+			throw new ReplayException("Ein Spielstand kann nur im laufenden Level genommen werden");
+		}
+		NormalGamePlayState state = (NormalGamePlayState) game.getCurrentGameState();
+
+		while ( true ) {
+			buffer.clear();
+			try {
+				write(game, state);
+				break;
+			} catch (BufferOverflowException e) {
+				buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+			}
+		}
+
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Sichert den Spielstand.
+	 *
+	 * @param game das Spiel
+	 * @return der Spielstand
+	 * @throws ReplayException falls gerade kein Spielstand genommen werden kann
+	 */
+	public byte[] capture(Game game) throws ReplayException {
+		ByteBuffer data = captureBuffer(game);
+		return Arrays.copyOf(data.array(), data.limit());
+	}
+
+	/**
+	 * Schreibt alle Teile des Spielstands.
+	 */
+	private void write(Game game, NormalGamePlayState state) {
+		buffer.putInt(VERSION);
+		buffer.putLong(game.getTick());
+		buffer.putLong(Timer.getInstance().getSimulatedTicks());
+		buffer.putLong(Timer.getInstance().currentTimeMillis());
+		buffer.putInt((Integer) game.getConfigMap().get("difficulty"));
+
+		state.getScore().writeState(buffer);
+		buffer.putInt(state.getLastCheckpoint().x);
+		buffer.putInt(state.getLastCheckpoint().y);
+		state.getMap().writeState(buffer);
+		state.getPlayer().writeState(buffer);
+		state.getMainChar().writeState(buffer);
+		buffer.putInt(state.getEnemyManager().getCount());
+		state.getEnemyManager().writeState(buffer);
+		RandomService.getInstance().writeState(buffer);
+	}
+
+	/**
+	 * Stellt einen Spielstand wieder her. Läuft gerade kein Level wird eines
+	 * gestartet, ist es ein anderes Level wird es geladen. Der Tick des Spiels
+	 * wird auf den des Spielstands gesetzt und die zum Zurückspulen gesicherten
+	 * Spielstände werden verworfen - sie gehören zu einem anderen Spielverlauf.
+	 *
+	 * @param game das Spiel
+	 * @param data der Spielstand
+	 * @throws ReplayException falls der Spielstand nicht passt oder beschädigt ist
+	 */
+	public static void restore(Game game, byte[] data) throws ReplayException {
+		restore(game, ByteBuffer.wrap(data));
+	}
+
+	/**
+	 * Stellt einen Spielstand wieder her (siehe restore(Game, byte[])).
+	 *
+	 * @param game das Spiel
+	 * @param data der Puffer mit dem Spielstand (zum Lesen bereit)
+	 * @throws ReplayException falls der Spielstand nicht passt oder beschädigt ist
+	 */
+	public static void restore(Game game, ByteBuffer data) throws ReplayException {
+		NormalGamePlayState state = restore(game, data, true);
+		if ( state.getRewindBuffer() != null ) {
+			state.getRewindBuffer().clear();
+		}
+	}
+
+	/**
+	 * Stellt nur den Zustand des Spiels (samt Uhr) wieder her, der Tick des
+	 * Spiels läuft weiter. Für das Zurückspulen (RewindBuffer): Der Tick
+	 * zählt die berechneten Schritte und darf nicht rückwärts laufen.
+	 *
+	 * @param game das Spiel
+	 * @param data der Puffer mit dem Spielstand (zum Lesen bereit)
+	 * @throws ReplayException falls der Spielstand nicht passt oder beschädigt ist
+	 */
+	public static void restoreState(Game game, ByteBuffer data) throws ReplayException {
+		restore(game, data, false);
+	}
+
+	/**
+	 * Stellt einen Spielstand wieder her.
+	 *
+	 * @param game das Spiel
+	 * @param data der Puffer mit dem Spielstand (zum Lesen bereit)
+	 * @param setTick true falls auch der Tick des Spiels gesetzt werden soll
+	 * @return der Spielzustand in dem der Spielstand wiederhergestellt wurde
+	 * @throws ReplayException falls der Spielstand nicht passt oder beschädigt ist
+	 */
+	private static NormalGamePlayState restore(Game game, ByteBuffer data, boolean setTick) throws ReplayException {
+		try {
+			int version = data.getInt();
+			if ( version < 1 || version > VERSION ) {
+				throw new ReplayException("Unbekannte Version des Spielstands: " + version);
+			}
+			long tick = data.getLong();
+			long timerTicks = data.getLong();
+			long timerMillis = version >= 2 ? data.getLong() : -1;
+			game.getConfigMap().put("difficulty", data.getInt());
+			game.setPause(false);
+
+			NormalGamePlayState state;
+			if ( game.getCurrentGameState() instanceof NormalGamePlayState ) {
+				state = (NormalGamePlayState) game.getCurrentGameState();
+			} else {
+				state = new NormalGamePlayState(game, game.getComponent());
+				game.switchGameState(state);
+			}
+
+			state.getScore().readState(data);
+			String levelName = game.getLevelList().get(state.getScore().getLevel() - 1);
+			if ( !levelName.equals(state.getLevelName()) ) {
+				state.initLevel(levelName);
+			}
+			if ( !(state.getCurrentSubGameState() instanceof NormalSubState) ) {
+				state.switchState(new NormalSubState(state));
+			}
+
+			int checkpointX = data.getInt();
+			state.setLastCheckpoint(new Point(checkpointX, data.getInt()));
+			state.getMap().readState(data);
+			state.getPlayer().readState(data);
+			state.getMainChar().readState(data);
+
+			int enemyCount = data.getInt();
+			if ( enemyCount != state.getEnemyManager().getCount() ) {
+				throw new ReplayException("Der Spielstand hat " + enemyCount + " Feinde, das Level "
+						+ state.getEnemyManager().getCount());
+			}
+			state.getEnemyManager().readState(data, state.getMap());
+			RandomService.getInstance().readState(data);
+
+			state.getEffectManager().clear();
+			if ( Timer.getInstance().isSimulated() ) {
+				Timer.getInstance().setSimulatedTicks(timerTicks);
+			} else if ( timerMillis >= 0 ) {
+				Timer.getInstance().setCurrentTimeMillis(timerMillis);
+			}
+			if ( setTick ) {
+				game.setTick(tick);
+			}
+			return state;
+		} catch (BufferUnderflowException e) {
+			throw new ReplayException("Der Spielstand ist unvollständig", e);
+		} catch (GameStateException e) {
+			throw new ReplayException("Das Level des Spielstands konnte nicht geladen werden", e);
+		}
+	}
+}
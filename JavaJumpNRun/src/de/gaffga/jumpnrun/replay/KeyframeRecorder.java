@@ -0,0 +1,62 @@
+package de.gaffga.jumpnrun.replay;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.gaffga.jumpnrun.controller.KeyboardInput;
+import de.gaffga.jumpnrun.game.Game;
+import de.gaffga.jumpnrun.game.ITickListener;
+
+/**
+ * Zeichnet während einer Aufzeichnung alle paar Sekunden einen vollständigen
+ * Spielstand (GameSnapshot) als Keyframe mit auf. Fällt der Zeitpunkt nicht
+ * in den normalen Spielablauf (z.B. während der Spieler stirbt) wird der
+ * Keyframe beim nächsten möglichen Tick nachgeholt.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class KeyframeRecorder implements ITickListener {
+
+	/** Standardabstand der Keyframes in Ticks (alle 5 Sekunden) */
+	public static final int DEFAULT_INTERVAL = 300;
+
+	/** Die Eingabe die aufzeichnet */
+	private KeyboardInput input = null;
+
+	/** Abstand der Keyframes in Ticks */
+	private int interval;
+
+	/** Sichert die Spielstände */
+	private GameSnapshot snapshot = new GameSnapshot();
+
+	/** Flag ob ein Keyframe fällig ist */
+	private boolean due = true;
+
+	/**
+	 * Konstruktor.
+	 *
+	 * @param input die Eingabe die aufzeichnet
+	 * @param interval Abstand der Keyframes in Ticks
+	 */
+	public KeyframeRecorder(KeyboardInput input, int interval) {
+		this.input = input;
+		this.interval = interval;
+	}
+
+	public void tickFinished(Game game, long tick) {
+		if ( tick % interval == 0 ) {
+			due = true;
+		}
+		if ( !due || !input.isRecording() || !GameSnapshot.canCapture(game) ) {
+			return;
+		}
+
+		try {
+			input.recordKeyframe(snapshot.capture(game));
+			due = false;
+		} catch (ReplayException e) {
+			Logger.getLogger(KeyframeRecorder.class.getName()).log(Level.WARNING, "Keyframe konnte nicht gesichert werden", e);
+			due = false;
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package de.gaffga.jumpnrun.replay;
+
+public class ReplayException extends Exception {
+
+	/** serialID */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Konstruktor.
+	 * 
+	 * @param msg die Fehlernachricht
+	 */
+	public ReplayException(String msg) {
+		super(msg);
+	}
+	
+	/**
+	 * Konstruktor.
+	 * 
+	 * @param msg die Fehlernachricht
+	 * @param throwable die CausedBy-Exception
+	 */
+	public ReplayException(String msg, Throwable throwable) {
+		super(msg, throwable);
+	}
+}
@@ -0,0 +1,140 @@
+package de.gaffga.jumpnrun.replay;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+import de.gaffga.jumpnrun.controller.DemoPlayback;
+import de.gaffga.jumpnrun.controller.KeyboardInputAdapter;
+import de.gaffga.jumpnrun.game.Game;
+import de.gaffga.jumpnrun.game.GameException;
+import de.gaffga.jumpnrun.game.HeadlessComponent;
+import de.gaffga.jumpnrun.game.ITickListener;
+import de.gaffga.jumpnrun.game.states.NormalGamePlayState;
+import de.gaffga.jumpnrun.game.states.subgamestates.LevelFinishedState;
+import de.gaffga.jumpnrun.resources.ResourceManagerException;
+
+/**
+ * Spielt eine Aufzeichnung ohne Fenster so schnell wie möglich bis zum
+ * letzten aufgezeichneten Tick ab und ermittelt das Ergebnis: Anzahl der
+ * geschafften Levels, Punkte, Leben, letzter Tick und der erste von den
+ * Prüfsummen abweichende Tick.
+ *
+ * Das Ergebnis wird als Properties geliefert damit es auch über die Grenze
+ * eines eigenen ClassLoaders hinweg gelesen werden kann (siehe
+ * ReplayVerifier).
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class ReplayRunner implements ITickListener {
+
+	/** Ergebnis: Anzahl der geschafften Levels */
+	public static final String LEVELS_FINISHED = "levelsFinished";
+
+	/** Ergebnis: Punkte */
+	public static final String SCORE = "score";
+
+	/** Ergebnis: Reserveleben */
+	public static final String LIVES = "lives";
+
+	/** Ergebnis: der letzte berechnete Tick */
+	public static final String FINAL_TICK = "finalTick";
+
+	/** Ergebnis: erster abweichender Tick oder -1 (wird nicht erwartet sondern immer geprüft) */
+	public static final String DIVERGENCE = "divergence";
+
+	/** Die Größe der Zeichenfläche (wie im Hauptfenster) */
+	private static final int WIDTH = 640;
+
+	/** Die Größe der Zeichenfläche (wie im Hauptfenster) */
+	private static final int HEIGHT = 480;
+
+	/** Die abgespielte Aufzeichnung */
+	private DemoPlayback playback = null;
+
+	/** Der letzte aufgezeichnete Tick */
+	private long lastTick;
+
+	/** Anzahl der geschafften Levels */
+	private int levelsFinished;
+
+	/** Flag ob der letzte Tick im LevelFinishedState lag */
+	private boolean inLevelFinished = false;
+
+	/** Die Punkte im zuletzt gesehenen Spielzustand */
+	private int score;
+
+	/** Die Reserveleben im zuletzt gesehenen Spielzustand */
+	private int lives;
+
+	/**
+	 * Konstruktor.
+	 *
+	 * @param playback die abgespielte Aufzeichnung
+	 */
+	private ReplayRunner(DemoPlayback playback) {
+		this.playback = playback;
+		this.lastTick = playback.getLastTick();
+	}
+
+	/**
+	 * Spielt eine Aufzeichnung ab.
+	 *
+	 * @param file die Demo-Datei (Aufzeichnung in Ticks)
+	 * @return das Ergebnis (Schlüssel siehe Konstanten)
+	 * @throws IOException falls die Datei nicht gelesen werden kann
+	 * @throws GameException falls beim Abspielen ein Fehler auftritt
+	 * @throws ResourceManagerException falls die Spieldaten nicht geladen werden können
+	 */
+	public static Properties run(File file) throws IOException, GameException, ResourceManagerException {
+		DemoPlayback playback;
+		FileInputStream in = new FileInputStream(file);
+		try {
+			playback = new DemoPlayback(in);
+		} finally {
+			in.close();
+		}
+		if ( !playback.isTickIndexed() ) {
+			throw new IOException("Die Aufzeichnung '" + file + "' läuft nicht in Ticks");
+		}
+		playback.start();
+
+		Game game = new Game(new KeyboardInputAdapter(playback), new HeadlessComponent(WIDTH, HEIGHT));
+		game.setDeterministic(true);
+
+		ChecksumVerifier verifier = new ChecksumVerifier(playback);
+		ReplayRunner runner = new ReplayRunner(playback);
+		game.addTickListener(verifier);
+		game.addTickListener(runner);
+
+		game.runHeadless(runner.lastTick + 1);
+
+		Properties result = new Properties();
+		result.setProperty(LEVELS_FINISHED, String.valueOf(runner.levelsFinished));
+		result.setProperty(SCORE, String.valueOf(runner.score));
+		result.setProperty(LIVES, String.valueOf(runner.lives));
+		result.setProperty(FINAL_TICK, String.valueOf(game.getTick()));
+		result.setProperty(DIVERGENCE, String.valueOf(verifier.getFirstDivergence()));
+		return result;
+	}
+
+	public void tickFinished(Game game, long tick) {
+		if ( game.getCurrentGameState() instanceof NormalGamePlayState ) {
+			NormalGamePlayState state = (NormalGamePlayState) game.getCurrentGameState();
+
+			boolean finished = state.getCurrentSubGameState() instanceof LevelFinishedState;
+			if ( finished && !inLevelFinished ) {
+				levelsFinished++;
+			}
+			inLevelFinished = finished;
+
+			score = state.getScore().getScore();
+			lives = state.getScore().getNumReserveLives();
+		}
+
+		if ( playback.getTick() >= lastTick ) {
+			game.exit();
+		}
+	}
+}
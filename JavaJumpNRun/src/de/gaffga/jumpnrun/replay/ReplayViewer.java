@@ -0,0 +1,160 @@
+package de.gaffga.jumpnrun.replay;
+
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.gaffga.jumpnrun.Timer;
+import de.gaffga.jumpnrun.controller.DemoPlayback;
+import de.gaffga.jumpnrun.game.Game;
+import de.gaffga.jumpnrun.game.GameException;
+import de.gaffga.jumpnrun.game.ITickListener;
+
+/**
+ * Steuerung beim Ansehen einer Aufzeichnung: Die Tasten 1 bis 4 spulen mit
+ * 1-, 2-, 4- und 16-facher Geschwindigkeit (es werden entsprechend viele Ticks
+ * pro gezeichnetem Frame berechnet), Bild auf/ab springt SEEK_TICKS zurück
+ * bzw. vor und Pos1 an den Anfang des Levels.
+ *
+ * Gesprungen wird über den letzten Keyframe vor dem Ziel: Der Spielstand wird
+ * wiederhergestellt und der Rest ohne Zeichnen so schnell wie möglich
+ * durchgerechnet. Nach vorne wird nur dann ein Keyframe benutzt wenn er
+ * näher am Ziel liegt als der aktuelle Tick.
+ *
+ * Die Tasten kommen im AWT-Event-Thread an und werden erst im nächsten Tick
+ * der Hauptspielschleife ausgeführt.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class ReplayViewer implements KeyListener, ITickListener {
+
+	/** So weit wird mit Bild auf/ab gesprungen (10 Sekunden) */
+	public static final int SEEK_TICKS = 10 * Timer.TICK_RATE;
+
+	/** Das Spiel */
+	private Game game = null;
+
+	/** Die abgespielte Aufzeichnung */
+	private DemoPlayback playback = null;
+
+	/** Die gewünschte Geschwindigkeit (Ticks pro Frame) */
+	private volatile int requestedSpeed = 1;
+
+	/** Die Summe der gewünschten Sprünge in Ticks */
+	private AtomicLong requestedSeek = new AtomicLong();
+
+	/** Flag ob an den Anfang gesprungen werden soll */
+	private volatile boolean requestedRestart = false;
+
+	/** Flag ob gerade gesprungen wird (die Zwischenschritte lösen auch tickFinished aus) */
+	private boolean seeking = false;
+
+	/**
+	 * Konstruktor.
+	 *
+	 * @param game das Spiel
+	 * @param playback die abgespielte Aufzeichnung (in Ticks, mit Keyframes)
+	 */
+	public ReplayViewer(Game game, DemoPlayback playback) {
+		this.game = game;
+		this.playback = playback;
+	}
+
+	public void tickFinished(Game game, long tick) {
+		if ( seeking ) {
+			return;
+		}
+
+		game.setTicksPerFrame(requestedSpeed);
+
+		long target = -1;
+		if ( requestedRestart ) {
+			requestedRestart = false;
+			requestedSeek.set(0);
+			target = 0;
+		} else {
+			long delta = requestedSeek.getAndSet(0);
+			if ( delta != 0 ) {
+				target = Math.max(0, playback.getTick() + delta);
+			}
+		}
+
+		if ( target >= 0 ) {
+			try {
+				seekTo(target);
+			} catch (ReplayException e) {
+				Logger.getLogger(ReplayViewer.class.getName()).log(Level.WARNING, "Sprung in der Aufzeichnung fehlgeschlagen", e);
+			} catch (GameException e) {
+				Logger.getLogger(ReplayViewer.class.getName()).log(Level.WARNING, "Sprung in der Aufzeichnung fehlgeschlagen", e);
+			}
+		}
+	}
+
+	/**
+	 * Springt zu einem Tick der Aufzeichnung. Liegt das Ziel vor dem ersten
+	 * Keyframe wird zum ersten Keyframe gesprungen.
+	 *
+	 * @param target der Tick
+	 * @throws ReplayException falls ein Keyframe nicht wiederhergestellt werden kann
+	 * @throws GameException falls beim Durchrechnen ein Fehler auftritt
+	 */
+	public void seekTo(long target) throws ReplayException, GameException {
+		long current = playback.getTick();
+		target = Math.min(target, playback.getLastTick());
+
+		int index = playback.findKeyframe(target);
+		if ( index < 0 && target < current && playback.getKeyframeCount() > 0 ) {
+			index = 0;
+			target = playback.getKeyframeTick(0);
+		}
+		if ( index >= 0 && (target < current || playback.getKeyframeTick(index) > current) ) {
+			GameSnapshot.restore(game, playback.getKeyframe(index));
+			playback.seek(playback.getKeyframeTick(index));
+		}
+
+		seeking = true;
+		try {
+			while ( playback.getTick() < target ) {
+				game.stepTick();
+			}
+		} finally {
+			seeking = false;
+		}
+	}
+
+	public void keyPressed(KeyEvent e) {
+		switch ( e.getKeyCode() ) {
+			case KeyEvent.VK_1:
+				requestedSpeed = 1;
+				break;
+			case KeyEvent.VK_2:
+				requestedSpeed = 2;
+				break;
+			case KeyEvent.VK_3:
+				requestedSpeed = 4;
+				break;
+			case KeyEvent.VK_4:
+				requestedSpeed = 16;
+				break;
+			case KeyEvent.VK_PAGE_UP:
+				requestedSeek.addAndGet(-SEEK_TICKS);
+				break;
+			case KeyEvent.VK_PAGE_DOWN:
+				requestedSeek.addAndGet(SEEK_TICKS);
+				break;
+			case KeyEvent.VK_HOME:
+				requestedRestart = true;
+				break;
+		}
+	}
+
+	public void keyReleased(KeyEvent e) {
+		/* interessiert uns nicht */
+	}
+
+	public void keyTyped(KeyEvent e) {
+		/* interessiert uns nicht */
+	}
+}
@@ -0,0 +1,405 @@
+package de.gaffga.jumpnrun.replay;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.gaffga.jumpnrun.FpsMeter;
+import de.gaffga.jumpnrun.Timer;
+import de.gaffga.jumpnrun.game.Game;
+
+/**
+ * Hält die letzten Sekunden des Spiels zum Zurückspulen.
+ *
+ * Nach jedem Tick wird ein Spielstand (GameSnapshot) genommen und nur seine
+ * Differenz zum vorherigen gespeichert: XOR der beiden Byte-Folgen, die
+ * Nullen dazwischen lauflängenkodiert. Pro Tick ändern sich nur Spieler,
+ * Feinde und Uhr, so dass ein Eintrag meist nur einige hundert Bytes groß
+ * ist. Der neueste Spielstand wird vollständig gehalten; beim Zurückspulen
+ * ergibt er mit dem neuesten Eintrag den Spielstand davor.
+ *
+ * Der Speicher wird einmal im Konstruktor angelegt und wächst nicht: Die
+ * Einträge liegen in einem Ringpuffer fester Größe und die ältesten fallen
+ * heraus wenn die Zeit (seconds) oder der Platz (memoryBytes) erreicht ist.
+ * Dazu kommen zwei Spielstände in voller Größe (einige KB pro Level). Mit
+ * den Standardwerten sind das zusammen etwa 540 KB; in level01 braucht ein
+ * Tick rund 40 Bytes, 20 Sekunden also nur einen Bruchteil des Rings.
+ *
+ * Zurückgespult wird nur der Zustand des Spiels samt Uhr; der Tick des
+ * Spiels (Game.getTick) läuft weiter vorwärts.
+ *
+ * Das Sichern soll unter CAPTURE_BUDGET_MICROS pro Tick bleiben; der
+ * gleitende Mittelwert steht als Zähler "Rewind us" beim FPS-Graphen.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class RewindBuffer {
+
+	/** Standard: So viele Sekunden können zurückgespult werden */
+	public static final int DEFAULT_SECONDS = 20;
+
+	/** Standard: Größe des Ringpuffers für die Differenzen in Bytes (512 KB) */
+	public static final int DEFAULT_MEMORY = 512 * 1024;
+
+	/** Zeitbudget für das Sichern pro Tick in Mikrosekunden */
+	public static final int CAPTURE_BUDGET_MICROS = 100;
+
+	/** Erst nach so vielen Ticks wird das Zeitbudget geprüft (der JIT übersetzt erst nach einigen tausend Aufrufen) */
+	private static final int WARMUP_TICKS = 60 * Timer.TICK_RATE;
+
+	/** Erst ab so vielen gleichen Bytes in Folge wird eine Lauflänge geschrieben */
+	private static final int MIN_ZERO_RUN = 3;
+
+	/** Nimmt die Spielstände */
+	private GameSnapshot snapshot = new GameSnapshot();
+
+	/** Der Ringpuffer mit den kodierten Differenzen */
+	private byte[] ring = null;
+
+	/** Anfang der Einträge im Ringpuffer (ebenfalls ein Ring, Index head ist der älteste) */
+	private int[] entryOffsets = null;
+
+	/** Länge der Einträge im Ringpuffer */
+	private int[] entryLengths = null;
+
+	/** Index des ältesten Eintrags */
+	private int head;
+
+	/** Anzahl der Einträge */
+	private int count;
+
+	/** Hier beginnt der nächste Eintrag im Ringpuffer */
+	private int writePos;
+
+	/** Der neueste Spielstand (dahinter nur Nullen) */
+	private byte[] current = new byte[0];
+
+	/** Die Länge des neuesten Spielstands oder -1 falls es keinen gibt */
+	private int currentLength = -1;
+
+	/** Der neu genommene Spielstand (dahinter nur Nullen) */
+	private byte[] incoming = new byte[0];
+
+	/** Die Länge des Spielstands in incoming */
+	private int incomingLength;
+
+	/** Puffer zum Kodieren eines Eintrags */
+	private byte[] scratch = new byte[0];
+
+	/** Gleitender Mittelwert der Zeit für das Sichern in Nanosekunden */
+	private long averageCaptureNanos;
+
+	/** Anzahl der gesicherten Spielstände (das Zeitbudget wird erst nach dem Aufwärmen geprüft) */
+	private long captureCount;
+
+	/** Flag ob die Überschreitung des Zeitbudgets schon gemeldet wurde */
+	private boolean budgetWarned = false;
+
+	/**
+	 * Konstruktor. Legt den gesamten Ringpuffer an.
+	 *
+	 * @param seconds so viele Sekunden können höchstens zurückgespult werden
+	 * @param memoryBytes Größe des Ringpuffers in Bytes
+	 */
+	public RewindBuffer(int seconds, int memoryBytes) {
+		int entries = seconds * Timer.TICK_RATE;
+		ring = new byte[memoryBytes];
+		entryOffsets = new int[entries];
+		entryLengths = new int[entries];
+
+		Logger.getLogger(RewindBuffer.class.getName()).log(Level.INFO,
+				"Zurückspulen: bis zu " + seconds + " s in " + (memoryBytes + 8 * entries) / 1024 + " KB");
+	}
+
+	/**
+	 * Nimmt den Spielstand nach einem Tick auf. Außerhalb des normalen
+	 * Spielablaufs (siehe GameSnapshot.canCapture) passiert nichts.
+	 *
+	 * @param game das Spiel
+	 * @throws ReplayException
+	 */
+	public void capture(Game game) throws ReplayException {
+		if ( !GameSnapshot.canCapture(game) ) {
+			return;
+		}
+		long start = System.nanoTime();
+
+		ByteBuffer data = snapshot.captureBuffer(game);
+		int length = data.limit();
+		if ( incoming.length < length ) {
+			incoming = Arrays.copyOf(incoming, length);
+		}
+		if ( current.length < length ) {
+			current = Arrays.copyOf(current, length);
+		}
+		System.arraycopy(data.array(), 0, incoming, 0, length);
+		if ( incomingLength > length ) {
+			Arrays.fill(incoming, length, incomingLength, (byte) 0);
+		}
+		incomingLength = length;
+
+		if ( currentLength >= 0 ) {
+			addEntry(encode());
+		}
+
+		// Der neue Spielstand wird zum neuesten
+		byte[] swap = current;
+		current = incoming;
+		incoming = swap;
+		incomingLength = Math.max(currentLength, 0);
+		currentLength = length;
+
+		measure(System.nanoTime() - start);
+	}
+
+	/**
+	 * Liefert ob zurückgespult werden kann (es gibt mindestens einen Spielstand).
+	 */
+	public boolean canRewind() {
+		return currentLength >= 0;
+	}
+
+	/**
+	 * Spult einen Tick zurück und stellt den Spielstand davor wieder her. Am
+	 * Anfang des Puffers wird der älteste Spielstand gehalten, das Spiel
+	 * (samt Uhr) bleibt also stehen solange weiter zurückgespult wird.
+	 *
+	 * @param game das Spiel
+	 * @throws ReplayException falls der Spielstand nicht wiederhergestellt werden kann
+	 */
+	public void rewind(Game game) throws ReplayException {
+		if ( currentLength < 0 ) {
+			return;
+		}
+		if ( count > 0 ) {
+			decodeNewest();
+		}
+		GameSnapshot.restoreState(game, ByteBuffer.wrap(current, 0, currentLength));
+	}
+
+	/**
+	 * Wendet den neuesten Eintrag auf current an und entfernt ihn.
+	 */
+	private void decodeNewest() {
+		int newest = (head + count - 1) % entryOffsets.length;
+		int pos = entryOffsets[newest];
+
+		// Kopf: Länge des vorherigen Spielstands
+		int value = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = ring[pos++];
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ( (b & 0x80) != 0 );
+		int previousLength = value;
+
+		if ( current.length < previousLength ) {
+			current = Arrays.copyOf(current, previousLength);
+		}
+
+		int total = Math.max(previousLength, currentLength);
+		int i = 0;
+		while ( i < total ) {
+			for ( int n=0 ; n<2 ; n++ ) {
+				value = 0;
+				shift = 0;
+				do {
+					b = ring[pos++];
+					value |= (b & 0x7F) << shift;
+					shift += 7;
+				} while ( (b & 0x80) != 0 );
+
+				if ( n == 0 ) {
+					// Lauflänge unveränderter Bytes
+					i += value;
+				} else {
+					// Veränderte Bytes
+					for ( int end=i+value ; i<end ; i++ ) {
+						current[i] ^= ring[pos++];
+					}
+				}
+			}
+		}
+		if ( currentLength > previousLength ) {
+			Arrays.fill(current, previousLength, currentLength, (byte) 0);
+		}
+		currentLength = previousLength;
+
+		writePos = entryOffsets[newest];
+		count--;
+	}
+
+	/**
+	 * Vergisst alle gesicherten Spielstände (z.B. beim Wechsel des Levels).
+	 */
+	public void clear() {
+		head = 0;
+		count = 0;
+		writePos = 0;
+		Arrays.fill(current, (byte) 0);
+		currentLength = -1;
+	}
+
+	/**
+	 * Kodiert die Differenz von current zu incoming in den scratch-Puffer.
+	 *
+	 * @return die Länge des Eintrags
+	 */
+	private int encode() {
+		int total = Math.max(currentLength, incomingLength);
+		if ( scratch.length < 2 * total + 16 ) {
+			scratch = new byte[2 * total + 16];
+		}
+
+		int out = putVarInt(0, currentLength);
+		int i = 0;
+		while ( i < total ) {
+			int start = i;
+			while ( i < total && current[i] == incoming[i] ) {
+				i++;
+			}
+			out = putVarInt(out, i - start);
+
+			// Veränderte Bytes bis zur nächsten längeren Folge gleicher Bytes
+			start = i;
+			int equal = 0;
+			while ( i < total ) {
+				if ( current[i] == incoming[i] ) {
+					if ( ++equal == MIN_ZERO_RUN ) {
+						i -= MIN_ZERO_RUN - 1;
+						break;
+					}
+				} else {
+					equal = 0;
+				}
+				i++;
+			}
+			if ( i == total ) {
+				i -= equal;
+				// Gleiche Bytes am Ende bleiben für die nächste Lauflänge
+			}
+			out = putVarInt(out, i - start);
+			for ( int j=start ; j<i ; j++ ) {
+				scratch[out++] = (byte) (current[j] ^ incoming[j]);
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Schreibt einen varint in den scratch-Puffer.
+	 */
+	private int putVarInt(int pos, int value) {
+		while ( (value & ~0x7F) != 0 ) {
+			scratch[pos++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		scratch[pos++] = (byte) value;
+		return pos;
+	}
+
+	/**
+	 * Hängt den Eintrag aus dem scratch-Puffer an den Ring und wirft dafür
+	 * die ältesten Einträge hinaus.
+	 *
+	 * @param length die Länge des Eintrags
+	 */
+	private void addEntry(int length) {
+		if ( length > ring.length / 4 ) {
+			// Passt nicht sinnvoll hinein - dann eben ab hier neu
+			count = 0;
+			writePos = 0;
+			return;
+		}
+		if ( count == entryOffsets.length ) {
+			dropOldest();
+		}
+
+		int pos = writePos;
+		boolean wrapped = pos + length > ring.length;
+		if ( wrapped ) {
+			pos = 0;
+		}
+		// Die Einträge hinter writePos sind die ältesten - so lange herauswerfen bis Platz ist
+		while ( count > 0 ) {
+			int offset = entryOffsets[head];
+			int end = offset + entryLengths[head];
+			boolean overlaps = offset < pos + length && end > pos;
+			if ( wrapped ) {
+				overlaps = overlaps || end > writePos;
+			}
+			if ( !overlaps ) {
+				break;
+			}
+			dropOldest();
+		}
+
+		System.arraycopy(scratch, 0, ring, pos, length);
+		int index = (head + count) % entryOffsets.length;
+		entryOffsets[index] = pos;
+		entryLengths[index] = length;
+		count++;
+		writePos = pos + length;
+	}
+
+	/**
+	 * Wirft den ältesten Eintrag hinaus.
+	 */
+	private void dropOldest() {
+		head = (head + 1) % entryOffsets.length;
+		count--;
+	}
+
+	/**
+	 * Nimmt die Zeit für das Sichern in den gleitenden Mittelwert auf.
+	 */
+	private void measure(long nanos) {
+		averageCaptureNanos = averageCaptureNanos == 0 ? nanos : (63 * averageCaptureNanos + nanos) / 64;
+		FpsMeter.getInstance().setCounter("Rewind us", (int) (averageCaptureNanos / 1000));
+
+		captureCount++;
+		if ( !budgetWarned && captureCount >= WARMUP_TICKS && averageCaptureNanos > CAPTURE_BUDGET_MICROS * 1000L ) {
+			budgetWarned = true;
+			Logger.getLogger(RewindBuffer.class.getName()).log(Level.WARNING,
+					"Das Sichern für das Zurückspulen braucht " + averageCaptureNanos / 1000 + " us pro Tick (Budget "
+					+ CAPTURE_BUDGET_MICROS + " us)");
+		}
+	}
+
+	/**
+	 * Liefert wie viele Sekunden gerade zurückgespult werden können.
+	 */
+	public float getSeconds() {
+		return (float) count / Timer.TICK_RATE;
+	}
+
+	/**
+	 * Liefert die Anzahl der Ticks die gerade zurückgespult werden können.
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Liefert den von den Einträgen belegten Platz im Ringpuffer in Bytes.
+	 */
+	public int getUsedBytes() {
+		int used = 0;
+		for ( int i=0 ; i<count ; i++ ) {
+			used += entryLengths[(head + i) % entryLengths.length];
+		}
+		return used;
+	}
+
+	/**
+	 * Liefert den gleitenden Mittelwert der Zeit für das Sichern pro Tick.
+	 *
+	 * @return die Zeit in Nanosekunden
+	 */
+	public long getAverageCaptureNanos() {
+		return averageCaptureNanos;
+	}
+}
@@ -0,0 +1,112 @@
+package de.gaffga.jumpnrun.replay;
+
+import de.gaffga.jumpnrun.Player;
+import de.gaffga.jumpnrun.enemies.EnemyManager;
+import de.gaffga.jumpnrun.game.Game;
+import de.gaffga.jumpnrun.game.states.NormalGamePlayState;
+import de.gaffga.jumpnrun.map.MapData;
+import de.gaffga.jumpnrun.score.Score;
+
+/**
+ * Berechnet eine Prüfsumme über den Spielzustand: Position und Geschwindigkeit
+ * des Spielers, die Positionen aller Feinde, Punkte/Leben/Münzen und den Inhalt
+ * der Map (eingesammelte Münzen und Checkpoints verändern die Tiles).
+ *
+ * Gerechnet wird mit FNV-1a über die Bitmuster der Werte - ohne Objekte und
+ * schnell genug um sie alle paar Ticks aufzurufen. Zwei Läufe mit den gleichen
+ * Eingaben im deterministischen Modus liefern die gleichen Prüfsummen, die
+ * erste Abweichung zeigt den Tick an dem die Wiedergabe auseinanderläuft.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class StateChecksum {
+
+	/** Startwert von FNV-1a (64 Bit) */
+	private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+
+	/** Multiplikator von FNV-1a (64 Bit) */
+	private static final long FNV_PRIME = 0x100000001B3L;
+
+	/**
+	 * Nur statische Methoden.
+	 */
+	private StateChecksum() {
+	}
+
+	/**
+	 * Berechnet die Prüfsumme des aktuellen Spielzustands.
+	 *
+	 * @param game das Spiel
+	 * @return die Prüfsumme oder 0 falls gerade nicht gespielt wird (z.B. im Menü)
+	 */
+	public static long compute(Game game) {
+		if ( game.getCurrentGameState() instanceof NormalGamePlayState ) {
+			return compute((NormalGamePlayState) game.getCurrentGameState());
+		}
+		return 0;
+	}
+
+	/**
+	 * Berechnet die Prüfsumme eines laufenden Levels.
+	 *
+	 * @param state der Spielzustand
+	 * @return die Prüfsumme
+	 */
+	public static long compute(NormalGamePlayState state) {
+		long h = FNV_OFFSET;
+
+		Player player = state.getPlayer();
+		if ( player != null ) {
+			h = add(h, player.getPosition().x);
+			h = add(h, player.getPosition().y);
+			h = add(h, player.getCurrentVelX());
+			h = add(h, player.getCurrentVelY());
+		}
+
+		EnemyManager enemies = state.getEnemyManager();
+		if ( enemies != null ) {
+			h = add(h, enemies.getCount());
+			for ( int i=0 ; i<enemies.getCount() ; i++ ) {
+				h = add(h, enemies.getX(i));
+				h = add(h, enemies.getY(i));
+			}
+		}
+
+		Score score = state.getScore();
+		if ( score != null ) {
+			h = add(h, score.getScore());
+			h = add(h, score.getNumReserveLives());
+			h = add(h, score.getCoinsCollected());
+			h = add(h, score.getLevel());
+		}
+
+		if ( state.getMap() != null ) {
+			MapData data = state.getMap().getMapData();
+			for ( int y=0 ; y<data.getHeight() ; y++ ) {
+				for ( int x=0 ; x<data.getWidth() ; x++ ) {
+					h = add(h, data.getTile(x, y));
+				}
+			}
+		}
+
+		return h;
+	}
+
+	/**
+	 * Nimmt einen int (byteweise) in die Prüfsumme auf.
+	 */
+	private static long add(long h, int value) {
+		for ( int i=0 ; i<4 ; i++ ) {
+			h = (h ^ (value & 0xFF)) * FNV_PRIME;
+			value >>>= 8;
+		}
+		return h;
+	}
+
+	/**
+	 * Nimmt das Bitmuster eines float in die Prüfsumme auf.
+	 */
+	private static long add(long h, float value) {
+		return add(h, Float.floatToIntBits(value));
+	}
+}
@@ -0,0 +1,324 @@
+package de.gaffga.jumpnrun.resources;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Threadsicherer Cache für Daten einer Art (Bilder, Properties, Maps).
+ *
+ * Fordern mehrere Threads gleichzeitig dieselben Daten an, lädt nur der erste
+ * sie; die anderen warten auf sein Ergebnis. Geladene Daten werden in der
+ * Reihenfolge des letzten Zugriffs gehalten. Übersteigt ihr geschätzter
+ * Speicherbedarf das Budget, werden die am längsten nicht benutzten Einträge
+ * verdrängt: Sie bleiben nur noch über eine SoftReference erreichbar und
+ * werden erst neu geladen wenn die VM sie tatsächlich freigegeben hat. Daten
+ * die z.B. noch von Tiles oder Sprites benutzt werden, werden also nie doppelt
+ * geladen.
+ *
+ * Schlägt das Laden fehl, wird nichts eingetragen und der nächste Zugriff
+ * versucht es erneut.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class AssetCache<V> {
+
+	/** Budget ohne Begrenzung */
+	public static final long UNBOUNDED = Long.MAX_VALUE;
+
+	/** Die Art der Daten (für die Statistik) */
+	private String type = null;
+
+	/** Der Lader */
+	private IAssetLoader<V> loader = null;
+
+	/** Das Budget in Bytes */
+	private long budget;
+
+	/** Die gehaltenen Einträge in der Reihenfolge des letzten Zugriffs */
+	private LinkedHashMap<String, Entry<V>> entries = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true);
+
+	/** Die verdrängten Einträge */
+	private HashMap<String, SoftEntry<V>> evicted = new HashMap<String, SoftEntry<V>>();
+
+	/** Die Queue der freigegebenen verdrängten Einträge */
+	private ReferenceQueue<V> queue = new ReferenceQueue<V>();
+
+	/** Die gerade laufenden Ladevorgänge */
+	private HashMap<String, FutureTask<V>> loading = new HashMap<String, FutureTask<V>>();
+
+	/** Der geschätzte Speicherbedarf der gehaltenen Einträge */
+	private long bytes;
+
+	/** Anzahl der Zugriffe auf gehaltene Einträge */
+	private long hits;
+
+	/** Anzahl der Zugriffe auf verdrängte aber noch nicht freigegebene Einträge */
+	private long softHits;
+
+	/** Anzahl der Zugriffe die auf einen laufenden Ladevorgang gewartet haben */
+	private long waits;
+
+	/** Anzahl der Ladevorgänge */
+	private long misses;
+
+	/** Anzahl der verdrängten Einträge */
+	private long evictions;
+
+	/**
+	 * Ein gehaltener Eintrag.
+	 */
+	private static class Entry<V> {
+		/** Die Daten */
+		private V value;
+		/** Der geschätzte Speicherbedarf */
+		private long size;
+
+		private Entry(V value, long size) {
+			this.value = value;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * Ein verdrängter Eintrag.
+	 */
+	private static class SoftEntry<V> extends SoftReference<V> {
+		/** Der Name */
+		private String name;
+		/** Der geschätzte Speicherbedarf */
+		private long size;
+
+		private SoftEntry(String name, Entry<V> entry, ReferenceQueue<V> queue) {
+			super(entry.value, queue);
+			this.name = name;
+			this.size = entry.size;
+		}
+	}
+
+	/**
+	 * Konstruktor.
+	 *
+	 * @param type die Art der Daten
+	 * @param budget das Budget in Bytes (UNBOUNDED für keine Begrenzung)
+	 * @param loader der Lader
+	 */
+	public AssetCache(String type, long budget, IAssetLoader<V> loader) {
+		this.type = type;
+		this.budget = budget;
+		this.loader = loader;
+	}
+
+	/**
+	 * Liefert die Daten mit dem angegebenen Namen und lädt sie falls nötig.
+	 *
+	 * @param name der Name
+	 * @return die Daten
+	 * @throws ResourceManagerException falls die Daten nicht geladen werden können
+	 */
+	public V get(final String name) throws ResourceManagerException {
+		FutureTask<V> task;
+		boolean owner = false;
+
+		synchronized ( this ) {
+			Entry<V> entry = entries.get(name);
+			if ( entry != null ) {
+				hits++;
+				return entry.value;
+			}
+
+			SoftEntry<V> softEntry = evicted.remove(name);
+			if ( softEntry != null ) {
+				V value = softEntry.get();
+				if ( value != null ) {
+					softHits++;
+					add(name, new Entry<V>(value, softEntry.size));
+					return value;
+				}
+			}
+
+			task = loading.get(name);
+			if ( task == null ) {
+				task = new FutureTask<V>(new Callable<V>() {
+					public V call() throws ResourceManagerException {
+						return loader.load(name);
+					}
+				});
+				loading.put(name, task);
+				misses++;
+				owner = true;
+			} else {
+				waits++;
+			}
+		}
+
+		// Das Laden läuft außerhalb der Sperre damit verschiedene Daten parallel laden können
+		if ( owner ) {
+			task.run();
+		}
+
+		V value;
+		try {
+			value = task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ResourceManagerException("Das Laden von " + name + " wurde unterbrochen", e);
+		} catch (ExecutionException e) {
+			if ( e.getCause() instanceof ResourceManagerException ) {
+				throw (ResourceManagerException) e.getCause();
+			}
+			throw new ResourceManagerException("Fehler beim Laden von " + name, e.getCause());
+		} finally {
+			if ( owner ) {
+				finish(name, task);
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Trägt das Ergebnis eines eigenen Ladevorgangs ein.
+	 */
+	private synchronized void finish(String name, FutureTask<V> task) {
+		loading.remove(name);
+		try {
+			V value = task.get();
+			add(name, new Entry<V>(value, loader.sizeOf(value)));
+		} catch (ExecutionException e) {
+			// Fehler werden nicht gecacht
+		} catch (InterruptedException e) {
+			// Kann nicht auftreten: Der Ladevorgang ist bereits beendet
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Trägt einen Eintrag ein und verdrängt falls nötig die ältesten.
+	 */
+	private void add(String name, Entry<V> entry) {
+		entries.put(name, entry);
+		bytes += entry.size;
+		evict();
+	}
+
+	/**
+	 * Verdrängt die ältesten Einträge bis das Budget eingehalten wird. Der
+	 * neueste Eintrag wird immer gehalten.
+	 */
+	private void evict() {
+		Iterator<Map.Entry<String, Entry<V>>> iterator = entries.entrySet().iterator();
+		while ( bytes > budget && entries.size() > 1 ) {
+			Map.Entry<String, Entry<V>> eldest = iterator.next();
+			evicted.put(eldest.getKey(), new SoftEntry<V>(eldest.getKey(), eldest.getValue(), queue));
+			bytes -= eldest.getValue().size;
+			evictions++;
+			iterator.remove();
+		}
+
+		// Die Namen freigegebener Einträge entfernen
+		SoftEntry<?> released;
+		while ( (released = (SoftEntry<?>) queue.poll()) != null ) {
+			if ( evicted.get(released.name) == released ) {
+				evicted.remove(released.name);
+			}
+		}
+	}
+
+	/**
+	 * Setzt das Budget und verdrängt falls nötig sofort.
+	 *
+	 * @param budget das Budget in Bytes (UNBOUNDED für keine Begrenzung)
+	 */
+	public synchronized void setBudget(long budget) {
+		this.budget = budget;
+		evict();
+	}
+
+	/**
+	 * Entfernt alle Einträge (laufende Ladevorgänge werden noch eingetragen).
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		evicted.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * Liefert die Art der Daten.
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * Liefert das Budget in Bytes.
+	 */
+	public synchronized long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Liefert den geschätzten Speicherbedarf der gehaltenen Einträge.
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Liefert die Anzahl der gehaltenen Einträge.
+	 */
+	public synchronized int getCount() {
+		return entries.size();
+	}
+
+	/**
+	 * Liefert die Anzahl der Zugriffe auf gehaltene Einträge.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Liefert die Anzahl der Zugriffe auf verdrängte aber noch nicht
+	 * freigegebene Einträge.
+	 */
+	public synchronized long getSoftHits() {
+		return softHits;
+	}
+
+	/**
+	 * Liefert die Anzahl der Zugriffe die auf einen laufenden Ladevorgang
+	 * eines anderen Threads gewartet haben.
+	 */
+	public synchronized long getWaits() {
+		return waits;
+	}
+
+	/**
+	 * Liefert die Anzahl der Ladevorgänge.
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Liefert die Anzahl der verdrängten Einträge.
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return type + ": " + entries.size() + " Einträge, " + bytes / 1024 + " KB"
+				+ (budget == UNBOUNDED ? "" : " von " + budget / 1024 + " KB")
+				+ ", " + hits + " Treffer, " + softHits + " Soft-Treffer, " + waits + " gewartet, "
+				+ misses + " geladen, " + evictions + " verdrängt";
+	}
+}
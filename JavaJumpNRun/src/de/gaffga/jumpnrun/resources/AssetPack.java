@@ -0,0 +1,358 @@
+package de.gaffga.jumpnrun.resources;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Alle Spieldaten in einer Datei, die in den Speicher eingeblendet wird.
+ *
+ * Aufbau (alle Zahlen Big Endian):
+ * <pre>
+ * Kopf:    int MAGIC, int VERSION, int Anzahl der Einträge,
+ *          int Position und int Länge des Pfads des Datenverzeichnisses
+ * Inhalt:  pro Eintrag ENTRY_SIZE Bytes, sortiert nach Hash und Name:
+ *          long Hash des Namens, int Position des Namens, int Länge des Namens,
+ *          int Position der Daten, int gespeicherte Länge, int Originallänge,
+ *          byte Kompression, 3 Bytes frei, long Änderungszeit der Quelldatei
+ * Namen:   die Namen in UTF-8 hintereinander, danach der Pfad des
+ *          Datenverzeichnisses in UTF-8
+ * Daten:   die Daten hintereinander
+ * </pre>
+ * Der Hash ist FNV-1a (64 Bit) über den Namen in UTF-8. Gesucht wird binär
+ * direkt im eingeblendeten Inhaltsverzeichnis - beim Öffnen wird also nur der
+ * Kopf gelesen. Ungepackte Daten werden ohne Kopie als Ausschnitt der Datei
+ * geliefert; gepackt werden beim Erzeugen nur Daten die dadurch deutlich
+ * kleiner werden (also nicht die PNGs).
+ *
+ * Über den Pfad, die Längen und die Änderungszeiten stellt findChange fest ob
+ * die Dateien im Datenverzeichnis seit dem Packen geändert, hinzugefügt oder
+ * gelöscht wurden.
+ *
+ * Erzeugt wird die Datei mit AssetPackWriter.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class AssetPack {
+
+	/** Der Dateiname unter dem die Datei im Klassenpfad gesucht wird */
+	public static final String FILE_NAME = "assets.pack";
+
+	/** Die Kennung am Anfang der Datei ("JNRP") */
+	public static final int MAGIC = 0x4A4E5250;
+
+	/** Die Version des Formats */
+	public static final int VERSION = 2;
+
+	/** Die Größe des Kopfes */
+	public static final int HEADER_SIZE = 20;
+
+	/** Die Größe eines Eintrags im Inhaltsverzeichnis */
+	public static final int ENTRY_SIZE = 40;
+
+	/** Kompression: ungepackt */
+	public static final int STORED = 0;
+
+	/** Kompression: Deflate */
+	public static final int DEFLATED = 1;
+
+	/** Startwert des FNV-1a Hashs */
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+	/** Multiplikator des FNV-1a Hashs */
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	/** Die eingeblendete Datei */
+	private ByteBuffer buffer = null;
+
+	/** Die Anzahl der Einträge */
+	private int count;
+
+	/** Die Datei */
+	private File file = null;
+
+	/**
+	 * Konstruktor.
+	 */
+	private AssetPack(File file, ByteBuffer buffer) {
+		this.file = file;
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Öffnet eine Datei und blendet sie in den Speicher ein.
+	 *
+	 * @param file die Datei
+	 * @return die geöffnete Datei
+	 * @throws IOException falls die Datei nicht gelesen werden kann oder kein gültiges Format hat
+	 */
+	public static AssetPack open(File file) throws IOException {
+		ByteBuffer buffer;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			// Die Einblendung bleibt auch nach dem Schließen der Datei gültig
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			raf.close();
+		}
+
+		AssetPack pack = new AssetPack(file, buffer);
+		if ( buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC ) {
+			throw new IOException("'" + file + "' ist keine Datei mit Spieldaten");
+		}
+		if ( buffer.getInt(4) != VERSION ) {
+			throw new IOException("Unbekannte Version der Spieldaten in '" + file + "': " + buffer.getInt(4));
+		}
+		pack.count = buffer.getInt(8);
+		if ( pack.count < 0 || (long) HEADER_SIZE + (long) pack.count * ENTRY_SIZE > buffer.limit() ) {
+			throw new IOException("Das Inhaltsverzeichnis von '" + file + "' ist beschädigt");
+		}
+		return pack;
+	}
+
+	/**
+	 * Berechnet den Hash eines Namens.
+	 *
+	 * @param name der Name in UTF-8
+	 * @return der Hash
+	 */
+	public static long hash(byte[] name) {
+		long hash = FNV_OFFSET;
+		for ( byte b : name ) {
+			hash ^= b & 0xff;
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+
+	/**
+	 * Liefert die Daten mit dem angegebenen Namen.
+	 *
+	 * @param name der Name relativ zum Datenverzeichnis (mit '/' getrennt)
+	 * @return die Daten ab Position 0 oder null falls es sie nicht gibt
+	 * @throws IOException falls die Daten beschädigt sind
+	 */
+	public ByteBuffer get(String name) throws IOException {
+		int entry = find(utf8(name));
+		if ( entry < 0 ) {
+			return null;
+		}
+
+		int position = entryInt(entry, 16);
+		int length = entryInt(entry, 20);
+		int originalLength = entryInt(entry, 24);
+		int compression = buffer.get(entryPosition(entry) + 28);
+		if ( position < 0 || length < 0 || (long) position + length > buffer.limit() ) {
+			throw new IOException("Der Eintrag " + name + " in '" + file + "' ist beschädigt");
+		}
+
+		ByteBuffer data = buffer.duplicate();
+		data.position(position);
+		data.limit(position + length);
+		data = data.slice();
+
+		if ( compression == STORED ) {
+			return data;
+		} else if ( compression == DEFLATED ) {
+			return inflate(name, data, originalLength);
+		}
+		throw new IOException("Unbekannte Kompression " + compression + " für " + name + " in '" + file + "'");
+	}
+
+	/**
+	 * Liefert ob es die Daten mit dem angegebenen Namen gibt.
+	 *
+	 * @param name der Name relativ zum Datenverzeichnis
+	 */
+	public boolean contains(String name) {
+		return find(utf8(name)) >= 0;
+	}
+
+	/**
+	 * Liefert die Anzahl der Einträge.
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Liefert die Datei.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Liefert das Datenverzeichnis aus dem die Datei erzeugt wurde.
+	 *
+	 * @return das Verzeichnis oder null falls es nicht gespeichert ist
+	 */
+	public File getSourceDirectory() {
+		int position = buffer.getInt(12);
+		int length = buffer.getInt(16);
+		if ( length <= 0 || position < 0 || (long) position + length > buffer.limit() ) {
+			return null;
+		}
+		return new File(string(position, length));
+	}
+
+	/**
+	 * Vergleicht die Einträge mit den Dateien im Datenverzeichnis aus dem die
+	 * Datei erzeugt wurde (auch in Unterverzeichnissen). Eine Datei gilt als 
+	 * geändert wenn ihre Länge oder Änderungszeit nicht mehr stimmt. Gibt es
+	 * das Verzeichnis nicht (z.B. in einer Auslieferung nur mit dieser Datei), 
+	 * wird nichts verglichen.
+	 *
+	 * @return die Beschreibung der ersten Abweichung oder null falls die Einträge aktuell sind
+	 * @throws IOException falls das Verzeichnis nicht gelesen werden kann
+	 */
+	public String findChange() throws IOException {
+		File directory = getSourceDirectory();
+		if ( directory == null || !directory.isDirectory() ) {
+			return null;
+		}
+
+		Map<String, File> files = AssetPackWriter.listFiles(directory, file);
+		for ( Map.Entry<String, File> source : files.entrySet() ) {
+			int entry = find(utf8(source.getKey()));
+			if ( entry < 0 ) {
+				return source.getKey() + " ist neu";
+			}
+			if ( entryInt(entry, 24) != source.getValue().length() 
+					|| buffer.getLong(entryPosition(entry) + 32) != source.getValue().lastModified() ) {
+				return source.getKey() + " wurde geändert";
+			}
+		}
+		if ( files.size() != count ) {
+			for ( int entry=0 ; entry<count ; entry++ ) {
+				int position = entryInt(entry, 8);
+				int length = entryInt(entry, 12);
+				if ( position < 0 || length < 0 || (long) position + length > buffer.limit() ) {
+					throw new IOException("Das Inhaltsverzeichnis von '" + file + "' ist beschädigt");
+				}
+				String name = string(position, length);
+				if ( !files.containsKey(name) ) {
+					return name + " wurde gelöscht";
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Sucht einen Eintrag binär über den Hash und vergleicht bei gleichem
+	 * Hash die Namen.
+	 *
+	 * @return die Nummer des Eintrags oder -1
+	 */
+	private int find(byte[] name) {
+		long hash = hash(name);
+		int low = 0;
+		int high = count - 1;
+		while ( low <= high ) {
+			int middle = (low + high) >>> 1;
+			long middleHash = buffer.getLong(entryPosition(middle));
+			if ( middleHash < hash ) {
+				low = middle + 1;
+			} else if ( middleHash > hash ) {
+				high = middle - 1;
+			} else {
+				// Alle Einträge mit diesem Hash liegen nebeneinander
+				int first = middle;
+				while ( first > 0 && buffer.getLong(entryPosition(first - 1)) == hash ) {
+					first--;
+				}
+				for ( int entry = first ; entry < count && buffer.getLong(entryPosition(entry)) == hash ; entry++ ) {
+					if ( nameEquals(entry, name) ) {
+						return entry;
+					}
+				}
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Vergleicht den Namen eines Eintrags.
+	 */
+	private boolean nameEquals(int entry, byte[] name) {
+		int position = entryInt(entry, 8);
+		if ( entryInt(entry, 12) != name.length || position < 0 || (long) position + name.length > buffer.limit() ) {
+			return false;
+		}
+		for ( int i=0 ; i<name.length ; i++ ) {
+			if ( buffer.get(position + i) != name[i] ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Liefert die Position eines Eintrags im Inhaltsverzeichnis.
+	 */
+	private static int entryPosition(int entry) {
+		return HEADER_SIZE + entry * ENTRY_SIZE;
+	}
+
+	/**
+	 * Liest einen int aus einem Eintrag.
+	 */
+	private int entryInt(int entry, int offset) {
+		return buffer.getInt(entryPosition(entry) + offset);
+	}
+
+	/**
+	 * Entpackt gepackte Daten.
+	 */
+	private ByteBuffer inflate(String name, ByteBuffer data, int originalLength) throws IOException {
+		byte[] input = new byte[data.remaining()];
+		data.get(input);
+		byte[] output = new byte[originalLength];
+
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(input);
+			int length = inflater.inflate(output);
+			if ( length != originalLength || !inflater.finished() ) {
+				throw new IOException("Der Eintrag " + name + " in '" + file + "' ist unvollständig");
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Der Eintrag " + name + " in '" + file + "' ist beschädigt", e);
+		} finally {
+			inflater.end();
+		}
+		return ByteBuffer.wrap(output);
+	}
+
+	/**
+	 * Liest eine Zeichenkette in UTF-8 aus der Datei.
+	 */
+	private String string(int position, int length) {
+		byte[] bytes = new byte[length];
+		ByteBuffer data = buffer.duplicate();
+		data.position(position);
+		data.get(bytes);
+		return new String(bytes, Charset.forName("UTF-8"));
+	}
+
+	/**
+	 * Liefert einen Namen in UTF-8.
+	 */
+	static byte[] utf8(String name) {
+		try {
+			return name.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			// UTF-8 gibt es immer
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,272 @@
+package de.gaffga.jumpnrun.resources;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+
+/**
+ * Erzeugt aus einem Datenverzeichnis eine Datei im Format von AssetPack.
+ *
+ * Alle Dateien des Verzeichnisses (auch in Unterverzeichnissen) werden unter
+ * ihrem Pfad relativ zum Verzeichnis aufgenommen; versteckte Dateien, die
+ * Ausgabedatei selbst und ältere Dateien namens AssetPack.FILE_NAME nicht.
+ * Daten werden nur gepackt wenn sie dadurch mindestens um MIN_SAVING kleiner
+ * werden. Mit gespeichert werden der Pfad des Verzeichnisses und die
+ * Änderungszeit jeder Datei, damit AssetPack.findChange veraltete Daten
+ * erkennt. Bei gleichem Inhalt und gleichen Zeiten entsteht immer dieselbe
+ * Datei.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class AssetPackWriter {
+
+	/** Der Anteil um den gepackte Daten mindestens kleiner sein müssen */
+	public static final float MIN_SAVING = 0.25f;
+
+	/** Die Einträge */
+	private List<Entry> entries = new ArrayList<Entry>();
+
+	/** Summe der Originallängen */
+	private long originalBytes;
+
+	/** Summe der gespeicherten Längen */
+	private long storedBytes;
+
+	/** Der Pfad des Datenverzeichnisses in UTF-8 (leer falls unbekannt) */
+	private byte[] sourceDirectory = new byte[0];
+
+	/**
+	 * Ein Eintrag.
+	 */
+	private static class Entry {
+		/** Der Name */
+		private String name;
+		/** Der Name in UTF-8 */
+		private byte[] nameBytes;
+		/** Der Hash des Namens */
+		private long hash;
+		/** Die gespeicherten Daten */
+		private byte[] data;
+		/** Die Originallänge */
+		private int originalLength;
+		/** Die Kompression */
+		private int compression;
+		/** Die Änderungszeit der Quelldatei */
+		private long lastModified;
+	}
+
+	/**
+	 * Nimmt alle Dateien eines Verzeichnisses auf und schreibt die Datei.
+	 *
+	 * @param directory das Datenverzeichnis
+	 * @param output die zu schreibende Datei
+	 * @return der Writer (für die Statistik)
+	 * @throws IOException falls eine Datei nicht gelesen oder geschrieben werden kann
+	 */
+	public static AssetPackWriter write(File directory, File output) throws IOException {
+		if ( !directory.isDirectory() ) {
+			throw new IOException("'" + directory + "' ist kein Verzeichnis");
+		}
+		AssetPackWriter writer = new AssetPackWriter();
+		writer.sourceDirectory = AssetPack.utf8(directory.getCanonicalPath());
+		for ( Map.Entry<String, File> file : listFiles(directory, output).entrySet() ) {
+			// Die Zeit vor dem Lesen, damit eine Änderung währenddessen nicht unbemerkt bleibt
+			long lastModified = file.getValue().lastModified();
+			writer.add(file.getKey(), readFile(file.getValue()), lastModified);
+		}
+		writer.write(output);
+		return writer;
+	}
+
+	/**
+	 * Liefert alle Dateien eines Datenverzeichnisses die in eine Datei 
+	 * aufgenommen werden.
+	 *
+	 * @param directory das Datenverzeichnis
+	 * @param output die Datei mit den Spieldaten (wird selbst nicht aufgenommen)
+	 * @return die Dateien nach ihrem Namen relativ zum Verzeichnis
+	 * @throws IOException falls ein Verzeichnis nicht gelesen werden kann
+	 */
+	static Map<String, File> listFiles(File directory, File output) throws IOException {
+		Map<String, File> files = new TreeMap<String, File>();
+		addDirectory(files, directory, "", output.getCanonicalFile());
+		return files;
+	}
+
+	/**
+	 * Nimmt die Dateien eines Verzeichnisses auf.
+	 */
+	private static void addDirectory(Map<String, File> files, File directory, String prefix, File output) 
+			throws IOException {
+		File[] list = directory.listFiles();
+		if ( list == null ) {
+			throw new IOException("Das Verzeichnis '" + directory + "' kann nicht gelesen werden");
+		}
+		for ( File file : list ) {
+			if ( file.getName().startsWith(".") || file.getName().equals(AssetPack.FILE_NAME)
+					|| file.getCanonicalFile().equals(output) ) {
+				continue;
+			}
+			if ( file.isDirectory() ) {
+				addDirectory(files, file, prefix + file.getName() + "/", output);
+			} else {
+				files.put(prefix + file.getName(), file);
+			}
+		}
+	}
+
+	/**
+	 * Nimmt Daten auf und packt sie falls es sich lohnt.
+	 *
+	 * @param name der Name relativ zum Datenverzeichnis (mit '/' getrennt)
+	 * @param data die Daten
+	 * @param lastModified die Änderungszeit der Quelldatei
+	 */
+	public void add(String name, byte[] data, long lastModified) {
+		Entry entry = new Entry();
+		entry.name = name;
+		entry.nameBytes = AssetPack.utf8(name);
+		entry.hash = AssetPack.hash(entry.nameBytes);
+		entry.originalLength = data.length;
+		entry.data = data;
+		entry.compression = AssetPack.STORED;
+		entry.lastModified = lastModified;
+
+		byte[] deflated = deflate(data);
+		if ( deflated != null && deflated.length <= data.length * (1 - MIN_SAVING) ) {
+			entry.data = deflated;
+			entry.compression = AssetPack.DEFLATED;
+		}
+
+		entries.add(entry);
+		originalBytes += entry.originalLength;
+		storedBytes += entry.data.length;
+	}
+
+	/**
+	 * Schreibt die Datei.
+	 *
+	 * @param output die Datei
+	 * @throws IOException
+	 */
+	public void write(File output) throws IOException {
+		Collections.sort(entries, new Comparator<Entry>() {
+			public int compare(Entry a, Entry b) {
+				if ( a.hash != b.hash ) {
+					return a.hash < b.hash ? -1 : 1;
+				}
+				return a.name.compareTo(b.name);
+			}
+		});
+
+		int namesSize = 0;
+		for ( Entry entry : entries ) {
+			namesSize += entry.nameBytes.length;
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(AssetPack.HEADER_SIZE + entries.size() * AssetPack.ENTRY_SIZE + namesSize
+				+ sourceDirectory.length);
+		int namePosition = header.capacity() - namesSize - sourceDirectory.length;
+		header.putInt(AssetPack.MAGIC);
+		header.putInt(AssetPack.VERSION);
+		header.putInt(entries.size());
+		header.putInt(namePosition + namesSize);
+		header.putInt(sourceDirectory.length);
+
+		int dataPosition = header.capacity();
+		for ( Entry entry : entries ) {
+			header.putLong(entry.hash);
+			header.putInt(namePosition);
+			header.putInt(entry.nameBytes.length);
+			header.putInt(dataPosition);
+			header.putInt(entry.data.length);
+			header.putInt(entry.originalLength);
+			header.put((byte) entry.compression);
+			header.put(new byte[3]);
+			header.putLong(entry.lastModified);
+			namePosition += entry.nameBytes.length;
+			dataPosition += entry.data.length;
+		}
+		for ( Entry entry : entries ) {
+			header.put(entry.nameBytes);
+		}
+		header.put(sourceDirectory);
+
+		FileOutputStream out = new FileOutputStream(output);
+		try {
+			out.write(header.array());
+			for ( Entry entry : entries ) {
+				out.write(entry.data);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Liefert die Anzahl der Einträge.
+	 */
+	public int getCount() {
+		return entries.size();
+	}
+
+	/**
+	 * Liefert die Summe der Originallängen.
+	 */
+	public long getOriginalBytes() {
+		return originalBytes;
+	}
+
+	/**
+	 * Liefert die Summe der gespeicherten Längen.
+	 */
+	public long getStoredBytes() {
+		return storedBytes;
+	}
+
+	/**
+	 * Packt Daten.
+	 *
+	 * @return die gepackten Daten oder null falls sie nicht kleiner werden
+	 */
+	private static byte[] deflate(byte[] data) {
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+			byte[] output = new byte[data.length];
+			int length = deflater.deflate(output);
+			if ( !deflater.finished() ) {
+				return null;
+			}
+			byte[] result = new byte[length];
+			System.arraycopy(output, 0, result, 0, length);
+			return result;
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Liest eine Datei vollständig.
+	 */
+	private static byte[] readFile(File file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			byte[] data = new byte[(int) in.length()];
+			in.readFully(data);
+			return data;
+		} finally {
+			in.close();
+		}
+	}
+}
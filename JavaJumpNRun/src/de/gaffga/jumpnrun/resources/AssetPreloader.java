@@ -0,0 +1,153 @@
+package de.gaffga.jumpnrun.resources;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lädt die Bilder eines PreloadManifest parallel in den ResourceManager,
+ * damit das Spiel später beim ersten Betreten eines Levels nicht mehr auf
+ * das Dekodieren warten muss.
+ *
+ * Die Bilder werden auf höchstens MAX_THREADS Threads (und nicht mehr als
+ * Prozessorkerne) dekodiert. Der Fortschritt kann jederzeit aus einem anderen
+ * Thread abgefragt werden.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class AssetPreloader {
+
+	/** Höchstzahl der Threads zum Dekodieren */
+	public static final int MAX_THREADS = 4;
+
+	/** Die zu ladenden Bilder */
+	private List<String> images = null;
+
+	/** Anzahl der fertig geladenen Bilder */
+	private AtomicInteger loaded = new AtomicInteger();
+
+	/** Die Threads */
+	private ExecutorService executor = null;
+
+	/** Die Anzahl der Threads */
+	private int threads;
+
+	/** Startzeitpunkt in Nanosekunden */
+	private long startNanos;
+
+	/** Endzeitpunkt in Nanosekunden (0 solange noch geladen wird) */
+	private volatile long endNanos;
+
+	/**
+	 * Konstruktor.
+	 *
+	 * @param manifest die Liste der Bilder
+	 */
+	public AssetPreloader(PreloadManifest manifest) {
+		this.images = manifest.getImages();
+	}
+
+	/**
+	 * Startet das Laden im Hintergrund.
+	 */
+	public void start() {
+		startNanos = System.nanoTime();
+		threads = Math.max(1, Math.min(images.size(), Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors())));
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private AtomicInteger number = new AtomicInteger();
+
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "AssetPreloader-" + number.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		for ( final String image : images ) {
+			executor.execute(new Runnable() {
+				public void run() {
+					// Fehler führen zum Dummybild - wie beim normalen getImage
+					ResourceManager.getInstance().getImage(image);
+					if ( loaded.incrementAndGet() == images.size() ) {
+						endNanos = System.nanoTime();
+					}
+				}
+			});
+		}
+		executor.shutdown();
+
+		if ( images.isEmpty() ) {
+			endNanos = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Wartet bis alle Bilder geladen sind.
+	 *
+	 * @throws InterruptedException
+	 */
+	public void await() throws InterruptedException {
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Wartet höchstens die angegebene Zeit bis alle Bilder geladen sind.
+	 *
+	 * @param millis die Zeit in Millisekunden
+	 * @return true falls alle Bilder geladen sind
+	 * @throws InterruptedException
+	 */
+	public boolean await(long millis) throws InterruptedException {
+		return executor.awaitTermination(millis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Liefert ob alle Bilder geladen sind.
+	 */
+	public boolean isDone() {
+		return loaded.get() == images.size();
+	}
+
+	/**
+	 * Liefert den Fortschritt.
+	 *
+	 * @return der Anteil der geladenen Bilder von 0 bis 1
+	 */
+	public float getProgress() {
+		return images.isEmpty() ? 1.0f : (float) loaded.get() / images.size();
+	}
+
+	/**
+	 * Liefert die Anzahl der fertig geladenen Bilder.
+	 */
+	public int getLoaded() {
+		return loaded.get();
+	}
+
+	/**
+	 * Liefert die Anzahl aller Bilder.
+	 */
+	public int getTotal() {
+		return images.size();
+	}
+
+	/**
+	 * Liefert die Anzahl der Threads.
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Liefert die Dauer des Ladens.
+	 *
+	 * @return die Dauer in Millisekunden (bis jetzt falls noch geladen wird)
+	 */
+	public long getMillis() {
+		long end = endNanos != 0 ? endNanos : System.nanoTime();
+		return (end - startNanos) / 1000000;
+	}
+}
@@ -0,0 +1,74 @@
+package de.gaffga.jumpnrun.resources;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Ein InputStream der direkt aus einem ByteBuffer liest (z.B. aus einem
+ * Ausschnitt eines AssetPack).
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+class ByteBufferInputStream extends InputStream {
+
+	/** Der Puffer */
+	private ByteBuffer buffer = null;
+
+	/** Die markierte Position */
+	private int mark;
+
+	/**
+	 * Konstruktor.
+	 *
+	 * @param buffer der Puffer (wird ab der aktuellen Position gelesen)
+	 */
+	ByteBufferInputStream(ByteBuffer buffer) {
+		this.buffer = buffer;
+		this.mark = buffer.position();
+	}
+
+	@Override
+	public int read() {
+		return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if ( len == 0 ) {
+			return 0;
+		}
+		if ( !buffer.hasRemaining() ) {
+			return -1;
+		}
+		len = Math.min(len, buffer.remaining());
+		buffer.get(b, off, len);
+		return len;
+	}
+
+	@Override
+	public long skip(long n) {
+		int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+		buffer.position(buffer.position() + skipped);
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return buffer.remaining();
+	}
+
+	@Override
+	public boolean markSupported() {
+		return true;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+		mark = buffer.position();
+	}
+
+	@Override
+	public synchronized void reset() {
+		buffer.position(mark);
+	}
+}
@@ -0,0 +1,26 @@
+package de.gaffga.jumpnrun.resources;
+
+/**
+ * Lädt Daten einer Art für einen AssetCache und schätzt ihren Speicherbedarf.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public interface IAssetLoader<V> {
+
+	/**
+	 * Lädt die Daten mit dem angegebenen Namen.
+	 *
+	 * @param name der Name relativ zum Klassenpfad
+	 * @return die geladenen Daten (nie null)
+	 * @throws ResourceManagerException falls die Daten nicht geladen werden können
+	 */
+	public V load(String name) throws ResourceManagerException;
+
+	/**
+	 * Schätzt den Speicherbedarf geladener Daten.
+	 *
+	 * @param value die Daten
+	 * @return der Speicherbedarf in Bytes
+	 */
+	public long sizeOf(V value);
+}
@@ -0,0 +1,107 @@
+package de.gaffga.jumpnrun.resources;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Die Liste der Bilder die beim Programmstart vorgeladen werden: alle Bilder
+ * aus der tiles.properties, die Bilder der Sprites und die einzelnen Bilder
+ * für Menü und Punkteanzeige aus der preload.list.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class PreloadManifest {
+
+	/** Die Datei mit den zusätzlichen Einträgen */
+	public static final String LIST_FILE = "preload.list";
+
+	/** Die Konfiguration der Tiles */
+	public static final String TILES_FILE = "tiles.properties";
+
+	/** Die Namen der Bilder (ohne Doppelte, in der Reihenfolge des Auftretens) */
+	private LinkedHashSet<String> images = new LinkedHashSet<String>();
+
+	/**
+	 * Liest die Liste aus tiles.properties, preload.list und den Sprites.
+	 *
+	 * @return die Liste
+	 * @throws ResourceManagerException falls eine der Dateien nicht gelesen werden kann
+	 */
+	public static PreloadManifest read() throws ResourceManagerException {
+		PreloadManifest manifest = new PreloadManifest();
+		ResourceManager resources = ResourceManager.getInstance();
+
+		// Die Nummerierung der Tiles kann Lücken haben - daher alle Schlüssel durchsehen
+		Properties tiles = resources.getProperties(TILES_FILE);
+		for ( String key : tiles.stringPropertyNames() ) {
+			if ( key.startsWith("tile_") && key.endsWith("_imagefile") ) {
+				manifest.add(tiles.getProperty(key));
+			}
+		}
+
+		for ( String entry : readList(LIST_FILE) ) {
+			if ( entry.endsWith(".sprite") ) {
+				manifest.add(resources.getProperties(entry).getProperty("image"));
+			} else {
+				manifest.add(entry);
+			}
+		}
+
+		return manifest;
+	}
+
+	/**
+	 * Fügt ein Bild hinzu (leere Namen werden ignoriert).
+	 *
+	 * @param image der Name des Bildes
+	 */
+	public void add(String image) {
+		if ( image != null && image.trim().length() > 0 ) {
+			images.add(image.trim());
+		}
+	}
+
+	/**
+	 * Liefert die Namen aller Bilder.
+	 *
+	 * @return die Namen
+	 */
+	public List<String> getImages() {
+		return new ArrayList<String>(images);
+	}
+
+	/**
+	 * Liest eine Liste mit einem Eintrag pro Zeile (# leitet Kommentare ein).
+	 */
+	private static List<String> readList(String name) throws ResourceManagerException {
+		InputStream in = ResourceManager.getInstance().getResourceAsStream(name);
+		if ( in == null ) {
+			throw new ResourceManagerException("Die Datei " + name + " konnte nicht gefunden werden!");
+		}
+
+		List<String> entries = new ArrayList<String>();
+		try {
+			try {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+				String line;
+				while ( (line = reader.readLine()) != null ) {
+					line = line.trim();
+					if ( line.length() > 0 && !line.startsWith("#") ) {
+						entries.add(line);
+					}
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new ResourceManagerException("Fehler beim Lesen der Datei " + name, e);
+		}
+		return entries;
+	}
+}
@@ -1,25 +1,32 @@
 package de.gaffga.jumpnrun.resources;
 
+import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
 import java.awt.Image;
-import java.awt.MediaTracker;
 import java.awt.Rectangle;
-import java.awt.Toolkit;
+import java.awt.Transparency;
 import java.awt.font.FontRenderContext;
 import java.awt.font.TextLayout;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
 import java.net.URL;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.util.Map;
 import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-import javax.swing.JPanel;
+import javax.imageio.ImageIO;
 
 import de.gaffga.jumpnrun.controller.DemoPlayback;
 import de.gaffga.jumpnrun.game.LevelList;
@@ -34,21 +41,40 @@ import de.gaffga.jumpnrun.map.MapDataException;
  * geladenen Daten cacht, darf es nur genau eine Instanz von ihm geben. Dies wird
  * sichergestellt indem der ResourceManager als Singleton implementiert wird. 
  * 
+ * Bilder werden mit ImageIO dekodiert und dürfen aus mehreren Threads 
+ * angefordert werden (siehe AssetPreloader). Bilder, Properties und Maps 
+ * liegen jeweils in einem AssetCache; die Bilder sind durch ein Budget in 
+ * Bytes begrenzt damit ein langes Spiel über viele Levels nicht immer mehr 
+ * Speicher belegt.
+ * 
+ * Liegt im Klassenpfad neben den Daten ein aktuelles AssetPack, werden alle 
+ * Daten daraus gelesen statt einzeln über den ClassLoader; Daten die es dort 
+ * nicht gibt, werden weiterhin im Klassenpfad gesucht.
+ * 
  * @author Stefan Gaffga <stefan@gaffga.de>
  */
 public class ResourceManager {
 
+	/** Das voreingestellte Budget für Bilder in Bytes */
+	public static final long DEFAULT_IMAGE_BUDGET = 32 * 1024 * 1024;
+
+	/** Geschätzter Speicherbedarf eines Eintrags in Properties zusätzlich zu den Zeichen */
+	private static final int PROPERTY_OVERHEAD = 64;
+
 	/** Referenz auf die einzige vorhandene Instanz */
 	private static ResourceManager instance = null;
 
-	/** Map mit bereits geladenen Images */
-	private HashMap<String, Image> images = null;
+	/** Die Datei mit allen Spieldaten (null falls es keine gibt) */
+	private AssetPack pack = null;
+
+	/** Cache mit bereits geladenen Images */
+	private AssetCache<Image> images = null;
 	
-	/** Map mit geladenen Properties */
-	private HashMap<String, Properties> properties = null;
+	/** Cache mit geladenen Properties */
+	private AssetCache<Properties> properties = null;
 	
-	/** Map mit geladenen MapData Objekten */
-	private HashMap<String, MapData> mapData = null;
+	/** Cache mit geladenen MapData Objekten */
+	private AssetCache<MapData> mapData = null;
 	
 	/** Das DummyBild */
 	private BufferedImage dummyImage = null;
@@ -70,9 +96,82 @@ public class ResourceManager {
 	 * @throws ResourceManagerException 
 	 */
 	private ResourceManager() {
-		images = new HashMap<String, Image>();
-		properties = new HashMap<String, Properties>();
-		mapData = new HashMap<String, MapData>();
+		// Ohne Cache-Dateien auf der Platte dekodiert ImageIO direkt aus dem Speicher
+		ImageIO.setUseCache(false);
+		pack = openPack();
+		
+		images = new AssetCache<Image>("Bilder", DEFAULT_IMAGE_BUDGET, new IAssetLoader<Image>() {
+			public Image load(String name) {
+				return loadImage(name);
+			}
+
+			public long sizeOf(Image image) {
+				return sizeOfImage(image);
+			}
+		});
+		properties = new AssetCache<Properties>("Properties", AssetCache.UNBOUNDED, new IAssetLoader<Properties>() {
+			public Properties load(String name) throws ResourceManagerException {
+				return loadProperties(name);
+			}
+
+			public long sizeOf(Properties prop) {
+				long size = 0;
+				for ( Map.Entry<Object, Object> entry : prop.entrySet() ) {
+					size += PROPERTY_OVERHEAD + 2 * (entry.getKey().toString().length() + entry.getValue().toString().length());
+				}
+				return size;
+			}
+		});
+		mapData = new AssetCache<MapData>("Maps", AssetCache.UNBOUNDED, new IAssetLoader<MapData>() {
+			public MapData load(String name) throws ResourceManagerException {
+				return loadMapData(name);
+			}
+
+			public long sizeOf(MapData map) {
+				return 2L * map.getWidth() * map.getHeight();
+			}
+		});
+	}
+
+	/**
+	 * Öffnet das AssetPack im Klassenpfad. Wurde im Datenverzeichnis aus dem 
+	 * es erzeugt wurde seitdem eine Datei geändert, hinzugefügt oder gelöscht 
+	 * (siehe AssetPack.findChange), wird es nicht benutzt.
+	 * 
+	 * @return das AssetPack oder null
+	 */
+	private static AssetPack openPack() {
+		Logger logger = Logger.getLogger(ResourceManager.class.getName());
+		URL url = ResourceManager.class.getClassLoader().getResource(AssetPack.FILE_NAME);
+		if ( url == null ) {
+			return null;
+		}
+		if ( !"file".equals(url.getProtocol()) ) {
+			// In einem Jar kann die Datei nicht eingeblendet werden
+			logger.log(Level.INFO, "Das AssetPack " + url + " liegt nicht als Datei vor und wird nicht benutzt");
+			return null;
+		}
+		
+		File file;
+		try {
+			file = new File(url.toURI());
+		} catch (URISyntaxException e) {
+			return null;
+		}
+		
+		try {
+			AssetPack pack = AssetPack.open(file);
+			String change = pack.findChange();
+			if ( change != null ) {
+				logger.log(Level.WARNING, "Das AssetPack " + file + " ist veraltet (" + change + ") und wird nicht benutzt");
+				return null;
+			}
+			logger.log(Level.INFO, "Spieldaten aus " + file + " (" + pack.getCount() + " Einträge)");
+			return pack;
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Das AssetPack " + file + " kann nicht gelesen werden", e);
+			return null;
+		}
 	}
 
 	/**
@@ -89,19 +188,21 @@ public class ResourceManager {
 	}
 	
 	/**
-	 * Liest aus der angegebenen Datei die Properties.
+	 * Liest aus der angegebenen Datei die Properties oder gibt sie direkt 
+	 * zurück falls sie bereits zuvor geladen worden sind. Die gelieferten 
+	 * Properties werden geteilt und dürfen nicht verändert werden.
 	 */
 	public Properties getProperties(String name) throws ResourceManagerException {
-		
-		// Im Cache nach bereits geladenen Properties suchen
-		if ( properties.containsKey(name) ) {
-			return properties.get(name);
-		}
-		
+		return properties.get(name);
+	}
+	
+	/**
+	 * Lädt Properties ohne den Cache.
+	 */
+	private Properties loadProperties(String name) throws ResourceManagerException {
 		Properties prop = new Properties();
 
-		ClassLoader loader = ResourceManager.class.getClassLoader();
-		InputStream inStream = loader.getResourceAsStream(name);
+		InputStream inStream = getResourceAsStream(name);
 		if ( inStream==null ) {
 			throw new ResourceManagerException("Die Properties-Datei "+name+" konnte nicht gefunden werden!");
 		}
@@ -110,6 +211,8 @@ public class ResourceManager {
 			prop.load(inStream);
 		} catch (IOException e) {
 			throw new ResourceManagerException("Die Properties-Datei "+name+" konnte nicht geladen werden!", e);
+		} finally {
+			close(inStream);
 		}
 		
 		return prop;
@@ -127,41 +230,97 @@ public class ResourceManager {
 	 * @throws ResourceManagerException 
 	 */
 	public Image getImage(String name) { // throws ResourceManagerException {
-		
-		// Im Cache nach dem Bild sehen und falls es dies dort gibt direkt zurückgeben
-		if ( images.containsKey(name) ) {
+		try {
 			return images.get(name);
+		} catch (ResourceManagerException e) {
+			// Nur bei Unterbrechung - Ladefehler liefern schon das Dummybild
+			return getDummyImage();
 		}
-		
-		ClassLoader loader = ResourceManager.class.getClassLoader();
-		URL imageUrl = loader.getResource(name);
-		if ( imageUrl == null ) {
+	}
+	
+	/**
+	 * Lädt ein Bild ohne den Cache. Fehlt das Bild, wird das Dummybild 
+	 * geliefert (und unter dem Namen gecacht damit es nicht immer wieder 
+	 * gesucht wird).
+	 */
+	private Image loadImage(String name) {
+		BufferedImage image;
+		try {
+			InputStream inStream = getResourceAsStream(name);
+			if ( inStream == null ) {
+				return getDummyImage();
+				//throw new ResourceManagerException("Die Bilddatei "+name+" konnte nicht gefunden werden!");
+			}
+			try {
+				image = ImageIO.read(inStream);
+			} finally {
+				close(inStream);
+			}
+		} catch (IOException e) {
+			Logger.getLogger(ResourceManager.class.getName()).log(Level.WARNING, "Das Bild "+name+" konnte nicht gelesen werden", e);
+			return getDummyImage();
+		} catch (ResourceManagerException e) {
+			Logger.getLogger(ResourceManager.class.getName()).log(Level.WARNING, "Das Bild "+name+" konnte nicht gelesen werden", e);
 			return getDummyImage();
-			//throw new ResourceManagerException("Die Bilddatei "+name+" konnte nicht gefunden werden!");
 		}
-
-		Image image = Toolkit.getDefaultToolkit().getImage(imageUrl);
 		if ( image == null ) {
 			return getDummyImage();
 //			throw new ResourceManagerException("Die Bilddatei "+name+" konnte nicht gelesen werden!");
 		}
-		
-		MediaTracker mediaTracker = new MediaTracker(new JPanel());
-		mediaTracker.addImage(image, 0);
-		try
-		{
-			mediaTracker.waitForID(0);
-		}
-		catch (InterruptedException ie)
-		{
-			return getDummyImage();
-//			throw new ResourceManagerException("Das Bild "+name+" konnte nicht vollständig geladen werden.", ie);
+
+		return toCompatibleImage(image);
+	}
+
+	/**
+	 * Wandelt ein dekodiertes Bild einmal in das Format des Bildschirms um. 
+	 * ImageIO liefert z.B. TYPE_3BYTE_BGR oder TYPE_4BYTE_ABGR, die bei jedem 
+	 * Zeichnen erst umgerechnet werden müssten. Ohne Bildschirm wird in 
+	 * TYPE_INT_RGB bzw. TYPE_INT_ARGB umgewandelt. Die Transparenz bleibt 
+	 * dabei pixelgenau erhalten.
+	 * 
+	 * @param image das dekodierte Bild
+	 * @return das Bild im Format des Bildschirms (oder das Bild selbst falls es schon passt)
+	 */
+	private static BufferedImage toCompatibleImage(BufferedImage image) {
+		int transparency = image.getTransparency();
+		BufferedImage compatible;
+		if ( GraphicsEnvironment.isHeadless() ) {
+			int type = transparency == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+			if ( image.getType() == type ) {
+				return image;
+			}
+			compatible = new BufferedImage(image.getWidth(), image.getHeight(), type);
+		} else {
+			GraphicsConfiguration config = GraphicsEnvironment.getLocalGraphicsEnvironment()
+					.getDefaultScreenDevice().getDefaultConfiguration();
+			if ( image.getColorModel().equals(config.getColorModel(transparency)) ) {
+				return image;
+			}
+			compatible = config.createCompatibleImage(image.getWidth(), image.getHeight(), transparency);
 		}
 
-		// Das Bild ist neu und wurde erfolgreich geladen: In die Map eintragen
-		images.put(name, image);
-		
-		return image;
+		Graphics2D g = compatible.createGraphics();
+		try {
+			g.setComposite(AlphaComposite.Src);
+			g.drawImage(image, 0, 0, null);
+		} finally {
+			g.dispose();
+		}
+		return compatible;
+	}
+	
+	/**
+	 * Schätzt den Speicherbedarf eines Bildes.
+	 */
+	private long sizeOfImage(Image image) {
+		if ( image == dummyImage ) {
+			return 0;
+		}
+		if ( image instanceof BufferedImage ) {
+			DataBuffer data = ((BufferedImage) image).getRaster().getDataBuffer();
+			return (long) data.getSize() * data.getNumBanks() * DataBuffer.getDataTypeSize(data.getDataType()) / 8;
+		}
+		return 4L * image.getWidth(null) * image.getHeight(null);
 	}
 	
 	/**
@@ -171,13 +330,14 @@ public class ResourceManager {
 	 * @throws ResourceManagerException 
 	 */
 	public MapData getMapData(String name) throws ResourceManagerException {
-		// Im Cache nach dem Bild sehen und falls es dies dort gibt direkt zurückgeben
-		if ( mapData.containsKey(name) ) {
-			return mapData.get(name);
-		}
-		
-		ClassLoader loader = ResourceManager.class.getClassLoader();
-		InputStream inStream = loader.getResourceAsStream(name);
+		return mapData.get(name);
+	}
+	
+	/**
+	 * Lädt Mapdaten ohne den Cache.
+	 */
+	private MapData loadMapData(String name) throws ResourceManagerException {
+		InputStream inStream = getResourceAsStream(name);
 		if ( inStream==null ) {
 			throw new ResourceManagerException("Fehler beim Lesen der Map "+name);
 		}
@@ -187,12 +347,42 @@ public class ResourceManager {
 			map = new MapData(inStream);
 		} catch (MapDataException e) {
 			throw new ResourceManagerException("Fehler beim Lesen der Map "+name,e);
+		} finally {
+			close(inStream);
 		}
-
-		mapData.put(name, map);
 		
 		return map;
-		
+	}
+	
+	/**
+	 * Schließt einen Stream; Fehler beim Schließen sind nach dem Lesen egal.
+	 */
+	private static void close(InputStream inStream) {
+		try {
+			inStream.close();
+		} catch (IOException e) {
+			// ignorieren
+		}
+	}
+	
+	/**
+	 * Setzt das Budget für Bilder. Darüber hinaus werden die am längsten 
+	 * nicht benutzten Bilder verdrängt (sie werden aber erst neu geladen 
+	 * wenn sie auch sonst nirgends mehr benutzt werden).
+	 * 
+	 * @param budget das Budget in Bytes (AssetCache.UNBOUNDED für keine Begrenzung)
+	 */
+	public void setImageBudget(long budget) {
+		images.setBudget(budget);
+	}
+	
+	/**
+	 * Liefert die Caches für die Statistik.
+	 * 
+	 * @return die Caches für Bilder, Properties und Maps
+	 */
+	public AssetCache<?>[] getCaches() {
+		return new AssetCache<?>[] { images, properties, mapData };
 	}
 
 	/**
@@ -203,8 +393,7 @@ public class ResourceManager {
 	 * @throws IOException 
 	 */
 	public LevelList getLevelList() throws ResourceManagerException {
-		ClassLoader loader = ResourceManager.class.getClassLoader();
-		InputStream inStream = loader.getResourceAsStream("levels.list");
+		InputStream inStream = getResourceAsStream("levels.list");
 		if ( inStream==null ) {
 			throw new ResourceManagerException("Fehler beim Lesen der Datei 'levels.list'");
 		}
@@ -213,7 +402,45 @@ public class ResourceManager {
 			return new LevelList(inStream);
 		} catch (IOException e) {
 			throw new ResourceManagerException("Fehler beim Laden der LevelList 'levels.list'", e);
+		} finally {
+			close(inStream);
+		}
+	}
+	
+	/**
+	 * Liefert den Inhalt einer Datei aus dem AssetPack ohne Kopie als 
+	 * Ausschnitt des eingeblendeten Speichers.
+	 * 
+	 * @param name der Dateiname relativ zum Klassenpfad
+	 * @return der Inhalt ab Position 0 oder null falls es kein AssetPack gibt 
+	 *         oder die Datei nicht darin liegt
+	 * @throws ResourceManagerException falls der Eintrag beschädigt ist
+	 */
+	public ByteBuffer getResourceBuffer(String name) throws ResourceManagerException {
+		if ( pack == null ) {
+			return null;
+		}
+		try {
+			return pack.get(name);
+		} catch (IOException e) {
+			throw new ResourceManagerException("Fehler beim Lesen von "+name+" aus dem AssetPack", e);
+		}
+	}
+	
+	/**
+	 * Öffnet eine Datei aus dem AssetPack oder - falls sie dort nicht liegt -
+	 * aus dem Klassenpfad.
+	 * 
+	 * @param name der Dateiname relativ zum Klassenpfad
+	 * @return der Stream oder null falls es die Datei nicht gibt
+	 * @throws ResourceManagerException falls der Eintrag im AssetPack beschädigt ist
+	 */
+	public InputStream getResourceAsStream(String name) throws ResourceManagerException {
+		ByteBuffer data = getResourceBuffer(name);
+		if ( data != null ) {
+			return new ByteBufferInputStream(data);
 		}
+		return ResourceManager.class.getClassLoader().getResourceAsStream(name);
 	}
 	
 	/**
@@ -246,7 +473,7 @@ public class ResourceManager {
 	 * 
 	 * @return das Dummybild
 	 */
-	public Image getDummyImage() {
+	public synchronized Image getDummyImage() {
 		if ( dummyImage==null ) {
 			dummyImage = new BufferedImage(32, 32, BufferedImage.TYPE_INT_RGB);
 			
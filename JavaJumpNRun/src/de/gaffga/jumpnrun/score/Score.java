@@ -1,5 +1,6 @@
 package de.gaffga.jumpnrun.score;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -141,6 +142,31 @@ public class Score implements IScoreObservable{
 		fireScoreChanged();
 	}
 	
+	/**
+	 * Schreibt Punkte, Münzen, Leben und Level in einen Puffer (für Spielstände).
+	 * 
+	 * @param buffer der Puffer
+	 */
+	public void writeState(ByteBuffer buffer) {
+		buffer.putInt(score);
+		buffer.putInt(coinsCollected);
+		buffer.putInt(numReserveLives);
+		buffer.putInt(level);
+	}
+	
+	/**
+	 * Stellt den Stand aus einem Puffer wieder her und benachrichtigt die Listener.
+	 * 
+	 * @param buffer der Puffer
+	 */
+	public void readState(ByteBuffer buffer) {
+		score = buffer.getInt();
+		coinsCollected = buffer.getInt();
+		numReserveLives = buffer.getInt();
+		level = buffer.getInt();
+		fireScoreChanged();
+	}
+	
 	/**
 	 * Liefert die aktuelle Levelnummer.
 	 * 
@@ -0,0 +1,22 @@
+package de.gaffga.jumpnrun.sprites;
+
+import java.awt.Image;
+
+/**
+ * Interface für Zeichenroutinen die der SpriteManager innerhalb eines
+ * Render-Layers aufruft.
+ * 
+ * Damit können Elemente die keine Sprites sind (z.B. die Effekte) in der
+ * gleichen, festen Zeichenreihenfolge wie die Sprites gezeichnet werden.
+ * 
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public interface ILayerPainter {
+
+	/**
+	 * Zeichnet auf das angegebene Image.
+	 * 
+	 * @param image auf dieses Image wird gezeichnet
+	 */
+	public void draw(Image image);
+}
@@ -4,42 +4,33 @@ import java.awt.Graphics;
 import java.awt.Image;
 import java.awt.Point;
 import java.awt.Rectangle;
-import java.util.HashMap;
-import java.util.Properties;
-import java.util.logging.Logger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 
-import de.gaffga.jumpnrun.resources.ResourceManager;
-import de.gaffga.jumpnrun.resources.ResourceManagerException;
+import de.gaffga.jumpnrun.Timer;
+import de.gaffga.jumpnrun.map.CollisionGrid;
 
 /**
  * Ein einzelnes Sprite das animiert und bewegt werden kann.
  * 
  * Die Darstellung des Sprites übernimmt ausschließlich das Painter-Objekt.
  * 
+ * Ein Sprite enthält nur den Zustand eines einzelnen Objekts (Position, aktive
+ * Animation, Sichtbarkeit). Bild, Hitbox und Animationen stecken in der
+ * gemeinsam genutzten SpriteDefinition.
+ * 
  * @author Stefan Gaffga <stefan@gaffga.de>
  */
 public class Sprite {
 
-	/** Das Bild mit dem Spritebildern */
-	private Image image = null;
-	
-	/** Breite des Sprites in Pixel */
-	private int width;
-	
-	/** Höhe des Sprites in Pixel */
-	private int height;
-	
-	/** Die Hitbox */
-	private Rectangle hitbox = null;
-	
-	/** Map mit allen vorhandenen Animationen */
-	private HashMap<String, SpriteAnimation> animations = null;
+	/** Die gemeinsam genutzte Definition (Bild, Größe, Hitbox, Animationen) */
+	private SpriteDefinition definition = null;
 	
 	/** Referenz auf die aktuell aktive Animation (null = keine) */
 	private SpriteAnimation currentAnimation = null;
 	
-	/** Name dieses Sprites */
-	private String name = null;
+	/** Zeitpunkt seit dem die aktuelle Animation läuft */
+	private long animationStartTime;
 	
 	/** Sichtbarflag */
 	private boolean visible = false;
@@ -50,17 +41,37 @@ public class Sprite {
 	/** Das letzte Bild aus der Animation (dies ist das was gezeigt wird wenn die Animation gestoppt wird) */
 	private SpriteAnimationFrame lastFrame = null;
 	
+	/** Der Index von lastFrame innerhalb der aktuellen Animation */
+	private int lastFrameIndex;
+	
+	/** Der Name der Animation aus der lastFrame stammt (null = noch keine) */
+	private String lastAnimationName = null;
+	
+	/** Flag ob sich das Frame seit der letzten Abfrage mit consumeFrameChanged geändert hat */
+	private boolean frameChanged = false;
+	
 	/**
 	 * Konstruktor.
 	 * 
+	 * Die Spritedefinitionsdatei wird nur beim ersten Sprite mit diesem Namen
+	 * eingelesen - danach wird die Definition aus der SpriteDefinitionFactory
+	 * wiederverwendet.
+	 * 
 	 * @param name Name der Spritedefinitionsdatei
 	 * @throws SpriteException 
 	 */
 	public Sprite(String name) throws SpriteException {
-		animations = new HashMap<String, SpriteAnimation>();
-		this.name = name;
+		this(SpriteDefinitionFactory.getInstance().getDefinition(name));
+	}
+	
+	/**
+	 * Konstruktor.
+	 * 
+	 * @param definition die zu verwendende Spritedefinition
+	 */
+	public Sprite(SpriteDefinition definition) {
+		this.definition = definition;
 		this.position = new Point(0,0);
-		readSprite(name);
 	}
 	
 	/**
@@ -88,32 +99,37 @@ public class Sprite {
 	 * die Animation nicht bereits die aktive ist! In letzterem Fall wird nichts
 	 * verändert.
 	 * 
+	 * Hat das Sprite keine Animation mit diesem Namen wird die Animation
+	 * gestoppt und das zuletzt gezeigte Frame bleibt stehen.
+	 * 
 	 * @param name Name der abzuspielenden Animation
 	 */
 	public void setCurrentAnimation(String name) {
-		if ( name==null ) {
-			currentAnimation = null;
+		SpriteAnimation animation = null;
+		if ( name!=null ) {
+			animation = definition.getAnimation(name);
 		}
-		if ( currentAnimation != animations.get(name)) {
-			currentAnimation = animations.get(name);
-			currentAnimation.reset();
+		
+		if ( currentAnimation != animation ) {
+			currentAnimation = animation;
+			if ( currentAnimation != null ) {
+				lastAnimationName = name;
+				animationStartTime = Timer.getInstance().currentTimeMillis();
+				lastFrame = currentAnimation.getFirstFrame();
+				lastFrameIndex = 0;
+				frameChanged = true;
+			}
 		}
 	}
 	
 	/**
 	 * Liefert das aktuell gültige Frame.
 	 * 
+	 * Falls die Animationen abgeschaltet sind ist das das zuletzt genutzte Frame.
+	 * 
 	 * @throws SpriteException 
 	 */
 	public SpriteAnimationFrame getCurrentFrame() throws SpriteException {
-		if ( currentAnimation==null ) {
-			// Falls die Animationen abgeschaltet sind liefern wir das zuletzt
-			// genutzte Frame zurück
-			return lastFrame;
-		}
-		
-		lastFrame =  currentAnimation.getCurrentFrame();
-		
 		return lastFrame;
 	}
 	
@@ -122,126 +138,46 @@ public class Sprite {
 	 */
 	public void step() {
 		if ( currentAnimation != null ) {
-			currentAnimation.step();
+			int index = currentAnimation.getFrameIndexAt(Timer.getInstance().currentTimeMillis() - animationStartTime);
+			if ( index != lastFrameIndex ) {
+				frameChanged = true;
+			}
+			lastFrameIndex = index;
+			lastFrame = currentAnimation.getFrame(index);
 		}
 	}
 	
 	/**
-	 * Fügt eine neue Animation der Liste hinzu.
+	 * Liefert ob seit der letzten Abfrage mit consumeFrameChanged (durch einen
+	 * Animationsschritt oder einen Wechsel der Animation) ein anderes Frame
+	 * aktiv geworden ist. Das Flag bleibt dabei gesetzt.
 	 * 
-	 * @param name der Name der Animation
-	 * @param anim die neue Animation
+	 * @return true falls sich das Frame geändert hat, sonst false
 	 */
-	public void addAnimation(String name, SpriteAnimation anim) {
-		animations.put(name, anim);
+	public boolean hasFrameChanged() {
+		return frameChanged;
 	}
 	
 	/**
-	 * Liest das Sprite ein.
-	 * 
-	 * @param name das zu lesende Sprite
-	 * @throws SpriteException 
-	 */
-	protected void readSprite(String name) throws SpriteException {
-		try {
-			Properties props = ResourceManager.getInstance().getProperties(name);
-			String imageFile = props.getProperty("image");
-			if ( imageFile != null ) {
-				image = ResourceManager.getInstance().getImage(imageFile);
-			} else {
-				throw new SpriteException("Sprite-Image '"+name+"' konnte nicht geladen werden!");
-			}
-			
-			String width = props.getProperty("width");
-			if ( width != null ) {
-				this.width = Integer.parseInt(width);
-			} else {
-				throw new SpriteException("Die width-Angabe des Sprites '"+name+"' fehlt!");
-			}
-
-			String height = props.getProperty("height");
-			if ( height != null ) {
-				this.height = Integer.parseInt(height);
-			} else {
-				throw new SpriteException("Die height-Angabe des Sprites '"+name+"' fehlt!");
-			}
-			
-			String hitbox = props.getProperty("hitbox");
-			if ( hitbox==null ) {
-				// Falls keine Hitbox da ist wird das gesamte Sprite verwendet
-				this.hitbox = new Rectangle(0,0,this.width,this.height);
-			} else {
-				String[] elements = hitbox.split(",");
-				this.hitbox = new Rectangle(Integer.parseInt(elements[0]),
-						Integer.parseInt(elements[1]),
-						Integer.parseInt(elements[2]),
-						Integer.parseInt(elements[3]));
-			}
-
-			// Einlesen der Animationen aus den Properties
-			readAnimation(props, SpriteAnimation.WALK_RIGHT);
-			readAnimation(props, SpriteAnimation.WALK_LEFT);
-			readAnimation(props, SpriteAnimation.IDLE_RIGHT);
-			readAnimation(props, SpriteAnimation.IDLE_LEFT);
-			readAnimation(props, SpriteAnimation.JUMP_RAISE_RIGHT);
-			readAnimation(props, SpriteAnimation.JUMP_FALL_RIGHT);
-			readAnimation(props, SpriteAnimation.JUMP_RAISE_LEFT);
-			readAnimation(props, SpriteAnimation.JUMP_FALL_LEFT);
-			readAnimation(props, SpriteAnimation.DANCE);
-			readAnimation(props, SpriteAnimation.DEAD);
-			
-		} catch (ResourceManagerException e) {
-			throw new SpriteException("Fehler beim Initialisieren des Sprites '"+name+"'", e);
-		}
-	}
-	
-	/** 
-	 * Liest eine bestimmte Animation ein.
+	 * Liefert wie hasFrameChanged ob sich das Frame geändert hat und setzt
+	 * das Flag danach zurück. Werden mehrere Schritte zwischen zwei Abfragen
+	 * gerechnet geht so kein Wechsel verloren.
 	 * 
-	 * @param name der Bame der zu lesenden Animation
+	 * @return true falls sich das Frame seit der letzten Abfrage geändert hat
 	 */
-	protected void readAnimation(Properties props, String name) {
-		String animString = props.getProperty(name);
-		if ( animString!=null ) {  
-			SpriteAnimation anim = parseAnimationString(animString);
-			addAnimation(name, anim);
-		} else {
-			// Diese Animation ist nicht vorhanden
-			Logger.getLogger(this.getClass().getName()).warning("Sprite: '"+this.name+"': Animation '"+name+"' wurde nicht gefunden.");
-		}
+	public boolean consumeFrameChanged() {
+		boolean changed = frameChanged;
+		frameChanged = false;
+		return changed;
 	}
 	
 	/**
-	 * Parst den Animationsstring und erstellt daraus ein Animationsobjekt.
+	 * Liefert die gemeinsam genutzte Definition dieses Sprites.
 	 * 
-	 * @param animString der Animationsbeschreibungs-String
-	 * @return das erzeugte Animationsobjekt
+	 * @return die Spritedefinition
 	 */
-	protected SpriteAnimation parseAnimationString(String animString) {
-		String[] parts = animString.split("/");
-		
-		SpriteAnimation animation = new SpriteAnimation();
-		
-		// Die Defaultdauer
-		int duration = 200;
-		
-		for ( String part : parts ) {
-			String inner = part.substring(1, part.length()-1);
-			String[] animParts = inner.split(",");
-			int row = Integer.parseInt(animParts[0]);
-			int col = Integer.parseInt(animParts[1]);
-			if ( animParts.length==3 ) {
-				duration = Integer.parseInt(animParts[2]);
-			}
-			
-			int x = col * width;
-			int y = row * height;
-			
-			SpriteAnimationFrame frame = new SpriteAnimationFrame(x,y,duration);
-			animation.addFrame(frame);
-		}
-		
-		return animation;
+	public SpriteDefinition getDefinition() {
+		return definition;
 	}
 	
 	/**
@@ -250,7 +186,7 @@ public class Sprite {
 	 * @return die Hitbox
 	 */
 	public Rectangle getHitbox() {
-		return hitbox;
+		return definition.getHitbox();
 	}
 	
 	/**
@@ -259,7 +195,7 @@ public class Sprite {
 	 * @return des Image-Objekt
 	 */
 	public Image getImage() {
-		return image;
+		return definition.getImage();
 	}
 	
 	/**
@@ -268,7 +204,7 @@ public class Sprite {
 	 * @return die Breite in Pixeln
 	 */
 	public int getWidth() {
-		return width;
+		return definition.getWidth();
 	}
 	
 	/**
@@ -277,7 +213,7 @@ public class Sprite {
 	 * @return die Höhe in Pixeln
 	 */
 	public int getHeight() {
-		return height;
+		return definition.getHeight();
 	}
 	
 	/**
@@ -286,7 +222,7 @@ public class Sprite {
 	 * @return der Name
 	 */
 	public String getName() {
-		return name;
+		return definition.getName();
 	}
 	
 	/**
@@ -307,6 +243,69 @@ public class Sprite {
 		visible=vis;
 	}
 	
+	/**
+	 * Schreibt Position, Sichtbarkeit und Animationszustand in einen Puffer 
+	 * (für Spielstände). Die Länge des Animationsnamens steht als varint
+	 * (7 Bits pro Byte) davor, Namen unter 128 Zeichen brauchen also ein Byte.
+	 * 
+	 * @param buffer der Puffer
+	 */
+	public void writeState(ByteBuffer buffer) {
+		buffer.putInt(position.x);
+		buffer.putInt(position.y);
+		buffer.put((byte) ((visible ? 1 : 0) | (currentAnimation != null ? 2 : 0)));
+		buffer.putLong(animationStartTime);
+		buffer.putInt(lastFrameIndex);
+		
+		String name = lastAnimationName != null ? lastAnimationName : "";
+		int length = name.length();
+		while ( length >= 0x80 ) {
+			buffer.put((byte) ((length & 0x7F) | 0x80));
+			length >>>= 7;
+		}
+		buffer.put((byte) length);
+		for ( int i=0 ; i<name.length() ; i++ ) {
+			buffer.putChar(name.charAt(i));
+		}
+	}
+	
+	/**
+	 * Stellt den Zustand aus einem Puffer wieder her.
+	 * 
+	 * @param buffer der Puffer
+	 */
+	public void readState(ByteBuffer buffer) {
+		position = new Point(buffer.getInt(), buffer.getInt());
+		int flags = buffer.get();
+		visible = (flags & 1) != 0;
+		animationStartTime = buffer.getLong();
+		lastFrameIndex = buffer.getInt();
+		
+		int length = 0;
+		for ( int shift=0 ; ; shift+=7 ) {
+			int b = buffer.get();
+			length |= (b & 0x7F) << shift;
+			if ( (b & 0x80) == 0 ) {
+				break;
+			}
+		}
+		if ( length < 0 || length > buffer.remaining() / 2 ) {
+			throw new BufferUnderflowException();
+		}
+		char[] name = new char[length];
+		for ( int i=0 ; i<name.length ; i++ ) {
+			name[i] = buffer.getChar();
+		}
+		lastAnimationName = name.length > 0 ? new String(name) : null;
+		
+		SpriteAnimation animation = lastAnimationName != null ? definition.getAnimation(lastAnimationName) : null;
+		if ( animation != null ) {
+			lastFrame = animation.getFrame(lastFrameIndex);
+		}
+		currentAnimation = (flags & 2) != 0 ? animation : null;
+		frameChanged = true;
+	}
+	
 	/**
 	 * Zeichnet das Sprite mit dem aktuellen Frame
 	 * auf ein Image.
@@ -316,37 +315,64 @@ public class Sprite {
 	 * @throws SpriteException 
 	 */
 	public void draw(Point pos, Image img) throws SpriteException {
-		Graphics g = img.getGraphics();
-		Rectangle r = new Rectangle();
-		SpriteAnimationFrame frame;
-		frame = getCurrentFrame();
-		r.x = frame.getX();
-		r.y = frame.getY();
-		r.width = getWidth();
-		r.height = getHeight();
+		draw(pos.x, pos.y, img.getGraphics());
+	}
+
+	/**
+	 * Zeichnet das Sprite mit dem aktuellen Frame in einen Graphics-Kontext.
+	 * 
+	 * Diese Variante erzeugt keine Hilfsobjekte und ist für das Zeichnen
+	 * vieler Sprites pro Frame gedacht.
+	 * 
+	 * @param x die X-Koordinate (Screen-Pixel) der linken oberen Ecke
+	 * @param y die Y-Koordinate (Screen-Pixel) der linken oberen Ecke
+	 * @param g der Graphics-Kontext auf den gezeichnet werden soll
+	 * @throws SpriteException 
+	 */
+	public void draw(int x, int y, Graphics g) throws SpriteException {
+		SpriteAnimationFrame frame = getCurrentFrame();
+		int w = getWidth();
+		int h = getHeight();
 		
-		g.drawImage(this.image,	pos.x, pos.y, 
-				pos.x+getWidth(), pos.y+getHeight(),
-				r.x,r.y,r.x+r.width,r.y+r.height, null);
+		g.drawImage(getImage(), x, y, x+w, y+h,
+				frame.getX(), frame.getY(), frame.getX()+w, frame.getY()+h, null);
 	}
 
 	/**
-	 * Prüft ob zwei Sprites kollidieren. Dies ist dann der Fall wenn deren
-	 * Hitboxen sich schneiden.
+	 * Prüft ob zwei Sprites kollidieren. Dies ist dann der Fall wenn sich
+	 * innerhalb der Schnittmenge der beiden Hitboxen mindestens ein deckendes
+	 * Pixel beider aktuellen Frames überlappt.
+	 * 
+	 * Zuerst werden nur die Hitboxen verglichen, erst wenn diese sich schneiden 
+	 * werden die Kollisionsmasken der Frames geprüft. Hat eines der Frames keine 
+	 * Maske entscheidet die Hitbox alleine.
 	 *  
 	 * @param sprite das andere Sprite 
 	 * @return true falls eine Kollision besteht, sonst false
 	 */
 	public boolean checkCollision(Sprite sprite) {
-		Rectangle r1 = new Rectangle(getHitbox());
-		Rectangle r2 = new Rectangle(sprite.getHitbox());
+		Rectangle r1 = getHitbox();
+		Rectangle r2 = sprite.getHitbox();
+		Point p1 = getPosition();
+		Point p2 = sprite.getPosition();
+		
+		if ( !CollisionGrid.intersects(p1.x + r1.x, p1.y + r1.y, r1.width, r1.height,
+				p2.x + r2.x, p2.y + r2.y, r2.width, r2.height) ) {
+			return false;
+		}
 		
-		r1.x += getPosition().x;
-		r1.y += getPosition().y;
+		SpriteAnimationFrame f1 = lastFrame;
+		SpriteAnimationFrame f2 = sprite.lastFrame;
+		if ( f1 == null || f2 == null || f1.getMask() == null || f2.getMask() == null ) {
+			return true;
+		}
 		
-		r2.x += sprite.getPosition().x;
-		r2.y += sprite.getPosition().y;
+		// Nur die Schnittmenge der Hitboxen prüfen
+		int x0 = Math.max(p1.x + r1.x, p2.x + r2.x);
+		int y0 = Math.max(p1.y + r1.y, p2.y + r2.y);
+		int x1 = Math.min(p1.x + r1.x + r1.width, p2.x + r2.x + r2.width);
+		int y1 = Math.min(p1.y + r1.y + r1.height, p2.y + r2.y + r2.height);
 		
-		return (r1.intersects(r2));
+		return SpriteMask.overlaps(f1.getMask(), p1.x, p1.y, f2.getMask(), p2.x, p2.y, x0, y0, x1, y1);
 	}
 }
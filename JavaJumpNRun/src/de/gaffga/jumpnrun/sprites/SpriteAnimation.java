@@ -1,7 +1,6 @@
 package de.gaffga.jumpnrun.sprites;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Eine SpriteAnimation ist eine Sammlung von SpriteAnimationFrame-Objekten
@@ -32,50 +31,71 @@ public class SpriteAnimation {
 	/** Animationsname für Tod */
 	public final static String DEAD = "dead";
 	
-	/** Die Liste der Frames */
-	private List<SpriteAnimationFrame> frames = null;
-
-	/** Zeitpunkt seit dem die Animation läuft */
-	private long startTime;
+	/** 
+	 * Bis zu dieser Gesamtlaufzeit (in Millisekunden) wird für jede Millisekunde 
+	 * der Frameindex vorberechnet. Längere Animationen werden per binärer Suche
+	 * durchsucht.
+	 */
+	public final static int MAX_TABLE_TIME = 2048;
+	
+	/** Die Frames in Abspielreihenfolge */
+	private SpriteAnimationFrame[] frames = null;
 	
+	/** Für jedes Frame der Zeitpunkt (ab Animationsbeginn) an dem es endet */
+	private int[] frameEnds = null;
+
 	/** Gesamtlaufzeit der Animation in Millisekunden */
 	private int total;
 	
-	/** Das aktuelle Frame */
-	private SpriteAnimationFrame currentFrame = null;
+	/** Vorberechneter Frameindex je Millisekunde (null bei langen Animationen) */
+	private short[] frameTable = null;
 	
 	/**
 	 * Konstruktor
 	 */
 	public SpriteAnimation() {
-		frames = new LinkedList<SpriteAnimationFrame>();
+		frames = new SpriteAnimationFrame[0];
+		frameEnds = new int[0];
 	}
 	
 	/**
 	 * Fügt ein neues Frame der Liste hinzu.
 	 * 
+	 * Die Animation wird dabei direkt in die Arrays für die Framesuche
+	 * übersetzt - das passiert nur beim Einlesen der Spritedefinition.
+	 * 
 	 * @param frame das hinzuzufügende Frame 
 	 */
 	public void addFrame(SpriteAnimationFrame frame) {
-		frames.add(frame);
+		int count = frames.length;
 		
-		// Falls es kein aktuelles Frame gibt nehmen wir das erste
-		// Frame das zu dieser Animation gehört als Default
-		if ( currentFrame == null ) {
-			currentFrame = frame;
-		}
-
-		total = 0;
-		for ( SpriteAnimationFrame f : frames ) {
-			total += f.getDuration();
-		}
+		frames = Arrays.copyOf(frames, count+1);
+		frameEnds = Arrays.copyOf(frameEnds, count+1);
+		
+		total += frame.getDuration();
+		frames[count] = frame;
+		frameEnds[count] = total;
+		
+		buildFrameTable();
 	}
 	
 	/**
-	 * Startet die Animation neu.
+	 * Berechnet für kurze Animationen den Frameindex jeder Millisekunde vor.
 	 */
-	public void reset() {
-		startTime = System.currentTimeMillis();
+	private void buildFrameTable() {
+		if ( total <= 0 || total > MAX_TABLE_TIME ) {
+			frameTable = null;
+			return;
+		}
+		
+		frameTable = new short[total];
+		int index = 0;
+		for ( int t=0 ; t<total ; t++ ) {
+			while ( frameEnds[index] <= t ) {
+				index++;
+			}
+			frameTable[t] = (short)index;
+		}
 	}
 	
 	/**
@@ -88,28 +108,79 @@ public class SpriteAnimation {
 	}
 	
 	/**
-	 * Liefert das aktuelle Frame
+	 * Liefert die Anzahl an Frames.
 	 * 
-	 * @return das aktuelle Animationsframe
+	 * @return die Anzahl an Frames
 	 */
-	public SpriteAnimationFrame getCurrentFrame() {
-		return currentFrame;
+	public int getFrameCount() {
+		return frames.length;
 	}
 	
 	/**
-	 * Bestimmt das nächste Frame der Animation.
+	 * Liefert ein bestimmtes Frame.
+	 * 
+	 * @param index der Index des Frames (ab 0)
+	 * @return das Frame
 	 */
-	public void step() {
-		long jetzt = System.currentTimeMillis();
-		long delta = (jetzt-startTime) % total;
+	public SpriteAnimationFrame getFrame(int index) {
+		return frames[index];
+	}
+	
+	/**
+	 * Liefert das erste Frame der Animation. Dieses wird gezeigt bevor
+	 * die Animation zum ersten Mal weitergeschaltet wurde.
+	 * 
+	 * @return das erste Animationsframe
+	 */
+	public SpriteAnimationFrame getFirstFrame() {
+		return frames[0];
+	}
+	
+	/**
+	 * Bestimmt den Index des Frames das nach der angegebenen Laufzeit gezeigt wird.
+	 * 
+	 * Bei kurzen Animationen ist das ein Tabellenzugriff, bei langen eine binäre
+	 * Suche über die Frame-Endzeitpunkte.
+	 * 
+	 * @param elapsed Millisekunden seit dem Start der Animation
+	 * @return der Index des passenden Frames
+	 */
+	public int getFrameIndexAt(long elapsed) {
+		if ( total <= 0 || elapsed <= 0 ) {
+			return 0;
+		}
+		
+		int delta = (int)(elapsed % total);
 		
-		// Das passende Frame finden
-		int timePos = 0;
-		for ( SpriteAnimationFrame f : frames ) {
-			if ( timePos <= delta && timePos + f.getDuration() >= delta ) {
-				currentFrame = f;
+		if ( frameTable != null ) {
+			return frameTable[delta];
+		}
+		
+		// Das erste Frame suchen das nach delta endet
+		int low = 0;
+		int high = frameEnds.length - 1;
+		while ( low < high ) {
+			int mid = (low + high) >>> 1;
+			if ( frameEnds[mid] <= delta ) {
+				low = mid + 1;
+			} else {
+				high = mid;
 			}
-			timePos += f.getDuration();
 		}
+		
+		return low;
+	}
+	
+	/**
+	 * Bestimmt das Frame das nach der angegebenen Laufzeit gezeigt wird.
+	 * 
+	 * Die Animation selbst hat keinen Zustand - die Startzeit wird vom
+	 * Sprite verwaltet damit sich alle Sprites eine Animation teilen können.
+	 * 
+	 * @param elapsed Millisekunden seit dem Start der Animation
+	 * @return das passende Frame
+	 */
+	public SpriteAnimationFrame getFrameAt(long elapsed) {
+		return frames[getFrameIndexAt(elapsed)];
 	}
 }
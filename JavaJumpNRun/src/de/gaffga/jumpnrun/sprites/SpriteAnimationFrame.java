@@ -18,6 +18,9 @@ public class SpriteAnimationFrame {
 	/** Die Dauer in Millisekunden */
 	int duration;
 	
+	/** Die Kollisionsmaske des Frames (null = keine, es zählt nur die Hitbox) */
+	SpriteMask mask;
+	
 	/**
 	 * Konstruktor.
 	 * 
@@ -54,4 +57,12 @@ public class SpriteAnimationFrame {
 	public void setDuration(int duration) {
 		this.duration = duration;
 	}
+
+	public SpriteMask getMask() {
+		return mask;
+	}
+
+	public void setMask(SpriteMask mask) {
+		this.mask = mask;
+	}
 }
@@ -0,0 +1,284 @@
+package de.gaffga.jumpnrun.sprites;
+
+import java.awt.Graphics;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import de.gaffga.jumpnrun.resources.ResourceManager;
+import de.gaffga.jumpnrun.resources.ResourceManagerException;
+
+/**
+ * Die unveränderlichen Daten eines Sprites: Spritebild, Größe, Hitbox und
+ * alle Animationen.
+ *
+ * Eine SpriteDefinition wird pro .sprite-Datei nur einmal eingelesen und dann
+ * von allen Sprite-Objekten gemeinsam benutzt (Fliegengewicht). Der Zustand
+ * eines einzelnen Sprites (aktuelle Animation, Position, Sichtbarkeit) liegt
+ * dagegen im Sprite selbst.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class SpriteDefinition {
+
+	/** Das Bild mit dem Spritebildern */
+	private Image image = null;
+
+	/** Breite des Sprites in Pixel */
+	private int width;
+
+	/** Höhe des Sprites in Pixel */
+	private int height;
+
+	/** Die Hitbox */
+	private Rectangle hitbox = null;
+
+	/** Map mit allen vorhandenen Animationen */
+	private HashMap<String, SpriteAnimation> animations = null;
+
+	/** Name der Spritedefinitionsdatei */
+	private String name = null;
+
+	/** Die Pixel des Spritebilds - nur während des Einlesens für die Kollisionsmasken */
+	private BufferedImage maskSource = null;
+
+	/** Die bereits erzeugten Kollisionsmasken (Key: Position im Spritebild) - nur während des Einlesens */
+	private HashMap<Long, SpriteMask> masks = null;
+
+	/**
+	 * Konstruktor.
+	 *
+	 * Nur die SpriteDefinitionFactory soll Definitionen erzeugen damit jede
+	 * Datei nur einmal eingelesen wird.
+	 *
+	 * @param name Name der Spritedefinitionsdatei
+	 * @throws SpriteException
+	 */
+	SpriteDefinition(String name) throws SpriteException {
+		animations = new HashMap<String, SpriteAnimation>();
+		this.name = name;
+		readSprite(name);
+	}
+
+	/**
+	 * Liefert die Animation mit dem angegebenen Namen.
+	 *
+	 * @param name der Name der Animation
+	 * @return die Animation oder null falls es sie nicht gibt
+	 */
+	public SpriteAnimation getAnimation(String name) {
+		return animations.get(name);
+	}
+
+	/**
+	 * Liest das Sprite ein.
+	 *
+	 * @param name das zu lesende Sprite
+	 * @throws SpriteException
+	 */
+	protected void readSprite(String name) throws SpriteException {
+		try {
+			Properties props = ResourceManager.getInstance().getProperties(name);
+			String imageFile = props.getProperty("image");
+			if ( imageFile != null ) {
+				image = ResourceManager.getInstance().getImage(imageFile);
+			} else {
+				throw new SpriteException("Sprite-Image '"+name+"' konnte nicht geladen werden!");
+			}
+
+			String width = props.getProperty("width");
+			if ( width != null ) {
+				this.width = Integer.parseInt(width);
+			} else {
+				throw new SpriteException("Die width-Angabe des Sprites '"+name+"' fehlt!");
+			}
+
+			String height = props.getProperty("height");
+			if ( height != null ) {
+				this.height = Integer.parseInt(height);
+			} else {
+				throw new SpriteException("Die height-Angabe des Sprites '"+name+"' fehlt!");
+			}
+
+			String hitbox = props.getProperty("hitbox");
+			if ( hitbox==null ) {
+				// Falls keine Hitbox da ist wird das gesamte Sprite verwendet
+				this.hitbox = new Rectangle(0,0,this.width,this.height);
+			} else {
+				String[] elements = hitbox.split(",");
+				this.hitbox = new Rectangle(Integer.parseInt(elements[0]),
+						Integer.parseInt(elements[1]),
+						Integer.parseInt(elements[2]),
+						Integer.parseInt(elements[3]));
+			}
+
+			// Die Kollisionsmasken werden beim Einlesen der Animationen pro Frame erzeugt
+			maskSource = toBufferedImage(image);
+			masks = new HashMap<Long, SpriteMask>();
+
+			// Einlesen der Animationen aus den Properties
+			readAnimation(props, SpriteAnimation.WALK_RIGHT);
+			readAnimation(props, SpriteAnimation.WALK_LEFT);
+			readAnimation(props, SpriteAnimation.IDLE_RIGHT);
+			readAnimation(props, SpriteAnimation.IDLE_LEFT);
+			readAnimation(props, SpriteAnimation.JUMP_RAISE_RIGHT);
+			readAnimation(props, SpriteAnimation.JUMP_FALL_RIGHT);
+			readAnimation(props, SpriteAnimation.JUMP_RAISE_LEFT);
+			readAnimation(props, SpriteAnimation.JUMP_FALL_LEFT);
+			readAnimation(props, SpriteAnimation.DANCE);
+			readAnimation(props, SpriteAnimation.DEAD);
+
+			maskSource = null;
+			masks = null;
+
+		} catch (ResourceManagerException e) {
+			throw new SpriteException("Fehler beim Initialisieren des Sprites '"+name+"'", e);
+		}
+	}
+
+	/**
+	 * Liest eine bestimmte Animation ein.
+	 *
+	 * @param name der Name der zu lesenden Animation
+	 */
+	protected void readAnimation(Properties props, String name) {
+		String animString = props.getProperty(name);
+		if ( animString!=null ) {
+			SpriteAnimation anim = parseAnimationString(animString);
+			animations.put(name, anim);
+		} else {
+			// Diese Animation ist nicht vorhanden
+			Logger.getLogger(this.getClass().getName()).warning("Sprite: '"+this.name+"': Animation '"+name+"' wurde nicht gefunden.");
+		}
+	}
+
+	/**
+	 * Parst den Animationsstring und erstellt daraus ein Animationsobjekt.
+	 *
+	 * @param animString der Animationsbeschreibungs-String
+	 * @return das erzeugte Animationsobjekt
+	 */
+	protected SpriteAnimation parseAnimationString(String animString) {
+		String[] parts = animString.split("/");
+
+		SpriteAnimation animation = new SpriteAnimation();
+
+		// Die Defaultdauer
+		int duration = 200;
+
+		for ( String part : parts ) {
+			String inner = part.substring(1, part.length()-1);
+			String[] animParts = inner.split(",");
+			int row = Integer.parseInt(animParts[0]);
+			int col = Integer.parseInt(animParts[1]);
+			if ( animParts.length==3 ) {
+				duration = Integer.parseInt(animParts[2]);
+			}
+
+			int x = col * width;
+			int y = row * height;
+
+			SpriteAnimationFrame frame = new SpriteAnimationFrame(x,y,duration);
+			frame.setMask(getMask(x, y));
+			animation.addFrame(frame);
+		}
+
+		return animation;
+	}
+
+	/**
+	 * Liefert die Kollisionsmaske für das Frame an der angegebenen Position im
+	 * Spritebild. Frames an der gleichen Position teilen sich die Maske.
+	 *
+	 * @param x die X-Koordinate im Spritebild
+	 * @param y die Y-Koordinate im Spritebild
+	 * @return die Maske oder null falls die Pixel nicht gelesen werden können
+	 */
+	private SpriteMask getMask(int x, int y) {
+		if ( maskSource == null ) {
+			return null;
+		}
+
+		Long key = Long.valueOf(((long)x << 32) | (y & 0xffffffffL));
+		SpriteMask mask = masks.get(key);
+		if ( mask == null ) {
+			mask = new SpriteMask(maskSource, x, y, width, height);
+			masks.put(key, mask);
+		}
+
+		return mask;
+	}
+
+	/**
+	 * Kopiert ein Bild in ein BufferedImage damit die Alphawerte gelesen werden können.
+	 *
+	 * @param image das Bild
+	 * @return das BufferedImage oder null falls das Bild (noch) keine Größe hat
+	 */
+	private static BufferedImage toBufferedImage(Image image) {
+		if ( image instanceof BufferedImage ) {
+			return (BufferedImage)image;
+		}
+
+		int w = image.getWidth(null);
+		int h = image.getHeight(null);
+		if ( w <= 0 || h <= 0 ) {
+			return null;
+		}
+
+		BufferedImage result = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+		Graphics g = result.getGraphics();
+		g.drawImage(image, 0, 0, null);
+		g.dispose();
+
+		return result;
+	}
+
+	/**
+	 * Liefert die Hitbox.
+	 *
+	 * @return die Hitbox
+	 */
+	public Rectangle getHitbox() {
+		return hitbox;
+	}
+
+	/**
+	 * Liefert das Image-Objekt.
+	 *
+	 * @return des Image-Objekt
+	 */
+	public Image getImage() {
+		return image;
+	}
+
+	/**
+	 * Liefert die Breite des Sprites.
+	 *
+	 * @return die Breite in Pixeln
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Liefert die Höhe des Sprites.
+	 *
+	 * @return die Höhe in Pixeln
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Liefert den Namen der Spritedefinition.
+	 *
+	 * @return der Name
+	 */
+	public String getName() {
+		return name;
+	}
+}
@@ -0,0 +1,61 @@
+package de.gaffga.jumpnrun.sprites;
+
+import java.util.HashMap;
+
+/**
+ * Fabrik für SpriteDefinition-Objekte.
+ *
+ * Wie die TileFactory folgt diese Klasse dem Flyweight (Fliegengewicht) Muster:
+ * Jede .sprite-Datei wird nur beim ersten Zugriff eingelesen, alle weiteren
+ * Sprites mit dem gleichen Namen teilen sich die bereits erzeugte Definition.
+ *
+ * Zudem ist diese Klasse als Singleton implementiert damit es nur eine davon gibt.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class SpriteDefinitionFactory {
+
+	/** Die Referenz auf die Singletoninstanz */
+	private static SpriteDefinitionFactory instance = null;
+
+	/** Map mit allen bereits eingelesenen Definitionen - als Key dient der Dateiname */
+	private HashMap<String, SpriteDefinition> definitions = null;
+
+	/**
+	 * Konstruktor.
+	 */
+	private SpriteDefinitionFactory() {
+		definitions = new HashMap<String, SpriteDefinition>();
+	}
+
+	/**
+	 * Liefert die einzige Instanz.
+	 *
+	 * @return die einzige Instanz.
+	 */
+	public static synchronized SpriteDefinitionFactory getInstance() {
+		if ( instance == null ) {
+			instance = new SpriteDefinitionFactory();
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Liefert die Definition zur angegebenen Spritedatei. Falls diese noch nicht
+	 * eingelesen wurde geschieht das jetzt.
+	 *
+	 * @param name Name der Spritedefinitionsdatei
+	 * @return die gemeinsam genutzte Definition
+	 * @throws SpriteException
+	 */
+	public synchronized SpriteDefinition getDefinition(String name) throws SpriteException {
+		SpriteDefinition definition = definitions.get(name);
+		if ( definition == null ) {
+			definition = new SpriteDefinition(name);
+			definitions.put(name, definition);
+		}
+
+		return definition;
+	}
+}
@@ -0,0 +1,122 @@
+package de.gaffga.jumpnrun.sprites;
+
+import java.awt.Graphics;
+import java.awt.Image;
+import java.util.ArrayList;
+
+/**
+ * Die Zeichenliste eines Render-Layers für ein Frame.
+ *
+ * Die sichtbaren Sprites werden in der Reihenfolge des Layers gesammelt, so
+ * dass sich überlappende Sprites immer gleich übereinander liegen.
+ * Aufeinanderfolgende Sprites mit dem gleichen Quellbild (z.B. die Feinde mit
+ * enemy1.png) bilden einen Lauf, der am Stück gezeichnet wird. Sortiert wird
+ * nicht - wie viel das bringt hängt also davon ab, wie die Sprites im Layer
+ * liegen.
+ *
+ * Die Läufe und ihre Listen werden von Frame zu Frame wiederverwendet, nach
+ * dem ersten Frame entstehen hier also keine neuen Objekte mehr.
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+class SpriteDrawList {
+
+	/**
+	 * Aufeinanderfolgende Sprites eines Frames mit dem gleichen Quellbild.
+	 */
+	private static class Run {
+		/** Das gemeinsame Quellbild */
+		private Image image = null;
+
+		/** Die Sprites in Zeichenreihenfolge */
+		private ArrayList<Sprite> sprites = new ArrayList<Sprite>();
+
+		/** Die Bildschirmkoordinaten (X/Y abwechselnd) der Sprites */
+		private int[] coords = new int[16];
+	}
+
+	/** Die Läufe - die ersten runCount davon sind im aktuellen Frame belegt */
+	private ArrayList<Run> runs = new ArrayList<Run>();
+
+	/** Anzahl der im aktuellen Frame belegten Läufe */
+	private int runCount;
+
+	/**
+	 * Leert die Liste für ein neues Frame.
+	 */
+	public void clear() {
+		for ( int i=0 ; i<runCount ; i++ ) {
+			Run run = runs.get(i);
+			run.image = null;
+			run.sprites.clear();
+		}
+		runCount = 0;
+	}
+
+	/**
+	 * Hängt ein Sprite an. Hat es ein anderes Quellbild als das vorige Sprite
+	 * beginnt ein neuer Lauf.
+	 *
+	 * @param sprite das Sprite
+	 * @param x die X-Koordinate an der gezeichnet wird
+	 * @param y die Y-Koordinate an der gezeichnet wird
+	 */
+	public void add(Sprite sprite, int x, int y) {
+		Image image = sprite.getImage();
+
+		Run run = runCount > 0 ? runs.get(runCount - 1) : null;
+		if ( run == null || run.image != image ) {
+			if ( runCount == runs.size() ) {
+				runs.add(new Run());
+			}
+			run = runs.get(runCount++);
+			run.image = image;
+		}
+
+		int index = run.sprites.size() * 2;
+		if ( index == run.coords.length ) {
+			int[] coords = new int[index * 2];
+			System.arraycopy(run.coords, 0, coords, 0, index);
+			run.coords = coords;
+		}
+		run.coords[index] = x;
+		run.coords[index + 1] = y;
+		run.sprites.add(sprite);
+	}
+
+	/**
+	 * Zeichnet alle Läufe nacheinander.
+	 *
+	 * @param g der Grafikkontext
+	 * @return die Anzahl der gezeichneten Sprites
+	 */
+	public int draw(Graphics g) {
+		int drawn = 0;
+
+		for ( int i=0 ; i<runCount ; i++ ) {
+			Run run = runs.get(i);
+			ArrayList<Sprite> sprites = run.sprites;
+			int[] coords = run.coords;
+
+			for ( int j=0 ; j<sprites.size() ; j++ ) {
+				try {
+					sprites.get(j).draw(coords[j*2], coords[j*2+1], g);
+					drawn++;
+				} catch (SpriteException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+
+		return drawn;
+	}
+
+	/**
+	 * Liefert die Anzahl der Läufe im aktuellen Frame.
+	 *
+	 * @return die Anzahl der Läufe
+	 */
+	public int getRunCount() {
+		return runCount;
+	}
+}
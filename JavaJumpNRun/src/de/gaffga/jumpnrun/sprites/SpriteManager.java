@@ -1,87 +1,307 @@
 package de.gaffga.jumpnrun.sprites;
 
+import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.Point;
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.NoSuchElementException;
 
+import de.gaffga.jumpnrun.FpsMeter;
 import de.gaffga.jumpnrun.map.Map;
 
 /**
  * Verwaltung für alle Sprites. Die Reihenfolge des Zeichnens wird hier
  * unter anderem festgelegt.
  * 
+ * Jedes Sprite gehört zu genau einem Render-Layer. Die Layer werden in fester
+ * Reihenfolge (Hintergrund, Feinde, Spieler, Vordergrund, Effekte) gezeichnet,
+ * innerhalb eines Layers in der Reihenfolge des Hinzufügens, wobei
+ * aufeinanderfolgende Sprites mit gleichem Quellbild am Stück gezeichnet
+ * werden (siehe SpriteDrawList). Da die Sprites schon beim 
+ * Hinzufügen im richtigen Layer landen muss pro Frame nichts sortiert werden. Zusätzliche Zeichenroutinen (z.B. der EffectManager) können 
+ * über ILayerPainter in einen Layer eingehängt werden.
+ * 
+ * Sprites die außerhalb des sichtbaren Mapausschnitts (plus einem Rand) liegen
+ * werden nicht gezeichnet. Sprites die noch weiter entfernt sind (außerhalb des
+ * Aktivitätsbereichs) werden auch nicht animiert.
+ * 
  * @author Stefan Gaffga <stefan@gaffga.de>
  */
 public class SpriteManager implements Iterable<Sprite> {
 
-	/** Die Liste mit den Sprites */
-	private List<Sprite> sprites = null;
+	/** Layer für Hintergrunddekorationen */
+	public static final int LAYER_BACKGROUND = 0;
+	/** Layer für die Feinde */
+	public static final int LAYER_ENEMIES = 1;
+	/** Layer für die Spielfigur */
+	public static final int LAYER_PLAYER = 2;
+	/** Layer für Dekorationen vor der Spielfigur */
+	public static final int LAYER_FOREGROUND = 3;
+	/** Layer für Effekte (wird als letztes gezeichnet) */
+	public static final int LAYER_EFFECTS = 4;
+	/** Anzahl der Layer */
+	public static final int LAYER_COUNT = 5;
+	
+	/** Je Layer die Liste mit den Sprites */
+	private ArrayList<ArrayList<Sprite>> layers = null;
+	
+	/** Je Layer die Zeichenliste des aktuellen Frames */
+	private SpriteDrawList[] drawLists = null;
+	
+	/** Je Layer die Liste mit zusätzlichen Zeichenroutinen */
+	private ArrayList<ArrayList<ILayerPainter>> painters = null;
 	
 	/** Die Map auf der die Sprites gezeichnet werden */
 	private Map map = null;
 	
+	/** Defaultwert für den Rand um den sichtbaren Bereich in dem noch gezeichnet wird */
+	public static final int DEFAULT_DRAW_MARGIN = 32;
+	
+	/** Defaultwert für den Rand um den sichtbaren Bereich in dem noch animiert wird */
+	public static final int DEFAULT_ACTIVITY_MARGIN = 640;
+	
+	/** Rand in Pixeln um den sichtbaren Bereich in dem Sprites noch gezeichnet werden */
+	private int drawMargin = DEFAULT_DRAW_MARGIN;
+	
+	/** Rand in Pixeln um den sichtbaren Bereich in dem Sprites noch animiert werden */
+	private int activityMargin = DEFAULT_ACTIVITY_MARGIN;
+	
+	/** Anzahl der im letzten Frame gezeichneten Sprites */
+	private int drawnCount;
+	
+	/** Anzahl der im letzten Frame wegen des Sichtbereichs ausgelassenen Sprites */
+	private int culledCount;
+	
+	/** Anzahl der im letzten Frame animierten Sprites */
+	private int steppedCount;
+	
 	/**
 	 * Konstruktor.
 	 * 
 	 * @param map Map auf der die Sprites gezeichnet werden sollen
 	 */
 	public SpriteManager(Map map) {
-		sprites = new LinkedList<Sprite>();
+		layers = new ArrayList<ArrayList<Sprite>>(LAYER_COUNT);
+		painters = new ArrayList<ArrayList<ILayerPainter>>(LAYER_COUNT);
+		drawLists = new SpriteDrawList[LAYER_COUNT];
+		for ( int i=0 ; i<LAYER_COUNT ; i++ ) {
+			layers.add(new ArrayList<Sprite>());
+			painters.add(new ArrayList<ILayerPainter>());
+			drawLists[i] = new SpriteDrawList();
+		}
 		this.map = map;
 	}
 
 	/**
-	 * Fügt ein neues Sprite hinzu.
+	 * Fügt ein neues Sprite im Vordergrund-Layer hinzu.
 	 * 
 	 * @param sprite das neue Sprite
 	 */
 	public void add(Sprite sprite) {
-		sprites.add(sprite);
+		add(sprite, LAYER_FOREGROUND);
+	}
+	
+	/**
+	 * Fügt ein neues Sprite in einem bestimmten Layer hinzu. Es wird über allen
+	 * Sprites gezeichnet die sich bereits in diesem Layer befinden.
+	 * 
+	 * @param sprite das neue Sprite
+	 * @param layer der Layer (LAYER_...)
+	 */
+	public void add(Sprite sprite, int layer) {
+		layers.get(layer).add(sprite);
 	}
 	
 	/**
-	 * Liefert den Iterator mit dem über alle Sprites iteriert werden kann.
+	 * Hängt eine zusätzliche Zeichenroutine in einen Layer ein. Sie wird nach
+	 * den Sprites dieses Layers aufgerufen.
+	 * 
+	 * @param painter die Zeichenroutine
+	 * @param layer der Layer (LAYER_...)
+	 */
+	public void addPainter(ILayerPainter painter, int layer) {
+		painters.get(layer).add(painter);
+	}
+	
+	/**
+	 * Liefert den Iterator mit dem über alle Sprites (in Zeichenreihenfolge) 
+	 * iteriert werden kann.
 	 */
 	public Iterator<Sprite> iterator() {
-		return sprites.iterator();
+		return new Iterator<Sprite>() {
+			private int layer = 0;
+			private int index = 0;
+			
+			public boolean hasNext() {
+				while ( layer < LAYER_COUNT && index >= layers.get(layer).size() ) {
+					layer++;
+					index = 0;
+				}
+				return layer < LAYER_COUNT;
+			}
+			
+			public Sprite next() {
+				if ( !hasNext() ) {
+					throw new NoSuchElementException();
+				}
+				return layers.get(layer).get(index++);
+			}
+			
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
 	}
 	
 	/**
-	 * Zeichnet alle Sprites.
+	 * Zeichnet alle Layer: Pro Layer werden zuerst die Sprites im sichtbaren 
+	 * Bereich in Listenreihenfolge gesammelt und in Läufen mit gleichem
+	 * Quellbild gezeichnet, danach kommen die eingehängten Zeichenroutinen.
+	 * 
+	 * Die Umrechnung von Map- in Bildschirmkoordinaten geschieht für alle Sprites
+	 * über eine gemeinsame Translation des Grafikkontexts.
 	 * 
 	 * @param img das Bild auf das gezeichnet werden soll
 	 */
 	public void draw(Image img) {
-		for ( Sprite sprite : sprites ) {
-			if ( !sprite.isVisible() ) continue;
-			Point pos = sprite.getPosition();
-			Point screenPos = map.getPosScreenPixelFromPosMapPixel(pos);
-			screenPos.y -= sprite.getHeight();
-			
-			try {
-				sprite.draw(screenPos, img);
-			} catch (SpriteException e) {
-				e.printStackTrace();
+		Graphics2D g = (Graphics2D)img.getGraphics();
+		Point view = map.getMapViewPosition();
+		int screenWidth = map.getScreenPixelWidth();
+		int screenHeight = map.getScreenPixelHeight();
+		
+		// Map-Pixel -> Bildschirm: x' = x - view.x, y' = screenHeight - y + view.y
+		int offsetX = -view.x;
+		int offsetY = screenHeight + view.y;
+		
+		drawnCount = 0;
+		culledCount = 0;
+		
+		try {
+			for ( int layer=0 ; layer<LAYER_COUNT ; layer++ ) {
+				ArrayList<Sprite> sprites = layers.get(layer);
+				SpriteDrawList drawList = drawLists[layer];
+				drawList.clear();
+				
+				for ( int i=0 ; i<sprites.size() ; i++ ) {
+					Sprite sprite = sprites.get(i);
+					if ( !sprite.isVisible() ) continue;
+					Point pos = sprite.getPosition();
+					int width = sprite.getWidth();
+					int height = sprite.getHeight();
+					int x = pos.x + offsetX;
+					int y = offsetY - pos.y - height;
+					
+					if ( x + width < -drawMargin || x > screenWidth + drawMargin ||
+							y + height < -drawMargin || y > screenHeight + drawMargin ) {
+						// Nicht sichtbar - das Zeichnen sparen wir uns
+						culledCount++;
+						continue;
+					}
+					
+					// Gespeichert wird die Position relativ zur gemeinsamen Translation
+					drawList.add(sprite, pos.x, -pos.y - height);
+				}
+				
+				g.translate(offsetX, offsetY);
+				drawnCount += drawList.draw(g);
+				g.translate(-offsetX, -offsetY);
+				
+				ArrayList<ILayerPainter> layerPainters = painters.get(layer);
+				for ( int i=0 ; i<layerPainters.size() ; i++ ) {
+					layerPainters.get(i).draw(img);
+				}
 			}
+		} finally {
+			g.dispose();
 		}
+		
+		FpsMeter.getInstance().setCounter("Sprites drawn", drawnCount);
+		FpsMeter.getInstance().setCounter("Sprites culled", culledCount);
 	}
 	
 	/**
-	 * Führt einen Animationsschritt für alle Sprites aus.
+	 * Führt einen Animationsschritt für alle Sprites im Aktivitätsbereich aus.
 	 */
 	public void step() {
-		for ( Sprite sprite : sprites ) {
-			sprite.step();
+		Point view = map.getMapViewPosition();
+		int x0 = view.x - activityMargin;
+		int y0 = view.y - activityMargin;
+		int x1 = view.x + map.getScreenPixelWidth() + activityMargin;
+		int y1 = view.y + map.getScreenPixelHeight() + activityMargin;
+		
+		steppedCount = 0;
+		
+		for ( int layer=0 ; layer<LAYER_COUNT ; layer++ ) {
+			ArrayList<Sprite> sprites = layers.get(layer);
+			
+			for ( int i=0 ; i<sprites.size() ; i++ ) {
+				Sprite sprite = sprites.get(i);
+				Point pos = sprite.getPosition();
+				if ( pos.x + sprite.getWidth() < x0 || pos.x > x1 ||
+						pos.y + sprite.getHeight() < y0 || pos.y > y1 ) {
+					// Zu weit weg - die Animation bleibt stehen
+					continue;
+				}
+				
+				sprite.step();
+				steppedCount++;
+			}
 		}
+		
+		FpsMeter.getInstance().setCounter("Sprites stepped", steppedCount);
+	}
+	
+	/**
+	 * Setzt den Rand um den sichtbaren Bereich in dem Sprites noch gezeichnet werden.
+	 * 
+	 * @param drawMargin der Rand in Pixeln
+	 */
+	public void setDrawMargin(int drawMargin) {
+		this.drawMargin = drawMargin;
+	}
+	
+	/**
+	 * Setzt den Rand um den sichtbaren Bereich in dem Sprites noch animiert werden.
+	 * 
+	 * @param activityMargin der Rand in Pixeln
+	 */
+	public void setActivityMargin(int activityMargin) {
+		this.activityMargin = activityMargin;
+	}
+	
+	/**
+	 * Liefert die Anzahl der beim letzten draw() gezeichneten Sprites.
+	 * 
+	 * @return die Anzahl gezeichneter Sprites
+	 */
+	public int getDrawnCount() {
+		return drawnCount;
+	}
+	
+	/**
+	 * Liefert die Anzahl der beim letzten draw() ausgelassenen Sprites.
+	 * 
+	 * @return die Anzahl nicht gezeichneter Sprites
+	 */
+	public int getCulledCount() {
+		return culledCount;
+	}
+	
+	/**
+	 * Liefert die Anzahl der beim letzten step() animierten Sprites.
+	 * 
+	 * @return die Anzahl animierter Sprites
+	 */
+	public int getSteppedCount() {
+		return steppedCount;
 	}
 
 	/**
 	 * Alle Animationen aller Sprites stoppen.  
 	 */
 	public void stopAllAnimations() {
-		for ( Sprite sprite : sprites ) {
+		for ( Sprite sprite : this ) {
 			sprite.setCurrentAnimation(null);
 		}
 	}
@@ -90,6 +310,10 @@ public class SpriteManager implements Iterable<Sprite> {
 	 * Löscht alle Einträge.
 	 */
 	public void flush() {
-		sprites.clear();
+		for ( int layer=0 ; layer<LAYER_COUNT ; layer++ ) {
+			layers.get(layer).clear();
+			painters.get(layer).clear();
+			drawLists[layer].clear();
+		}
 	}
 }
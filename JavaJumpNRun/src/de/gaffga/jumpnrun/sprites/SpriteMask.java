@@ -0,0 +1,151 @@
+package de.gaffga.jumpnrun.sprites;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Die Kollisionsmaske eines Animationsframes.
+ *
+ * Für jedes Pixel des Frames ist ein Bit gesetzt falls es (ausreichend)
+ * deckend ist. Die Bits einer Zeile sind in long-Werte gepackt, so dass beim
+ * Überlappungstest 64 Pixel auf einmal mit einem AND geprüft werden können.
+ *
+ * Die Zeilen sind wie die Map-Koordinaten von unten nach oben nummeriert:
+ * Zeile 0 ist die unterste Pixelzeile des Frames. Damit passt die Maske direkt
+ * zur Sprite-Position und zur Hitbox (deren (0,0) auch die linke untere Ecke ist).
+ *
+ * @author Stefan Gaffga <stefan@gaffga.de>
+ */
+public class SpriteMask {
+
+	/** Ab diesem Alphawert gilt ein Pixel als deckend */
+	public static final int ALPHA_THRESHOLD = 128;
+
+	/** Breite in Pixeln */
+	private int width;
+
+	/** Höhe in Pixeln */
+	private int height;
+
+	/** Anzahl der long-Werte pro Zeile */
+	private int words;
+
+	/** Die Bits - Zeile für Zeile, pro Zeile 'words' Werte. Bit n von Wert w ist Spalte w*64+n */
+	private long[] bits = null;
+
+	/**
+	 * Erzeugt die Maske aus einem Ausschnitt des Spritebildes.
+	 *
+	 * @param image das komplette Spritebild
+	 * @param x die X-Koordinate des Frames im Spritebild
+	 * @param y die Y-Koordinate des Frames im Spritebild
+	 * @param width die Breite des Frames
+	 * @param height die Höhe des Frames
+	 */
+	public SpriteMask(BufferedImage image, int x, int y, int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.words = (width + 63) >> 6;
+		this.bits = new long[words * height];
+
+		int[] argb = new int[width];
+		for ( int row=0 ; row<height ; row++ ) {
+			// Bildzeilen laufen von oben nach unten, die Maske von unten nach oben
+			int imageY = y + height - 1 - row;
+			if ( imageY < 0 || imageY >= image.getHeight() ) continue;
+
+			int columns = Math.min(width, image.getWidth() - x);
+			if ( columns <= 0 ) continue;
+			image.getRGB(x, imageY, columns, 1, argb, 0, width);
+
+			int offset = row * words;
+			for ( int col=0 ; col<columns ; col++ ) {
+				if ( (argb[col] >>> 24) >= ALPHA_THRESHOLD ) {
+					bits[offset + (col >> 6)] |= 1L << (col & 63);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Prüft ob sich zwei Masken innerhalb eines Bereichs überlappen.
+	 *
+	 * Alle Koordinaten sind Map-Pixel. Der Bereich muss innerhalb beider Masken
+	 * liegen (typischerweise die Schnittmenge der beiden Hitboxen).
+	 *
+	 * @param a die erste Maske
+	 * @param ax X-Position der ersten Maske
+	 * @param ay Y-Position der ersten Maske
+	 * @param b die zweite Maske
+	 * @param bx X-Position der zweiten Maske
+	 * @param by Y-Position der zweiten Maske
+	 * @param x0 linke Kante des zu prüfenden Bereichs
+	 * @param y0 untere Kante des zu prüfenden Bereichs
+	 * @param x1 rechte Kante des Bereichs (exklusiv)
+	 * @param y1 obere Kante des Bereichs (exklusiv)
+	 * @return true falls mindestens ein Pixel in beiden Masken gesetzt ist
+	 */
+	public static boolean overlaps(SpriteMask a, int ax, int ay, SpriteMask b, int bx, int by,
+			int x0, int y0, int x1, int y1) {
+		for ( int y=y0 ; y<y1 ; y++ ) {
+			int rowA = y - ay;
+			int rowB = y - by;
+
+			for ( int x=x0 ; x<x1 ; x+=64 ) {
+				int n = x1 - x;
+				long valid = n >= 64 ? -1L : (1L << n) - 1;
+
+				if ( (a.getBits(rowA, x - ax) & b.getBits(rowB, x - bx) & valid) != 0 ) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Liefert 64 Bits einer Zeile ab einer beliebigen Spalte (Bit 0 = die Spalte selbst).
+	 * Spalten außerhalb der Maske sind 0.
+	 *
+	 * @param row die Zeile
+	 * @param col die erste Spalte
+	 * @return die Bits
+	 */
+	private long getBits(int row, int col) {
+		if ( row < 0 || row >= height || col >= width || col <= -64 ) {
+			return 0;
+		}
+		if ( col < 0 ) {
+			return getBits(row, 0) << -col;
+		}
+
+		int word = col >> 6;
+		int shift = col & 63;
+		int offset = row * words;
+
+		long result = bits[offset + word] >>> shift;
+		if ( shift != 0 && word + 1 < words ) {
+			result |= bits[offset + word + 1] << (64 - shift);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Liefert die Breite der Maske.
+	 *
+	 * @return die Breite in Pixeln
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Liefert die Höhe der Maske.
+	 *
+	 * @return die Höhe in Pixeln
+	 */
+	public int getHeight() {
+		return height;
+	}
+}
@@ -46,14 +46,18 @@ public class Tile {
 	/** Id des Feindes dessen Startpunkt dies ist (ggfls.) */
 	private int enemy;
 	
+	/** Name des Verhaltens des Feindes dessen Startpunkt dies ist (ggfls.) */
+	private String behaviour;
+	
 	/**
 	 * Konstruktor
 	 */
-	public Tile(char code, Image image, String flags, int score, int enemy) {
+	public Tile(char code, Image image, String flags, int score, int enemy, String behaviour) {
 		this.code = code;
 		this.image = image;
 		this.score = score;
 		this.enemy = enemy;
+		this.behaviour = behaviour;
 		
 		this.flags = 0;
 		if ( flags.contains("VISIBLE")) {
@@ -97,10 +101,23 @@ public class Tile {
 		}
 	}
 
+	/**
+	 * Liefert alle Flags des Tiles (VISIBLE, PLAYERBLOCKING, ...) auf einmal.
+	 * 
+	 * @return die Flags
+	 */
+	public int getFlags() {
+		return flags;
+	}
+
 	public int getEnemy() {
 		return enemy;
 	}
 	
+	public String getBehaviour() {
+		return behaviour;
+	}
+	
 	public int getScore() {
 		return score;
 	}
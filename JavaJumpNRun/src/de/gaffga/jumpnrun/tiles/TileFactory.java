@@ -95,6 +95,7 @@ public class TileFactory {
 		String score = null;
 		String code = null;
 		String enemy = null;
+		String behaviour = null;
 		Image image = null;
 		
 		// Das erste Tile hat in der Konfiguration die Nummer 1
@@ -107,6 +108,7 @@ public class TileFactory {
 			score = prop.getProperty("tile_"+nummer+"_score");
 			code = prop.getProperty("tile_"+nummer+"_code");
 			enemy = prop.getProperty("tile_"+nummer+"_enemy");
+			behaviour = prop.getProperty("tile_"+nummer+"_behaviour");
 
 			// Falls keine Werte angegeben wurden sinnvolle Defaults vergeben
 			if ( flags == null ) flags="";
@@ -128,7 +130,7 @@ public class TileFactory {
 				}
 				
 				// Das Tile erzeugen und speichern
-				Tile tile = new Tile(code.charAt(0),image,flags,Integer.parseInt(score),Integer.parseInt(enemy));
+				Tile tile = new Tile(code.charAt(0),image,flags,Integer.parseInt(score),Integer.parseInt(enemy),behaviour);
 				tileMap.put(tile.getCode(), tile);
 			}
 			